@@ -0,0 +1,201 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+//Threads accepting the server's new connections. Each acceptor blocks in accept() and hands every connection over
+//straight away: to a thread of its own in the THREAD and VIRTUAL modes, or to the NIO event loop serving the fewest
+//connections. The acceptors share one listening socket, unless SO_REUSEPORT is used, in which case each binds its own
+//to the same port and the kernel spreads the incoming connections across them
+public class AcceptorGroup {
+
+    //Private object variables for the group
+    private final ChatServer chatServer;
+    private final ServerSocket[] listeners;
+    private final int acceptorCount;
+    private final int backlog;
+    private final boolean reusePort;
+
+    //Event loops the connections are handed to, or null if every connection has its own thread
+    private final NioServerEngine[] eventLoops;
+
+    /**
+     * Constructor method to bind the listening socket(s) of the group
+     * @param chatServer: ChatServer object the connections are accepted for
+     * @param port: port to listen on
+     * @param acceptorCount: number of acceptor threads
+     * @param backlog: length of the queue of connections waiting to be accepted (capped by the kernel's somaxconn)
+     * @param reusePort: true to give each acceptor its own listening socket using SO_REUSEPORT
+     * @param eventLoops: NioServerEngine loops to hand the connections to, or null for a thread per connection
+     * @throws IOException: if the port cannot be bound, or SO_REUSEPORT is not supported
+     */
+    public AcceptorGroup(ChatServer chatServer, int port, int acceptorCount, int backlog, boolean reusePort,
+                         NioServerEngine[] eventLoops) throws IOException {
+        this.chatServer = chatServer;
+        this.acceptorCount = Math.max(1, acceptorCount);
+        this.backlog = backlog;
+        this.reusePort = reusePort;
+        this.eventLoops = eventLoops;
+
+        this.listeners = new ServerSocket[reusePort ? this.acceptorCount : 1];
+        for (int i = 0; i < this.listeners.length; i++) {
+            //The NIO loops need channels, so their listeners are opened as channels; accept() still blocks
+            ServerSocket listener = eventLoops != null ? ServerSocketChannel.open().socket() : new ServerSocket();
+            if (reusePort) {
+                listener.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+            }
+            //With an ephemeral port, every other listener binds to the port the first one was given
+            int boundPort = i == 0 ? port : this.listeners[0].getLocalPort();
+            listener.bind(new InetSocketAddress(boundPort), backlog);
+            this.listeners[i] = listener;
+        }
+    }
+
+    /**
+     * Method to start the acceptors, running the first one on the calling thread until the server shuts down
+     */
+    public void run() {
+        for (int i = 1; i < this.acceptorCount; i++) {
+            ServerSocket listener = this.listeners[i % this.listeners.length];
+            Thread acceptor = new Thread(() -> accept(listener), "acceptor-"+i);
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+        accept(this.listeners[0]);
+    }
+
+    /**
+     * Subroutine run by an acceptor, accepting connections until the server shuts down (closing the listening socket)
+     * @param listener: ServerSocket to accept from
+     */
+    private void accept(ServerSocket listener) {
+        while (this.chatServer.isConnected()) {
+            try {
+                acceptOne(listener);
+            } catch (IOException e) {
+                if (listener.isClosed()) {
+                    return;
+                }
+                //e.g. out of file descriptors during a storm; back off briefly rather than stop accepting
+                this.chatServer.displayMessageToServer("Could not accept a connection; "+e.getMessage());
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException i) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Subroutine to accept a single connection and hand it over
+     * @param listener: ServerSocket to accept from
+     * @throws IOException: if accepting fails
+     */
+    private void acceptOne(ServerSocket listener) throws IOException {
+        if (this.eventLoops != null) {
+            SocketChannel clientChannel = listener.getChannel().accept();
+            clientChannel.configureBlocking(false);
+            //Writes are already batched by the gathering write, so Nagle's algorithm only adds delay
+            clientChannel.socket().setTcpNoDelay(true);
+            this.chatServer.getMetrics().connectionAccepted();
+            leastLoadedLoop().register(clientChannel);
+            return;
+        }
+        Socket clientSocket = listener.accept();
+        //Writes are already batched by each connection's flush policy, so Nagle's algorithm only adds delay
+        clientSocket.setTcpNoDelay(true);
+        this.chatServer.getMetrics().connectionAccepted();
+
+        ClientThread clientThread = new ClientThread(clientSocket, this.chatServer);
+        this.chatServer.addConnection(clientThread);
+        this.chatServer.getIdleReaper().track(clientThread);
+
+        //Run the client on its own (platform or virtual) thread
+        this.chatServer.getConnectionExecutor().execute(clientThread);
+    }
+
+    /**
+     * Method to find the event loop serving the fewest connections
+     * @return NioServerEngine loop a new connection should be handed to
+     */
+    private NioServerEngine leastLoadedLoop() {
+        NioServerEngine chosen = this.eventLoops[0];
+        int fewest = chosen.getConnectionCount();
+        for (int i = 1; i < this.eventLoops.length && fewest > 0; i++) {
+            int count = this.eventLoops[i].getConnectionCount();
+            if (count < fewest) {
+                chosen = this.eventLoops[i];
+                fewest = count;
+            }
+        }
+        return chosen;
+    }
+
+    /**
+     * Method to close every listening socket, which stops the acceptors
+     */
+    public void close() {
+        for (ServerSocket listener : this.listeners) {
+            try {
+                listener.close();
+            } catch (IOException e) {
+            }
+        }
+    }
+
+    /**
+     * Accessor method to obtain the port the group listens on
+     * @return local port
+     */
+    public int getLocalPort() {
+        return this.listeners[0].getLocalPort();
+    }
+
+    /**
+     * Accessor method to obtain the accept backlog the listening sockets were bound with
+     * @return backlog length
+     */
+    public int getBacklog() {
+        return this.backlog;
+    }
+
+    /**
+     * Static method to read the kernel's cap on the accept backlog (Linux only)
+     * @return somaxconn, or -1 if it cannot be read
+     */
+    public static int getSomaxconn() {
+        try {
+            //Read as lines, since /proc files report a size of 0
+            return Integer.parseInt(Files.readAllLines(Paths.get("/proc/sys/net/core/somaxconn"), StandardCharsets.US_ASCII).get(0).trim());
+        } catch (IOException | RuntimeException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Method to describe the acceptors and the event loops, for the admin's STATS command
+     * @return String summary
+     */
+    public String describe() {
+        int somaxconn = getSomaxconn();
+        StringBuilder description = new StringBuilder("acceptors="+this.acceptorCount+" listeners="+this.listeners.length
+                +" reuseport="+this.reusePort+" backlog="+this.backlog);
+        if (somaxconn > 0) {
+            description.append(" (effective ").append(Math.min(this.backlog, somaxconn)).append(", somaxconn ").append(somaxconn).append(')');
+        }
+        if (this.eventLoops != null) {
+            description.append(" loops=").append(this.eventLoops.length).append(" connections per loop:");
+            for (NioServerEngine loop : this.eventLoops) {
+                description.append(' ').append(loop.getConnectionCount());
+            }
+        }
+        return description.toString();
+    }
+}
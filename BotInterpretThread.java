@@ -1,6 +1,7 @@
 import java.io.*;
 import java.net.Socket;
 import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
 
 public class BotInterpretThread implements Runnable {
 
@@ -8,9 +9,12 @@ public class BotInterpretThread implements Runnable {
     private Socket socket;
     private BufferedReader bufferedReader;
     private PrintWriter printWriter;
+    private DataInputStream frameInput;
+    private DataOutputStream frameOutput;
     private LanguageProcessing languageProcessing;
     private String botName;
     private String filePath;
+    private ReplyMode replyMode;
 
     /**
      * Constructor method to define the connection and streams available
@@ -18,37 +22,46 @@ public class BotInterpretThread implements Runnable {
      * @param bot: ChatBot object passed
      * @param socket: socket object
      * @param botName: bot name String value
+     * @param filePath: relative filepath of the replies file
+     * @param replyMode: ReplyMode deciding how replies are picked
      */
-    public BotInterpretThread(ChatBot bot, Socket socket, String botName) {
+    public BotInterpretThread(ChatBot bot, Socket socket, String botName, String filePath, ReplyMode replyMode) {
         this.chatBot = bot;
         this.socket = socket;
         this.botName = botName;
-        this.filePath = "src/replies.txt";
+        this.filePath = filePath;
+        this.replyMode = replyMode;
 
         try {
             //Attempt to open the streams for input and output
             InputStream inputStream = socket.getInputStream();
-            bufferedReader = new BufferedReader(new InputStreamReader(inputStream));
             OutputStream outputStream = socket.getOutputStream();
-            printWriter = new PrintWriter(outputStream, true);
+            //No autoflush; replies are flushed once there are no more requests waiting to be answered
+            if (bot.getWireProtocol() == WireProtocol.FRAMED) {
+                frameInput = new DataInputStream(new BufferedInputStream(inputStream));
+                frameOutput = new DataOutputStream(new BufferedOutputStream(outputStream));
+            } else {
+                bufferedReader = new BufferedReader(new InputStreamReader(inputStream));
+                printWriter = new PrintWriter(outputStream, false);
+            }
 
-            languageProcessing = new LanguageProcessing(this.filePath);
+            languageProcessing = new LanguageProcessing(this.filePath, this.replyMode);
         } catch (IOException ex) {
             ex.printStackTrace();
         }
     }
 
     /**
-     * Private, static method to parse a message string to obtain the actual message sent
+     * Static method to parse a message string to obtain the actual message sent
      * @param message: String value of raw message from server
      * @return message which was sent originally by the client sender
      */
-    private static String getMessageFromString(String message) {
+    protected static String getMessageFromString(String message) {
         //Initial message string will be in the form "[name]: message"
         try {
             int stopIndexName = message.indexOf("]");
             int startIndexMessage = stopIndexName+3;
-            int stopIndexMessage = message.length()-1;
+            int stopIndexMessage = message.length();
             message = message.substring(startIndexMessage, stopIndexMessage);
             return message;
         } catch (IndexOutOfBoundsException e) {
@@ -57,11 +70,11 @@ public class BotInterpretThread implements Runnable {
     }
 
     /**
-     * Private, static method to parse a message string to obtain the username of the client
+     * Static method to parse a message string to obtain the username of the client
      * @param message: String value of raw message from the server
      * @return client username String value
      */
-    private static String getUsernameFromString(String message) {
+    protected static String getUsernameFromString(String message) {
         try {
             int stopIndexName = message.indexOf("]");
             String username = message.substring(1,stopIndexName);
@@ -77,10 +90,15 @@ public class BotInterpretThread implements Runnable {
      */
     @Override
     public void run() {
+        if (this.frameOutput != null) {
+            runFramed();
+            return;
+        }
         try {
             //Send the bot name to the server to be assigned as a client (on the pipelined channel to the server
             //via the printWriter)
             printWriter.println(this.botName);
+            printWriter.flush();
 
             //Indefinite while loop, runs while the bot has a connection to the server
             while (this.chatBot.isConnected()) {
@@ -90,6 +108,10 @@ public class BotInterpretThread implements Runnable {
                 if (response == null) {
                     break;
 
+                //Answer the server's heartbeat, so that a quiet bot is not taken for a dead connection
+                } else if (response.equals(ChatConnection.PING)) {
+                    printWriter.println(ChatConnection.PONG);
+
                 //If the response from the client contains the bot addressing string 'HEY_BOT!', a reply is generated and sent
                 } else if (response.contains("HEY_BOT!")) {
 
@@ -97,12 +119,17 @@ public class BotInterpretThread implements Runnable {
                     String parsedMessage = getMessageFromString(response);
                     String username = getUsernameFromString(response);
 
-                    //Automated reply is generated using the generateReply() method from the instantiated languageProcessing object
-                    String automatedReply = languageProcessing.generateReply();
+                    //Automated reply is generated from the client's message using the instantiated languageProcessing object
+                    String automatedReply = languageProcessing.generateReply(parsedMessage);
 
                     //The bot makes sure to address the client who addressed the bot with and '@' and their name (i.e. @John)
                     printWriter.println("@"+username+" "+automatedReply);
                 }
+
+                //Flush the batched replies in one write once every request already received has been answered
+                if (!bufferedReader.ready()) {
+                    printWriter.flush();
+                }
             }
             //Close the socket
             this.socket.close();
@@ -111,4 +138,39 @@ public class BotInterpretThread implements Runnable {
             ex.printStackTrace();
         }
     }
+
+    /**
+     * Method to run the bot over the framed protocol. Each request carries the asking member's id and
+     * their message, so the reply is sent back against that id with nothing to parse
+     */
+    private void runFramed() {
+        try {
+            //Handshake, then the bot name in a JOIN frame
+            this.frameOutput.write((Frame.HANDSHAKE+"\n").getBytes(StandardCharsets.UTF_8));
+            this.frameOutput.write(new Frame(FrameType.JOIN, 0, 0, this.botName).encode());
+            this.frameOutput.flush();
+
+            while (this.chatBot.isConnected()) {
+                Frame request = Frame.read(this.frameInput);
+                if (request == null) {
+                    break;
+                }
+                if (request.getType() == FrameType.PING) {
+                    this.frameOutput.write(new Frame(FrameType.PONG, 0, 0, "").encode());
+                } else if (request.getType() == FrameType.BOT_REQUEST) {
+                    String automatedReply = languageProcessing.generateReply(request.getPayload());
+                    this.frameOutput.write(new Frame(FrameType.BOT_REPLY, request.getMemberId(), 0, String.valueOf(automatedReply)).encode());
+                }
+
+                //Flush the batched replies in one write once every request already received has been answered
+                if (this.frameInput.available() == 0) {
+                    this.frameOutput.flush();
+                }
+            }
+            this.socket.close();
+        } catch (SocketException se) {
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
 }
@@ -0,0 +1,108 @@
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+//Compares the latency of bot replies with the bot hosted inside the server against an external ChatBot
+//connected over loopback; a client asks the bot repeatedly and times each request until the reply is read
+public class BotLatencyBenchmark {
+
+    /**
+     * Static method to measure one bot hosting mode
+     * @param hosting: "in-process" or "external"
+     * @param port: port to start the server on
+     * @param requests: number of requests to time
+     * @param repliesPath: relative filepath of the replies file
+     * @param out: PrintStream to report the results to
+     * @throws Exception: if the run fails
+     */
+    private static void measure(String hosting, int port, int requests, String repliesPath, PrintStream out) throws Exception {
+        ChatServer chatServer = new ChatServer(port);
+        Thread serverThread = new Thread(chatServer::begin);
+        serverThread.setDaemon(true);
+        serverThread.start();
+        Thread.sleep(200);
+
+        if (hosting.equals("in-process")) {
+            chatServer.hostBots(1, repliesPath, ReplyMode.RANDOM);
+        } else {
+            new ChatBot("127.0.0.1", port, repliesPath, ReplyMode.RANDOM, WireProtocol.LINE).begin();
+        }
+        while (chatServer.getBotPool().size() < 1) {
+            Thread.sleep(1);
+        }
+
+        try (Socket socket = new Socket("127.0.0.1", port)) {
+            socket.setTcpNoDelay(true);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            PrintWriter writer = new PrintWriter(socket.getOutputStream(), true);
+            writer.println("asker");
+
+            //Warm up both paths before timing
+            for (int i = 0; i < requests / 10; i++) {
+                ask(reader, writer);
+            }
+            long[] latencies = new long[requests];
+            for (int i = 0; i < requests; i++) {
+                long start = System.nanoTime();
+                ask(reader, writer);
+                latencies[i] = System.nanoTime()-start;
+            }
+            Arrays.sort(latencies);
+
+            out.printf("%-10s requests=%-6d reply p50=%8.3f ms  p99=%8.3f ms  max=%8.3f ms%n",
+                    hosting, requests, latencies[requests/2] / 1e6,
+                    latencies[Math.min(requests-1, (int) (requests*0.99))] / 1e6, latencies[requests-1] / 1e6);
+        }
+    }
+
+    /**
+     * Static method to send one request to the bot and wait for its reply
+     * @param reader: BufferedReader of the client's socket
+     * @param writer: PrintWriter of the client's socket
+     * @throws Exception: if the connection closes before the reply arrives
+     */
+    private static void ask(BufferedReader reader, PrintWriter writer) throws Exception {
+        writer.println("HEY_BOT! how are you?");
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.contains("]: @asker ")) {
+                return;
+            }
+        }
+        throw new IllegalStateException("Connection closed while waiting for the bot");
+    }
+
+    /**
+     * Main method to run the comparison
+     * @param args: '-requests', '-port' and '-replies' (the replies file used by both bots)
+     */
+    public static void main(String[] args) throws Exception {
+        int requests = 5000;
+        int port = 16501;
+        String repliesPath = "src/replies.txt";
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-requests")) { requests = Integer.parseInt(args[i+1]); }
+            if (args[i].equals("-port")) { port = Integer.parseInt(args[i+1]); }
+            if (args[i].equals("-replies")) { repliesPath = args[i+1]; }
+        }
+
+        //Silence the server's console output so only the results are printed,
+        //and give the server console an input which never ends
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        PipedOutputStream consoleInput = new PipedOutputStream();
+        System.setIn(new PipedInputStream(consoleInput));
+
+        measure("external", port, requests, repliesPath, out);
+        measure("in-process", port+1, requests, repliesPath, out);
+        System.exit(0);
+    }
+}
@@ -0,0 +1,250 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+//Pool of the bot connections attached to the server. HEY_BOT! requests are spread across the bots
+//by least outstanding requests, and a bot which dies or stops answering is removed with its requests re-sent elsewhere
+public class BotPool {
+
+    //A request waiting for a bot's reply
+    private static class BotRequest {
+        private final ChatConnection requester;
+        private final String question;
+        private final long sentAtMillis;
+        private final long sentAtNanos;
+        private final int attempts;
+
+        private BotRequest(ChatConnection requester, String question, int attempts) {
+            this.requester = requester;
+            this.question = question;
+            this.sentAtMillis = System.currentTimeMillis();
+            this.sentAtNanos = System.nanoTime();
+            this.attempts = attempts;
+        }
+    }
+
+    //The requests a bot has not yet answered, oldest first. Adding a request and closing the queue when the bot is
+    //removed are atomic with each other, so a request is either in the queue when it closes, and re-sent with the
+    //rest, or refused, and sent to another bot; it is never left behind in the queue of a bot which has gone
+    private static class BotQueue {
+        private final ConcurrentLinkedDeque<BotRequest> requests = new ConcurrentLinkedDeque<BotRequest>();
+        private boolean closed;
+
+        private synchronized boolean add(BotRequest request) {
+            if (this.closed) {
+                return false;
+            }
+            this.requests.add(request);
+            return true;
+        }
+
+        private synchronized List<BotRequest> close() {
+            this.closed = true;
+            return new ArrayList<BotRequest>(this.requests);
+        }
+    }
+
+    //A request is given up on after being sent to this many bots
+    private static final int MAX_ATTEMPTS = 3;
+
+    //Private object variables; the queue of requests of each bot
+    private ConcurrentHashMap<ChatConnection, BotQueue> outstandingRequests;
+    private ChatServer chatServer;
+    private long replyTimeoutMillis;
+    private ScheduledExecutorService healthCheck;
+
+    /**
+     * Constructor method to create the empty pool; its health check only runs once start() is called
+     * @param chatServer: ChatServer object the bots are connected to
+     * @param replyTimeoutMillis: a bot which leaves a request unanswered for this long is removed from the pool
+     */
+    public BotPool(ChatServer chatServer, long replyTimeoutMillis) {
+        this.chatServer = chatServer;
+        this.replyTimeoutMillis = replyTimeoutMillis;
+        this.outstandingRequests = new ConcurrentHashMap<ChatConnection, BotQueue>();
+    }
+
+    /**
+     * Method to start the health check, which removes the bots leaving a request unanswered for too long,
+     * when the server begins
+     */
+    public synchronized void start() {
+        if (this.healthCheck != null) {
+            return;
+        }
+        this.healthCheck = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "bot-pool-health");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.healthCheck.scheduleWithFixedDelay(this::removeUnresponsiveBots, 1, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Method to add a bot connection to the pool
+     * @param bot: ChatConnection object of the bot
+     */
+    public void addBot(ChatConnection bot) {
+        this.outstandingRequests.putIfAbsent(bot, new BotQueue());
+    }
+
+    /**
+     * Method to remove a bot from the pool, re-sending any requests it had not answered to the other bots
+     * @param bot: ChatConnection object of the bot
+     */
+    public void removeBot(ChatConnection bot) {
+        BotQueue queue = this.outstandingRequests.remove(bot);
+        if (queue == null) {
+            return;
+        }
+        for (BotRequest request : queue.close()) {
+            if (request.attempts >= MAX_ATTEMPTS || !dispatch(request.requester, request.question, request.attempts+1)) {
+                request.requester.displayMessage("##-- The bot could not answer your message, please ask again --##");
+            }
+        }
+    }
+
+    /**
+     * Mutator method to change how long a bot may leave a request unanswered before it is removed
+     * @param replyTimeoutMillis: timeout in milliseconds
+     */
+    public void setReplyTimeoutMillis(long replyTimeoutMillis) {
+        this.replyTimeoutMillis = replyTimeoutMillis;
+    }
+
+    /**
+     * Accessor method to obtain the number of bots in the pool
+     * @return bot count
+     */
+    public int size() {
+        return this.outstandingRequests.size();
+    }
+
+    /**
+     * Accessor method to obtain the number of requests the bots in the pool have not yet answered
+     * @return outstanding request count
+     */
+    public int getOutstandingCount() {
+        int count = 0;
+        for (BotQueue queue : this.outstandingRequests.values()) {
+            count += queue.requests.size();
+        }
+        return count;
+    }
+
+    /**
+     * Method to send a request to the bot with the fewest outstanding requests
+     * @param requester: ChatConnection object of the member asking
+     * @param question: String message the member sent ("HEY_BOT! ...")
+     * @return true if a bot was available to take the request
+     */
+    public boolean dispatch(ChatConnection requester, String question) {
+        return dispatch(requester, question, 1);
+    }
+
+    /**
+     * Method to send a request to the least loaded bot
+     * @param requester: ChatConnection object of the member asking
+     * @param question: String message the member sent
+     * @param attempts: number of bots the request has now been sent to
+     * @return true if a bot was available to take the request
+     */
+    private boolean dispatch(ChatConnection requester, String question, int attempts) {
+        BotRequest botRequest = new BotRequest(requester, question, attempts);
+        ChatConnection chosenBot = null;
+        BotQueue chosenQueue = null;
+        //A queue closed since it was chosen belongs to a bot which has just been removed, so another bot is chosen
+        while (chosenQueue == null || !chosenQueue.add(botRequest)) {
+            chosenBot = null;
+            chosenQueue = null;
+            for (Map.Entry<ChatConnection, BotQueue> entry : this.outstandingRequests.entrySet()) {
+                if (chosenQueue == null || entry.getValue().requests.size() < chosenQueue.requests.size()) {
+                    chosenBot = entry.getKey();
+                    chosenQueue = entry.getValue();
+                }
+            }
+            if (chosenBot == null) {
+                return false;
+            }
+        }
+
+        //Line protocol bots read "[username]: HEY_BOT! ...", framed bots get the member's id in the header
+        chosenBot.send(EncodedMessage.of("["+requester.getUsername()+"]: "+question,
+                FrameType.BOT_REQUEST, requester.getConnectionId(), 0, question));
+        return true;
+    }
+
+    /**
+     * Method called when a bot replies to a member, marking that member's oldest request to the bot as answered
+     * @param bot: ChatConnection object of the bot
+     * @param username: String username the reply was addressed to
+     */
+    public void replyReceived(ChatConnection bot, String username) {
+        removeOldestRequest(bot, request -> username.equals(request.requester.getUsername()));
+    }
+
+    /**
+     * Method called when a framed bot replies to a member, marking that member's oldest request to the bot as answered
+     * @param bot: ChatConnection object of the bot
+     * @param memberId: id of the member the reply was addressed to
+     */
+    public void replyReceived(ChatConnection bot, int memberId) {
+        removeOldestRequest(bot, request -> request.requester.getConnectionId() == memberId);
+    }
+
+    /**
+     * Subroutine to remove the oldest of a bot's outstanding requests which matches a condition
+     * @param bot: ChatConnection object of the bot
+     * @param answered: Predicate matching the request which was answered
+     */
+    private void removeOldestRequest(ChatConnection bot, Predicate<BotRequest> answered) {
+        BotQueue queue = this.outstandingRequests.get(bot);
+        if (queue == null) {
+            return;
+        }
+        Iterator<BotRequest> iterator = queue.requests.iterator();
+        while (iterator.hasNext()) {
+            BotRequest request = iterator.next();
+            if (answered.test(request)) {
+                iterator.remove();
+                this.chatServer.getMetrics().botReplied(System.nanoTime() - request.sentAtNanos);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Subroutine run by the health check, removing every bot whose oldest request has gone unanswered for too long
+     */
+    private void removeUnresponsiveBots() {
+        long now = System.currentTimeMillis();
+        ArrayList<ChatConnection> deadBots = new ArrayList<ChatConnection>();
+        for (Map.Entry<ChatConnection, BotQueue> entry : this.outstandingRequests.entrySet()) {
+            BotRequest oldest = entry.getValue().requests.peek();
+            if (oldest != null && now - oldest.sentAtMillis > this.replyTimeoutMillis) {
+                deadBots.add(entry.getKey());
+            }
+        }
+        for (ChatConnection bot : deadBots) {
+            this.chatServer.displayMessageToServer("##-- "+bot.getUsername()+" stopped answering, removed from the bot pool --##");
+            removeBot(bot);
+            bot.forceLeaveUser();
+        }
+    }
+
+    /**
+     * Method to stop the health check, when the server shuts down
+     */
+    public synchronized void close() {
+        if (this.healthCheck != null) {
+            this.healthCheck.shutdownNow();
+        }
+    }
+}
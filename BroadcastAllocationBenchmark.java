@@ -0,0 +1,93 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+
+//Measures the bytes allocated per broadcast for several room sizes, comparing the previous path
+//(each recipient encoding the String through its own autoflushing PrintWriter) with the encode-once path
+public class BroadcastAllocationBenchmark {
+
+    /**
+     * Static method to obtain the bytes allocated so far by the current thread
+     * @return allocated byte count
+     */
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Static method to measure the previous path: one PrintWriter per recipient, each encoding the message itself
+     * @param members: number of recipients
+     * @param broadcasts: number of broadcasts to measure
+     * @return bytes allocated per broadcast
+     */
+    private static long measurePerRecipientEncoding(int members, int broadcasts) {
+        PrintWriter[] writers = new PrintWriter[members];
+        for (int i = 0; i < members; i++) {
+            writers[i] = new PrintWriter(OutputStream.nullOutputStream(), true);
+        }
+        String message = "[benchmark_user]: a typical line of chat sent to the whole room";
+
+        for (int warmup = 0; warmup < broadcasts; warmup++) {
+            for (PrintWriter writer : writers) {
+                writer.println(message);
+            }
+        }
+        long before = allocatedBytes();
+        for (int round = 0; round < broadcasts; round++) {
+            for (PrintWriter writer : writers) {
+                writer.println(message);
+            }
+        }
+        return (allocatedBytes()-before) / broadcasts;
+    }
+
+    /**
+     * Static method to measure the encode-once path through ChatServer.broadcastToAllMembers
+     * @param members: number of recipients
+     * @param broadcasts: number of broadcasts to measure
+     * @return bytes allocated per broadcast
+     * @throws IOException: if a sink fails to write
+     */
+    private static long measureEncodeOnce(int members, int broadcasts) throws IOException {
+        ChatServer chatServer = new ChatServer(0);
+        SinkConnection[] sinks = new SinkConnection[members];
+        for (int i = 0; i < members; i++) {
+            sinks[i] = new SinkConnection(chatServer);
+            chatServer.addConnection(sinks[i]);
+        }
+        String message = "[benchmark_user]: a typical line of chat sent to the whole room";
+
+        for (int warmup = 0; warmup < broadcasts; warmup++) {
+            chatServer.broadcastToAllMembers(message);
+            for (SinkConnection sink : sinks) {
+                sink.drain();
+            }
+        }
+        long before = allocatedBytes();
+        for (int round = 0; round < broadcasts; round++) {
+            chatServer.broadcastToAllMembers(message);
+            for (SinkConnection sink : sinks) {
+                sink.drain();
+            }
+        }
+        return (allocatedBytes()-before) / broadcasts;
+    }
+
+    /**
+     * Main method to run the measurement for rooms of 100, 1,000 and 10,000 members
+     * @param args: None
+     */
+    public static void main(String[] args) throws IOException {
+        int[] roomSizes = {100, 1000, 10000};
+        for (int members : roomSizes) {
+            int broadcasts = Math.max(20, 200000 / members);
+            long perRecipient = measurePerRecipientEncoding(members, broadcasts);
+            long encodeOnce = measureEncodeOnce(members, broadcasts);
+            System.out.printf("members=%-6d per-recipient encoding=%10d B/broadcast  encode-once=%8d B/broadcast%n",
+                    members, perRecipient, encodeOnce);
+        }
+        System.exit(0);
+    }
+}
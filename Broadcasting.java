@@ -5,9 +5,11 @@
 interface Broadcasting {
     void broadcastToAllMembers(String message);
 
-    void broadcastToAllOtherMembers(String message, ClientThread clientThread);
+    void broadcastToAllOtherMembers(String message, ChatConnection clientThread);
 
-    void broadcastToParticularMember(String message, ClientThread clientThread);
+    void broadcastToParticularMember(String message, ChatConnection clientThread);
 
-    void broadcastToBot(String message);
+    boolean broadcastToBot(String message, ChatConnection clientThread);
+
+    void broadcastToRoom(String message, String roomName, ChatConnection clientThread);
 }
\ No newline at end of file
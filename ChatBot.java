@@ -8,16 +8,27 @@ public class ChatBot {
     private String userName;
     private Socket socket;
     private boolean connected;
+    private String repliesPath;
+    private ReplyMode replyMode;
+    private WireProtocol wireProtocol;
 
     /**
      * Constructor method to create a bot object; similar to how a client works
      * However the inner workings differ
      * @param address: IP address string
      * @param port: port integer
+     * @param repliesPath: relative filepath of the replies file
+     * @param replyMode: ReplyMode deciding how replies are picked
+     * @param wireProtocol: WireProtocol to speak to the server
      */
-    public ChatBot(String address, int port) {
+    public ChatBot(String address, int port, String repliesPath, ReplyMode replyMode, WireProtocol wireProtocol) {
+        this.repliesPath = repliesPath;
+        this.replyMode = replyMode;
+        this.wireProtocol = wireProtocol;
         try {
             this.socket = new Socket(address, port);
+            //Replies are flushed in batches by the bot, so Nagle's algorithm only adds delay
+            this.socket.setTcpNoDelay(true);
             this.connected = true;
 
             //Set username to arbitrary name, since the bot is automated
@@ -44,6 +55,14 @@ public class ChatBot {
         return this.userName;
     }
 
+    /**
+     * Accessor method to obtain the wire protocol spoken to the server
+     * @return WireProtocol of the bot
+     */
+    public WireProtocol getWireProtocol() {
+        return this.wireProtocol;
+    }
+
     /**
      * method to begin the process, by defining the threads
      * (Since the bot is completely automatic, it requires only a single thread for interpretation and writing
@@ -52,7 +71,7 @@ public class ChatBot {
     public void begin() {
         //Instantiate the interpreting and writing threads
         //while passing the current object (this), and assigned socket as parameters
-        BotInterpretThread interpreting = new BotInterpretThread(this, this.socket, this.userName);
+        BotInterpretThread interpreting = new BotInterpretThread(this, this.socket, this.userName, this.repliesPath, this.replyMode);
 
         Thread botInterpretThread = new Thread(interpreting);
 
@@ -63,18 +82,26 @@ public class ChatBot {
 
     /**
      * Main method for the ChatBot class; command line parameters are available
-     * @param args: command line arguments for IP address and port number specified using 'cca' and 'ccp' respectively
+     * @param args: command line arguments for IP address and port number specified using 'cca' and 'ccp' respectively,
+     *            the replies file using 'replies', how replies are picked using 'replyMode' (random or keyword),
+     *            and the wire protocol using 'protocol' (line or framed)
      */
     public static void main(String[] args) {
         String address = "127.0.0.1";
         int port = 14001;
+        String repliesPath = "src/replies.txt";
+        ReplyMode replyMode = ReplyMode.RANDOM;
+        WireProtocol wireProtocol = WireProtocol.LINE;
 
         for (int i = 0; i < args.length; i++) {
             if (args[i].equals("-ccp")) { port = Integer.parseInt(args[i+1]); }
             if (args[i].equals("-cca")) { address = args[i+1]; }
+            if (args[i].equals("-replies")) { repliesPath = args[i+1]; }
+            if (args[i].equals("-replyMode")) { replyMode = ReplyMode.fromString(args[i+1]); }
+            if (args[i].equals("-protocol")) { wireProtocol = WireProtocol.fromString(args[i+1]); }
         }
 
-        ChatBot bot = new ChatBot(address, port);
+        ChatBot bot = new ChatBot(address, port, repliesPath, replyMode, wireProtocol);
         bot.begin();
     }
 }
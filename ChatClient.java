@@ -7,13 +7,20 @@ public class ChatClient {
     private Socket socket;
     private String userName;
     private boolean connected;
+    private WireProtocol wireProtocol;
+    private byte[] compressionDictionary;
+    private WriteThread writeThread;
 
     /**
      * Constructor method to 'begin' the chatClient, assigned socket via port and address
      * @param address: String value of IP address
      * @param port: Integer value of port
+     * @param wireProtocol: WireProtocol to speak to the server
+     * @param compressionDictionary: preset dictionary to ask the server to compress with, or null for no compression
      */
-    public ChatClient(String address, int port) {
+    public ChatClient(String address, int port, WireProtocol wireProtocol, byte[] compressionDictionary) {
+        this.wireProtocol = wireProtocol;
+        this.compressionDictionary = compressionDictionary;
         try {
             this.socket = new Socket(address, port);
             this.connected = true;
@@ -31,6 +38,22 @@ public class ChatClient {
         return this.connected;
     }
 
+    /**
+     * Accessor method to obtain the wire protocol spoken to the server
+     * @return WireProtocol of the client
+     */
+    public WireProtocol getWireProtocol() {
+        return this.wireProtocol;
+    }
+
+    /**
+     * Accessor method to obtain the dictionary the client asks the server to compress with
+     * @return byte array dictionary, or null if the client does not use compression
+     */
+    public byte[] getCompressionDictionary() {
+        return this.compressionDictionary;
+    }
+
     /**
      * Mutator method to set the value of the client's username
      * @param username: String username value
@@ -47,6 +70,13 @@ public class ChatClient {
         return userName;
     }
 
+    /**
+     * Method to answer a ping from the server, which checks that the client is still there
+     */
+    protected void answerPing() {
+        this.writeThread.sendPong();
+    }
+
     /**
      * Method to begin the chat client by instantiating two threads: one for interpreting the input,
      * and the other for reading the input
@@ -56,6 +86,7 @@ public class ChatClient {
         //while passing the current object (this), and assigned socket as parameters
         InterpretThread interpreting = new InterpretThread(this, this.socket);
         WriteThread writing = new WriteThread(this, this.socket);
+        this.writeThread = writing;
         Thread interpretThread = new Thread(interpreting);
         Thread writingThread = new Thread(writing);
 
@@ -67,7 +98,9 @@ public class ChatClient {
     /**
      * Main method to start all the processes when this class is called.
      * Default address and port are set, if no command line arguments to modify them are specified
-     * @param args: Two command line arguments possible are: address and port
+     * @param args: command line arguments for the address, port and protocol ('protocol', line or framed),
+     *            and for compression of what the server sends ('compression deflate'), using a dictionary seeded
+     *            from the replies file given by 'replies'
      */
     public static void main(String[] args) {
 
@@ -75,14 +108,21 @@ public class ChatClient {
         //These values will be set if no parameters are passed into the args
         String address = "127.0.0.1";
         int port = 14001;
+        WireProtocol wireProtocol = WireProtocol.LINE;
+        boolean compressed = false;
+        String repliesPath = "src/replies.txt";
 
         //For loop to iterate through the args string array and obtain the values placed for 'cca' and 'cca'
         for (int i = 0; i < args.length; i++) {
             if (args[i].equals("-ccp")) { port = Integer.parseInt(args[i+1]); System.out.println("Overriding ccp with:"+String.valueOf(port) ); }
             if (args[i].equals("-cca")) { address = args[i+1]; System.out.println("Overriding cca with:"+address); }
+            if (args[i].equals("-protocol")) { wireProtocol = WireProtocol.fromString(args[i+1]); }
+            if (args[i].equals("-compression")) { compressed = args[i+1].equalsIgnoreCase("deflate"); }
+            if (args[i].equals("-replies")) { repliesPath = args[i+1]; }
         }
 
-        ChatClient echoClient = new ChatClient(address, port);
+        ChatClient echoClient = new ChatClient(address, port, wireProtocol,
+                compressed ? CompressionDictionary.withReplies(repliesPath) : null);
         echoClient.begin();
     }
 }
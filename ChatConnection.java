@@ -0,0 +1,642 @@
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+//Abstract class holding the chat logic shared by every connection to the server,
+//regardless of which server engine (thread-per-connection or NIO selector) is serving its socket
+public abstract class ChatConnection {
+
+    //Heartbeat lines: either end may ping, and the other answers with a pong (framed clients use PING and PONG frames)
+    public static final String PING = "__PING";
+    public static final String PONG = "__PONG";
+
+    //Protected object variables shared by every kind of connection
+    protected ChatServer chatServer;
+    protected boolean connected;
+    protected String username;
+    protected int connectionId;
+    protected ConnectionClass connectionClass;
+
+    //Protocol the client chose in its handshake; nothing is written to the client until it is known
+    protected WireProtocol wireProtocol;
+
+    //Compressor for the client's outgoing bytes, if it asked for compression in its handshake (otherwise null)
+    protected PacketDeflater packetDeflater;
+
+    //Rooms the client is in, and the room its messages are currently sent to
+    protected Set<String> joinedRooms;
+    protected String activeRoom;
+
+    //Bounded queue of messages waiting to be written to the client
+    protected OutboundQueue outboundQueue;
+
+    //The connection's rate limit buckets, as the times at which they will be full again (see RateLimiter),
+    //and whether the client has been told it is over its limit since it last sent within it
+    protected long messageBucketFullAt;
+    protected long byteBucketFullAt;
+    protected boolean rateLimitNoticeSent;
+
+    //When the connection last read anything (on the IdleReaper's clock), and its pending check on the reaper's wheel
+    protected volatile long lastReadNanos;
+    protected volatile TimingWheel.Timeout idleTimeout;
+
+    //Set once the member has left the chat, so that leaving on '__QUIT' and being reaped cannot both announce it
+    private final AtomicBoolean leftChat;
+
+    /**
+     * Constructor method to set the chatServer object the connection belongs to
+     * @param server: ChatServer object passed as the parameter
+     */
+    public ChatConnection(ChatServer server) {
+        this.chatServer = server;
+        this.outboundQueue = server.createOutboundQueue();
+        this.connectionClass = ConnectionClass.USER;
+        this.wireProtocol = WireProtocol.LINE;
+        this.joinedRooms = ConcurrentHashMap.newKeySet();
+        this.activeRoom = RoomDirectory.LOBBY;
+        //Long ago, so both buckets start full whatever the clock reads
+        this.messageBucketFullAt = Long.MIN_VALUE / 2;
+        this.byteBucketFullAt = Long.MIN_VALUE / 2;
+        this.leftChat = new AtomicBoolean();
+
+        //Connection flag set to true
+        this.connected = true;
+    }
+
+    /**
+     * Subroutine method to display a message passed as the parameter.
+     * The message is encoded and queued here, it is written to the client by the connection's own writer
+     * @param message: String message to be displayed
+     */
+    public void displayMessage(String message) {
+        send(EncodedMessage.of(message));
+    }
+
+    /**
+     * Method to queue an already encoded message, which may be shared with other recipients
+     * @param message: EncodedMessage to be written to the client
+     */
+    public void send(EncodedMessage message) {
+        if (!this.connected) {
+            return;
+        }
+        if (!this.outboundQueue.offer(message)) {
+            //The queue is full under the DISCONNECT policy; the client is disconnected away from
+            //the broadcasting thread, which may be iterating over the server's connections
+            this.connected = false;
+            this.chatServer.getConnectionExecutor().execute(this::forceLeaveUser);
+            return;
+        }
+        messageQueued();
+    }
+
+    /**
+     * Hook method called after a message has been queued, for writers which need waking up
+     */
+    protected void messageQueued() {
+    }
+
+    /**
+     * Accessor method to obtain the outbound queue of the connection
+     * @return OutboundQueue object
+     */
+    public OutboundQueue getOutboundQueue() {
+        return this.outboundQueue;
+    }
+
+    /**
+     * Method to force leave the user, closing the underlying connection
+     */
+    public abstract void forceLeaveUser();
+
+    /**
+     * Accessor method to obtain the username of the connected client
+     * @return String username value (null until the client has sent it)
+     */
+    public String getUsername() {
+        return this.username;
+    }
+
+    /**
+     * Mutator method to set the username, called when the member is renamed to keep usernames unique across the cluster
+     * @param username: String username value
+     */
+    protected void setUsername(String username) {
+        this.username = username;
+    }
+
+    /**
+     * Accessor method to obtain the id the server assigned to the connection when it was accepted
+     * @return integer connection id
+     */
+    public int getConnectionId() {
+        return this.connectionId;
+    }
+
+    /**
+     * Mutator method to set the connection id, called by the member registry
+     * @param connectionId: integer connection id
+     */
+    protected void setConnectionId(int connectionId) {
+        this.connectionId = connectionId;
+    }
+
+    /**
+     * Accessor method to obtain the kind of connection (user, bot or admin)
+     * @return ConnectionClass of the connection
+     */
+    public ConnectionClass getConnectionClass() {
+        return this.connectionClass;
+    }
+
+    /**
+     * Accessor method to obtain the wire protocol of the connection
+     * @return WireProtocol of the connection
+     */
+    public WireProtocol getWireProtocol() {
+        return this.wireProtocol;
+    }
+
+    /**
+     * Accessor method to obtain the compressor of the connection
+     * @return PacketDeflater object, or null if the connection is not compressed
+     */
+    public PacketDeflater getPacketDeflater() {
+        return this.packetDeflater;
+    }
+
+    /**
+     * Boolean method which validates whether or not the client user is leaving the chat
+     * by checking the input of the user (should enter __QUIT to leave the chat)
+     * @param clientInput: String value of client input
+     * @return true/false if they are leaving or not
+     */
+    public boolean isLeavingChat(String clientInput) {
+        if (clientInput.equals("__QUIT")) {
+            return true;
+        } return false;
+    }
+
+    /**
+     * Boolean method to validate if a client message sent is directed exclusively to the bot or not
+     * (Clients should address the bot with 'HEY_BOT!' if they wish to converse with the bot)
+     * @param input: String value of input
+     * @return true/false if the message sent is indeed directed to the bot or not
+     */
+    public boolean messageDirectedToBot(String input) {
+        if (input.startsWith("HEY_BOT!")) {
+            return true;
+        } return false;
+    }
+
+    /**
+     * Boolean method to validate if the message send is from the bot or not
+     * @param message: String value of the message
+     * @return true/false if from bot or not
+     */
+    public boolean messageFromBot(String message) {
+        if (message.contains("@"+this.username)) {
+            return true;
+        } return false;
+    }
+
+    /**
+     * Method to ask the client whether it is still there; any live client answers with a pong
+     */
+    public void sendPing() {
+        send(EncodedMessage.of(PING, FrameType.PING, 0, 0, ""));
+    }
+
+    /**
+     * Method to remove the member from the chat, telling the other members it has left
+     * (the same as leaving with '__QUIT'); only the first call has any effect
+     */
+    protected void leaveChat() {
+        if (!this.leftChat.compareAndSet(false, true)) {
+            return;
+        }
+        //Broadcast leaving message to all other users and remove user from chat
+        String leavingMessage = "##-- "+this.username+" has left the chat --##";
+        this.chatServer.broadcastToAllOtherMembers(leavingMessage, this);
+        leaveAllRooms();
+        this.chatServer.removeMemberFromChat(this);
+    }
+
+    /**
+     * Method called by the IdleReaper once the connection has been silent for too long: a member leaves the chat
+     * exactly as if it had sent '__QUIT', then the connection is closed
+     */
+    public void reap() {
+        if (this.username != null && this.connectionClass != ConnectionClass.ADMIN) {
+            leaveChat();
+        }
+        forceLeaveUser();
+    }
+
+    /**
+     * Method called once the connection has ended for any reason, to remove it from the server
+     */
+    protected void connectionClosed() {
+        this.connected = false;
+        this.chatServer.getIdleReaper().untrack(this);
+        if (this.connectionClass == ConnectionClass.BOT) {
+            //Any requests the bot had not answered are re-sent to the rest of the pool
+            this.chatServer.getBotPool().removeBot(this);
+        } else if (this.connectionClass == ConnectionClass.ADMIN || this.username == null) {
+            //Including a link this node dialled which closed before the peer's handshake was read, so it is dialled again
+            this.chatServer.getFederation().peerDisconnected(this);
+        }
+        leaveAllRooms();
+        this.chatServer.removeConnection(this);
+    }
+
+    /**
+     * Boolean method to check if the client has typed a room command ('/join #room' or '/leave #room')
+     * @param input: String value of input
+     * @return true/false if the input is a room command
+     */
+    public boolean isRoomCommand(String input) {
+        if (input.startsWith("/join ") || input.startsWith("/leave ")) {
+            return true;
+        } return false;
+    }
+
+    /**
+     * Method to carry out a room command; joining a room also makes it the room the client's messages go to
+     * @param input: String room command typed by the client
+     */
+    protected void handleRoomCommand(String input) {
+        String roomName = RoomDirectory.normaliseName(input.substring(input.indexOf(' ')+1));
+        if (input.startsWith("/join ")) {
+            joinRoom(roomName);
+            this.activeRoom = roomName;
+            displayMessage("##-- You are now chatting in "+roomName+" --##");
+        } else if (roomName.equals(RoomDirectory.LOBBY)) {
+            displayMessage("##-- You cannot leave "+RoomDirectory.LOBBY+" --##");
+        } else if (leaveRoom(roomName)) {
+            if (roomName.equals(this.activeRoom)) {
+                this.activeRoom = RoomDirectory.LOBBY;
+            }
+            displayMessage("##-- You left "+roomName+", now chatting in "+this.activeRoom+" --##");
+        }
+    }
+
+    /**
+     * Method to add the client to a room, replaying the room's latest messages to them and letting its other members know
+     * @param roomName: String normalised room name
+     */
+    protected void joinRoom(String roomName) {
+        if (this.joinedRooms.add(roomName)) {
+            ChatRoom room = this.chatServer.getRoomDirectory().join(this, roomName);
+            replayHistory(room);
+            if (!roomName.equals(RoomDirectory.LOBBY)) {
+                this.chatServer.broadcastToRoom("##-- "+this.username+" has joined "+roomName+" --##", roomName, this);
+            }
+        }
+    }
+
+    /**
+     * Subroutine to queue a room's latest messages for the client, joined into one batch with their heading so that
+     * they take a single place in the queue and are sent in a single write.
+     * The client is already a member, so a message sent meanwhile may arrive twice but is never missed
+     * @param room: ChatRoom object the client joined
+     */
+    private void replayHistory(ChatRoom room) {
+        EncodedMessage[] latestMessages = room.getHistory().latest(this.chatServer.getHistoryReplayLines());
+        if (latestMessages.length == 0) {
+            return;
+        }
+        EncodedMessage[] replay = new EncodedMessage[latestMessages.length + 1];
+        replay[0] = EncodedMessage.of("##-- Recent messages in "+room.getName()+": --##");
+        System.arraycopy(latestMessages, 0, replay, 1, latestMessages.length);
+        send(EncodedMessage.batch(replay));
+    }
+
+    /**
+     * Method to remove the client from a room, letting the room's other members know
+     * @param roomName: String normalised room name
+     * @return true if the client was in the room
+     */
+    protected boolean leaveRoom(String roomName) {
+        if (!this.joinedRooms.remove(roomName)) {
+            return false;
+        }
+        if (!roomName.equals(RoomDirectory.LOBBY)) {
+            this.chatServer.broadcastToRoom("##-- "+this.username+" has left "+roomName+" --##", roomName, this);
+        }
+        return this.chatServer.getRoomDirectory().leave(this, roomName);
+    }
+
+    /**
+     * Method to remove the client from every room it is in, used when it leaves the chat
+     */
+    protected void leaveAllRooms() {
+        for (String roomName : this.joinedRooms) {
+            this.joinedRooms.remove(roomName);
+            this.chatServer.getRoomDirectory().leave(this, roomName);
+        }
+    }
+
+    /**
+     * Method called once the client has sent its username (the first line on the connection);
+     * adds the member to the chat and notifies everyone else
+     * @param username: String username value sent by the client
+     */
+    protected void joinChat(String username) {
+        //Another server linking to this one; it never becomes a member, and speaks the federation's protocol from now on.
+        //A handshake without the cluster's secret is refused, rather than letting anyone in as a peer
+        if (this.wireProtocol == WireProtocol.LINE && Federation.isHandshake(username)) {
+            if (!this.chatServer.getFederation().authenticate(this, username)) {
+                forceLeaveUser();
+                return;
+            }
+            this.connectionClass = ConnectionClass.ADMIN;
+            this.chatServer.getFederation().peerConnected(this, username);
+            return;
+        }
+
+        //Several bots can join the pool; the registry tells them apart (Chat_Bot, Chat_Bot#7, ...)
+        if (username.startsWith("Chat_Bot")) {
+            this.connectionClass = ConnectionClass.BOT;
+        }
+        this.username = this.chatServer.addNewMemberToChat(this, username);
+
+        //Let the client know if their requested username was already taken
+        if (!this.username.equals(username)) {
+            displayMessage("##-- "+username+" is already in use, you have joined as "+this.username+" --##");
+        }
+
+        //Display to all other members (excluding the user itself), that user of entered username has joined the chat
+        String joiningMessage = "##-- "+this.username+" has joined the chat --##";
+        this.chatServer.broadcastToAllOtherMembers(joiningMessage, this);
+
+        //Every member starts off in the lobby; bots are kept out of rooms, and only receive the bot channel
+        if (this.connectionClass == ConnectionClass.BOT) {
+            this.chatServer.getBotPool().addBot(this);
+        } else {
+            joinRoom(RoomDirectory.LOBBY);
+        }
+    }
+
+    /**
+     * Method to classify a message once, as it arrives, so that it can be routed without further inspection
+     * @param clientMessage: String message read from the client
+     * @return MessageKind of the message
+     */
+    public MessageKind classifyMessage(String clientMessage) {
+        if (isLeavingChat(clientMessage)) {
+            return MessageKind.QUIT;
+        } else if (this.connectionClass == ConnectionClass.BOT) {
+            return MessageKind.BOT_REPLY;
+        } else if (isRoomCommand(clientMessage)) {
+            return MessageKind.ROOM_COMMAND;
+        } else if (messageDirectedToBot(clientMessage)) {
+            return MessageKind.BOT_REQUEST;
+        }
+        return MessageKind.CHAT;
+    }
+
+    /**
+     * Method to handle a single line sent by the client after it has joined
+     * @param clientMessage: String message read from the client
+     * @return true if the connection should keep reading, false if the client has left the chat
+     */
+    protected boolean processClientMessage(String clientMessage) {
+        this.chatServer.getMetrics().messageReceived();
+        //Heartbeats only need to have been read, which has already marked the connection as alive
+        if (clientMessage.equals(PONG)) {
+            return true;
+        } else if (clientMessage.equals(PING)) {
+            displayMessage(PONG);
+            return true;
+        }
+        if (this.connectionClass == ConnectionClass.ADMIN) {
+            return this.chatServer.getFederation().receive(this, clientMessage);
+        }
+        return processMessage(classifyMessage(clientMessage), clientMessage, 0);
+    }
+
+    /**
+     * Method to handle a single frame sent by a framed client after it has joined.
+     * The frame type decides what the message is, so its text is never inspected for commands
+     * @param frame: Frame read from the client
+     * @return true if the connection should keep reading, false if the client has left the chat
+     */
+    protected boolean processFrame(Frame frame) {
+        this.chatServer.getMetrics().messageReceived();
+        //A payload may be a whole frame long; it is cut like a text line, so the server's prefixes still fit in a frame
+        String payload = Frame.truncate(frame.getPayload(), Frame.MAX_MESSAGE_BYTES);
+        switch (frame.getType()) {
+            case QUIT:
+                return processMessage(MessageKind.QUIT, "__QUIT", 0);
+            case PING:
+                send(EncodedMessage.of(PONG, FrameType.PONG, 0, 0, ""));
+                return true;
+            case PONG:
+                return true;
+            case ROOM_JOIN:
+                return processMessage(MessageKind.ROOM_COMMAND, "/join "+payload, 0);
+            case ROOM_LEAVE:
+                return processMessage(MessageKind.ROOM_COMMAND, "/leave "+payload, 0);
+            case BOT_REQUEST:
+                return processMessage(MessageKind.BOT_REQUEST, payload, 0);
+            case BOT_REPLY:
+                if (this.connectionClass == ConnectionClass.BOT) {
+                    handleBotReply(frame.getMemberId(), payload);
+                }
+                return true;
+            case CHAT:
+                return processMessage(MessageKind.CHAT, payload, frame.getRoomId());
+            default:
+                //JOIN is only valid as the first frame, and NOTICE only from the server
+                return true;
+        }
+    }
+
+    /**
+     * Method to handle a message once its kind is known, whichever protocol it arrived on.
+     * A member's messages are held to the server's rate limits first; leaving the chat is never held back
+     * @param messageKind: MessageKind of the message
+     * @param clientMessage: String message sent by the client
+     * @param roomId: id of the room a chat message is for, or 0 for the client's active room
+     * @return true if the connection should keep reading, false if the client has left the chat
+     */
+    protected boolean processMessage(MessageKind messageKind, String clientMessage, int roomId) {
+        RateLimiter rateLimiter = this.chatServer.getRateLimiter();
+        if (this.connectionClass == ConnectionClass.USER && messageKind != MessageKind.QUIT && rateLimiter.isEnabled()) {
+            long waitNanos = rateLimitWait(clientMessage);
+            if (waitNanos > 0) {
+                return rateLimited(messageKind, clientMessage, roomId, waitNanos);
+            }
+            this.rateLimitNoticeSent = false;
+        }
+        return dispatchMessage(messageKind, clientMessage, roomId);
+    }
+
+    /**
+     * Method to take a message out of the connection's rate limit buckets, if they have room
+     * @param clientMessage: String message sent by the client
+     * @return 0 if the message is admitted, otherwise how long to wait before it would be, in nanoseconds
+     */
+    protected long rateLimitWait(String clientMessage) {
+        //The size is counted in characters, which is the size in bytes for ASCII text, to save encoding the message
+        return this.chatServer.getRateLimiter().admit(this, clientMessage.length() + 1, System.nanoTime());
+    }
+
+    /**
+     * Method to handle a message over the rate limits: it is counted, the client is told (once until a message
+     * gets through again), and the message is then either dropped or deferred as the server's policy says
+     * @param messageKind: MessageKind of the message
+     * @param clientMessage: String message sent by the client
+     * @param roomId: id of the room a chat message is for, or 0 for the client's active room
+     * @param waitNanos: how long until the message would be admitted
+     * @return true if the connection should keep reading, false if the client has left the chat
+     */
+    protected boolean rateLimited(MessageKind messageKind, String clientMessage, int roomId, long waitNanos) {
+        boolean deferred = this.chatServer.getRateLimiter().getPolicy() == RateLimitPolicy.DEFER;
+        this.chatServer.getMetrics().messageRateLimited(deferred);
+        if (!this.rateLimitNoticeSent) {
+            this.rateLimitNoticeSent = true;
+            displayMessage(deferred ? "##-- You are sending too fast; your messages are being held back --##"
+                    : "##-- You are sending too fast; messages are being dropped --##");
+        }
+        if (!deferred) {
+            return true;
+        }
+        return deferMessage(messageKind, clientMessage, roomId, waitNanos);
+    }
+
+    /**
+     * Method to hold a message back until the rate limits admit it. By default the reading thread waits, so nothing
+     * more is read from the client meanwhile and TCP slows the client down; a connection driven by an event loop,
+     * which must not wait, overrides this
+     * @param messageKind: MessageKind of the message
+     * @param clientMessage: String message sent by the client
+     * @param roomId: id of the room a chat message is for, or 0 for the client's active room
+     * @param waitNanos: how long until the message would be admitted
+     * @return true if the connection should keep reading, false if the client has left the chat
+     */
+    protected boolean deferMessage(MessageKind messageKind, String clientMessage, int roomId, long waitNanos) {
+        do {
+            LockSupport.parkNanos(waitNanos);
+            if (!this.connected) {
+                return false;
+            }
+        } while ((waitNanos = rateLimitWait(clientMessage)) > 0);
+        return dispatchMessage(messageKind, clientMessage, roomId);
+    }
+
+    /**
+     * Method to act on a message which has been admitted
+     * @param messageKind: MessageKind of the message
+     * @param clientMessage: String message sent by the client
+     * @param roomId: id of the room a chat message is for, or 0 for the client's active room
+     * @return true if the connection should keep reading, false if the client has left the chat
+     */
+    protected boolean dispatchMessage(MessageKind messageKind, String clientMessage, int roomId) {
+        //Display the message back to the client (bots have no use for their own replies)
+        if (this.connectionClass != ConnectionClass.BOT) {
+            displayMessage(clientMessage);
+        }
+
+        switch (messageKind) {
+            case QUIT:
+                leaveChat();
+                return false;
+            case ROOM_COMMAND:
+                handleRoomCommand(clientMessage);
+                break;
+            case BOT_REQUEST:
+                handleBotRequest(clientMessage);
+                break;
+            case BOT_REPLY:
+                handleBotReply(clientMessage);
+                break;
+            default:
+                //Otherwise it simply displays the message as a normal message to the server and all other members of the room
+                String roomName = this.activeRoom;
+                ChatRoom room = this.chatServer.getRoomDirectory().getRoomById(roomId);
+                if (room != null && this.joinedRooms.contains(room.getName())) {
+                    roomName = room.getName();
+                }
+                String serverMessage = roomMessage(roomName, "["+this.username+"]: "+clientMessage);
+                this.chatServer.broadcastChatToRoom(serverMessage, roomName, this);
+                this.chatServer.displayMessageToServer(serverMessage);
+        }
+        return true;
+    }
+
+    /**
+     * Static method to show a message as it appears in a room: messages outside the lobby start with the room's name
+     * @param roomName: String name of the room the message is sent to
+     * @param message: String message, starting with its sender
+     * @return String message as shown to the room's members
+     */
+    protected static String roomMessage(String roomName, String message) {
+        if (roomName.equals(RoomDirectory.LOBBY)) {
+            return message;
+        }
+        return "["+roomName+"] "+message;
+    }
+
+    /**
+     * Method to handle a message addressed to the bot. The other members of the room still see the question,
+     * but only the bot channel carries it to the bot
+     * @param clientMessage: String message read from the client
+     */
+    protected void handleBotRequest(String clientMessage) {
+        String botMessage = roomMessage(this.activeRoom, "[" + this.username + "]: " + clientMessage);
+        this.chatServer.displayMessageToServer(botMessage);
+        this.chatServer.broadcastChatToRoom(botMessage, this.activeRoom, this);
+
+        if (!this.chatServer.broadcastToBot(clientMessage, this)) {
+            displayMessage("##-- No bot is online to answer you --##");
+        }
+    }
+
+    /**
+     * Method to handle a reply from a bot, which starts with '@' and the username it is answering.
+     * The reply is sent to the room that member is chatting in
+     * @param botReply: String reply read from the bot
+     */
+    protected void handleBotReply(String botReply) {
+        String replyMessage = "["+this.username+"]: "+botReply;
+
+        String roomName = RoomDirectory.LOBBY;
+        int nameEnd = botReply.indexOf(' ');
+        if (botReply.startsWith("@") && nameEnd > 1) {
+            String memberName = botReply.substring(1, nameEnd);
+            this.chatServer.getBotPool().replyReceived(this, memberName);
+            ChatConnection member = this.chatServer.getMemberRegistry().getByName(memberName);
+            if (member == null) {
+                //The member has left since asking
+                this.chatServer.displayMessageToServer(replyMessage);
+                return;
+            }
+            roomName = member.activeRoom;
+        }
+        replyMessage = roomMessage(roomName, replyMessage);
+        this.chatServer.displayMessageToServer(replyMessage);
+        this.chatServer.broadcastChatToRoom(replyMessage, roomName, this);
+    }
+
+    /**
+     * Method to handle a reply from a framed bot, which names the member it is answering by id.
+     * The reply is sent to the room that member is chatting in
+     * @param memberId: id of the member being answered
+     * @param botReply: String reply read from the bot
+     */
+    protected void handleBotReply(int memberId, String botReply) {
+        this.chatServer.getBotPool().replyReceived(this, memberId);
+        ChatConnection member = this.chatServer.getMemberRegistry().getById(memberId);
+        if (member == null || member.getUsername() == null) {
+            //The member has left since asking
+            return;
+        }
+        String roomName = member.activeRoom;
+        String replyMessage = roomMessage(roomName, "["+this.username+"]: @"+member.getUsername()+" "+botReply);
+        this.chatServer.displayMessageToServer(replyMessage);
+        this.chatServer.broadcastChatToRoom(replyMessage, roomName, this);
+    }
+}
@@ -0,0 +1,95 @@
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+//Class representing a named room (channel) of the chat, holding its own set of members,
+//so that a message sent to the room only costs as much as the room's size
+public class ChatRoom {
+
+    //Private object variables for the room
+    private String name;
+    private int id;
+    private Set<ChatConnection> members;
+    private volatile RoomHistory history;
+
+    /**
+     * Constructor method to create an empty room
+     * @param name: String name of the room (e.g. #ops)
+     * @param id: id of the room, used in the header of framed messages
+     * @param history: RoomHistory object which keeps the room's latest messages
+     */
+    public ChatRoom(String name, int id, RoomHistory history) {
+        this.name = name;
+        this.id = id;
+        this.members = ConcurrentHashMap.newKeySet();
+        this.history = history;
+    }
+
+    /**
+     * Accessor method to obtain the name of the room
+     * @return String room name
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Accessor method to obtain the id of the room
+     * @return room id
+     */
+    public int getId() {
+        return this.id;
+    }
+
+    /**
+     * Accessor method to obtain the history of the room
+     * @return RoomHistory object
+     */
+    public RoomHistory getHistory() {
+        return this.history;
+    }
+
+    /**
+     * Mutator method to replace the history of the room, releasing the messages held by the old one
+     * @param history: RoomHistory object to use from now on
+     */
+    public void setHistory(RoomHistory history) {
+        RoomHistory oldHistory = this.history;
+        this.history = history;
+        oldHistory.clear();
+    }
+
+    /**
+     * Method to add a member to the room
+     * @param connection: ChatConnection object of the member
+     * @return true if the member was not already in the room
+     */
+    public boolean addMember(ChatConnection connection) {
+        return this.members.add(connection);
+    }
+
+    /**
+     * Method to remove a member from the room
+     * @param connection: ChatConnection object of the member
+     * @return true if the member was in the room
+     */
+    public boolean removeMember(ChatConnection connection) {
+        return this.members.remove(connection);
+    }
+
+    /**
+     * Accessor method to obtain the members of the room, for broadcasting.
+     * This is a live view; iterating it is safe while members join and leave
+     * @return Set of ChatConnection objects
+     */
+    public Set<ChatConnection> getMembers() {
+        return this.members;
+    }
+
+    /**
+     * Accessor method to obtain the number of members in the room
+     * @return occupancy of the room
+     */
+    public int getOccupancy() {
+        return this.members.size();
+    }
+}
@@ -1,148 +1,626 @@
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.net.SocketException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.EnumMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 //Define the main class for the chat server, which implements from the Broadcasting interface
 public class ChatServer implements Broadcasting {
 
     //Define the private instances of the variables used within the class
-    private ServerSocket serverSocket;
-    private ArrayList<ClientThread> clientThreads;
-    private ArrayList<String> clientUsernames;
+    private int port;
+    private volatile AcceptorGroup acceptorGroup;
+    private MemberRegistry memberRegistry;
+    private RoomDirectory roomDirectory;
+    private BotPool botPool;
+    private ServerMetrics metrics;
     private boolean connected;
+    private ServerMode mode;
+    private NioServerEngine[] eventLoops;
+    private Executor connectionExecutor;
+
+    //Links to the other servers of the cluster, over which members and room messages are shared
+    private Federation federation;
+
+    //Settings for accepting connections: acceptor threads, NIO event loops (one per core by default),
+    //the accept backlog, and whether each acceptor gets its own listening socket through SO_REUSEPORT
+    private int acceptorCount = 1;
+    private int eventLoopCount = Runtime.getRuntime().availableProcessors();
+    private int acceptBacklog = 1024;
+    private boolean reusePort = false;
+
+    //Settings for the bounded outbound queue each client is given
+    private int outboundQueueCapacity = 1024;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+    private long overflowTimeoutMillis = 500;
+
+    //Limits on how fast members may send, per connection and across the server (off unless configured)
+    private volatile RateLimiter rateLimiter = new RateLimiter(0, 0, 0, 2, RateLimitPolicy.DEFER);
+
+    //How the lines pending for each kind of connection are batched before being flushed
+    private EnumMap<ConnectionClass, FlushPolicy> flushPolicies;
+
+    //Preset dictionary offered to clients which ask for deflate compression
+    private byte[] compressionDictionary = CompressionDictionary.prefixesOnly();
+
+    //Number of the room's latest messages replayed to a member joining it
+    private int historyReplayLines = 20;
+
+    //Durable log every broadcast message is appended to, and the search index following it (both null if the chat is not logged)
+    private MessageLog messageLog;
+    private SearchIndex searchIndex;
+
+    //Console log the server's lines are written through once it has begun (null until then, when they are printed directly)
+    private volatile ConsoleLog consoleLog;
+    private int consoleCapacity = 8192;
+    private ConsoleOverflowPolicy consoleOverflowPolicy = ConsoleOverflowPolicy.DROP;
+    private String consolePath = null;
+    private long consoleRotateBytes = 16 * 1024 * 1024;
+    private int consoleRotatedFiles = 5;
+
+    //Heartbeats and idle timeouts of the connections with a socket, both off unless configured
+    private volatile IdleReaper idleReaper;
+    private long pingIntervalSeconds = 0;
+    private long idleTimeoutSeconds = 0;
+
+    //File the metrics are written to at an interval (null to not write them)
+    private Path statsPath = null;
+    private long statsIntervalSeconds = 10;
 
     /**
      * public constructor method, attaches the instances to the instance variable
      * @param port: Integer value of the passed port number
      */
     public ChatServer(int port) {
-        try {
-            //Instance of socket object, with the parameter port passed
-            this.serverSocket = new ServerSocket(port);
+        this(port, ServerMode.THREAD);
+    }
 
-            //arrayLists instantiated to hold the client's threads, and usernames respectively
-            this.clientThreads = new ArrayList<ClientThread>();
-            this.clientUsernames = new ArrayList<String>();
+    /**
+     * public constructor method, attaches the instances to the instance variable
+     * @param port: Integer value of the passed port number
+     * @param mode: ServerMode engine used to serve the clients
+     */
+    public ChatServer(int port, ServerMode mode) {
+        this.port = port;
+        this.mode = mode;
+        this.connectionExecutor = ConnectionExecutors.forMode(mode);
 
-            //Boolean connection status flag
-            this.connected = true;
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        //Default flush policies; bots linger briefly so replies produced together share a write
+        this.flushPolicies = new EnumMap<ConnectionClass, FlushPolicy>(ConnectionClass.class);
+        this.flushPolicies.put(ConnectionClass.USER, new FlushPolicy(8192, 0));
+        this.flushPolicies.put(ConnectionClass.BOT, new FlushPolicy(32768, 2));
+        this.flushPolicies.put(ConnectionClass.ADMIN, new FlushPolicy(65536, 0));
+
+        //Registry instantiated to hold the client's connections, indexed by connection id and username
+        //(the port itself is bound by begin(), once the acceptors have been configured, and nothing which runs
+        //in the background is started before then, so a server which never begins starts no threads)
+        this.memberRegistry = new MemberRegistry();
+        this.roomDirectory = new RoomDirectory();
+        this.botPool = new BotPool(this, 10000);
+        this.metrics = new ServerMetrics();
+        this.federation = new Federation(this, Federation.defaultNodeName(port));
+        this.idleReaper = new IdleReaper(this, 0, 0);
+        this.memberRegistry.setReservedNames(this.federation.remoteUsernames());
+
+        //Boolean connection status flag
+        this.connected = true;
     }
 
     /**
-     * Overriding synchronized method to broadcast the string parameter
+     * Overriding method to broadcast the string parameter
      * to all members in the chat online at that time.
      * @param message: String message to broadcast
      */
     @Override
-    public synchronized void broadcastToAllMembers(String message) {
+    public void broadcastToAllMembers(String message) {
+        deliverToAllMembers(message);
+        this.federation.forwardToAll(message);
+    }
 
-        //Loop through each client thread in the clientThread arrayList structure,
-        //then call method to display message
-        for (ClientThread clientThread: this.clientThreads) {
-            clientThread.displayMessage(message);
+    /**
+     * Method to broadcast the string parameter to all members connected to this node only,
+     * used for messages broadcast here and for those forwarded by a peer
+     * @param message: String message to broadcast
+     */
+    protected void deliverToAllMembers(String message) {
+        //Encode the message once, and share the same bytes with every recipient
+        long startNanos = this.metrics.broadcastStarted();
+        EncodedMessage encodedMessage = EncodedMessage.of(message);
+        logMessage(encodedMessage);
+
+        //Loop through each connection in the member registry,
+        //then queue the message for it
+        for (ChatConnection clientThread: this.memberRegistry.connections()) {
+            //Bots only receive messages addressed to them, through broadcastToBot(), and peers through the federation
+            if (clientThread.getConnectionClass() == ConnectionClass.USER) {
+                clientThread.send(encodedMessage);
+            }
         }
+        this.metrics.broadcastCompleted(startNanos);
     }
 
     /**
-     * Overriding synchronized method to broadcast the string parameter
+     * Overriding method to broadcast the string parameter
      * to all OTHER members in the chat (everyone except from a certain user).
      * @param message: String message to broadcast
      * @param selfClientThread: clientThread object which marks the client to avoid
      */
     @Override
-    public synchronized void broadcastToAllOtherMembers(String message, ClientThread selfClientThread) {
+    public void broadcastToAllOtherMembers(String message, ChatConnection selfClientThread) {
+        long startNanos = this.metrics.broadcastStarted();
+        EncodedMessage encodedMessage = EncodedMessage.of(message, FrameType.NOTICE, selfClientThread.getConnectionId(), 0);
+        logMessage(encodedMessage);
 
         //Loop defined similar to the iteration in the above function, but excludes the clientThread object passed
-        for (ClientThread clientThread: this.clientThreads) {
+        for (ChatConnection clientThread: this.memberRegistry.connections()) {
             //if condition to only send the message to others, so that
             // the client's message does not ping back to the client itself.
-            if (selfClientThread != clientThread) {
-                clientThread.displayMessage(message);
+            if (selfClientThread != clientThread && clientThread.getConnectionClass() == ConnectionClass.USER) {
+                clientThread.send(encodedMessage);
             }
         }
+        this.metrics.broadcastCompleted(startNanos);
+
+        //Every member of the other nodes is someone other than the sender
+        this.federation.forwardToAll(message);
     }
 
     /**
      * Overriding method to broadcast the string parameter
      * to a single specified member of chat currently online
      * @param message: String message to broadcast
+     * @param selfClientThread: clientThread object of the member to send the message to
+     */
+    @Override
+    public void broadcastToParticularMember(String message, ChatConnection selfClientThread) {
+        //Only send the message if the connection is still registered with the server
+        if (this.memberRegistry.getById(selfClientThread.getConnectionId()) == selfClientThread) {
+            selfClientThread.displayMessage(message);
+        }
+    }
+
+    /**
+     * Overriding method to send the string parameter to a bot only.
+     * This is the dedicated bot channel: bots receive nothing but the messages addressed to them,
+     * and each request goes to the bot in the pool with the fewest requests outstanding
+     * @param message: String message the member sent to the bot (e.g. "HEY_BOT! how are you?")
+     * @param selfClientThread: clientThread object of the member asking the bot
+     * @return true if a bot was online to receive the message
+     */
+    @Override
+    public boolean broadcastToBot(String message, ChatConnection selfClientThread) {
+        return this.botPool.dispatch(selfClientThread, message);
+    }
+
+    /**
+     * Overriding method to broadcast the string parameter to the other members of a single room.
+     * Only the room's own members are visited, so the cost depends on the room size rather than
+     * the number of clients online
+     * @param message: String message to broadcast
+     * @param roomName: String name of the room
      * @param selfClientThread: clientThread object which marks the client to avoid
      */
     @Override
-    public void broadcastToParticularMember(String message, ClientThread selfClientThread) {
-        for (ClientThread clientThread: this.clientThreads) {
-            //if condition to only send the message to others, so that
-            // the client's message does not ping back to the client itself.
-            if (selfClientThread == clientThread) {
-                clientThread.displayMessage(message);
-                break;
+    public void broadcastToRoom(String message, String roomName, ChatConnection selfClientThread) {
+        deliverToRoom(message, roomName, selfClientThread, null);
+        this.federation.forwardToRoom(message, roomName, null);
+    }
+
+    /**
+     * Method to broadcast a member's chat message to the other members of a room. Unlike a notice, the message is
+     * logged with the username of its sender, so that searching by sender never relies on the text of the message
+     * @param message: String message to broadcast, e.g. "[username]: hello"
+     * @param roomName: String name of the room
+     * @param sender: ChatConnection object of the member who sent the message
+     */
+    public void broadcastChatToRoom(String message, String roomName, ChatConnection sender) {
+        deliverToRoom(message, roomName, sender, sender.getUsername());
+        this.federation.forwardToRoom(message, roomName, sender.getUsername());
+    }
+
+    /**
+     * Method to broadcast the string parameter to the other members of a room on this node only,
+     * used for messages broadcast here and for those forwarded by a peer
+     * @param message: String message to broadcast
+     * @param roomName: String name of the room
+     * @param selfClientThread: clientThread object which marks the client to avoid, or null
+     * @param sender: String username of the member who sent a chat message, or null for a notice
+     */
+    protected void deliverToRoom(String message, String roomName, ChatConnection selfClientThread, String sender) {
+        ChatRoom room = this.roomDirectory.getRoom(roomName);
+        if (room == null) {
+            return;
+        }
+        //Framed recipients get the sender and room ids in the header, so they can route without reading the text
+        long startNanos = this.metrics.broadcastStarted();
+        int senderId = selfClientThread == null ? 0 : selfClientThread.getConnectionId();
+        EncodedMessage encodedMessage = EncodedMessage.chat(message, senderId, room.getId(), sender);
+        room.getHistory().record(encodedMessage);
+        logMessage(encodedMessage);
+        for (ChatConnection clientThread: room.getMembers()) {
+            if (selfClientThread != clientThread) {
+                clientThread.send(encodedMessage);
             }
         }
+        this.metrics.broadcastCompleted(startNanos);
     }
 
     /**
-     * Overriding method to broadcast the string parameter
-     * to a single specified member of chat currently online
-     * @param message: String message passed to broadcast to the bot
+     * Subroutine to queue a broadcast message for the message log, if the chat is logged
+     * @param encodedMessage: EncodedMessage being broadcast
      */
-    @Override
-    public void broadcastToBot(String message) {
-        int index = this.clientUsernames.indexOf("Chat_Bot");
-        ClientThread botThread = this.clientThreads.get(index);
-        botThread.displayMessage(message);
+    private void logMessage(EncodedMessage encodedMessage) {
+        MessageLog log = this.messageLog;
+        if (log != null) {
+            log.append(encodedMessage);
+        }
     }
 
     /**
-     * Synchronized method to display a given message to the server
+     * Method to display a given message to the server; the line is handed to the console log,
+     * so the calling thread does not wait for the terminal (or file) to be written.
+     * Before the server begins there is no console log yet, and the line is printed directly
      * @param message: String message
      */
-    protected synchronized void displayMessageToServer(String message) {
+    protected void displayMessageToServer(String message) {
+        ConsoleLog log = this.consoleLog;
+        if (log == null) {
+            System.out.println(message);
+            return;
+        }
+        log.log(message);
+    }
+
+    /**
+     * Method to display the answer to one of the admin's commands, which is always written straight to the terminal
+     * (even when the chat's console lines go to a file)
+     * @param message: String message
+     */
+    protected void displayToAdmin(String message) {
         System.out.println(message);
     }
 
     /**
-     * Synchronized method to add a new member to the chat
+     * Method to add a new member to the chat
      * Indicate that the member (with their respective username) has joined
-     * @param userName: String value of username
+     * @param connection: ChatConnection object of the member joining
+     * @param userName: String value of the requested username
+     * @return String username assigned to the member (made unique if the requested one is taken)
      */
-    protected synchronized void addNewMemberToChat(String userName) {
-        this.clientUsernames.add(userName);
-        System.out.println("##–– "+userName+" has joined the chat! --##\n");
+    protected String addNewMemberToChat(ChatConnection connection, String userName) {
+        String assignedName = this.memberRegistry.join(connection, userName);
+        this.displayMessageToServer("##–– "+assignedName+" has joined the chat! --##\n");
+        this.federation.memberJoined(assignedName);
+        return assignedName;
     }
 
     /**
-     * Synchronized method to remove a member from the chat
+     * Method to rename a member whose username has also been taken on another node, which keeps it
+     * @param connection: ChatConnection object of the member
+     * @param node: String name of the node the other member is on
+     */
+    protected void renameMember(ChatConnection connection, String node) {
+        String oldName = connection.getUsername();
+        String newName = this.memberRegistry.rename(connection);
+        this.federation.memberLeft(oldName);
+        this.federation.memberJoined(newName);
+        this.displayMessageToServer("##–– "+oldName+" is also in use on "+node+", renamed to "+newName+" --##\n");
+        connection.displayMessage("##-- "+oldName+" is already in use on another server, you are now "+newName+" --##");
+    }
+
+    /**
+     * Method to remove a member from the chat
      * Indicate that the member (with their respective username) has left
-     * @param userName: String value of username
+     * @param connection: ChatConnection object of the member leaving
      */
-    protected synchronized void removeMemberFromChat(String userName) {
-        this.clientUsernames.remove(userName);
-        System.out.println("##–– "+userName+" has left the chat! --##\n");
+    protected void removeMemberFromChat(ChatConnection connection) {
+        if (this.memberRegistry.leave(connection)) {
+            this.displayMessageToServer("##–– "+connection.getUsername()+" has left the chat! --##\n");
+            this.federation.memberLeft(connection.getUsername());
+        }
     }
 
     /**
-     * Accessor method to obtain the clientThread arrayList object
-     * @return clientThreads arrayList
+     * Method to add a newly accepted connection to the server
+     * @param connection: ChatConnection object of the new client
      */
-    protected ArrayList<ClientThread> getClientThreadArray() {
-        return this.clientThreads;
+    protected void addConnection(ChatConnection connection) {
+        this.memberRegistry.register(connection);
     }
 
     /**
-     * Accessor method to obtain the clientUsernames ArrayList object
-     * @return clientUsernames object
+     * Method to remove a closed connection from the server
+     * @param connection: ChatConnection object of the closed client
      */
-    protected ArrayList<String> getClientUsernames() {
-        return this.clientUsernames;
+    protected void removeConnection(ChatConnection connection) {
+        //A member whose connection dropped without leaving has still left, as far as the other nodes are concerned
+        if (this.memberRegistry.leave(connection)) {
+            this.federation.memberLeft(connection.getUsername());
+        }
+        this.memberRegistry.unregister(connection);
+    }
+
+    /**
+     * Mutator method to configure the outbound queues created for new clients
+     * @param capacity: maximum number of messages waiting for a single client
+     * @param policy: OverflowPolicy applied when a client's queue is full
+     * @param timeoutMillis: how long the BLOCK policy waits for room, in milliseconds
+     */
+    public void configureOutboundQueues(int capacity, OverflowPolicy policy, long timeoutMillis) {
+        this.outboundQueueCapacity = capacity;
+        this.overflowPolicy = policy;
+        this.overflowTimeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Mutator method to configure how connections are accepted, before the server begins
+     * @param acceptors: number of acceptor threads
+     * @param eventLoops: number of NIO event loops (used in the NIO mode only)
+     * @param backlog: length of the queue of connections waiting to be accepted
+     * @param reusePort: true to give each acceptor its own listening socket using SO_REUSEPORT
+     */
+    public void configureAcceptors(int acceptors, int eventLoops, int backlog, boolean reusePort) {
+        this.acceptorCount = Math.max(1, acceptors);
+        this.eventLoopCount = Math.max(1, eventLoops);
+        this.acceptBacklog = backlog;
+        this.reusePort = reusePort;
+    }
+
+    /**
+     * Mutator method to configure how fast members may send; a rate of 0 leaves that limit off
+     * @param messagesPerSecond: messages each member may send per second
+     * @param bytesPerSecond: bytes each member may send per second
+     * @param globalMessagesPerSecond: messages all the members together may send per second
+     * @param burstSeconds: number of seconds of its rate a member (or the server) may save up and send at once
+     * @param policy: RateLimitPolicy applied to a message over a limit
+     */
+    public void configureRateLimits(double messagesPerSecond, double bytesPerSecond, double globalMessagesPerSecond,
+                                    double burstSeconds, RateLimitPolicy policy) {
+        this.rateLimiter = new RateLimiter(messagesPerSecond, bytesPerSecond, globalMessagesPerSecond, burstSeconds, policy);
+    }
+
+    /**
+     * Mutator method to configure the heartbeats, before the server begins; 0 turns either off
+     * @param pingIntervalSeconds: silence after which a member is pinged
+     * @param idleTimeoutSeconds: silence after which a connection is reaped
+     */
+    public void configureHeartbeats(long pingIntervalSeconds, long idleTimeoutSeconds) {
+        this.pingIntervalSeconds = pingIntervalSeconds;
+        this.idleTimeoutSeconds = idleTimeoutSeconds;
+    }
+
+    /**
+     * Mutator method to configure the console log the server's lines are written through, before the server begins
+     * @param capacity: number of lines the buffer holds
+     * @param overflowPolicy: ConsoleOverflowPolicy applied when the buffer is full
+     * @param path: String path of the file written to, or null for standard output
+     * @param maxFileBytes: size at which the file is rotated (0 to never rotate)
+     * @param rotatedFiles: number of rotated files kept
+     */
+    public void configureConsole(int capacity, ConsoleOverflowPolicy overflowPolicy, String path, long maxFileBytes, int rotatedFiles) {
+        this.consoleCapacity = capacity;
+        this.consoleOverflowPolicy = overflowPolicy;
+        this.consolePath = path;
+        this.consoleRotateBytes = maxFileBytes;
+        this.consoleRotatedFiles = rotatedFiles;
+    }
+
+    /**
+     * Mutator method to configure a file the metrics are written to at an interval, before the server begins
+     * @param path: Path of the file the metrics are appended to
+     * @param intervalSeconds: interval between dumps in seconds
+     */
+    public void configureStats(Path path, long intervalSeconds) {
+        this.statsPath = path;
+        this.statsIntervalSeconds = intervalSeconds;
+    }
+
+    /**
+     * Accessor method to obtain the heartbeats and idle timeouts of the server
+     * @return IdleReaper object
+     */
+    protected IdleReaper getIdleReaper() {
+        return this.idleReaper;
+    }
+
+    /**
+     * Accessor method to obtain the rate limits of the server
+     * @return RateLimiter object
+     */
+    protected RateLimiter getRateLimiter() {
+        return this.rateLimiter;
+    }
+
+    /**
+     * Accessor method to obtain the acceptors of the server
+     * @return AcceptorGroup object, or null until the server has begun
+     */
+    protected AcceptorGroup getAcceptorGroup() {
+        return this.acceptorGroup;
+    }
+
+    /**
+     * Mutator method to configure the history kept for each room, and how much of it is replayed on joining
+     * @param capacity: largest number of messages held per room
+     * @param maxBytes: largest number of encoded bytes held per room
+     * @param replayLines: number of the latest messages replayed to a member joining a room
+     */
+    public void configureHistory(int capacity, int maxBytes, int replayLines) {
+        this.roomDirectory.configureHistory(capacity, maxBytes);
+        this.historyReplayLines = replayLines;
+    }
+
+    /**
+     * Accessor method to obtain the number of messages replayed to a member joining a room
+     * @return replayed line count
+     */
+    public int getHistoryReplayLines() {
+        return this.historyReplayLines;
+    }
+
+    /**
+     * Method to create the outbound queue for a new client, using the configured settings
+     * @return new OutboundQueue object
+     */
+    protected OutboundQueue createOutboundQueue() {
+        return new OutboundQueue(this.outboundQueueCapacity, this.overflowPolicy, this.overflowTimeoutMillis);
+    }
+
+    /**
+     * Accessor method to obtain the policy applied when a client's outbound queue is full
+     * @return OverflowPolicy of the outbound queues
+     */
+    public OverflowPolicy getOverflowPolicy() {
+        return this.overflowPolicy;
+    }
+
+    /**
+     * Mutator method to set how the lines pending for a kind of connection are batched
+     * @param connectionClass: ConnectionClass the policy applies to
+     * @param flushPolicy: FlushPolicy to use
+     */
+    public void setFlushPolicy(ConnectionClass connectionClass, FlushPolicy flushPolicy) {
+        this.flushPolicies.put(connectionClass, flushPolicy);
+    }
+
+    /**
+     * Accessor method to obtain the flush policy for a kind of connection
+     * @param connectionClass: ConnectionClass of the connection
+     * @return FlushPolicy object
+     */
+    protected FlushPolicy getFlushPolicy(ConnectionClass connectionClass) {
+        return this.flushPolicies.get(connectionClass);
+    }
+
+    /**
+     * Mutator method to set the preset dictionary offered to compressed connections
+     * @param compressionDictionary: byte array dictionary (see CompressionDictionary)
+     */
+    public void setCompressionDictionary(byte[] compressionDictionary) {
+        this.compressionDictionary = compressionDictionary;
+    }
+
+    /**
+     * Method to create the compressor for a client which asked for compression in its handshake.
+     * The server's dictionary is used if the client holds the same one, otherwise the built-in prefixes
+     * @param handshakeLine: String handshake line ("__DEFLATE <dictionary checksum>")
+     * @return new PacketDeflater object
+     */
+    protected PacketDeflater createPacketDeflater(String handshakeLine) {
+        String clientChecksum = handshakeLine.substring(PacketDeflater.HANDSHAKE.length()).trim();
+        byte[] dictionary = this.compressionDictionary;
+        if (!clientChecksum.equals(String.valueOf(CompressionDictionary.checksum(dictionary)))) {
+            dictionary = CompressionDictionary.prefixesOnly();
+        }
+        return new PacketDeflater(dictionary);
+    }
+
+    /**
+     * Accessor method to obtain the executor the client and server threads are run on
+     * @return connection Executor
+     */
+    protected Executor getConnectionExecutor() {
+        return this.connectionExecutor;
+    }
+
+    /**
+     * Status condition function to check if the server is still running
+     * @return boolean value of the connection flag
+     */
+    protected boolean isConnected() {
+        return this.connected;
+    }
+
+    /**
+     * Accessor method to obtain the member registry, which holds every connection and username
+     * @return MemberRegistry object
+     */
+    protected MemberRegistry getMemberRegistry() {
+        return this.memberRegistry;
+    }
+
+    /**
+     * Accessor method to obtain the directory of rooms on the server
+     * @return RoomDirectory object
+     */
+    protected RoomDirectory getRoomDirectory() {
+        return this.roomDirectory;
+    }
+
+    /**
+     * Mutator method to start appending every broadcast message to a durable log, which is indexed for searching
+     * @param messageLog: MessageLog object
+     */
+    public void setMessageLog(MessageLog messageLog) {
+        this.messageLog = messageLog;
+        this.searchIndex = new SearchIndex(messageLog, messageLog.getDirectory());
+    }
+
+    /**
+     * Accessor method to obtain the console log the server's lines are written through
+     * @return ConsoleLog object, or null until the server has begun
+     */
+    protected ConsoleLog getConsoleLog() {
+        return this.consoleLog;
+    }
+
+    /**
+     * Accessor method to obtain the federation linking this server to its peers
+     * @return Federation object
+     */
+    protected Federation getFederation() {
+        return this.federation;
+    }
+
+    /**
+     * Accessor method to obtain the search index over the chat's log
+     * @return SearchIndex object, or null if the chat is not logged
+     */
+    protected SearchIndex getSearchIndex() {
+        return this.searchIndex;
+    }
+
+    /**
+     * Accessor method to obtain the durable log of the chat
+     * @return MessageLog object, or null if the chat is not logged
+     */
+    protected MessageLog getMessageLog() {
+        return this.messageLog;
+    }
+
+    /**
+     * Accessor method to obtain the runtime metrics of the server
+     * @return ServerMetrics object
+     */
+    protected ServerMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Accessor method to obtain the pool of bots attached to the server
+     * @return BotPool object
+     */
+    protected BotPool getBotPool() {
+        return this.botPool;
+    }
+
+    /**
+     * Method to host bots inside the server, alongside any external ChatBot connections.
+     * The hosted bots share a single LanguageProcessing engine
+     * @param botCount: number of bots to host
+     * @param repliesPath: relative filepath of the replies file
+     * @param replyMode: ReplyMode deciding how replies are picked
+     */
+    public void hostBots(int botCount, String repliesPath, ReplyMode replyMode) {
+        if (botCount <= 0) {
+            return;
+        }
+        LanguageProcessing languageProcessing = new LanguageProcessing(repliesPath, replyMode);
+        for (int i = 0; i < botCount; i++) {
+            new InProcessBot(this, languageProcessing).start();
+        }
     }
 
     /**
@@ -158,12 +636,8 @@ public class ChatServer implements Broadcasting {
      * Subroutine method to disconnect all users connected (including the bot(s))
      */
     protected void disconnectAllClients() {
-        //Define an iterator object, iterate through clientThreads, and remove them
-        Iterator<ClientThread> iterator = this.clientThreads.iterator();
-        while (iterator.hasNext()) {
-            ClientThread clientThread = iterator.next();
-            iterator.remove();
-        }
+        //Remove every connection and username from the registry
+        this.memberRegistry.clear();
     }
 
     /**
@@ -171,66 +645,261 @@ public class ChatServer implements Broadcasting {
      * which constitutes to to the disconnection process.
      */
     protected void safeShutdownServer() {
-        try {
-            String shutDownMessage = "##-- SERVER SHUT DOWN! --##";
-            this.broadcastToAllMembers(shutDownMessage);
-            this.displayMessageToServer(shutDownMessage);
-            this.disconnectAllClients();
-            this.connected = false;
-            this.serverSocket.close();
-        } catch (SocketException se) {
-            System.exit(0);
-        } catch (IOException e) {
+        String shutDownMessage = "##-- SERVER SHUT DOWN! --##";
+        //The peers are unlinked first, since only this node is shutting down
+        this.federation.close();
+        this.idleReaper.close();
+        this.botPool.close();
+        this.metrics.close();
+        this.broadcastToAllMembers(shutDownMessage);
+        this.displayMessageToServer(shutDownMessage);
+        this.disconnectAllClients();
+        if (this.messageLog != null) {
+            this.messageLog.close();
+            this.searchIndex.close();
+        }
+        if (this.consoleLog != null) {
+            this.consoleLog.close();
+        }
+        this.connected = false;
+        if (this.eventLoops != null) {
+            for (NioServerEngine eventLoop : this.eventLoops) {
+                eventLoop.shutdown();
+            }
+        }
+        //Closing the listening sockets stops the acceptors, and the server with them
+        if (this.acceptorGroup != null) {
+            this.acceptorGroup.close();
         }
     }
 
     /**
      * Method to begin all the processes:
+     * - Starting what runs in the background, as configured,
      * - Starting up the server,
      * - Indefinite iteration to keep accepting clients to the chat
      */
     public void begin() {
+        startBackgroundTasks();
         displayOpeningMessage();
         System.out.println("Waiting for participants to join...");
         try {
-            //Instantiate a server thread object and begin the thread
+            //Instantiate a server thread object and begin the thread on the connection executor
             ServerThread serverThread = new ServerThread(this);
-            Thread threadForServer = new Thread(serverThread);
-            threadForServer.start();
+            this.connectionExecutor.execute(serverThread);
 
-            //Indefinite iteration while the connection is active to keep accepting new users
-            //and assigning each one of those users a thread via the instantiation of the clientThread object
-            while (connected == true) {
-                Socket clientSocket = serverSocket.accept();
+            //The NIO engine serves the clients from one event loop per core, each on its own thread
+            if (this.mode == ServerMode.NIO) {
+                this.eventLoops = new NioServerEngine[this.eventLoopCount];
+                for (int i = 0; i < this.eventLoops.length; i++) {
+                    this.eventLoops[i] = new NioServerEngine(this, i);
+                    new Thread(this.eventLoops[i], "nio-loop-"+i).start();
+                }
+            }
 
-                ClientThread clientThread = new ClientThread(clientSocket, this);
-                this.clientThreads.add(clientThread);
-                Thread threadN = new Thread(clientThread);
+            //Accept new users until the server shuts down, handing each one to its own thread or to an event loop
+            this.acceptorGroup = new AcceptorGroup(this, this.port, this.acceptorCount, this.acceptBacklog, this.reusePort, this.eventLoops);
+            this.acceptorGroup.run();
 
-                threadN.start();
-            }
-        } catch (SocketException se) {
+            //The acceptors only return once the server has shut down
             System.exit(0);
         } catch (IOException e) {
+            System.out.println("Could not listen on port "+this.port+"; "+e.getMessage());
             e.printStackTrace();
         } finally {
-            try {
-                //Close the server socket when everything is over;
-                //This is in a 'finally' block, meaning that it is always executed
-                this.serverSocket.close();
-            } catch (IOException e) {
-                e.printStackTrace();
+            //Close the listening sockets when everything is over;
+            //This is in a 'finally' block, meaning that it is always executed
+            if (this.acceptorGroup != null) {
+                this.acceptorGroup.close();
             }
         }
     }
 
+    /**
+     * Subroutine to build what runs in the background from the configuration: the console log's writer,
+     * the heartbeats (only if any are configured), the metrics sampler, the bot pool's health check
+     * and the dialers of the peers
+     */
+    private void startBackgroundTasks() {
+        this.consoleLog = new ConsoleLog(this.consoleCapacity, this.consoleOverflowPolicy, this.consolePath,
+                this.consoleRotateBytes, this.consoleRotatedFiles);
+        this.idleReaper = new IdleReaper(this, this.pingIntervalSeconds, this.idleTimeoutSeconds);
+        this.metrics.start();
+        if (this.statsPath != null) {
+            this.metrics.startDumping(this.statsPath, this.statsIntervalSeconds, this.memberRegistry);
+        }
+        this.botPool.start();
+        this.federation.start();
+    }
+
     /**
      * Main method to begin the entire process when this class is run or called from the command line
-     * @param args: None
+     * @param args: command line arguments for the port and server engine specified using 'csp' and 'mode' respectively,
+     *            the number of acceptor threads using 'acceptors', of NIO event loops using 'loops' (one per core by default),
+     *            the accept backlog using 'backlog', and whether the acceptors use SO_REUSEPORT using 'reuseport' (true or false),
+     *            how fast each member may send using 'rateLimit' (messages:bytes per second, e.g. -rateLimit 5:2048),
+     *            how fast all the members together may send using 'globalRate' (messages per second), the seconds of
+     *            budget saved up for a burst using 'rateBurst', and what is done with a message over a limit using
+     *            'rateLimitPolicy' (defer or drop),
+     *            the seconds of silence after which a member is pinged using 'ping', and after which a connection
+     *            is dropped using 'idleTimeout' (both off unless given),
+     *            the outbound queue settings using 'queue', 'overflow' and 'overflowTimeout',
+     *            and the flush policy of each connection class using 'flush' (e.g. -flush bot=32768:2),
+     *            the history kept per room using 'history' (messages:bytes, e.g. -history 100:65536)
+     *            and the number of its messages replayed on joining a room using 'replay',
+     *            the directory the chat is logged to using 'log', with its fsync policy using 'fsync' (always, os or milliseconds),
+     *            segment size using 'segment' (bytes) and retention using 'retention' (bytes:hours),
+     *            a file the metrics are written to at an interval using 'stats' (file:seconds, e.g. -stats metrics.jsonl:10),
+     *            a file the console lines are written to instead of the terminal using 'console', rotated using
+     *            'consoleRotate' (bytes:files), with the lines buffered set by 'consoleBuffer' and the policy when it is full
+     *            set by 'consoleOverflow' (drop or block),
+     *            the name of this node in a cluster using 'node' (host:port by default), the other nodes it links to using
+     *            'peer' (host:port, repeatable), and the secret shared by the cluster's nodes using 'peerSecret'
+     *            (no peer is accepted without it),
+     *            how long a pooled bot may leave a request unanswered using 'botTimeout' (milliseconds),
+     *            and the number of bots hosted in the server using 'bots', answering from the file given by 'replies'
+     *            with replies picked as given by 'replyMode' (random or keyword);
+     *            the replies file also seeds the dictionary for compressed connections
      */
     public static void main(String[] args) {
-        final int serverPort = 14001;
-        ChatServer echoServer = new ChatServer(serverPort);
+        int serverPort = 14001;
+        ServerMode mode = ServerMode.THREAD;
+        int acceptors = 1;
+        int eventLoops = Runtime.getRuntime().availableProcessors();
+        int backlog = 1024;
+        boolean reusePort = false;
+        double rateMessages = 0;
+        double rateBytes = 0;
+        double globalRate = 0;
+        double rateBurst = 2;
+        RateLimitPolicy rateLimitPolicy = RateLimitPolicy.DEFER;
+        long pingInterval = 0;
+        long idleTimeout = 0;
+        int queueCapacity = 1024;
+        OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+        long overflowTimeout = 500;
+        long botTimeout = 10000;
+        int hostedBots = 0;
+        String repliesPath = "src/replies.txt";
+        ReplyMode replyMode = ReplyMode.RANDOM;
+        int historyCapacity = 100;
+        int historyMaxBytes = 64 * 1024;
+        int replayLines = 20;
+        String logDirectory = null;
+        FsyncPolicy fsyncPolicy = FsyncPolicy.interval(100);
+        int segmentBytes = 64 * 1024 * 1024;
+        long retentionBytes = 1024L * 1024 * 1024;
+        long retentionHours = 24 * 7;
+        String statsPath = null;
+        long statsIntervalSeconds = 10;
+        String consolePath = null;
+        long consoleRotateBytes = 16 * 1024 * 1024;
+        int consoleRotatedFiles = 5;
+        int consoleBuffer = 8192;
+        ConsoleOverflowPolicy consoleOverflow = ConsoleOverflowPolicy.DROP;
+        String nodeName = null;
+        String peerSecret = null;
+        ArrayList<String> peers = new ArrayList<String>();
+        EnumMap<ConnectionClass, FlushPolicy> flushPolicies = new EnumMap<ConnectionClass, FlushPolicy>(ConnectionClass.class);
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-csp")) { serverPort = Integer.parseInt(args[i+1]); }
+            if (args[i].equals("-mode")) { mode = ServerMode.fromString(args[i+1]); }
+            if (args[i].equals("-acceptors")) { acceptors = Integer.parseInt(args[i+1]); }
+            if (args[i].equals("-loops")) { eventLoops = Integer.parseInt(args[i+1]); }
+            if (args[i].equals("-backlog")) { backlog = Integer.parseInt(args[i+1]); }
+            if (args[i].equals("-reuseport")) { reusePort = Boolean.parseBoolean(args[i+1]); }
+            if (args[i].equals("-rateLimit")) {
+                String[] messagesAndBytes = args[i+1].split(":");
+                rateMessages = Double.parseDouble(messagesAndBytes[0]);
+                rateBytes = messagesAndBytes.length > 1 ? Double.parseDouble(messagesAndBytes[1]) : 0;
+            }
+            if (args[i].equals("-globalRate")) { globalRate = Double.parseDouble(args[i+1]); }
+            if (args[i].equals("-rateBurst")) { rateBurst = Double.parseDouble(args[i+1]); }
+            if (args[i].equals("-rateLimitPolicy")) { rateLimitPolicy = RateLimitPolicy.fromString(args[i+1]); }
+            if (args[i].equals("-ping")) { pingInterval = Long.parseLong(args[i+1]); }
+            if (args[i].equals("-idleTimeout")) { idleTimeout = Long.parseLong(args[i+1]); }
+            if (args[i].equals("-queue")) { queueCapacity = Integer.parseInt(args[i+1]); }
+            if (args[i].equals("-overflow")) { overflowPolicy = OverflowPolicy.fromString(args[i+1]); }
+            if (args[i].equals("-overflowTimeout")) { overflowTimeout = Long.parseLong(args[i+1]); }
+            if (args[i].equals("-botTimeout")) { botTimeout = Long.parseLong(args[i+1]); }
+            if (args[i].equals("-bots")) { hostedBots = Integer.parseInt(args[i+1]); }
+            if (args[i].equals("-replies")) { repliesPath = args[i+1]; }
+            if (args[i].equals("-replyMode")) { replyMode = ReplyMode.fromString(args[i+1]); }
+            if (args[i].equals("-history")) {
+                String[] countAndBytes = args[i+1].split(":");
+                historyCapacity = Integer.parseInt(countAndBytes[0]);
+                historyMaxBytes = Integer.parseInt(countAndBytes[1]);
+            }
+            if (args[i].equals("-replay")) { replayLines = Integer.parseInt(args[i+1]); }
+            if (args[i].equals("-stats")) {
+                String[] pathAndInterval = args[i+1].split(":");
+                statsPath = pathAndInterval[0];
+                statsIntervalSeconds = pathAndInterval.length > 1 ? Long.parseLong(pathAndInterval[1]) : 10;
+            }
+            if (args[i].equals("-node")) { nodeName = args[i+1]; }
+            if (args[i].equals("-peer")) { peers.add(args[i+1]); }
+            if (args[i].equals("-peerSecret")) { peerSecret = args[i+1]; }
+            if (args[i].equals("-console")) { consolePath = args[i+1]; }
+            if (args[i].equals("-consoleRotate")) {
+                String[] bytesAndFiles = args[i+1].split(":");
+                consoleRotateBytes = Long.parseLong(bytesAndFiles[0]);
+                consoleRotatedFiles = Integer.parseInt(bytesAndFiles[1]);
+            }
+            if (args[i].equals("-consoleBuffer")) { consoleBuffer = Integer.parseInt(args[i+1]); }
+            if (args[i].equals("-consoleOverflow")) { consoleOverflow = ConsoleOverflowPolicy.fromString(args[i+1]); }
+            if (args[i].equals("-log")) { logDirectory = args[i+1]; }
+            if (args[i].equals("-fsync")) { fsyncPolicy = FsyncPolicy.fromString(args[i+1]); }
+            if (args[i].equals("-segment")) { segmentBytes = Math.max(1024 * 1024, Integer.parseInt(args[i+1])); }
+            if (args[i].equals("-retention")) {
+                String[] bytesAndHours = args[i+1].split(":");
+                retentionBytes = Long.parseLong(bytesAndHours[0]);
+                retentionHours = Long.parseLong(bytesAndHours[1]);
+            }
+            if (args[i].equals("-flush")) {
+                String[] classAndPolicy = args[i+1].split("=");
+                flushPolicies.put(ConnectionClass.valueOf(classAndPolicy[0].toUpperCase()), FlushPolicy.fromString(classAndPolicy[1]));
+            }
+        }
+
+        ChatServer echoServer = new ChatServer(serverPort, mode);
+        echoServer.configureConsole(consoleBuffer, consoleOverflow, consolePath, consoleRotateBytes, consoleRotatedFiles);
+        echoServer.configureAcceptors(acceptors, eventLoops, backlog, reusePort);
+        echoServer.configureRateLimits(rateMessages, rateBytes, globalRate, rateBurst, rateLimitPolicy);
+        echoServer.configureHeartbeats(pingInterval, idleTimeout);
+        echoServer.configureOutboundQueues(queueCapacity, overflowPolicy, overflowTimeout);
+        echoServer.configureHistory(historyCapacity, historyMaxBytes, replayLines);
+        if (statsPath != null) {
+            echoServer.configureStats(Paths.get(statsPath), statsIntervalSeconds);
+        }
+        if (logDirectory != null) {
+            try {
+                echoServer.setMessageLog(new MessageLog(logDirectory, segmentBytes, fsyncPolicy,
+                        retentionBytes, TimeUnit.HOURS.toMillis(retentionHours)));
+            } catch (IOException e) {
+                System.out.println("Could not open the message log; "+e.getMessage());
+            }
+        }
+        echoServer.getBotPool().setReplyTimeoutMillis(botTimeout);
+        echoServer.hostBots(hostedBots, repliesPath, replyMode);
+        echoServer.setCompressionDictionary(CompressionDictionary.withReplies(repliesPath));
+        if (nodeName != null) {
+            echoServer.getFederation().setNodeName(nodeName);
+        }
+        //Without a secret, no peer handshake is accepted and there is nothing to dial with
+        if (peerSecret != null) {
+            echoServer.getFederation().setSecret(peerSecret);
+        } else if (!peers.isEmpty()) {
+            System.out.println("Linking to peers needs the secret shared by the cluster; set -peerSecret");
+            return;
+        }
+        for (String peer : peers) {
+            String[] hostAndPort = peer.split(":");
+            echoServer.getFederation().addPeer(hostAndPort[0], Integer.parseInt(hostAndPort[1]));
+        }
+        for (ConnectionClass connectionClass : flushPolicies.keySet()) {
+            echoServer.setFlushPolicy(connectionClass, flushPolicies.get(connectionClass));
+        }
         echoServer.begin();
     }
 }
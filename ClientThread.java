@@ -1,17 +1,15 @@
 import java.io.*;
 import java.net.Socket;
 import java.net.SocketException;
+import java.util.concurrent.TimeUnit;
 
 //Class implements the Runnable interface in order to include Threads
-public class ClientThread implements Runnable {
+//(one blocking thread is used per connected client)
+public class ClientThread extends ChatConnection implements Runnable {
 
     //Private object variables for the client thread
     private Socket socket;
-    private ChatServer chatServer;
-    private PrintWriter printWriter;
-    private boolean connected;
-
-    private String username;
+    private OutputStream outputStream;
 
     /**
      * Constructor method to set the passed socket and chatServer objects
@@ -19,60 +17,69 @@ public class ClientThread implements Runnable {
      * @param server: ChatServer object passed as the other parameter
      */
     public ClientThread(Socket socket, ChatServer server) {
+        super(server);
         this.socket = socket;
-        this.chatServer = server;
-
-        //Connection flag set to true
-        this.connected = true;
-    }
-
-    /**
-     * Subroutine method to display a message passed as the parameter
-     * @param message: String message to be displayed
-     */
-    public void displayMessage(String message) {
-        printWriter.println(message);
-    }
 
-    /**
-     * Boolean method which validates whether or not the client user is leaving the chat
-     * by checking the input of the user (should enter __QUIT to leave the chat)
-     * @param clientInput: String value of client input
-     * @return true/false if they are leaving or not
-     */
-    public boolean isLeavingChat(String clientInput) {
-        if (clientInput.equals("__QUIT")) {
-            return true;
-        } return false;
-    }
-
-    /**
-     * Boolean method to validate if a client message sent is directed exclusively to the bot or not
-     * (Clients should address the bot with 'HEY_BOT!' if they wish to converse with the bot)
-     * @param input: String value of input
-     * @return true/false if the message sent is indeed directed to the bot or not
-     */
-    public boolean messageDirectedToBot(String input) {
-        if (input.startsWith("HEY_BOT!")) {
-            return true;
-        } return false;
+        //The output stream is set up here rather than in run(), since broadcasts can reach the client
+        //as soon as it is added to the server, before its thread has started
+        try {
+            this.outputStream = new BufferedOutputStream(this.socket.getOutputStream());
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
     }
 
     /**
-     * Boolean method to validate if the message send is from the bot or not
-     * @param message: String value of the message
-     * @return true/false if from bot or not
+     * Subroutine method run on its own thread, which writes the queued messages to the client
+     * until the connection closes. Every line pending for the client is collected into the buffered
+     * stream and flushed in one write, or sooner if the batch reaches the size threshold of its FlushPolicy
      */
-    public boolean messageFromBot(String message) {
-        if (message.contains("@"+this.username)) {
-            return true;
-        } return false;
+    private void writeQueuedMessages() {
+        try {
+            while (this.connected) {
+                EncodedMessage message = this.outboundQueue.poll(1000, TimeUnit.MILLISECONDS);
+                if (message == null) {
+                    continue;
+                }
+                FlushPolicy flushPolicy = this.chatServer.getFlushPolicy(this.connectionClass);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushPolicy.getMaxDelayMillis());
+                int batchBytes = 0;
+                int batchMessages = 0;
+
+                while (message != null) {
+                    //The already encoded bytes (line or frame, as the client chose) are written as they are
+                    byte[] bytes = message.getBytes(this.wireProtocol);
+                    this.outputStream.write(bytes);
+                    batchBytes += bytes.length;
+                    batchMessages += 1;
+                    if (batchBytes >= flushPolicy.getMaxBatchBytes()) {
+                        break;
+                    }
+
+                    //Take the next pending line, lingering for more only until the policy's deadline
+                    message = this.outboundQueue.poll();
+                    if (message == null && flushPolicy.getMaxDelayMillis() > 0) {
+                        long remaining = deadline - System.nanoTime();
+                        if (remaining > 0) {
+                            message = this.outboundQueue.poll(remaining, TimeUnit.NANOSECONDS);
+                        }
+                    }
+                }
+                this.outputStream.flush();
+                this.chatServer.getMetrics().messagesSent(batchMessages, batchBytes);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            //The socket has closed; the reading side removes the connection
+        }
     }
 
     /**
      * Method to force leave the user, by setting the connection status to false
      * then closing the socket
      */
+    @Override
     public void forceLeaveUser() {
         //this.socket.close();
         this.connected = false;
@@ -84,75 +91,121 @@ public class ClientThread implements Runnable {
         //System.exit(0);
     }
 
+    /**
+     * Method to read a framed client: a JOIN frame with the username, then every frame until the client leaves
+     * @param input: DataInputStream of the socket, positioned just after the handshake line
+     * @throws IOException: if reading fails or a frame is not valid
+     */
+    private void readFrames(DataInputStream input) throws IOException {
+        Frame joinFrame = Frame.read(input);
+        if (joinFrame == null || joinFrame.getType() != FrameType.JOIN) {
+            this.socket.close();
+            return;
+        }
+        joinChat(joinFrame.getPayload());
+
+        while (this.connected) {
+            Frame frame = Frame.read(input);
+            if (frame == null || !processFrame(frame)) {
+                break;
+            }
+        }
+        this.socket.close();
+    }
+
     /**
      * Overriding method from the Runnable interface to run the Thread
      */
     @Override
     public void run() {
         try {
-            //Obtain the input stream
-            InputStream input = this.socket.getInputStream();
-            BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(input));
-
-            //Obtain the output stream
-            OutputStream output = this.socket.getOutputStream();
-            printWriter = new PrintWriter(output, true);
+            //Obtain the input stream; the first line is either the username or the framed protocol handshake
+            InputStream input = new BufferedInputStream(new MeteredInputStream(this.socket.getInputStream()));
+            String firstLine = Frame.readLine(input);
+
+            //Compression is asked for ahead of the username (or the framed handshake)
+            if (firstLine != null && firstLine.startsWith(PacketDeflater.HANDSHAKE)) {
+                this.packetDeflater = this.chatServer.createPacketDeflater(firstLine);
+                this.outputStream = new DeflatingOutputStream(this.outputStream, this.packetDeflater);
+                firstLine = Frame.readLine(input);
+            }
+            if (Frame.HANDSHAKE.equals(firstLine)) {
+                this.wireProtocol = WireProtocol.FRAMED;
+            }
 
-            //Obtain the username
-            this.username = bufferedReader.readLine();
-            chatServer.addNewMemberToChat(this.username);
+            //Start the writer, which sends the messages queued for this client, now that its protocol is known
+            this.chatServer.getConnectionExecutor().execute(this::writeQueuedMessages);
 
-            //Display to all other members (excluding the user itself), that user of entered username has joined the chat
-            String joiningMessage = "##-- "+this.username+" has joined the chat --##";
-            this.chatServer.broadcastToAllOtherMembers(joiningMessage, this);
+            if (this.wireProtocol == WireProtocol.FRAMED) {
+                readFrames(new DataInputStream(input));
+                return;
+            }
+            //Obtain the username and join the chat
+            if (firstLine == null) {
+                this.socket.close();
+                return;
+            }
+            joinChat(firstLine);
 
             String clientMessage;
 
             //Indefinite while loop iterates while the connection is active
             while (this.connected == true) {
 
-                //Reads from the the bufferedReader object to obtain the clientMessage
-                clientMessage = bufferedReader.readLine();
+                //Reads the next line from the client, cut to the largest message accepted
+                clientMessage = Frame.readLine(input, Frame.MAX_MESSAGE_BYTES);
                 if (clientMessage == null) {
                     break;
                 }
-                //Display the message
-                displayMessage(clientMessage);
-
-                //Check if the user is leaving the chat or not
-                if (isLeavingChat(clientMessage)) {
-
-                    //Broadcast leaving message to all other users and remove user from chat
-                    String leavingMessage = "##-- "+this.username+" has left the chat --##";
-                    this.chatServer.broadcastToAllOtherMembers(leavingMessage, this);
-                    this.chatServer.removeMemberFromChat(this.username);
+                //Handle the message; stop reading once the user has left the chat
+                if (!processClientMessage(clientMessage)) {
                     break;
                 }
-                //Check if the message is directed to the bot
-                else if (messageDirectedToBot(clientMessage)) {
-                    //Make server broadcast the message to the bot, so it appears in the bot's input stream
-                    //Then the bot will reply to that message
-                    this.chatServer.displayMessageToServer("[" + this.username + "]: " + clientMessage);
-                    this.chatServer.broadcastToAllOtherMembers("[" + this.username + "]: " + clientMessage, this);
-                //Otherwise it simply displays the message as a normal message to the server and all other members of the chat
-                } else {
-                    String serverMessage = "["+this.username+"]: "+clientMessage;
-                    this.chatServer.broadcastToAllOtherMembers(serverMessage, this);
-                    this.chatServer.displayMessageToServer(serverMessage);
-                }
             }
             //Close the chat
             this.socket.close();
         } catch (SocketException e) {
-            //Catch any SocketExceptions raised when a user leaves the chat using the '__quit' command
+            //Catch any SocketExceptions raised when a user leaves the chat using the '__quit' command,
+            //or when the client is disconnected by the server; only this client's connection is closed
             try {
                 this.socket.close();
             } catch (IOException i) {
                 i.printStackTrace();
             }
-            System.exit(0);
         } catch (IOException e) {
             System.out.println("Error while processing message sent...");
+        } finally {
+            //Stop the writer and remove the connection from the server
+            connectionClosed();
+        }
+    }
+
+    //Input stream which counts the bytes read from the client's socket into the server's metrics,
+    //and marks the connection as alive for the IdleReaper
+    private class MeteredInputStream extends FilterInputStream {
+
+        private MeteredInputStream(InputStream input) {
+            super(input);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value >= 0) {
+                chatServer.getMetrics().bytesReceived(1);
+                chatServer.getIdleReaper().readFrom(ClientThread.this);
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int bytesRead = super.read(buffer, offset, length);
+            if (bytesRead > 0) {
+                chatServer.getMetrics().bytesReceived(bytesRead);
+                chatServer.getIdleReaper().readFrom(ClientThread.this);
+            }
+            return bytesRead;
         }
     }
 }
@@ -0,0 +1,68 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.zip.Adler32;
+
+//Preset dictionary for the deflate compressed connections. Deflate can refer back into the dictionary
+//from the very first message, so the chat's fixed notices and the bot's replies compress well even on a new connection.
+//Both ends build the dictionary the same way, and the client names its dictionary (by checksum) in the handshake
+public final class CompressionDictionary {
+
+    //Deflate only looks back this far, so only the end of a longer dictionary is used
+    public static final int MAX_DICTIONARY_BYTES = 32 * 1024;
+
+    //Text which appears in almost every message, placed last (closest to the data) as it is referred to most
+    private static final String COMMON_PREFIXES =
+            "##-- You are now chatting in #lobby --##\n##-- No bot is online to answer you --##\n"
+            +"##-- The bot could not answer your message, please ask again --##\n"
+            +"[SERVER]: [#lobby] HEY_BOT! [Chat_Bot]: @\n"
+            +" has left the chat --##\n##-- has joined the chat --##\n";
+
+    /**
+     * Static method to build the dictionary from the common prefixes alone (built into every client and server)
+     * @return byte array dictionary
+     */
+    public static byte[] prefixesOnly() {
+        return COMMON_PREFIXES.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Static method to build the dictionary from the reply corpus followed by the common prefixes.
+     * Falls back to the prefixes alone if the replies file cannot be read
+     * @param repliesPath: relative filepath of the replies file
+     * @return byte array dictionary
+     */
+    public static byte[] withReplies(String repliesPath) {
+        ByteArrayOutputStream dictionary = new ByteArrayOutputStream();
+        try {
+            ReplyCorpus corpus = ReplyCorpus.load(Paths.get(repliesPath));
+            for (int i = 0; i < corpus.size(); i++) {
+                dictionary.write((corpus.getReply(i)+"\n").getBytes(StandardCharsets.UTF_8));
+            }
+        } catch (IOException e) {
+            return prefixesOnly();
+        }
+        dictionary.writeBytes(prefixesOnly());
+
+        byte[] bytes = dictionary.toByteArray();
+        if (bytes.length <= MAX_DICTIONARY_BYTES) {
+            return bytes;
+        }
+        byte[] tail = new byte[MAX_DICTIONARY_BYTES];
+        System.arraycopy(bytes, bytes.length - MAX_DICTIONARY_BYTES, tail, 0, MAX_DICTIONARY_BYTES);
+        return tail;
+    }
+
+    /**
+     * Static method to obtain the checksum of a dictionary, which identifies it in the handshake
+     * (the same Adler-32 value deflate writes into the stream header)
+     * @param dictionary: byte array dictionary
+     * @return Adler-32 checksum
+     */
+    public static long checksum(byte[] dictionary) {
+        Adler32 adler = new Adler32();
+        adler.update(dictionary);
+        return adler.getValue();
+    }
+}
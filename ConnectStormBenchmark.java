@@ -0,0 +1,265 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+//Reconnect storm against a ChatServer started in-process: a burst of clients connect at a steady pace over a few seconds,
+//the way every user reconnects at once after a network blip, and stay connected without sending anything.
+//Two latencies are measured from the moment each connect starts: until the client's handshake completes (which, once
+//the accept backlog overflows, includes the SYN retries of a second or more), and until the server has accepted it.
+//Connections are taken off the accept queue in the order they arrived, so the k-th connection started is counted as
+//accepted once the server's accept total reaches k (only approximately so with SO_REUSEPORT, which has a queue per listener)
+public class ConnectStormBenchmark {
+
+    //Longest the benchmark waits, after the last connect has started, for every connection to be accepted.
+    //When the accept queue overflows, Linux drops the client's final ACK while the client already counts as connected;
+    //as the clients send nothing, some of those connections are never accepted at all, and are reported as lost
+    private static final long SETTLE_MILLIS = 10000;
+
+    //Private object variables for the run
+    private final int connectionCount;
+    private final long stormNanos;
+    private final long[] startNanos;
+    private final ArrayList<SocketChannel> channels;
+    private Selector selector;
+
+    //Measurements
+    private final LatencyHistogram connectLatency;
+    private final LatencyHistogram acceptLatency;
+    private int connected;
+    private int failed;
+    private long lastAcceptedNanos;
+
+    /**
+     * Constructor method to set up the storm
+     * @param connectionCount: number of clients connecting
+     * @param stormMillis: period the connects are spread over, in milliseconds
+     */
+    public ConnectStormBenchmark(int connectionCount, long stormMillis) {
+        this.connectionCount = connectionCount;
+        this.stormNanos = stormMillis * 1000000L;
+        this.startNanos = new long[connectionCount];
+        this.channels = new ArrayList<SocketChannel>(connectionCount);
+        this.connectLatency = new LatencyHistogram();
+        this.acceptLatency = new LatencyHistogram();
+    }
+
+    /**
+     * Method to run the storm against the server, until every connection has been accepted or the wait runs out
+     * @param chatServer: ChatServer object which has begun on this machine
+     * @param port: port the server is listening on
+     * @return elapsed time of the storm in nanoseconds, from the first connect to the last accept
+     * @throws IOException: if the selector fails
+     */
+    public long run(ChatServer chatServer, int port) throws IOException {
+        this.selector = Selector.open();
+        InetSocketAddress address = new InetSocketAddress("127.0.0.1", port);
+        long acceptedBefore = chatServer.getMetrics().getConnectionsAccepted();
+        int started = 0;
+        int accepted = 0;
+        long begin = System.nanoTime();
+        long deadline = begin + this.stormNanos + SETTLE_MILLIS * 1000000L;
+
+        while (accepted < this.connectionCount && System.nanoTime() < deadline) {
+            //Start every connect which is due by now, so the pace holds even if the loop falls behind
+            long now = System.nanoTime();
+            while (started < this.connectionCount && now - begin >= this.stormNanos * started / this.connectionCount) {
+                startConnect(address, started);
+                started += 1;
+            }
+
+            if (this.selector.select(1) > 0) {
+                finishConnects();
+            }
+
+            //Every connection the server has accepted since the last look, oldest first
+            long acceptedTotal = Math.min(started, chatServer.getMetrics().getConnectionsAccepted() - acceptedBefore);
+            if (acceptedTotal > accepted) {
+                now = System.nanoTime();
+                while (accepted < acceptedTotal) {
+                    this.acceptLatency.record(now - this.startNanos[accepted]);
+                    accepted += 1;
+                }
+                this.lastAcceptedNanos = now;
+            }
+        }
+        return this.lastAcceptedNanos - begin;
+    }
+
+    /**
+     * Subroutine to start a non-blocking connect
+     * @param address: InetSocketAddress of the server
+     * @param index: index of the connection
+     */
+    private void startConnect(InetSocketAddress address, int index) {
+        this.startNanos[index] = System.nanoTime();
+        try {
+            SocketChannel channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            this.channels.add(channel);
+            if (channel.connect(address)) {
+                connectFinished(index);
+            } else {
+                channel.register(this.selector, SelectionKey.OP_CONNECT, index);
+            }
+        } catch (IOException e) {
+            //e.g. out of file descriptors or local ports
+            this.failed += 1;
+        }
+    }
+
+    /**
+     * Subroutine to complete the connects whose handshake has finished
+     */
+    private void finishConnects() {
+        Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+            try {
+                if (((SocketChannel) key.channel()).finishConnect()) {
+                    //The client stays connected but silent, so it is not polled any further
+                    key.interestOps(0);
+                    connectFinished((Integer) key.attachment());
+                }
+            } catch (IOException e) {
+                key.cancel();
+                this.failed += 1;
+            }
+        }
+    }
+
+    /**
+     * Subroutine to record a completed connect
+     * @param index: index of the connection
+     */
+    private void connectFinished(int index) {
+        this.connectLatency.record(System.nanoTime() - this.startNanos[index]);
+        this.connected += 1;
+    }
+
+    /**
+     * Method to close every client connection
+     */
+    public void close() {
+        for (SocketChannel channel : this.channels) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+            }
+        }
+    }
+
+    /**
+     * Static method to format the percentiles of a histogram of nanosecond latencies
+     * @param histogram: LatencyHistogram to format
+     * @return String summary in milliseconds
+     */
+    private static String percentiles(LatencyHistogram histogram) {
+        return String.format("count=%d mean=%.3f p50=%.3f p90=%.3f p99=%.3f p999=%.3f max=%.3f (ms)",
+                histogram.getCount(), histogram.getMean() / 1e6,
+                histogram.getValueAtPercentile(50) / 1e6, histogram.getValueAtPercentile(90) / 1e6,
+                histogram.getValueAtPercentile(99) / 1e6, histogram.getValueAtPercentile(99.9) / 1e6,
+                histogram.getMax() / 1e6);
+    }
+
+    /**
+     * Method to write the report of the run
+     * @param mode: ServerMode the server ran with
+     * @param acceptorGroup: AcceptorGroup of the server
+     * @param elapsedNanos: elapsed time of the storm, from the first connect to the last accept
+     * @return String report
+     */
+    private String report(ServerMode mode, AcceptorGroup acceptorGroup, long elapsedNanos) {
+        StringWriter text = new StringWriter();
+        PrintWriter report = new PrintWriter(text);
+        double seconds = elapsedNanos / 1e9;
+        report.println("##-- CONNECT STORM REPORT "+LocalDateTime.now()+" --##");
+        report.printf("mode=%s connections=%d over %.1f s (%.0f connects/s offered)%n", mode, this.connectionCount,
+                this.stormNanos / 1e9, this.connectionCount / (this.stormNanos / 1e9));
+        report.println("server: "+acceptorGroup.describe());
+        report.printf("accepted %d of %d in %.2f s (%.0f accepts/s), connected=%d failed=%d%n",
+                this.acceptLatency.getCount(), this.connectionCount, seconds,
+                seconds > 0 ? this.acceptLatency.getCount() / seconds : 0.0, this.connected, this.failed);
+        if (this.acceptLatency.getCount() < this.connected) {
+            report.printf("lost in the accept queue: %d connected but never accepted%n", this.connected - this.acceptLatency.getCount());
+        }
+        report.println("connect latency: "+percentiles(this.connectLatency));
+        report.println("accept latency:  "+percentiles(this.acceptLatency));
+        report.flush();
+        return text.toString();
+    }
+
+    /**
+     * Main method to run a single storm against a server started in-process with the given configuration
+     * (one configuration per run, as shutting the server down ends the process).
+     * File descriptors are needed for both ends of every connection, so 'ulimit -n' must be over twice '-connections'
+     * @param args: '-connections', '-seconds' (period the connects are spread over), '-port', '-mode', '-acceptors',
+     *            '-loops', '-backlog', '-reuseport' (true or false) and '-report' (file the report is appended to)
+     */
+    public static void main(String[] args) throws Exception {
+        int connections = 20000;
+        long seconds = 5;
+        int port = 17001;
+        ServerMode mode = ServerMode.NIO;
+        int acceptors = 1;
+        int loops = Runtime.getRuntime().availableProcessors();
+        int backlog = 1024;
+        boolean reusePort = false;
+        String reportPath = "connect-storm-report.txt";
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-connections")) { connections = Integer.parseInt(args[i+1]); }
+            if (args[i].equals("-seconds")) { seconds = Long.parseLong(args[i+1]); }
+            if (args[i].equals("-port")) { port = Integer.parseInt(args[i+1]); }
+            if (args[i].equals("-mode")) { mode = ServerMode.fromString(args[i+1]); }
+            if (args[i].equals("-acceptors")) { acceptors = Integer.parseInt(args[i+1]); }
+            if (args[i].equals("-loops")) { loops = Integer.parseInt(args[i+1]); }
+            if (args[i].equals("-backlog")) { backlog = Integer.parseInt(args[i+1]); }
+            if (args[i].equals("-reuseport")) { reusePort = Boolean.parseBoolean(args[i+1]); }
+            if (args[i].equals("-report")) { reportPath = args[i+1]; }
+        }
+
+        //Silence the server's console output so only the results are printed,
+        //and give the server console an input which never ends
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        PipedOutputStream consoleInput = new PipedOutputStream();
+        System.setIn(new PipedInputStream(consoleInput));
+
+        ChatServer chatServer = new ChatServer(port, mode);
+        chatServer.configureAcceptors(acceptors, loops, backlog, reusePort);
+        Thread serverThread = new Thread(chatServer::begin);
+        serverThread.setDaemon(true);
+        serverThread.start();
+        while (chatServer.getAcceptorGroup() == null) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(200);
+
+        ConnectStormBenchmark benchmark = new ConnectStormBenchmark(connections, seconds * 1000);
+        long elapsedNanos = benchmark.run(chatServer, port);
+        String report = benchmark.report(mode, chatServer.getAcceptorGroup(), elapsedNanos);
+        benchmark.close();
+
+        out.print(report);
+        Files.write(Paths.get(reportPath), report.getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        out.println("Report appended to "+reportPath);
+        System.exit(0);
+    }
+}
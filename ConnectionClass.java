@@ -0,0 +1,13 @@
+/**
+ * Enum of the kinds of connection the server treats differently (e.g. when batching writes)
+ */
+public enum ConnectionClass {
+    //A human chat client
+    USER,
+
+    //An automated chat bot
+    BOT,
+
+    //A server-operated link, such as an administrative or server-to-server connection
+    ADMIN
+}
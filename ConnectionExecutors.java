@@ -0,0 +1,62 @@
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+
+//Utility class which creates the executor used to run the ClientThread and ServerThread
+//runnables, depending on the server mode selected at startup
+public class ConnectionExecutors {
+
+    /**
+     * Static method to create the executor for a server mode. The VIRTUAL mode needs Java 21 or later; on an older
+     * JVM it falls back to platform threads, and says so on standard error (which is never redirected to the
+     * console log or silenced by the benchmarks), since the server would otherwise look like it runs virtual threads
+     * @param mode: ServerMode selected at startup
+     * @return Executor which runs each submitted runnable on its own (platform or virtual) thread
+     */
+    public static Executor forMode(ServerMode mode) {
+        if (mode == ServerMode.VIRTUAL) {
+            Executor virtualExecutor = virtualThreadExecutor();
+            if (virtualExecutor != null) {
+                return virtualExecutor;
+            }
+            System.err.println("##-- WARNING: '-mode virtual' needs Java 21 or later, but this JVM is "+Runtime.version()+" --##");
+            System.err.println("##-- WARNING: every client is served by its own PLATFORM thread instead (the same as '-mode thread') --##");
+        }
+        return platformThreadExecutor();
+    }
+
+    /**
+     * Boolean method to check if the running JVM supports virtual threads
+     * @return true/false if the VIRTUAL mode really runs on virtual threads
+     */
+    public static boolean virtualThreadsAvailable() {
+        try {
+            java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Static method to create an executor which starts a new platform thread per runnable
+     * (the same behaviour as calling new Thread(runnable).start() directly)
+     * @return thread-per-task Executor
+     */
+    public static Executor platformThreadExecutor() {
+        return runnable -> new Thread(runnable).start();
+    }
+
+    /**
+     * Static method to create a virtual-thread-per-task executor.
+     * Looked up reflectively so that the server still compiles and runs on JVMs older than Java 21
+     * @return virtual thread Executor, or null if the running JVM does not support them
+     */
+    public static Executor virtualThreadExecutor() {
+        try {
+            Method factory = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (Executor) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,278 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+//Asynchronous log of the server's console lines. The threads handling messages only claim a slot of a lock-free ring
+//buffer and leave the line there; a single writer thread drains every line waiting and writes them out together,
+//to standard output or to a file rotated once it reaches a size. When the buffer is full, the overflow policy
+//decides whether a line is dropped (and counted) or its thread waits for the writer
+public class ConsoleLog {
+
+    //Most characters the writer collects before writing them out
+    private static final int MAX_BATCH_CHARS = 64 * 1024;
+
+    //How long the writer sleeps when there is nothing to write, unless woken by a new line
+    private static final long IDLE_PARK_NANOS = 100000000L;
+
+    //Ring buffer: 'tail' is the next sequence producers claim, 'head' the next one the writer takes.
+    //A slot is null until the producer which claimed it has stored its line
+    private final AtomicReferenceArray<String> slots;
+    private final int mask;
+    private final AtomicLong tail;
+    private volatile long head;
+
+    private final ConsoleOverflowPolicy overflowPolicy;
+    private final LongAdder droppedCount;
+    private final LongAdder writtenCount;
+
+    //Where the lines go: standard output if the path is null, otherwise the file, rotated when it reaches maxFileBytes
+    private final Path path;
+    private final long maxFileBytes;
+    private final int rotatedFiles;
+    private OutputStream fileStream;
+    private long fileBytes;
+
+    private final Thread writer;
+    private volatile boolean writerParked;
+    private volatile boolean closed;
+
+    /**
+     * Constructor method to create a log writing to standard output
+     * @param capacity: number of lines the buffer holds (rounded up to a power of two)
+     * @param overflowPolicy: ConsoleOverflowPolicy applied when the buffer is full
+     */
+    public ConsoleLog(int capacity, ConsoleOverflowPolicy overflowPolicy) {
+        this(capacity, overflowPolicy, null, 0, 0);
+    }
+
+    /**
+     * Constructor method to create a log, and start its writer thread
+     * @param capacity: number of lines the buffer holds (rounded up to a power of two)
+     * @param overflowPolicy: ConsoleOverflowPolicy applied when the buffer is full
+     * @param path: String path of the file written to, or null for standard output
+     * @param maxFileBytes: size at which the file is rotated (0 to never rotate)
+     * @param rotatedFiles: number of rotated files kept, as path.1 (newest) to path.N
+     */
+    public ConsoleLog(int capacity, ConsoleOverflowPolicy overflowPolicy, String path, long maxFileBytes, int rotatedFiles) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.slots = new AtomicReferenceArray<String>(size);
+        this.mask = size - 1;
+        this.tail = new AtomicLong();
+        this.head = 0;
+        this.overflowPolicy = overflowPolicy;
+        this.droppedCount = new LongAdder();
+        this.writtenCount = new LongAdder();
+        this.path = path == null ? null : Paths.get(path);
+        this.maxFileBytes = maxFileBytes;
+        this.rotatedFiles = rotatedFiles;
+
+        this.writer = new Thread(this::writeLines, "console-log");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Method to add a line to the log, applying the overflow policy if the buffer is full
+     * @param line: String line to write
+     */
+    public void log(String line) {
+        int spins = 0;
+        while (!tryLog(line)) {
+            if (this.overflowPolicy == ConsoleOverflowPolicy.DROP || this.closed) {
+                this.droppedCount.increment();
+                return;
+            }
+            //Spin briefly, since the writer usually frees room quickly, then back off
+            if (spins++ < 100) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(50000);
+            }
+        }
+    }
+
+    /**
+     * Method to claim a slot of the buffer and store a line in it, waking the writer if it is asleep
+     * @param line: String line to write
+     * @return false if the buffer is full
+     */
+    private boolean tryLog(String line) {
+        long sequence;
+        do {
+            sequence = this.tail.get();
+            if (sequence - this.head >= this.slots.length()) {
+                return false;
+            }
+        } while (!this.tail.compareAndSet(sequence, sequence + 1));
+        this.slots.lazySet((int) sequence & this.mask, line);
+
+        if (this.writerParked) {
+            LockSupport.unpark(this.writer);
+        }
+        return true;
+    }
+
+    /**
+     * Subroutine run by the writer thread, which drains the buffer in batches until the log is closed
+     * and every line stored has been written
+     */
+    private void writeLines() {
+        StringBuilder batch = new StringBuilder();
+        while (true) {
+            int lines = 0;
+            long next = this.head;
+            String line;
+            while (batch.length() < MAX_BATCH_CHARS && (line = this.slots.get((int) next & this.mask)) != null) {
+                this.slots.lazySet((int) next & this.mask, null);
+                next += 1;
+                this.head = next;
+                batch.append(line).append('\n');
+                lines += 1;
+            }
+            if (lines > 0) {
+                write(batch);
+                batch.setLength(0);
+                this.writtenCount.add(lines);
+                continue;
+            }
+            if (this.closed && this.tail.get() == this.head) {
+                break;
+            }
+            //A line claimed but not stored yet leaves the buffer non-empty, so the writer only spins until it appears
+            this.writerParked = true;
+            if (this.tail.get() == this.head && !this.closed) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+            this.writerParked = false;
+        }
+        closeFile();
+    }
+
+    /**
+     * Subroutine to write a batch of lines, rotating the file first if it has reached its size
+     * @param batch: StringBuilder of the lines, each ending in a newline
+     */
+    private void write(StringBuilder batch) {
+        if (this.path == null) {
+            //A single print, so the batch is not interleaved with other output
+            System.out.print(batch);
+            System.out.flush();
+            return;
+        }
+        byte[] bytes = batch.toString().getBytes(StandardCharsets.UTF_8);
+        try {
+            if (this.fileStream == null) {
+                this.fileStream = Files.newOutputStream(this.path, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                this.fileBytes = Files.size(this.path);
+            }
+            if (this.maxFileBytes > 0 && this.fileBytes > 0 && this.fileBytes + bytes.length > this.maxFileBytes) {
+                rotate();
+            }
+            this.fileStream.write(bytes);
+            this.fileStream.flush();
+            this.fileBytes += bytes.length;
+        } catch (IOException e) {
+            System.out.println("Could not write the console log to "+this.path+"; "+e.getMessage());
+        }
+    }
+
+    /**
+     * Subroutine to rotate the file: path.N is removed, every other rotated file moves up by one,
+     * and the current file becomes path.1
+     * @throws IOException: if a file cannot be moved or the new file cannot be opened
+     */
+    private void rotate() throws IOException {
+        this.fileStream.close();
+        if (this.rotatedFiles > 0) {
+            for (int i = this.rotatedFiles - 1; i >= 1; i--) {
+                Path older = Paths.get(this.path+"."+i);
+                if (Files.exists(older)) {
+                    Files.move(older, Paths.get(this.path+"."+(i+1)), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            Files.move(this.path, Paths.get(this.path+".1"), StandardCopyOption.REPLACE_EXISTING);
+        }
+        this.fileStream = Files.newOutputStream(this.path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.fileBytes = 0;
+    }
+
+    /**
+     * Subroutine to close the file, if one is open
+     */
+    private void closeFile() {
+        if (this.fileStream != null) {
+            try {
+                this.fileStream.close();
+            } catch (IOException e) {
+            }
+        }
+    }
+
+    /**
+     * Method to stop the log once the lines already stored have been written; lines logged afterwards are dropped
+     */
+    public void close() {
+        this.closed = true;
+        LockSupport.unpark(this.writer);
+        try {
+            this.writer.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Accessor method to obtain the number of lines dropped because the buffer was full
+     * @return dropped line count
+     */
+    public long getDroppedCount() {
+        return this.droppedCount.sum();
+    }
+
+    /**
+     * Accessor method to obtain the number of lines written
+     * @return written line count
+     */
+    public long getWrittenCount() {
+        return this.writtenCount.sum();
+    }
+
+    /**
+     * Accessor method to obtain the number of lines waiting to be written
+     * @return pending line count
+     */
+    public long getPendingCount() {
+        return Math.max(0, this.tail.get() - this.head);
+    }
+
+    /**
+     * Accessor method to obtain the number of lines the buffer holds
+     * @return capacity in lines
+     */
+    public int getCapacity() {
+        return this.slots.length();
+    }
+
+    /**
+     * Accessor method to obtain the overflow policy of the log
+     * @return ConsoleOverflowPolicy object
+     */
+    public ConsoleOverflowPolicy getOverflowPolicy() {
+        return this.overflowPolicy;
+    }
+
+    @Override
+    public String toString() {
+        return this.path == null ? "stdout" : this.path.toString();
+    }
+}
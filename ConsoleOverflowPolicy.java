@@ -0,0 +1,26 @@
+/**
+ * Enum of the policies applied when the server's console log cannot keep up with the lines written to it
+ * (selected at startup using '-consoleOverflow' on the command line)
+ */
+public enum ConsoleOverflowPolicy {
+    //Discard the new line and count it, so that message handling never waits for the console
+    DROP,
+
+    //Wait for the console writer to make room, so that no line is lost
+    BLOCK;
+
+    /**
+     * Static method to parse the policy given on the command line
+     * @param value: String value of the policy (case insensitive)
+     * @return matching ConsoleOverflowPolicy, or DROP if the value is not recognised
+     */
+    public static ConsoleOverflowPolicy fromString(String value) {
+        for (ConsoleOverflowPolicy policy : ConsoleOverflowPolicy.values()) {
+            if (policy.name().equalsIgnoreCase(value)) {
+                return policy;
+            }
+        }
+        System.out.println("Unknown console overflow policy '"+value+"', defaulting to "+DROP);
+        return DROP;
+    }
+}
@@ -0,0 +1,54 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+//Output stream which collects everything written between flushes, and sends it as one PacketDeflater packet on flush()
+public class DeflatingOutputStream extends OutputStream {
+
+    //Private object variables; the underlying stream, the compressor, and the batch collected since the last flush
+    private OutputStream output;
+    private PacketDeflater packetDeflater;
+    private ByteArrayOutputStream batch;
+
+    /**
+     * Constructor method to wrap a stream
+     * @param output: OutputStream the packets are written to
+     * @param packetDeflater: PacketDeflater of the connection
+     */
+    public DeflatingOutputStream(OutputStream output, PacketDeflater packetDeflater) {
+        this.output = output;
+        this.packetDeflater = packetDeflater;
+        this.batch = new ByteArrayOutputStream(8192);
+    }
+
+    @Override
+    public void write(int b) {
+        this.batch.write(b);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) {
+        this.batch.write(bytes, offset, length);
+    }
+
+    /**
+     * Overriding method to send the collected batch as a single packet, then flush the underlying stream
+     * @throws IOException: if writing fails
+     */
+    @Override
+    public void flush() throws IOException {
+        if (this.batch.size() > 0) {
+            byte[] bytes = this.batch.toByteArray();
+            this.batch.reset();
+            this.output.write(this.packetDeflater.encodePacket(bytes, bytes.length));
+        }
+        this.output.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        this.packetDeflater.end();
+        this.output.close();
+    }
+}
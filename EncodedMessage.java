@@ -0,0 +1,241 @@
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+//Immutable chat line encoded once to UTF-8 (including its line terminator), so that a broadcast
+//can hand the very same bytes to every recipient instead of each client encoding the String itself.
+//Nothing ever writes to the bytes, so they are simply shared and left to the garbage collector once the last
+//recipient has written them; there is no pool to return them to, and so no reference count.
+//The message also carries the header fields of the framed protocol (and is encoded once as a frame the first time
+//a framed recipient needs it), and the username of the member who sent it, which the message log records.
+//Several messages can be joined into one batch, which is queued and written as a whole but keeps a line or frame for each
+public final class EncodedMessage {
+
+    //Private object variables; the original text, its encoded bytes and a read-only buffer over them
+    private final String text;
+    private final byte[] bytes;
+    private final ByteBuffer buffer;
+
+    //Frame header fields and payload, and the frame encoding once created
+    private final FrameType frameType;
+    private final int memberId;
+    private final int roomId;
+    private final String payload;
+    private volatile byte[] frameBytes;
+    private volatile ByteBuffer frameBuffer;
+
+    //Username of the member who sent the message, or null for a notice
+    private final String sender;
+
+    //For a batch, the messages it joins (their frames are joined the same way); null for a single message
+    private final EncodedMessage[] parts;
+
+    /**
+     * Private constructor method, messages are created through EncodedMessage.of(), chat() and batch()
+     * @param text: String message text
+     * @param frameType: FrameType used when the message is sent as a frame
+     * @param memberId: member id of the frame header
+     * @param roomId: room id of the frame header
+     * @param payload: String payload of the frame
+     * @param sender: String username of the member who sent the message, or null for a notice
+     * @param parts: EncodedMessage array joined by a batch, or null for a single message
+     */
+    private EncodedMessage(String text, FrameType frameType, int memberId, int roomId, String payload, String sender,
+            EncodedMessage[] parts) {
+        this.text = text;
+        this.bytes = (text+"\n").getBytes(StandardCharsets.UTF_8);
+        this.buffer = ByteBuffer.wrap(this.bytes).asReadOnlyBuffer();
+        this.frameType = frameType;
+        this.memberId = memberId;
+        this.roomId = roomId;
+        this.payload = payload;
+        this.sender = sender;
+        this.parts = parts;
+    }
+
+    /**
+     * Static method to encode a server notice
+     * @param text: String message text
+     * @return new EncodedMessage object
+     */
+    public static EncodedMessage of(String text) {
+        return new EncodedMessage(text, FrameType.NOTICE, 0, 0, text, null, null);
+    }
+
+    /**
+     * Static method to encode a message whose frame payload is the text itself
+     * @param text: String message text
+     * @param frameType: FrameType used when the message is sent as a frame
+     * @param memberId: member id of the frame header
+     * @param roomId: room id of the frame header
+     * @return new EncodedMessage object
+     */
+    public static EncodedMessage of(String text, FrameType frameType, int memberId, int roomId) {
+        return new EncodedMessage(text, frameType, memberId, roomId, text, null, null);
+    }
+
+    /**
+     * Static method to encode a message whose frame payload differs from its text
+     * (e.g. a bot request, whose text names the member while the frame carries their id)
+     * @param text: String message text, sent to line protocol clients
+     * @param frameType: FrameType used when the message is sent as a frame
+     * @param memberId: member id of the frame header
+     * @param roomId: room id of the frame header
+     * @param payload: String payload, sent to framed clients
+     * @return new EncodedMessage object
+     */
+    public static EncodedMessage of(String text, FrameType frameType, int memberId, int roomId, String payload) {
+        return new EncodedMessage(text, frameType, memberId, roomId, payload, null, null);
+    }
+
+    /**
+     * Static method to encode a member's chat message, whose frame payload is the text itself
+     * @param text: String message text
+     * @param memberId: member id of the frame header
+     * @param roomId: room id of the frame header
+     * @param sender: String username of the member who sent the message
+     * @return new EncodedMessage object
+     */
+    public static EncodedMessage chat(String text, int memberId, int roomId, String sender) {
+        return new EncodedMessage(text, FrameType.CHAT, memberId, roomId, text, sender, null);
+    }
+
+    /**
+     * Static method to join messages into a batch, so that a recipient is sent them all with a single queue entry
+     * and a single write; each keeps its own line (or frame), in order
+     * @param messages: EncodedMessage array to join
+     * @return EncodedMessage of the batch
+     */
+    public static EncodedMessage batch(EncodedMessage... messages) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < messages.length; i++) {
+            text.append(i == 0 ? "" : "\n").append(messages[i].getText());
+        }
+        return new EncodedMessage(text.toString(), FrameType.NOTICE, 0, 0, text.toString(), null, messages.clone());
+    }
+
+    /**
+     * Accessor method to obtain the original text of the message
+     * @return String message text
+     */
+    public String getText() {
+        return this.text;
+    }
+
+    /**
+     * Accessor method to obtain the encoded bytes. The array is shared by every recipient and must not be modified
+     * @return byte array of the UTF-8 encoded line
+     */
+    public byte[] getBytes() {
+        return this.bytes;
+    }
+
+    /**
+     * Method to obtain a read-only buffer over the shared bytes, with its own position for a single writer.
+     * It is a duplicate of the one read-only buffer the message keeps, so each writer costs one small view
+     * @return read-only ByteBuffer view of the encoded line
+     */
+    public ByteBuffer asByteBuffer() {
+        return this.buffer.duplicate();
+    }
+
+    /**
+     * Accessor method to obtain the frame type of the message
+     * @return FrameType of the message
+     */
+    public FrameType getFrameType() {
+        return this.frameType;
+    }
+
+    /**
+     * Accessor method to obtain the member id of the frame header
+     * @return member id, or 0 if none
+     */
+    public int getMemberId() {
+        return this.memberId;
+    }
+
+    /**
+     * Accessor method to obtain the room id of the frame header
+     * @return room id, or 0 if none
+     */
+    public int getRoomId() {
+        return this.roomId;
+    }
+
+    /**
+     * Accessor method to obtain the frame payload
+     * @return String payload
+     */
+    public String getPayload() {
+        return this.payload;
+    }
+
+    /**
+     * Accessor method to obtain the username of the member who sent the message
+     * @return String username, or null for a notice
+     */
+    public String getSender() {
+        return this.sender;
+    }
+
+    /**
+     * Method to obtain the message encoded as a frame. It is encoded on first use, so a broadcast to
+     * line protocol clients only never pays for it (two threads racing simply encode the same bytes)
+     * @return byte array of the encoded frame, shared by every framed recipient
+     */
+    public byte[] getFrameBytes() {
+        byte[] encodedFrame = this.frameBytes;
+        if (encodedFrame == null && this.parts != null) {
+            ByteArrayOutputStream frames = new ByteArrayOutputStream();
+            for (EncodedMessage part : this.parts) {
+                frames.writeBytes(part.getFrameBytes());
+            }
+            encodedFrame = frames.toByteArray();
+            this.frameBytes = encodedFrame;
+        } else if (encodedFrame == null) {
+            //Messages are cut as they arrive, but a long username can still push one past what a frame carries
+            String framePayload = Frame.truncate(this.payload, Frame.MAX_PAYLOAD_BYTES);
+            encodedFrame = new Frame(this.frameType, this.memberId, this.roomId, framePayload).encode();
+            this.frameBytes = encodedFrame;
+        }
+        return encodedFrame;
+    }
+
+    /**
+     * Method to obtain the bytes to write for a recipient speaking the given protocol
+     * @param protocol: WireProtocol of the recipient
+     * @return byte array of the encoded line or frame
+     */
+    public byte[] getBytes(WireProtocol protocol) {
+        if (protocol == WireProtocol.FRAMED) {
+            return getFrameBytes();
+        }
+        return this.bytes;
+    }
+
+    /**
+     * Method to obtain a read-only buffer over the bytes for a recipient speaking the given protocol
+     * @param protocol: WireProtocol of the recipient
+     * @return read-only ByteBuffer view of the encoded line or frame
+     */
+    public ByteBuffer asByteBuffer(WireProtocol protocol) {
+        if (protocol != WireProtocol.FRAMED) {
+            return this.buffer.duplicate();
+        }
+        ByteBuffer encodedFrame = this.frameBuffer;
+        if (encodedFrame == null) {
+            encodedFrame = ByteBuffer.wrap(getFrameBytes()).asReadOnlyBuffer();
+            this.frameBuffer = encodedFrame;
+        }
+        return encodedFrame.duplicate();
+    }
+
+    /**
+     * Accessor method to obtain the size of the encoded line
+     * @return length in bytes
+     */
+    public int length() {
+        return this.bytes.length;
+    }
+}
@@ -0,0 +1,461 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+//Links between ChatServer processes, so that one chat (and its rooms) can span several nodes.
+//Peers are ordinary connections of the ADMIN class speaking a small line protocol after a '__PEER <node> <secret>' handshake.
+//The secret is shared by every node of the cluster: a handshake without it is refused and its connection closed, so only
+//the cluster's own nodes can send the lines below, which are trusted to name members and carry their messages:
+//  JOIN <username> / LEAVE <username>    a member of the sending node joined or left
+//  ALL <message>                         a message broadcast to every member
+//  ROOM <room>\t<sender>\t<message>      a message broadcast to a room, with the username of the member
+//                                        who sent it (empty for a notice)
+//Each broadcast is forwarded once to every peer and fanned out locally there, but never forwarded again,
+//so the nodes are expected to be linked in a full mesh
+public class Federation {
+
+    //First line sent on a server-to-server link, followed by the sender's node name and the cluster's secret
+    public static final String HANDSHAKE = "__PEER";
+
+    //How long a dialer waits before trying an unreachable peer again
+    private static final long REDIAL_MILLIS = 2000;
+
+    //Private object variables; the live link to each peer by node name, and the members online on each other node
+    private final ChatServer chatServer;
+    private volatile String nodeName;
+
+    //Secret every node of the cluster is configured with; no peer is accepted until it is set
+    private volatile byte[] secret;
+    private final ConcurrentHashMap<String, ChatConnection> peersByNode;
+    private final ConcurrentHashMap<String, String> remoteMembers;
+
+    //Links this node dialled, by peer address, and the node name learned at each address
+    private final ConcurrentHashMap<ChatConnection, String> dialledLinks;
+    private final ConcurrentHashMap<String, String> nodesByAddress;
+
+    //Peer addresses which turned out to be this node itself (or a node with the same name), which are not dialled again
+    private final Set<String> selfAddresses;
+    private volatile boolean running;
+
+    //Peer addresses added before the server began, which are only dialled once start() is called
+    private final List<InetSocketAddress> peers;
+    private boolean started;
+
+    /**
+     * Constructor method to create the federation of a server, with no peers yet
+     * @param chatServer: ChatServer object of this node
+     * @param nodeName: String name of this node, unique within the cluster
+     */
+    public Federation(ChatServer chatServer, String nodeName) {
+        this.chatServer = chatServer;
+        this.nodeName = nodeName;
+        this.peersByNode = new ConcurrentHashMap<String, ChatConnection>();
+        this.remoteMembers = new ConcurrentHashMap<String, String>();
+        this.dialledLinks = new ConcurrentHashMap<ChatConnection, String>();
+        this.nodesByAddress = new ConcurrentHashMap<String, String>();
+        this.selfAddresses = ConcurrentHashMap.newKeySet();
+        this.running = true;
+        this.peers = new ArrayList<InetSocketAddress>();
+    }
+
+    /**
+     * Static method to make up the default name of a node, from its host name and port, so that nodes on different
+     * hosts do not share a name just because they listen on the same port
+     * @param port: port the node accepts clients on
+     * @return String node name, as host:port
+     */
+    public static String defaultNodeName(int port) {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (IOException e) {
+            host = UUID.randomUUID().toString().substring(0, 8);
+        }
+        return host+":"+port;
+    }
+
+    /**
+     * Method to add a peer to the cluster; it is dialled once the server begins (or at once, if it already has)
+     * @param host: String host name of the peer
+     * @param port: port the peer accepts clients on
+     */
+    public synchronized void addPeer(String host, int port) {
+        InetSocketAddress peer = InetSocketAddress.createUnresolved(host, port);
+        this.peers.add(peer);
+        if (this.started) {
+            startDialling(peer);
+        }
+    }
+
+    /**
+     * Method to start dialling every peer added so far, when the server begins
+     */
+    public synchronized void start() {
+        if (this.started) {
+            return;
+        }
+        this.started = true;
+        for (InetSocketAddress peer : this.peers) {
+            startDialling(peer);
+        }
+    }
+
+    /**
+     * Subroutine to start the thread dialling a peer, which keeps dialling it whenever the link is down
+     * @param peer: unresolved InetSocketAddress of the peer
+     */
+    private void startDialling(InetSocketAddress peer) {
+        String host = peer.getHostString();
+        int port = peer.getPort();
+        String address = host+":"+port;
+        Thread dialer = new Thread(() -> {
+            while (this.running && !this.selfAddresses.contains(address)) {
+                String node = this.nodesByAddress.get(address);
+                if (!this.dialledLinks.containsValue(address) && (node == null || !this.peersByNode.containsKey(node))) {
+                    dial(host, port, address);
+                }
+                try {
+                    Thread.sleep(REDIAL_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, "peer-dialer-"+address);
+        dialer.setDaemon(true);
+        dialer.start();
+    }
+
+    /**
+     * Subroutine to open a link to a peer: the handshake is written first, then the socket is served
+     * like any other client, so the peer's answering handshake arrives as its 'username'
+     * @param host: String host name of the peer
+     * @param port: port of the peer
+     * @param address: String address of the peer, as host:port
+     */
+    private void dial(String host, int port, String address) {
+        try {
+            Socket socket = new Socket();
+            socket.connect(new InetSocketAddress(host, port), (int) REDIAL_MILLIS);
+            socket.setTcpNoDelay(true);
+            OutputStream output = socket.getOutputStream();
+            output.write((handshakeLine()+"\n").getBytes(StandardCharsets.UTF_8));
+            output.flush();
+
+            ClientThread link = new ClientThread(socket, this.chatServer);
+            this.dialledLinks.put(link, address);
+            this.chatServer.addConnection(link);
+            this.chatServer.getIdleReaper().track(link);
+            this.chatServer.getConnectionExecutor().execute(link);
+        } catch (IOException e) {
+            //The peer is not up yet; the dialer tries again later
+        }
+    }
+
+    /**
+     * Boolean method to check if the first line of a connection is a peer's handshake
+     * @param firstLine: String first line read from the connection
+     * @return true/false if the connection is a server-to-server link
+     */
+    public static boolean isHandshake(String firstLine) {
+        if (firstLine.startsWith(HANDSHAKE+" ")) {
+            return true;
+        } return false;
+    }
+
+    /**
+     * Subroutine to build this node's handshake line
+     * @return String handshake line
+     */
+    private String handshakeLine() {
+        return HANDSHAKE+" "+this.nodeName+" "+new String(this.secret, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Boolean method to check a peer's handshake against the cluster's secret. Both ends check: the dialled node the
+     * dialler's handshake, and the dialler the answer. A connection failing the check must be closed by the caller
+     * @param link: ChatConnection the handshake was read from
+     * @param handshake: String handshake line read from the link
+     * @return true/false if the handshake carries the cluster's secret
+     */
+    public boolean authenticate(ChatConnection link, String handshake) {
+        byte[] secret = this.secret;
+        String[] nodeAndSecret = handshake.substring(HANDSHAKE.length()).trim().split(" ", 2);
+        //Compared in constant time, so the secret cannot be guessed from how fast a wrong one is refused
+        if (secret != null && nodeAndSecret.length == 2
+                && MessageDigest.isEqual(secret, nodeAndSecret[1].getBytes(StandardCharsets.UTF_8))) {
+            return true;
+        }
+        this.dialledLinks.remove(link);
+        this.chatServer.displayMessageToServer("##-- Refused a peer handshake from "+nodeAndSecret[0]+" on connection #"
+                +link.getConnectionId()+": "+(secret == null ? "no -peerSecret is set" : "wrong secret")+" --##");
+        return false;
+    }
+
+    /**
+     * Method called once a peer's handshake has been read and authenticated. Only one link is kept per peer: if both
+     * nodes dialled each other, the link dialled by the node whose name sorts first wins, which both ends agree on
+     * @param link: ChatConnection of the link
+     * @param handshake: String handshake line read from the link
+     */
+    public void peerConnected(ChatConnection link, String handshake) {
+        String node = handshake.substring(HANDSHAKE.length()).trim().split(" ", 2)[0];
+        String address = this.dialledLinks.get(link);
+        boolean dialledByUs = address != null;
+        if (dialledByUs) {
+            this.nodesByAddress.put(address, node);
+        }
+        if (!this.running) {
+            link.forceLeaveUser();
+            return;
+        }
+        //A node cannot tell a link to itself from a link to another node of the same name; either way the link is
+        //never used. The dialled end still answers, so that the dialler learns of it too, closes the link and stops
+        //dialling that address
+        if (node.equals(this.nodeName)) {
+            this.chatServer.displayMessageToServer("##-- Dropped a link to "+(dialledByUs ? address : "connection #"
+                    +link.getConnectionId())+": the peer has this node's own name "+node
+                    +" (a link to itself, or two nodes given the same -node) --##");
+            if (dialledByUs) {
+                this.selfAddresses.add(address);
+                link.forceLeaveUser();
+            } else {
+                link.displayMessage(handshakeLine());
+            }
+            return;
+        }
+
+        //The node which was dialled answers with its own handshake, before the link is visible to any forwarding thread
+        if (!dialledByUs) {
+            link.displayMessage(handshakeLine());
+        }
+
+        String dialler = dialledByUs ? this.nodeName : node;
+        boolean preferred = dialler.equals(this.nodeName.compareTo(node) < 0 ? this.nodeName : node);
+        ChatConnection existing = this.peersByNode.putIfAbsent(node, link);
+        if (existing != null) {
+            if (!preferred) {
+                link.forceLeaveUser();
+                return;
+            }
+            this.peersByNode.put(node, link);
+            existing.forceLeaveUser();
+        }
+
+        this.chatServer.displayMessageToServer("##-- Linked to peer "+node+" --##");
+        sendRoster(link);
+    }
+
+    /**
+     * Method called once a peer's link has closed, forgetting the members of that node
+     * (unless another link to the node has replaced it)
+     * @param link: ChatConnection of the link
+     */
+    public void peerDisconnected(ChatConnection link) {
+        this.dialledLinks.remove(link);
+        for (Map.Entry<String, ChatConnection> peer : this.peersByNode.entrySet()) {
+            if (peer.getValue() == link && this.peersByNode.remove(peer.getKey(), link)) {
+                String node = peer.getKey();
+                this.remoteMembers.values().removeIf(node::equals);
+                this.chatServer.displayMessageToServer("##-- Lost the link to peer "+node+" --##");
+            }
+        }
+    }
+
+    /**
+     * Method to handle a line read from a peer's link
+     * @param link: ChatConnection of the link
+     * @param line: String line of the peer protocol
+     * @return true, since a link is only closed when its socket is
+     */
+    public boolean receive(ChatConnection link, String line) {
+        String node = nodeOf(link);
+        if (node == null) {
+            return true;
+        }
+        int space = line.indexOf(' ');
+        String command = space < 0 ? line : line.substring(0, space);
+        String argument = space < 0 ? "" : line.substring(space+1);
+
+        if (command.equals("ALL")) {
+            this.chatServer.deliverToAllMembers(argument);
+        } else if (command.equals("ROOM")) {
+            String[] roomSenderAndMessage = argument.split("\t", 3);
+            if (roomSenderAndMessage.length == 3 && !roomSenderAndMessage[0].isEmpty()) {
+                String sender = roomSenderAndMessage[1].isEmpty() ? null : roomSenderAndMessage[1];
+                this.chatServer.deliverToRoom(roomSenderAndMessage[2], roomSenderAndMessage[0], null, sender);
+            }
+        } else if (command.equals("JOIN")) {
+            remoteMemberJoined(argument, node);
+        } else if (command.equals("LEAVE")) {
+            this.remoteMembers.remove(argument, node);
+        }
+        return true;
+    }
+
+    /**
+     * Subroutine to record a member of another node. If a local member has the same name, the node whose name
+     * sorts last renames its member, so exactly one of the two gives way
+     * @param username: String username of the member
+     * @param node: String name of the node the member is on
+     */
+    private void remoteMemberJoined(String username, String node) {
+        this.remoteMembers.put(username, node);
+        ChatConnection localMember = this.chatServer.getMemberRegistry().getByName(username);
+        if (localMember != null && this.nodeName.compareTo(node) > 0) {
+            this.chatServer.renameMember(localMember, node);
+        }
+    }
+
+    /**
+     * Method to obtain the node a link belongs to
+     * @param link: ChatConnection of the link
+     * @return String node name, or null if the link is not (or no longer) a peer's live link
+     */
+    private String nodeOf(ChatConnection link) {
+        for (Map.Entry<String, ChatConnection> peer : this.peersByNode.entrySet()) {
+            if (peer.getValue() == link) {
+                return peer.getKey();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Synchronized subroutine to tell a new peer about every member of this node.
+     * Roster changes are sent under the same lock, so a leave can never overtake the roster and leave a stale name
+     * @param link: ChatConnection of the peer's link
+     */
+    private synchronized void sendRoster(ChatConnection link) {
+        for (ChatConnection member : this.chatServer.getMemberRegistry().membersInJoinOrder()) {
+            link.displayMessage("JOIN "+member.getUsername());
+        }
+    }
+
+    /**
+     * Synchronized method to tell every peer that a member of this node joined
+     * @param username: String username of the member
+     */
+    public synchronized void memberJoined(String username) {
+        sendToPeers("JOIN "+username);
+    }
+
+    /**
+     * Synchronized method to tell every peer that a member of this node left
+     * @param username: String username of the member
+     */
+    public synchronized void memberLeft(String username) {
+        sendToPeers("LEAVE "+username);
+    }
+
+    /**
+     * Method to forward a message broadcast to every member of this node
+     * @param message: String message
+     */
+    public void forwardToAll(String message) {
+        if (!this.peersByNode.isEmpty()) {
+            sendToPeers("ALL "+message);
+        }
+    }
+
+    /**
+     * Method to forward a message broadcast to a room of this node
+     * @param message: String message
+     * @param roomName: String normalised room name
+     * @param sender: String username of the member who sent a chat message, or null for a notice
+     */
+    public void forwardToRoom(String message, String roomName, String sender) {
+        if (!this.peersByNode.isEmpty()) {
+            sendToPeers("ROOM "+roomName+"\t"+(sender == null ? "" : sender)+"\t"+message);
+        }
+    }
+
+    /**
+     * Subroutine to send a line to every peer; it is encoded once and shared by all the links
+     * @param line: String line of the peer protocol
+     */
+    private void sendToPeers(String line) {
+        if (this.peersByNode.isEmpty()) {
+            return;
+        }
+        EncodedMessage encodedMessage = EncodedMessage.of(line);
+        for (ChatConnection link : this.peersByNode.values()) {
+            link.send(encodedMessage);
+        }
+    }
+
+    /**
+     * Method to obtain the usernames in use on the other nodes, for keeping usernames unique across the cluster.
+     * This is a live view rather than a copy
+     * @return Set of String usernames
+     */
+    public Set<String> remoteUsernames() {
+        return this.remoteMembers.keySet();
+    }
+
+    /**
+     * Method to obtain the members of the other nodes, sorted by node and then by username
+     * @return List of username and node pairs
+     */
+    public List<Map.Entry<String, String>> remoteMembersByNode() {
+        ArrayList<Map.Entry<String, String>> members = new ArrayList<Map.Entry<String, String>>(this.remoteMembers.entrySet());
+        members.sort(Map.Entry.<String, String>comparingByValue().thenComparing(Map.Entry.comparingByKey()));
+        return members;
+    }
+
+    /**
+     * Method to obtain the names of the peers currently linked
+     * @return sorted List of String node names
+     */
+    public List<String> linkedPeers() {
+        ArrayList<String> nodes = new ArrayList<String>(this.peersByNode.keySet());
+        Collections.sort(nodes);
+        return nodes;
+    }
+
+    /**
+     * Accessor method to obtain the name of this node
+     * @return String node name
+     */
+    public String getNodeName() {
+        return this.nodeName;
+    }
+
+    /**
+     * Mutator method to set the name of this node, before any peer is linked
+     * @param nodeName: String node name, unique within the cluster
+     */
+    public void setNodeName(String nodeName) {
+        this.nodeName = nodeName;
+    }
+
+    /**
+     * Mutator method to set the secret shared by every node of the cluster, before any peer is linked
+     * @param secret: String secret, without spaces or line breaks
+     */
+    public void setSecret(String secret) {
+        this.secret = secret.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Method to stop dialling and close every link, so the node's shutdown is not forwarded to the rest of the cluster
+     */
+    public void close() {
+        this.running = false;
+        for (ChatConnection link : this.peersByNode.values()) {
+            link.forceLeaveUser();
+        }
+        this.peersByNode.clear();
+        this.remoteMembers.clear();
+    }
+}
@@ -0,0 +1,43 @@
+//Class describing how the lines pending for a connection are batched before they are flushed to its socket
+public class FlushPolicy {
+
+    //Private object variables for the thresholds
+    private int maxBatchBytes;
+    private long maxDelayMillis;
+
+    /**
+     * Constructor method to set the thresholds
+     * @param maxBatchBytes: the batch is flushed once it holds at least this many bytes
+     * @param maxDelayMillis: how long to wait for more lines before flushing a batch (0 flushes as soon as the queue is empty)
+     */
+    public FlushPolicy(int maxBatchBytes, long maxDelayMillis) {
+        this.maxBatchBytes = maxBatchBytes;
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    /**
+     * Static method to parse a policy given on the command line in the form 'bytes:millis'
+     * @param value: String value of the policy
+     * @return new FlushPolicy object
+     */
+    public static FlushPolicy fromString(String value) {
+        String[] parts = value.split(":");
+        return new FlushPolicy(Integer.parseInt(parts[0]), parts.length > 1 ? Long.parseLong(parts[1]) : 0);
+    }
+
+    /**
+     * Accessor method to obtain the batch size threshold
+     * @return maximum batch size in bytes
+     */
+    public int getMaxBatchBytes() {
+        return this.maxBatchBytes;
+    }
+
+    /**
+     * Accessor method to obtain the time threshold
+     * @return maximum delay in milliseconds
+     */
+    public long getMaxDelayMillis() {
+        return this.maxDelayMillis;
+    }
+}
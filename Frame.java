@@ -0,0 +1,251 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+//A single message of the framed wire protocol. Each frame is a fixed header followed by a UTF-8 payload:
+//  type (1 byte) | member id (4 bytes) | room id (4 bytes) | payload length (4 bytes) | payload
+//so that the server and the bot can route on the header alone, without parsing the message text
+public final class Frame {
+
+    //First line sent by a client which wants the framed protocol instead of text lines
+    public static final String HANDSHAKE = "__FRAMED";
+
+    //Size of the header, and the largest payload accepted
+    public static final int HEADER_BYTES = 13;
+    public static final int MAX_PAYLOAD_BYTES = 64 * 1024;
+
+    //Largest message accepted from a client, in bytes; longer lines and payloads are cut to it, leaving room
+    //in a frame for the room and username the server puts in front of a message before sending it on
+    public static final int MAX_MESSAGE_BYTES = MAX_PAYLOAD_BYTES - 1024;
+
+    //Private object variables for the frame fields
+    private final FrameType type;
+    private final int memberId;
+    private final int roomId;
+    private final String payload;
+
+    /**
+     * Constructor method to create a frame
+     * @param type: FrameType of the frame
+     * @param memberId: id of the member the frame is from (or, for bot replies, addressed to); 0 if none
+     * @param roomId: id of the room the frame belongs to; 0 if none
+     * @param payload: String payload
+     */
+    public Frame(FrameType type, int memberId, int roomId, String payload) {
+        this.type = type;
+        this.memberId = memberId;
+        this.roomId = roomId;
+        this.payload = payload;
+    }
+
+    /**
+     * Accessor method to obtain the frame type
+     * @return FrameType of the frame
+     */
+    public FrameType getType() {
+        return this.type;
+    }
+
+    /**
+     * Accessor method to obtain the member id of the frame
+     * @return member id, or 0 if none
+     */
+    public int getMemberId() {
+        return this.memberId;
+    }
+
+    /**
+     * Accessor method to obtain the room id of the frame
+     * @return room id, or 0 if none
+     */
+    public int getRoomId() {
+        return this.roomId;
+    }
+
+    /**
+     * Accessor method to obtain the payload of the frame
+     * @return String payload
+     */
+    public String getPayload() {
+        return this.payload;
+    }
+
+    /**
+     * Method to encode the frame, header and payload, into a single array
+     * @return byte array of the encoded frame
+     * @throws IllegalArgumentException: if the payload is larger than a receiver accepts
+     */
+    public byte[] encode() {
+        byte[] payloadBytes = this.payload.getBytes(StandardCharsets.UTF_8);
+        if (payloadBytes.length > MAX_PAYLOAD_BYTES) {
+            throw new IllegalArgumentException("Frame payload length "+payloadBytes.length+" out of range");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + payloadBytes.length);
+        buffer.put(this.type.getCode());
+        buffer.putInt(this.memberId);
+        buffer.putInt(this.roomId);
+        buffer.putInt(payloadBytes.length);
+        buffer.put(payloadBytes);
+        return buffer.array();
+    }
+
+    /**
+     * Static method to read the next frame from a stream
+     * @param input: DataInputStream to read from
+     * @return Frame object, or null if the stream ended cleanly before the frame began
+     * @throws IOException: if the stream ends part-way through a frame, or the header is not valid
+     */
+    public static Frame read(DataInputStream input) throws IOException {
+        int typeByte = input.read();
+        if (typeByte < 0) {
+            return null;
+        }
+        int memberId = input.readInt();
+        int roomId = input.readInt();
+        int payloadLength = input.readInt();
+        byte[] payloadBytes = new byte[checkPayloadLength(payloadLength)];
+        input.readFully(payloadBytes);
+        return new Frame(checkType((byte) typeByte), memberId, roomId, new String(payloadBytes, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Static method to decode the next frame from a buffer, if the whole frame has arrived
+     * @param buffer: ByteBuffer in read mode; its position is only moved past a complete frame
+     * @return Frame object, or null if the buffer does not yet hold a complete frame
+     * @throws IOException: if the header is not valid
+     */
+    public static Frame decode(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < HEADER_BYTES) {
+            return null;
+        }
+        int start = buffer.position();
+        int payloadLength = checkPayloadLength(buffer.getInt(start+9));
+        if (buffer.remaining() < HEADER_BYTES + payloadLength) {
+            return null;
+        }
+        FrameType type = checkType(buffer.get(start));
+        int memberId = buffer.getInt(start+1);
+        int roomId = buffer.getInt(start+5);
+        byte[] payloadBytes = new byte[payloadLength];
+        buffer.position(start + HEADER_BYTES);
+        buffer.get(payloadBytes);
+        return new Frame(type, memberId, roomId, new String(payloadBytes, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Static method to read the handshake line one byte at a time, so that nothing after it is read ahead
+     * (the rest of the stream may be frames rather than text)
+     * @param input: InputStream to read from
+     * @return String line without its terminator, or null if the stream ended first
+     * @throws IOException: if reading fails, or the line is longer than a frame payload
+     */
+    public static String readLine(InputStream input) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = input.read()) != '\n') {
+            if (b < 0) {
+                return line.size() > 0 ? line.toString(StandardCharsets.UTF_8) : null;
+            }
+            if (line.size() == MAX_PAYLOAD_BYTES) {
+                throw new IOException("Handshake line too long");
+            }
+            line.write(b);
+        }
+        return decodeLine(line.toByteArray(), line.size(), MAX_PAYLOAD_BYTES);
+    }
+
+    /**
+     * Static method to read a line of text, keeping at most a given number of its bytes; the rest of the line
+     * is read and dropped, so a client cannot make the server hold a line of any length
+     * @param input: InputStream to read from
+     * @param maxBytes: largest number of bytes kept
+     * @return String line without its terminator, cut to 'maxBytes', or null if the stream ended first
+     * @throws IOException: if reading fails
+     */
+    public static String readLine(InputStream input, int maxBytes) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = input.read()) != '\n') {
+            if (b < 0) {
+                if (line.size() == 0) {
+                    return null;
+                }
+                break;
+            }
+            //One byte past the limit is kept, to tell where the last whole character ends
+            if (line.size() <= maxBytes) {
+                line.write(b);
+            }
+        }
+        return decodeLine(line.toByteArray(), line.size(), maxBytes);
+    }
+
+    /**
+     * Static method to decode the bytes of a line, dropping a trailing '\r'. A line longer than 'maxBytes'
+     * is cut to it at the end of the last whole character
+     * @param bytes: byte array holding the line; if the line is too long, it must hold at least maxBytes+1 bytes
+     * @param length: length of the line in bytes
+     * @param maxBytes: largest number of bytes kept
+     * @return String line
+     */
+    public static String decodeLine(byte[] bytes, int length, int maxBytes) {
+        if (length > maxBytes) {
+            //UTF-8 continuation bytes are 10xxxxxx; step back until the cut is at the start of a character
+            length = maxBytes;
+            while (length > 0 && (bytes[length] & 0xc0) == 0x80) {
+                length -= 1;
+            }
+        } else if (length > 0 && bytes[length-1] == '\r') {
+            length -= 1;
+        }
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Static method to cut a message to at most a given number of UTF-8 bytes, at the end of a whole character
+     * @param text: String message
+     * @param maxBytes: largest number of bytes kept
+     * @return the message itself if it fits, otherwise the cut message
+     */
+    public static String truncate(String text, int maxBytes) {
+        //No character takes more than three bytes per char, so short messages are never encoded
+        if (text.length() * 3 <= maxBytes) {
+            return text;
+        }
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length <= maxBytes) {
+            return text;
+        }
+        return decodeLine(bytes, bytes.length, maxBytes);
+    }
+
+    /**
+     * Static method to validate the type byte of a header
+     * @param code: header byte value
+     * @return matching FrameType
+     * @throws IOException: if the byte is not a known type
+     */
+    private static FrameType checkType(byte code) throws IOException {
+        FrameType type = FrameType.fromCode(code);
+        if (type == null) {
+            throw new IOException("Unknown frame type "+code);
+        }
+        return type;
+    }
+
+    /**
+     * Static method to validate the payload length of a header
+     * @param payloadLength: length read from the header
+     * @return the same length
+     * @throws IOException: if the length is negative or too large
+     */
+    private static int checkPayloadLength(int payloadLength) throws IOException {
+        if (payloadLength < 0 || payloadLength > MAX_PAYLOAD_BYTES) {
+            throw new IOException("Frame payload length "+payloadLength+" out of range");
+        }
+        return payloadLength;
+    }
+}
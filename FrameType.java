@@ -0,0 +1,67 @@
+/**
+ * Enum of the frame types of the framed wire protocol, each sent as a single byte in the frame header
+ */
+public enum FrameType {
+    //Client to server: the first frame, carrying the requested username
+    JOIN(1),
+
+    //Either direction: a chat message; the room id picks the room (0 for the member's active room)
+    CHAT(2),
+
+    //Client to server: the client is leaving the chat
+    QUIT(3),
+
+    //Client to server: join the room named in the payload, and chat in it
+    ROOM_JOIN(4),
+
+    //Client to server: leave the room named in the payload
+    ROOM_LEAVE(5),
+
+    //Either direction: a message for the bot; sent to a bot, the member id is the member asking
+    BOT_REQUEST(6),
+
+    //Bot to server: a reply, where the member id is the member being answered
+    BOT_REPLY(7),
+
+    //Server to client: a notice from the server (joins, leaves, errors)
+    NOTICE(8),
+
+    //Either direction: a heartbeat, which the other end answers with a PONG
+    PING(9),
+
+    //Either direction: the answer to a PING
+    PONG(10);
+
+    //Byte written in the frame header
+    private final byte code;
+
+    /**
+     * Constructor method to set the byte code of the frame type
+     * @param code: header byte value
+     */
+    FrameType(int code) {
+        this.code = (byte) code;
+    }
+
+    /**
+     * Accessor method to obtain the byte code of the frame type
+     * @return header byte value
+     */
+    public byte getCode() {
+        return this.code;
+    }
+
+    /**
+     * Static method to find the frame type for a header byte
+     * @param code: header byte value
+     * @return matching FrameType, or null if the byte is not a known type
+     */
+    public static FrameType fromCode(byte code) {
+        for (FrameType type : FrameType.values()) {
+            if (type.code == code) {
+                return type;
+            }
+        }
+        return null;
+    }
+}
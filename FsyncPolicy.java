@@ -0,0 +1,90 @@
+//Class describing when the message log forces appended messages to disk.
+//Appends are group committed: every message written since the last force is made durable by the next one
+public class FsyncPolicy {
+
+    //Private object variable; 0 forces after every batch of appends, a positive value forces at most that often,
+    //and a negative value leaves writing back to the operating system
+    private long intervalMillis;
+
+    /**
+     * Private constructor method, policies are created through the static methods
+     * @param intervalMillis: interval between forces in milliseconds (0 for every batch, negative for never)
+     */
+    private FsyncPolicy(long intervalMillis) {
+        this.intervalMillis = intervalMillis;
+    }
+
+    /**
+     * Static method to obtain the policy forcing the log after every batch of appended messages
+     * @return new FsyncPolicy object
+     */
+    public static FsyncPolicy perMessage() {
+        return new FsyncPolicy(0);
+    }
+
+    /**
+     * Static method to obtain the policy forcing the log at a fixed interval
+     * @param intervalMillis: interval between forces in milliseconds
+     * @return new FsyncPolicy object
+     */
+    public static FsyncPolicy interval(long intervalMillis) {
+        return new FsyncPolicy(Math.max(1, intervalMillis));
+    }
+
+    /**
+     * Static method to obtain the policy leaving the log to be written back by the operating system
+     * (it is still forced when a segment is rolled and when the log is closed)
+     * @return new FsyncPolicy object
+     */
+    public static FsyncPolicy osManaged() {
+        return new FsyncPolicy(-1);
+    }
+
+    /**
+     * Static method to parse a policy given on the command line, as 'always', 'os' or an interval in milliseconds
+     * @param value: String value of the policy
+     * @return new FsyncPolicy object
+     */
+    public static FsyncPolicy fromString(String value) {
+        if (value.equalsIgnoreCase("always")) {
+            return perMessage();
+        }
+        if (value.equalsIgnoreCase("os")) {
+            return osManaged();
+        }
+        return interval(Long.parseLong(value));
+    }
+
+    /**
+     * Method to decide whether the log should be forced now
+     * @param millisSinceForce: time since the log was last forced, in milliseconds
+     * @return true if the log should be forced
+     */
+    public boolean shouldForce(long millisSinceForce) {
+        if (this.intervalMillis >= 0 && millisSinceForce >= this.intervalMillis) {
+            return true;
+        } return false;
+    }
+
+    /**
+     * Accessor method to obtain how long the log writer may wait for messages before checking the policy again
+     * @return wait in milliseconds
+     */
+    public long getPollMillis() {
+        if (this.intervalMillis > 0) {
+            return this.intervalMillis;
+        }
+        return 1000;
+    }
+
+    @Override
+    public String toString() {
+        if (this.intervalMillis == 0) {
+            return "always";
+        }
+        if (this.intervalMillis < 0) {
+            return "os";
+        }
+        return this.intervalMillis+" ms";
+    }
+}
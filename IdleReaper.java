@@ -0,0 +1,158 @@
+import java.util.concurrent.atomic.LongAdder;
+
+//Heartbeats and idle timeouts for the connections with a socket, driven by a single hashed timing wheel.
+//Each connection only records when it last read anything (from the wheel's coarse clock, so reading costs no system
+//call); its one timeout on the wheel looks at that when it fires. A member silent for a ping interval is sent a ping,
+//which any live client answers, and is sent another every interval while it stays silent; a connection silent for the
+//idle timeout is reaped, a member leaving the chat exactly as if it had sent '__QUIT'.
+//The wheel's thread only does the bookkeeping: reaping (which broadcasts the member leaving) and, when a full queue
+//blocks the sender, pinging are run on the connection executor, so one stuck connection cannot hold up the others.
+//A reaper with both turned off (the default) starts no wheel, so watching connections costs nothing
+public class IdleReaper {
+
+    //Private object variables for the reaper
+    private final ChatServer chatServer;
+    private final TimingWheel wheel;
+    private final long pingIntervalNanos;
+    private final long idleTimeoutNanos;
+
+    //Totals since the server started
+    private final LongAdder pingsSent;
+    private final LongAdder connectionsReaped;
+
+    /**
+     * Constructor method to create the reaper, starting its wheel only if it pings or reaps
+     * @param chatServer: ChatServer object the connections belong to
+     * @param pingIntervalSeconds: silence after which a member is pinged (0 to never ping)
+     * @param idleTimeoutSeconds: silence after which a connection is reaped (0 to never reap)
+     */
+    public IdleReaper(ChatServer chatServer, long pingIntervalSeconds, long idleTimeoutSeconds) {
+        this.chatServer = chatServer;
+        this.pingIntervalNanos = pingIntervalSeconds * 1000000000L;
+        this.idleTimeoutNanos = idleTimeoutSeconds * 1000000000L;
+        this.pingsSent = new LongAdder();
+        this.connectionsReaped = new LongAdder();
+        //100 ms ticks and 512 slots: about 51 s per revolution, so the usual intervals need no extra rounds
+        this.wheel = isEnabled() ? new TimingWheel("idle-reaper", 100, 512) : null;
+    }
+
+    /**
+     * Boolean method to check if connections are pinged or reaped at all
+     * @return true/false if the reaper is enabled
+     */
+    public boolean isEnabled() {
+        if (this.pingIntervalNanos > 0 || this.idleTimeoutNanos > 0) {
+            return true;
+        } return false;
+    }
+
+    /**
+     * Method to start watching a new connection
+     * @param connection: ChatConnection with a socket
+     */
+    public void track(ChatConnection connection) {
+        if (isEnabled()) {
+            connection.lastReadNanos = this.wheel.currentNanos();
+            connection.idleTimeout = this.wheel.schedule(() -> check(connection), firstCheckNanos());
+        }
+    }
+
+    /**
+     * Method to record that a connection has read something; cheap enough to call on every read
+     * @param connection: ChatConnection which has read from its socket
+     */
+    public void readFrom(ChatConnection connection) {
+        if (this.wheel != null) {
+            connection.lastReadNanos = this.wheel.currentNanos();
+        }
+    }
+
+    /**
+     * Subroutine to work out the delay of a connection's first check
+     * @return delay in nanoseconds
+     */
+    private long firstCheckNanos() {
+        if (this.pingIntervalNanos > 0 && (this.idleTimeoutNanos == 0 || this.pingIntervalNanos < this.idleTimeoutNanos)) {
+            return this.pingIntervalNanos;
+        }
+        return this.idleTimeoutNanos;
+    }
+
+    /**
+     * Subroutine run on the wheel's thread when a connection's timeout fires: the connection is reaped, pinged, or
+     * left alone, and its next check is scheduled for when it could next be due something
+     * @param connection: ChatConnection being checked
+     */
+    private void check(ChatConnection connection) {
+        if (!connection.connected) {
+            return;
+        }
+        long idleNanos = this.wheel.currentNanos() - connection.lastReadNanos;
+        if (this.idleTimeoutNanos > 0 && idleNanos >= this.idleTimeoutNanos) {
+            this.connectionsReaped.increment();
+            this.chatServer.getConnectionExecutor().execute(() -> {
+                this.chatServer.displayMessageToServer("##-- Reaping connection #"+connection.getConnectionId()
+                        +(connection.getUsername() == null ? "" : " ("+connection.getUsername()+")")
+                        +", silent for "+idleNanos / 1000000000L+" s --##");
+                connection.reap();
+            });
+            return;
+        }
+
+        //Only members and peer links are pinged: before joining, a line protocol client would take the ping's answer
+        //for its username
+        long nextCheckNanos = Long.MAX_VALUE;
+        if (this.pingIntervalNanos > 0) {
+            if (idleNanos < this.pingIntervalNanos) {
+                nextCheckNanos = this.pingIntervalNanos - idleNanos;
+            } else {
+                if (connection.getUsername() != null || connection.getConnectionClass() == ConnectionClass.ADMIN) {
+                    this.pingsSent.increment();
+                    if (this.chatServer.getOverflowPolicy() == OverflowPolicy.BLOCK) {
+                        this.chatServer.getConnectionExecutor().execute(connection::sendPing);
+                    } else {
+                        connection.sendPing();
+                    }
+                }
+                nextCheckNanos = this.pingIntervalNanos;
+            }
+        }
+        if (this.idleTimeoutNanos > 0) {
+            nextCheckNanos = Math.min(nextCheckNanos, this.idleTimeoutNanos - idleNanos);
+        }
+        connection.idleTimeout = this.wheel.schedule(() -> check(connection), nextCheckNanos);
+    }
+
+    /**
+     * Method to stop watching a connection which has closed
+     * @param connection: ChatConnection which has closed
+     */
+    public void untrack(ChatConnection connection) {
+        TimingWheel.Timeout timeout = connection.idleTimeout;
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+    /**
+     * Method to stop the wheel, when the server shuts down
+     */
+    public void close() {
+        if (this.wheel != null) {
+            this.wheel.close();
+        }
+    }
+
+    /**
+     * Method to describe the reaper, for the admin's STATS command
+     * @return String summary
+     */
+    public String describe() {
+        if (!isEnabled()) {
+            return "heartbeats: off";
+        }
+        return "heartbeats: ping after "+this.pingIntervalNanos / 1000000000L+" s, reap after "
+                +this.idleTimeoutNanos / 1000000000L+" s of silence; pings sent="+this.pingsSent.sum()
+                +" reaped="+this.connectionsReaped.sum();
+    }
+}
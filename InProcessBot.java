@@ -0,0 +1,52 @@
+//Bot hosted inside the server, answering from the same LanguageProcessing engine as the external ChatBot.
+//It joins the bot pool like any other bot, but there is no socket: each request is answered as soon as it is
+//queued, and the reply goes straight into the broadcast path instead of over a loopback connection
+public class InProcessBot extends ChatConnection {
+
+    //Private object variable for the reply engine, which may be shared by several hosted bots
+    private LanguageProcessing languageProcessing;
+
+    /**
+     * Constructor method to create the hosted bot
+     * @param server: ChatServer object hosting the bot
+     * @param languageProcessing: LanguageProcessing object used to generate replies
+     */
+    public InProcessBot(ChatServer server, LanguageProcessing languageProcessing) {
+        super(server);
+        this.languageProcessing = languageProcessing;
+    }
+
+    /**
+     * Method to register the bot with the server and join the chat, as a connecting ChatBot would
+     */
+    public void start() {
+        this.chatServer.addConnection(this);
+        joinChat("Chat_Bot");
+    }
+
+    /**
+     * Overriding method to answer whatever has just been queued for the bot.
+     * Runs on the thread which sent the request, so the reply is broadcast before that thread carries on
+     */
+    @Override
+    protected void messageQueued() {
+        EncodedMessage message;
+        while ((message = this.outboundQueue.poll()) != null) {
+            //Requests carry the asking member's id and their message, as a framed bot would receive them;
+            //anything else (e.g. notices) is ignored
+            if (message.getFrameType() == FrameType.BOT_REQUEST) {
+                String automatedReply = this.languageProcessing.generateReply(message.getPayload());
+                handleBotReply(message.getMemberId(), automatedReply);
+            }
+        }
+    }
+
+    /**
+     * Overriding method to remove the bot from the chat
+     */
+    @Override
+    public void forceLeaveUser() {
+        this.chatServer.removeMemberFromChat(this);
+        connectionClosed();
+    }
+}
@@ -0,0 +1,142 @@
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+//Client side of a compressed connection: reads the packets written by a PacketDeflater and returns the original bytes.
+//The server's deflate stream names its dictionary by checksum, and the matching one of the client's dictionaries is used
+public class InflatingInputStream extends InputStream {
+
+    //Private object variables; the packet stream, the inflate stream, the dictionaries the client holds,
+    //and the decompressed bytes not yet returned
+    private DataInputStream input;
+    private Inflater inflater;
+    private byte[][] dictionaries;
+    private byte[] packetBuffer;
+    private byte[] decoded;
+    private int decodedStart;
+    private int decodedEnd;
+
+    /**
+     * Constructor method to wrap a stream
+     * @param input: InputStream the packets are read from
+     * @param dictionaries: byte array dictionaries the server may have chosen from
+     */
+    public InflatingInputStream(InputStream input, byte[]... dictionaries) {
+        this.input = new DataInputStream(input);
+        this.inflater = new Inflater();
+        this.dictionaries = dictionaries;
+        this.packetBuffer = new byte[8192];
+        this.decoded = new byte[8192];
+    }
+
+    /**
+     * Method to read and decode the next packet into the decoded buffer
+     * @return false if the stream ended before another packet began
+     * @throws IOException: if reading fails or a packet cannot be decoded
+     */
+    private boolean nextPacket() throws IOException {
+        int kind = this.input.read();
+        if (kind < 0) {
+            return false;
+        }
+        int length = this.input.readInt();
+        if (length < 0) {
+            throw new IOException("Packet length "+length+" out of range");
+        }
+        if (length > this.packetBuffer.length) {
+            this.packetBuffer = new byte[length];
+        }
+        this.input.readFully(this.packetBuffer, 0, length);
+        this.decodedStart = 0;
+        this.decodedEnd = 0;
+
+        if (kind == PacketDeflater.STORED) {
+            ensureDecodedCapacity(length);
+            System.arraycopy(this.packetBuffer, 0, this.decoded, 0, length);
+            this.decodedEnd = length;
+            return true;
+        } else if (kind != PacketDeflater.DEFLATED) {
+            throw new IOException("Unknown packet kind "+kind);
+        }
+
+        try {
+            this.inflater.setInput(this.packetBuffer, 0, length);
+            while (true) {
+                ensureDecodedCapacity(this.decodedEnd + 1024);
+                int inflated = this.inflater.inflate(this.decoded, this.decodedEnd, this.decoded.length - this.decodedEnd);
+                this.decodedEnd += inflated;
+                if (this.inflater.needsDictionary()) {
+                    useDictionary(this.inflater.getAdler());
+                } else if (inflated == 0 && this.inflater.needsInput()) {
+                    return true;
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt compressed packet", e);
+        }
+    }
+
+    /**
+     * Subroutine to give the inflater the dictionary the server used
+     * @param checksum: Adler-32 checksum of the dictionary, from the deflate stream header
+     * @throws IOException: if the client holds no dictionary with that checksum
+     */
+    private void useDictionary(long checksum) throws IOException {
+        for (byte[] dictionary : this.dictionaries) {
+            if (CompressionDictionary.checksum(dictionary) == checksum) {
+                this.inflater.setDictionary(dictionary);
+                return;
+            }
+        }
+        throw new IOException("The server compressed with a dictionary this client does not have");
+    }
+
+    /**
+     * Subroutine to grow the decoded buffer, keeping its contents
+     * @param size: number of bytes needed
+     */
+    private void ensureDecodedCapacity(int size) {
+        if (size > this.decoded.length) {
+            this.decoded = Arrays.copyOf(this.decoded, Math.max(size, this.decoded.length * 2));
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        if (read(single, 0, 1) < 0) {
+            return -1;
+        }
+        return single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        while (this.decodedStart == this.decodedEnd) {
+            if (!nextPacket()) {
+                return -1;
+            }
+        }
+        int count = Math.min(length, this.decodedEnd - this.decodedStart);
+        System.arraycopy(this.decoded, this.decodedStart, bytes, offset, count);
+        this.decodedStart += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return this.decodedEnd - this.decodedStart;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.inflater.end();
+        this.input.close();
+    }
+}
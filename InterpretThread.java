@@ -1,4 +1,6 @@
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -11,6 +13,7 @@ public class InterpretThread implements Runnable {
     private ChatClient chatClient;
     private Socket socket;
     private BufferedReader bufferedReader;
+    private DataInputStream frameInput;
 
     /**
      * Constructor for the class, setting up the input stream and buffered read objects
@@ -23,12 +26,45 @@ public class InterpretThread implements Runnable {
 
         try {
             InputStream inputStream = socket.getInputStream();
-            bufferedReader = new BufferedReader(new InputStreamReader(inputStream));
+            if (chatClient.getCompressionDictionary() != null) {
+                //The server compresses with the client's dictionary if it has the same one, otherwise the built-in prefixes
+                inputStream = new InflatingInputStream(new BufferedInputStream(inputStream),
+                        chatClient.getCompressionDictionary(), CompressionDictionary.prefixesOnly());
+            }
+            if (chatClient.getWireProtocol() == WireProtocol.FRAMED) {
+                frameInput = new DataInputStream(new BufferedInputStream(inputStream));
+            } else {
+                bufferedReader = new BufferedReader(new InputStreamReader(inputStream));
+            }
         } catch (IOException ex) {
             ex.printStackTrace();
         }
     }
 
+    /**
+     * Method to read the next message from the server, in the protocol the client chose.
+     * Pings from the server are answered here, and never displayed
+     * @return String message, or null once the server has closed the connection
+     * @throws IOException: if reading fails or a frame is not valid
+     */
+    private String readResponse() throws IOException {
+        if (this.frameInput == null) {
+            String line;
+            while ((line = this.bufferedReader.readLine()) != null && line.equals(ChatConnection.PING)) {
+                this.chatClient.answerPing();
+            }
+            return line;
+        }
+        Frame frame;
+        while ((frame = Frame.read(this.frameInput)) != null && frame.getType() == FrameType.PING) {
+            this.chatClient.answerPing();
+        }
+        if (frame == null) {
+            return null;
+        }
+        return frame.getPayload();
+    }
+
     /**
      * Overriding run method which is called when the Thread object is running
      */
@@ -37,9 +73,8 @@ public class InterpretThread implements Runnable {
         try {
             //Indefinite loop running while the client is connected to the server
             while (this.chatClient.isConnected()) {
-                //Obtain the response by reading the buffered reader object.readLine()
-                String response = bufferedReader.readLine();
-                String username = this.chatClient.getUsername();
+                //Obtain the response by reading the next line (or the payload of the next frame)
+                String response = readResponse();
 
                 if (response == null) {
                     break;
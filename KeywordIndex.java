@@ -0,0 +1,263 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+//Inverted index from each keyword to the replies tagged with it, built once over a ReplyCorpus.
+//Tagged lines are written "keyword keyword ...<TAB>reply"; untagged lines are indexed by the words of the reply itself.
+//Lookups score a bounded number of candidates, so their cost does not grow with the size of the corpus
+public final class KeywordIndex {
+
+    //Bounded map of normalised message to reply, which every bot reads without taking a lock. Eviction is
+    //approximately least recently used (the CLOCK algorithm): a hit only marks its entry as used, and once the cache
+    //is over capacity a hand sweeps round the entries, clearing the mark of each used one and evicting the first unused
+    //one. Only the sweep is serialised, and it only runs when a miss has added an entry
+    private static final class ResponseCache {
+        private static final class Entry {
+            private final String reply;
+            private volatile boolean used;
+
+            private Entry(String reply) {
+                this.reply = reply;
+            }
+        }
+
+        private final ConcurrentHashMap<String, Entry> entries;
+        private final int capacity;
+        private Iterator<Entry> hand;
+
+        private ResponseCache(int capacity) {
+            this.entries = new ConcurrentHashMap<String, Entry>(Math.max(16, capacity * 4 / 3 + 1));
+            this.capacity = capacity;
+        }
+
+        private String get(String key) {
+            Entry entry = this.entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            //Written only when it changes, so hits on a popular entry do not keep invalidating its cache line
+            if (!entry.used) {
+                entry.used = true;
+            }
+            return entry.reply;
+        }
+
+        private void put(String key, String reply) {
+            if (this.entries.putIfAbsent(key, new Entry(reply)) == null && this.entries.size() > this.capacity) {
+                evict();
+            }
+        }
+
+        private synchronized void evict() {
+            //Two full turns of the hand clear every mark, so past that an entry is evicted even if it was used again
+            int turns = 0;
+            while (this.entries.size() > this.capacity) {
+                if (this.hand == null || !this.hand.hasNext()) {
+                    this.hand = this.entries.values().iterator();
+                    turns += 1;
+                    if (!this.hand.hasNext()) {
+                        return;
+                    }
+                }
+                Entry entry = this.hand.next();
+                if (entry.used && turns <= 2) {
+                    entry.used = false;
+                } else {
+                    this.hand.remove();
+                }
+            }
+        }
+    }
+
+    //Upper limit on the replies scored for a single lookup
+    private static final int MAX_CANDIDATES = 512;
+
+    //Words too common to say anything about which reply fits
+    private static final Set<String> STOP_WORDS = Set.of(
+            "a", "am", "an", "and", "are", "at", "be", "can", "do", "for", "have", "how", "i", "in", "is", "it",
+            "me", "my", "of", "on", "or", "should", "so", "tell", "that", "the", "this", "to", "was", "what",
+            "when", "where", "who", "why", "will", "would", "you", "your");
+
+    //Private object variables; the corpus, the sorted reply indices for each keyword, and the response cache
+    private final ReplyCorpus corpus;
+    private final HashMap<String, int[]> postings;
+    private final ResponseCache cache;
+
+    /**
+     * Private constructor method, indices are created through KeywordIndex.build()
+     * @param corpus: ReplyCorpus object which was indexed
+     * @param postings: HashMap of keyword to the ascending indices of its replies
+     * @param cacheCapacity: number of messages the response cache holds
+     */
+    private KeywordIndex(ReplyCorpus corpus, HashMap<String, int[]> postings, int cacheCapacity) {
+        this.corpus = corpus;
+        this.postings = postings;
+        this.cache = new ResponseCache(cacheCapacity);
+    }
+
+    /**
+     * Static method to build the index over every reply in a corpus
+     * @param corpus: ReplyCorpus object to index
+     * @param cacheCapacity: number of messages the response cache holds
+     * @return new KeywordIndex object
+     */
+    public static KeywordIndex build(ReplyCorpus corpus, int cacheCapacity) {
+        //Each keyword's indices are gathered into a growing array, then trimmed once every reply has been read
+        HashMap<String, int[]> growing = new HashMap<String, int[]>();
+        HashMap<String, Integer> counts = new HashMap<String, Integer>();
+        for (int index = 0; index < corpus.size(); index++) {
+            for (String keyword : tokenize(corpus.getKeywords(index))) {
+                int[] indices = growing.get(keyword);
+                int count = counts.getOrDefault(keyword, 0);
+                if (indices == null) {
+                    indices = new int[4];
+                } else if (count == indices.length) {
+                    indices = Arrays.copyOf(indices, count * 2);
+                }
+                indices[count] = index;
+                growing.put(keyword, indices);
+                counts.put(keyword, count+1);
+            }
+        }
+        HashMap<String, int[]> postings = new HashMap<String, int[]>(growing.size() * 2);
+        for (Map.Entry<String, int[]> entry : growing.entrySet()) {
+            postings.put(entry.getKey(), Arrays.copyOf(entry.getValue(), counts.get(entry.getKey())));
+        }
+        return new KeywordIndex(corpus, postings, cacheCapacity);
+    }
+
+    /**
+     * Static method to split text into its distinct keywords: lower case runs of letters and digits,
+     * excluding stop words, in sorted order (so that the same words in any order give the same keywords)
+     * @param text: String text to split
+     * @return String array of keywords
+     */
+    public static String[] tokenize(String text) {
+        ArrayList<String> keywords = new ArrayList<String>();
+        int length = text.length();
+        int start = -1;
+        for (int i = 0; i <= length; i++) {
+            boolean wordCharacter = i < length && Character.isLetterOrDigit(text.charAt(i));
+            if (wordCharacter && start < 0) {
+                start = i;
+            } else if (!wordCharacter && start >= 0) {
+                String keyword = text.substring(start, i).toLowerCase();
+                if (!STOP_WORDS.contains(keyword) && !keywords.contains(keyword)) {
+                    keywords.add(keyword);
+                }
+                start = -1;
+            }
+        }
+        String[] sorted = keywords.toArray(new String[0]);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * Accessor method to obtain the corpus which was indexed
+     * @return ReplyCorpus object
+     */
+    public ReplyCorpus getCorpus() {
+        return this.corpus;
+    }
+
+    /**
+     * Method to find the reply which best matches a message, serving repeated messages from the cache
+     * @param message: String message the member sent to the bot
+     * @return String reply, or null if none of the message's keywords are in the index
+     */
+    public String lookup(String message) {
+        String[] keywords = tokenize(message);
+        if (keywords.length == 0) {
+            return null;
+        }
+        String cacheKey = String.join(" ", keywords);
+        String cachedReply = this.cache.get(cacheKey);
+        if (cachedReply != null) {
+            return cachedReply;
+        }
+
+        int bestIndex = bestMatch(keywords);
+        if (bestIndex < 0) {
+            return null;
+        }
+        String reply = this.corpus.getReply(bestIndex);
+        this.cache.put(cacheKey, reply);
+        return reply;
+    }
+
+    /**
+     * Method to score candidate replies against the keywords of a message.
+     * Candidates are drawn from the rarest keywords first, and each scores the sum of the weights of the keywords
+     * it is tagged with (rarer keywords weigh more); ties are broken at random
+     * @param keywords: String array of the message's keywords
+     * @return index of the best reply, or -1 if no keyword is in the index
+     */
+    private int bestMatch(String[] keywords) {
+        ArrayList<int[]> lists = new ArrayList<int[]>();
+        for (String keyword : keywords) {
+            int[] indices = this.postings.get(keyword);
+            if (indices != null) {
+                lists.add(indices);
+            }
+        }
+        if (lists.isEmpty()) {
+            return -1;
+        }
+        lists.sort(Comparator.comparingInt(indices -> indices.length));
+        double[] weights = new double[lists.size()];
+        for (int l = 0; l < lists.size(); l++) {
+            weights[l] = Math.log(1.0 + (double) this.corpus.size() / lists.get(l).length);
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int bestIndex = -1;
+        double bestScore = -1;
+        int ties = 0;
+        int scored = 0;
+        for (int l = 0; l < lists.size() && scored < MAX_CANDIDATES; l++) {
+            int[] list = lists.get(l);
+            int take = Math.min(list.length, MAX_CANDIDATES - scored);
+
+            //Start a truncated list at a random point, so a common keyword does not always give the same replies
+            int offset = take < list.length ? random.nextInt(list.length) : 0;
+            for (int k = 0; k < take; k++) {
+                int candidate = list[(offset+k) % list.length];
+
+                //A candidate tagged with a rarer keyword was already scored, as the rarer lists are read in full
+                boolean alreadyScored = false;
+                for (int r = 0; r < l && !alreadyScored; r++) {
+                    alreadyScored = Arrays.binarySearch(lists.get(r), candidate) >= 0;
+                }
+                if (alreadyScored) {
+                    continue;
+                }
+
+                double score = weights[l];
+                for (int r = l+1; r < lists.size(); r++) {
+                    if (Arrays.binarySearch(lists.get(r), candidate) >= 0) {
+                        score += weights[r];
+                    }
+                }
+                scored += 1;
+                if (score > bestScore) {
+                    bestIndex = candidate;
+                    bestScore = score;
+                    ties = 1;
+                } else if (score == bestScore) {
+                    ties += 1;
+                    if (random.nextInt(ties) == 0) {
+                        bestIndex = candidate;
+                    }
+                }
+            }
+        }
+        return bestIndex;
+    }
+}
@@ -1,79 +1,170 @@
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.util.Random;
-import java.util.Scanner;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class LanguageProcessing {
 
     //Private object variables required for file management
-    private File file;
-    private int length;
+    private Path filePath;
+
+    //Number of normalised messages whose replies are cached in keyword mode
+    private static final int RESPONSE_CACHE_CAPACITY = 10000;
+
+    //The replies currently in use; swapped atomically when the file changes, so replies never wait on a reload
+    private AtomicReference<ReplyCorpus> corpus;
+
+    //How replies are picked, and (in keyword mode) the index over the current corpus, swapped along with it
+    private ReplyMode replyMode;
+    private AtomicReference<KeywordIndex> keywordIndex;
 
     /**
-     * Constructor method to setup the LanguageProcessing class when called,
-     * by scanning through the file and calculating the length of the file, which is used later
+     * Constructor method to setup the LanguageProcessing class when called, picking replies at random
      * @param filePath: String variable for the relative filepath of the strings
      */
     public LanguageProcessing(String filePath) {
+        this(filePath, ReplyMode.RANDOM);
+    }
+
+    /**
+     * Constructor method to setup the LanguageProcessing class when called,
+     * by loading the replies file once into memory (and indexing it in keyword mode) and watching it for changes
+     * @param filePath: String variable for the relative filepath of the strings
+     * @param replyMode: ReplyMode deciding how replies are picked
+     */
+    public LanguageProcessing(String filePath, ReplyMode replyMode) {
+        this.filePath = Paths.get(filePath).toAbsolutePath();
+        this.replyMode = replyMode;
+        this.corpus = new AtomicReference<ReplyCorpus>();
+        this.keywordIndex = new AtomicReference<KeywordIndex>();
         try {
-            this.file = new File(filePath);
-            Scanner myReader = new Scanner(this.file);
-            int i = 1;
-
-            //Iterate through the file and update i
-            while (myReader.hasNextLine()) {
-                String data = myReader.nextLine();
-                i += 1;
-            }
-            this.length = i-1; //Set length as one less than i, since indexing starts at 0
-            myReader.close();
-        } catch (FileNotFoundException e) {
+            install(ReplyCorpus.load(this.filePath));
+            startWatchingFile();
+        } catch (IOException e) {
             System.out.println("An error occurred.");
             e.printStackTrace();
         }
     }
 
     /**
-     * String method to obtain a line from the file, given an index
-     * @param index: randomly generated index value passed
-     * @return data stored at that index value in the file
-     * @throws FileNotFoundException
+     * Method to reload the replies file, replacing the corpus in a single step.
+     * If the new file cannot be read (e.g. it is part-way through being written), the current corpus is kept
      */
-    public String getItemAtIndex(int index) throws FileNotFoundException {
-        Scanner myReader = new Scanner(this.file);
-        int i = 0;
-
-        //Iterate through the file, and perform linear search
-        while (myReader.hasNextLine()) {
-            String data = myReader.nextLine();
-            if (i == index) {
-                myReader.close();
-
-                //Return the data once found
-                return data;
+    protected void reload() {
+        try {
+            ReplyCorpus newCorpus = ReplyCorpus.load(this.filePath);
+            if (newCorpus.size() > 0) {
+                install(newCorpus);
             }
-            i += 1;
+        } catch (IOException e) {
+            System.out.println("Could not reload replies; "+e.getMessage());
         }
-        myReader.close();
-        return null;
     }
 
     /**
-     * Synchronized String method to generate the reply to the client user who addressed the bot
-     * @return String value of the response, based on a random index generated and passed into the
-     * getItemAtIndex() method
+     * Subroutine to put a newly loaded corpus into use, first indexing it in keyword mode
+     * (the new index starts with an empty response cache, so no reply from the old corpus is served again)
+     * @param newCorpus: ReplyCorpus object loaded from the file
      */
-    public synchronized String generateReply() {
-        Random rand = new Random();
+    private void install(ReplyCorpus newCorpus) {
+        if (this.replyMode == ReplyMode.KEYWORD) {
+            this.keywordIndex.set(KeywordIndex.build(newCorpus, RESPONSE_CACHE_CAPACITY));
+        }
+        this.corpus.set(newCorpus);
+    }
 
-        //Random number generated (also takes length of the file into account)
-        int randNum = rand.nextInt(this.length);
-        try {
-            String reply = getItemAtIndex(randNum);
+    /**
+     * Subroutine to start a daemon thread which reloads the corpus whenever the replies file changes.
+     * (Large, memory-mapped corpora should be replaced by renaming a new file over the old one,
+     * rather than by editing the file in place)
+     * @throws IOException: if the watch service cannot be created
+     */
+    private void startWatchingFile() throws IOException {
+        WatchService watchService = FileSystems.getDefault().newWatchService();
+        this.filePath.getParent().register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+        Thread watcherThread = new Thread(() -> {
+            try {
+                while (true) {
+                    WatchKey key = watchService.take();
+                    boolean changed = false;
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (this.filePath.getFileName().equals(event.context())) {
+                            changed = true;
+                        }
+                    }
+                    if (changed) {
+                        reload();
+                    }
+                    key.reset();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        watcherThread.setDaemon(true);
+        watcherThread.start();
+    }
+
+    /**
+     * String method to obtain a line from the corpus, given an index
+     * @param index: randomly generated index value passed
+     * @return reply stored at that index value in the file (without its keyword tags), or null if the index is out of range
+     */
+    public String getItemAtIndex(int index) {
+        ReplyCorpus currentCorpus = this.corpus.get();
+        if (currentCorpus == null || index < 0 || index >= currentCorpus.size()) {
+            return null;
+        }
+        return currentCorpus.getReply(index);
+    }
+
+    /**
+     * String method to generate the reply to the client user who addressed the bot.
+     * No lock is needed: the corpus is immutable, and each thread uses its own random number generator
+     * @return String value of the response, picked at random from the corpus (null if the corpus is empty)
+     */
+    public String generateReply() {
+        return randomReply(this.corpus.get());
+    }
+
+    /**
+     * String method to generate the reply to a message addressed to the bot.
+     * In keyword mode the reply is looked up from the message's keywords, and is random if none of them match
+     * @param message: String message the member sent (e.g. "HEY_BOT! what is the weather like?")
+     * @return String value of the response (null if the corpus is empty)
+     */
+    public String generateReply(String message) {
+        KeywordIndex currentIndex = this.keywordIndex.get();
+        if (currentIndex == null) {
+            return generateReply();
+        }
+        String reply = currentIndex.lookup(message.replace("HEY_BOT!", ""));
+        if (reply != null) {
             return reply;
-        } catch (FileNotFoundException e) {
-            System.out.println("File not found exception; "+e.getMessage());
+        }
+        return randomReply(currentIndex.getCorpus());
+    }
+
+    /**
+     * String method to pick a reply at random from a corpus
+     * @param currentCorpus: ReplyCorpus object to pick from
+     * @return String reply (null if the corpus is empty)
+     */
+    private static String randomReply(ReplyCorpus currentCorpus) {
+        if (currentCorpus == null || currentCorpus.size() == 0) {
             return null;
         }
+
+        //Random number generated (also takes length of the corpus into account)
+        int randNum = ThreadLocalRandom.current().nextInt(currentCorpus.size());
+        return currentCorpus.getReply(randNum);
     }
 }
@@ -0,0 +1,116 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+//Lock-free histogram of latencies with a fixed memory footprint: values below 64 have a bucket each, and every
+//power of two above that is split into 64 buckets, so any recorded value is reported to within about 1.6%.
+//The totals are striped counters, so that threads recording at once do not contend on a single field
+public class LatencyHistogram {
+
+    //Number of buckets each power of two is split into, as a power of two
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    //Private object variables for the bucket counts and the totals
+    private final AtomicLongArray counts;
+    private final LongAdder count;
+    private final LongAdder sum;
+    private final LongAccumulator max;
+
+    /**
+     * Constructor method to create an empty histogram
+     */
+    public LatencyHistogram() {
+        this.counts = new AtomicLongArray((64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS);
+        this.count = new LongAdder();
+        this.sum = new LongAdder();
+        this.max = new LongAccumulator(Math::max, 0);
+    }
+
+    /**
+     * Static method to obtain the bucket a value is counted in
+     * @param value: non-negative value
+     * @return bucket index
+     */
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Static method to obtain the highest value counted in a bucket
+     * @param bucket: bucket index
+     * @return highest value of the bucket
+     */
+    private static long highestValueOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        long lowest = (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+        return lowest + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    /**
+     * Method to record a value, e.g. a latency in nanoseconds; negative values are recorded as 0
+     * @param value: value to record
+     */
+    public void record(long value) {
+        value = Math.max(0, value);
+        this.counts.incrementAndGet(bucketOf(value));
+        this.count.increment();
+        this.sum.add(value);
+        this.max.accumulate(value);
+    }
+
+    /**
+     * Method to obtain the value below which a fraction of the recorded values fall
+     * @param percentile: percentile wanted, from 0 to 100 (e.g. 99.9)
+     * @return value at the percentile (the highest value of its bucket, but never above the maximum), or 0 if empty
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = this.count.sum();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int bucket = 0; bucket < this.counts.length(); bucket++) {
+            seen += this.counts.get(bucket);
+            if (seen >= rank) {
+                return Math.min(highestValueOf(bucket), this.max.get());
+            }
+        }
+        return this.max.get();
+    }
+
+    /**
+     * Accessor method to obtain the number of values recorded
+     * @return value count
+     */
+    public long getCount() {
+        return this.count.sum();
+    }
+
+    /**
+     * Accessor method to obtain the mean of the values recorded
+     * @return mean value, or 0 if empty
+     */
+    public double getMean() {
+        long total = this.count.sum();
+        return total == 0 ? 0 : (double) this.sum.sum() / total;
+    }
+
+    /**
+     * Accessor method to obtain the largest value recorded
+     * @return maximum value
+     */
+    public long getMax() {
+        return this.max.get();
+    }
+}
@@ -0,0 +1,395 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+//Headless load generator for a server running on this machine. It connects simulated users the way ChatClient does
+//(a plain socket to the server, then the username line), then sends chat lines and HEY_BOT! requests at a fixed overall rate.
+//Each line carries the time it was due to be sent, so the latency of every copy fanned out to the other users
+//(and of every bot reply) is measured from its schedule, including any time the generator itself was held up
+public class LoadGenerator {
+
+    //Marker put in front of the send time embedded in each generated line
+    private static final String MARKER = "LG@";
+
+    //Simulated user: its connection, the bytes of a partly read line, and the send times of its unanswered bot requests
+    private static final class SimulatedUser {
+        private final String username;
+        private final SocketChannel channel;
+        private final ByteBuffer readBuffer;
+        private final ByteBuffer lineBuffer;
+        private final ArrayDeque<Long> pendingBotRequests;
+        private volatile boolean connected;
+
+        private SimulatedUser(int index, SocketChannel channel) {
+            this.username = "lg_user"+index;
+            this.channel = channel;
+            this.readBuffer = ByteBuffer.allocate(64 * 1024);
+            this.lineBuffer = ByteBuffer.allocate(64 * 1024);
+            this.pendingBotRequests = new ArrayDeque<Long>();
+            this.connected = true;
+        }
+    }
+
+    //Private object variables for the configuration
+    private final int port;
+    private final int userCount;
+    private final double messagesPerSecond;
+    private final double botRatio;
+    private final int paddingBytes;
+
+    //The users, the selector reading from them, and whether the run is still going
+    private SimulatedUser[] users;
+    private Selector selector;
+    private volatile boolean running;
+
+    //Measurements
+    private final LatencyHistogram fanOutLatency;
+    private final LatencyHistogram botReplyLatency;
+    private final AtomicLong chatSent;
+    private final AtomicLong botSent;
+    private final AtomicLong fanOutReceived;
+    private final AtomicLong expectedFanOut;
+    private final AtomicLong botRepliesReceived;
+    private final AtomicLong disconnects;
+    private final AtomicLong stalledSends;
+
+    /**
+     * Constructor method to set up the generator
+     * @param port: port of the server on localhost
+     * @param userCount: number of simulated users
+     * @param messagesPerSecond: total rate at which the users send, across all of them
+     * @param botRatio: fraction of the lines sent which are HEY_BOT! requests, from 0 to 1
+     * @param paddingBytes: number of extra characters added to each line
+     */
+    public LoadGenerator(int port, int userCount, double messagesPerSecond, double botRatio, int paddingBytes) {
+        this.port = port;
+        this.userCount = userCount;
+        this.messagesPerSecond = messagesPerSecond;
+        this.botRatio = botRatio;
+        this.paddingBytes = paddingBytes;
+        this.fanOutLatency = new LatencyHistogram();
+        this.botReplyLatency = new LatencyHistogram();
+        this.chatSent = new AtomicLong();
+        this.botSent = new AtomicLong();
+        this.fanOutReceived = new AtomicLong();
+        this.expectedFanOut = new AtomicLong();
+        this.botRepliesReceived = new AtomicLong();
+        this.disconnects = new AtomicLong();
+        this.stalledSends = new AtomicLong();
+    }
+
+    /**
+     * Method to connect the simulated users, reading what they are sent as they join
+     * @throws IOException: if a user cannot connect
+     */
+    private void connectUsers() throws IOException {
+        this.selector = Selector.open();
+        this.users = new SimulatedUser[this.userCount];
+        for (int i = 0; i < this.userCount; i++) {
+            SocketChannel channel = SocketChannel.open(new InetSocketAddress("127.0.0.1", this.port));
+            channel.socket().setTcpNoDelay(true);
+            SimulatedUser user = new SimulatedUser(i, channel);
+            channel.write(ByteBuffer.wrap((user.username+"\n").getBytes(StandardCharsets.UTF_8)));
+            channel.configureBlocking(false);
+            channel.register(this.selector, SelectionKey.OP_READ, user);
+            this.users[i] = user;
+            readAvailable(0);
+        }
+    }
+
+    /**
+     * Subroutine run by the reader thread until the run ends
+     */
+    private void readUntilStopped() {
+        try {
+            while (this.running) {
+                readAvailable(100);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Method to read whatever the users have been sent
+     * @param timeoutMillis: how long to wait for data (0 to return at once)
+     * @throws IOException: if the selector fails
+     */
+    private void readAvailable(long timeoutMillis) throws IOException {
+        if (timeoutMillis > 0) {
+            this.selector.select(timeoutMillis);
+        } else {
+            this.selector.selectNow();
+        }
+        Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+            SimulatedUser user = (SimulatedUser) key.attachment();
+            int read;
+            try {
+                read = user.channel.read(user.readBuffer);
+            } catch (IOException e) {
+                read = -1;
+            }
+            if (read < 0) {
+                key.cancel();
+                user.connected = false;
+                if (this.running) {
+                    this.disconnects.incrementAndGet();
+                }
+                continue;
+            }
+            user.readBuffer.flip();
+            while (user.readBuffer.hasRemaining()) {
+                byte next = user.readBuffer.get();
+                if (next == '\n') {
+                    user.lineBuffer.flip();
+                    lineReceived(user, StandardCharsets.UTF_8.decode(user.lineBuffer).toString(), System.nanoTime());
+                    user.lineBuffer.clear();
+                } else if (user.lineBuffer.hasRemaining()) {
+                    user.lineBuffer.put(next);
+                }
+            }
+            user.readBuffer.clear();
+        }
+    }
+
+    /**
+     * Method to measure a line a user received: a generated line fanned out from another user, or a bot reply to this user
+     * @param user: SimulatedUser which received the line
+     * @param line: String line received
+     * @param receivedNanos: time the line was read
+     */
+    private void lineReceived(SimulatedUser user, String line, long receivedNanos) {
+        if (line.contains("]: @"+user.username+" ")) {
+            Long sentNanos;
+            synchronized (user.pendingBotRequests) {
+                sentNanos = user.pendingBotRequests.poll();
+            }
+            if (sentNanos != null) {
+                this.botReplyLatency.record(receivedNanos - sentNanos);
+                this.botRepliesReceived.incrementAndGet();
+            }
+            return;
+        }
+        //Lines fanned out by the server start with the sender's name; the server also echoes each line back as sent
+        int marker = line.indexOf(MARKER);
+        if (marker < 0 || !line.startsWith("[")) {
+            return;
+        }
+        int end = line.indexOf(' ', marker);
+        try {
+            long sentNanos = Long.parseLong(line.substring(marker + MARKER.length(), end < 0 ? line.length() : end));
+            this.fanOutLatency.record(receivedNanos - sentNanos);
+            this.fanOutReceived.incrementAndGet();
+        } catch (NumberFormatException e) {
+            //Not a line this generator sent
+        }
+    }
+
+    /**
+     * Method to send lines at the configured rate until the run ends, picking the sending user at random
+     * @param durationMillis: length of the run in milliseconds
+     */
+    private void sendFor(long durationMillis) {
+        long intervalNanos = (long) (1e9 / this.messagesPerSecond);
+        long start = System.nanoTime();
+        long end = start + durationMillis * 1000000;
+        long nextReport = start + 5000000000L;
+        String padding = " " + "x".repeat(this.paddingBytes);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        for (long dueNanos = start; dueNanos < end; dueNanos += intervalNanos) {
+            long waitNanos = dueNanos - System.nanoTime();
+            if (waitNanos > 0) {
+                LockSupport.parkNanos(waitNanos);
+            }
+            SimulatedUser user = this.users[random.nextInt(this.users.length)];
+            if (!user.connected) {
+                continue;
+            }
+            boolean toBot = random.nextDouble() < this.botRatio;
+            String line = (toBot ? "HEY_BOT! " : "") + MARKER + dueNanos + padding + "\n";
+            if (toBot) {
+                synchronized (user.pendingBotRequests) {
+                    user.pendingBotRequests.add(dueNanos);
+                }
+            }
+            if (write(user, line)) {
+                (toBot ? this.botSent : this.chatSent).incrementAndGet();
+                this.expectedFanOut.addAndGet(connectedUsers() - 1);
+            }
+            if (System.nanoTime() >= nextReport) {
+                System.out.println(progressLine((System.nanoTime() - start) / 1000000));
+                nextReport += 5000000000L;
+            }
+        }
+    }
+
+    /**
+     * Method to write a whole line to a user's non-blocking channel, giving up if the server stops reading for a second
+     * @param user: SimulatedUser sending the line
+     * @param line: String line to send
+     * @return true if the whole line was written
+     */
+    private boolean write(SimulatedUser user, String line) {
+        ByteBuffer bytes = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+        long giveUp = System.nanoTime() + 1000000000L;
+        try {
+            while (bytes.hasRemaining()) {
+                if (user.channel.write(bytes) == 0) {
+                    if (System.nanoTime() > giveUp) {
+                        this.stalledSends.incrementAndGet();
+                        return false;
+                    }
+                    Thread.onSpinWait();
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Method to count the users still connected
+     * @return connected user count
+     */
+    private int connectedUsers() {
+        int connected = 0;
+        for (SimulatedUser user : this.users) {
+            if (user.connected) {
+                connected += 1;
+            }
+        }
+        return connected;
+    }
+
+    /**
+     * Method to summarise the run so far in one line
+     * @param elapsedMillis: time since sending started
+     * @return String progress line
+     */
+    private String progressLine(long elapsedMillis) {
+        return String.format("t=%5.1fs sent=%d received=%d p99=%.2f ms disconnects=%d",
+                elapsedMillis / 1000.0, this.chatSent.get() + this.botSent.get(), this.fanOutReceived.get(),
+                this.fanOutLatency.getValueAtPercentile(99) / 1e6, this.disconnects.get());
+    }
+
+    /**
+     * Static method to format the percentiles of a histogram of nanosecond latencies
+     * @param histogram: LatencyHistogram to format
+     * @return String summary in milliseconds
+     */
+    private static String percentiles(LatencyHistogram histogram) {
+        return String.format("count=%d mean=%.3f p50=%.3f p90=%.3f p99=%.3f p999=%.3f max=%.3f (ms)",
+                histogram.getCount(), histogram.getMean() / 1e6,
+                histogram.getValueAtPercentile(50) / 1e6, histogram.getValueAtPercentile(90) / 1e6,
+                histogram.getValueAtPercentile(99) / 1e6, histogram.getValueAtPercentile(99.9) / 1e6,
+                histogram.getMax() / 1e6);
+    }
+
+    /**
+     * Method to write the report of the run
+     * @param soakMillis: length of the sending period in milliseconds
+     * @return String report
+     */
+    private String report(long soakMillis) {
+        StringWriter text = new StringWriter();
+        PrintWriter report = new PrintWriter(text);
+        double seconds = soakMillis / 1000.0;
+        long sent = this.chatSent.get() + this.botSent.get();
+        report.println("##-- LOAD REPORT "+LocalDateTime.now()+" --##");
+        report.printf("server=127.0.0.1:%d users=%d rate=%.1f msg/s botRatio=%.2f padding=%d soak=%.1f s%n",
+                this.port, this.userCount, this.messagesPerSecond, this.botRatio, this.paddingBytes, seconds);
+        report.printf("sent: chat=%d bot=%d (%.1f msg/s), stalled sends=%d%n",
+                this.chatSent.get(), this.botSent.get(), sent / seconds, this.stalledSends.get());
+        report.printf("fan-out: received=%d of %d expected (%.2f%%), %.1f deliveries/s%n",
+                this.fanOutReceived.get(), this.expectedFanOut.get(),
+                this.expectedFanOut.get() == 0 ? 100.0 : 100.0 * this.fanOutReceived.get() / this.expectedFanOut.get(),
+                this.fanOutReceived.get() / seconds);
+        report.println("fan-out latency:   "+percentiles(this.fanOutLatency));
+        report.printf("bot replies: received=%d of %d%n", this.botRepliesReceived.get(), this.botSent.get());
+        report.println("bot reply latency: "+percentiles(this.botReplyLatency));
+        report.printf("disconnects=%d, still connected=%d of %d%n", this.disconnects.get(), connectedUsers(), this.userCount);
+        report.flush();
+        return text.toString();
+    }
+
+    /**
+     * Method to run the whole soak: connect, send for the duration, wait for the last lines to arrive, then report
+     * @param durationMillis: length of the sending period in milliseconds
+     * @param drainMillis: how long to keep reading once sending has stopped
+     * @return String report
+     * @throws IOException: if the users cannot connect
+     * @throws InterruptedException: if interrupted while waiting for the reader
+     */
+    public String run(long durationMillis, long drainMillis) throws IOException, InterruptedException {
+        connectUsers();
+        System.out.println("Connected "+this.userCount+" users, sending for "+durationMillis / 1000+" s...");
+        this.running = true;
+        Thread readerThread = new Thread(this::readUntilStopped, "load-reader");
+        readerThread.start();
+
+        sendFor(durationMillis);
+        Thread.sleep(drainMillis);
+        this.running = false;
+        readerThread.join();
+
+        for (SimulatedUser user : this.users) {
+            user.channel.close();
+        }
+        return report(durationMillis);
+    }
+
+    /**
+     * Main method to run the load generator against a server on localhost
+     * @param args: '-csp' (server port), '-users', '-rate' (messages per second across all users), '-bot' (fraction
+     *            of HEY_BOT! requests), '-padding' (extra characters per line), '-duration' (seconds), '-drain' (seconds
+     *            to wait for the last lines) and '-report' (file the report is written to)
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = 14001;
+        int users = 100;
+        double rate = 100;
+        double botRatio = 0.1;
+        int padding = 32;
+        long durationSeconds = 60;
+        long drainSeconds = 2;
+        String reportPath = "load-report.txt";
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-csp")) { port = Integer.parseInt(args[i+1]); }
+            if (args[i].equals("-users")) { users = Integer.parseInt(args[i+1]); }
+            if (args[i].equals("-rate")) { rate = Double.parseDouble(args[i+1]); }
+            if (args[i].equals("-bot")) { botRatio = Double.parseDouble(args[i+1]); }
+            if (args[i].equals("-padding")) { padding = Integer.parseInt(args[i+1]); }
+            if (args[i].equals("-duration")) { durationSeconds = Long.parseLong(args[i+1]); }
+            if (args[i].equals("-drain")) { drainSeconds = Long.parseLong(args[i+1]); }
+            if (args[i].equals("-report")) { reportPath = args[i+1]; }
+        }
+
+        LoadGenerator generator = new LoadGenerator(port, users, rate, botRatio, padding);
+        String report = generator.run(durationSeconds * 1000, drainSeconds * 1000);
+        System.out.print(report);
+        Files.write(Paths.get(reportPath), report.getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        System.out.println("Report appended to "+reportPath);
+    }
+}
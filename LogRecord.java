@@ -0,0 +1,77 @@
+//Immutable message read back from the message log
+public final class LogRecord {
+
+    //Private object variables; the record's position in the log, when it was appended, and the message itself
+    private final long sequence;
+    private final long timestampMillis;
+    private final int memberId;
+    private final int roomId;
+    private final String sender;
+    private final String text;
+
+    /**
+     * Constructor method to create the record
+     * @param sequence: sequence number of the message in the log (the first message is 1)
+     * @param timestampMillis: time the message was appended, in milliseconds since the epoch
+     * @param memberId: id of the member who sent the message, or 0 for the server
+     * @param roomId: id of the room the message was sent to, or 0 if it was sent to everyone
+     * @param sender: String username of the member who sent the message, or null for a notice
+     * @param text: String message text
+     */
+    public LogRecord(long sequence, long timestampMillis, int memberId, int roomId, String sender, String text) {
+        this.sequence = sequence;
+        this.timestampMillis = timestampMillis;
+        this.memberId = memberId;
+        this.roomId = roomId;
+        this.sender = sender;
+        this.text = text;
+    }
+
+    /**
+     * Accessor method to obtain the sequence number
+     * @return sequence number
+     */
+    public long getSequence() {
+        return this.sequence;
+    }
+
+    /**
+     * Accessor method to obtain the time the message was appended
+     * @return milliseconds since the epoch
+     */
+    public long getTimestampMillis() {
+        return this.timestampMillis;
+    }
+
+    /**
+     * Accessor method to obtain the sender's member id
+     * @return member id, or 0 for the server
+     */
+    public int getMemberId() {
+        return this.memberId;
+    }
+
+    /**
+     * Accessor method to obtain the room id
+     * @return room id, or 0 if the message was sent to everyone
+     */
+    public int getRoomId() {
+        return this.roomId;
+    }
+
+    /**
+     * Accessor method to obtain the username of the sender, as the server recorded it rather than as the text shows it
+     * @return String username, or null for a notice
+     */
+    public String getSender() {
+        return this.sender;
+    }
+
+    /**
+     * Accessor method to obtain the message text
+     * @return String message text
+     */
+    public String getText() {
+        return this.text;
+    }
+}
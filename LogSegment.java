@@ -0,0 +1,513 @@
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+//One segment of the message log: a memory-mapped file of records, and a memory-mapped sparse index
+//holding the sequence number, timestamp and position of one record in every few kilobytes.
+//Only the segment being appended to is preallocated to the full segment size; once it is full it is sealed, which
+//truncates both files to what they hold and maps them again read-only, and a deleted segment is unmapped first.
+//Records are only appended by the log's writer thread; readers use absolute reads, up to the published size, under
+//the read lock of the mapping, so that it is never released (sealed or deleted) while they are reading it.
+//The file starts with a number naming its format, and each record is laid out as
+//length(4) | crc(4) | sequence(8) | timestamp(8) | memberId(4) | roomId(4) | senderLength(4) | sender bytes | text bytes,
+//its length covering the sender and the text; the length is written last, so that a record is only seen once it is complete
+public class LogSegment {
+
+    //Sizes of the file's header, of a record header and of an index entry (sequence(8) | timestamp(8) | position(4))
+    public static final int SEGMENT_HEADER_BYTES = 8;
+    public static final int RECORD_HEADER_BYTES = 36;
+    private static final int INDEX_ENTRY_BYTES = 20;
+
+    //An index entry is added for the first record after every this many bytes of the segment
+    private static final int INDEX_INTERVAL_BYTES = 4096;
+
+    //First bytes of every segment file: "CHATLOG" and the format version, 2 since records carry their sender
+    private static final long MAGIC = 0x434841544C4F4702L;
+
+    //Unsafe.invokeCleaner(), which releases a mapping at once instead of whenever its buffer is collected. It is looked up
+    //reflectively since it is not a standard API; without it, a released mapping is simply left to the garbage collector
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafe = theUnsafe.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            unsafe = null;
+            invokeCleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    //Private object variables for the files and their mappings (both null once the segment is deleted)
+    private final Path logPath;
+    private final Path indexPath;
+    private final long baseSequence;
+    private MappedByteBuffer log;
+    private MappedByteBuffer index;
+    private final ReentrantReadWriteLock mappingLock;
+    private volatile boolean sealed;
+    private final CRC32 crc;
+
+    //Size of the records written, and of the index, published to readers once each record is complete
+    private volatile int size;
+    private volatile int indexEntries;
+    private volatile long lastSequence;
+    private volatile long lastTimestampMillis;
+
+    //Writer state; where the last index entry was added, and how much of the segment has been forced to disk
+    private int lastIndexedPosition;
+    private int forcedSize;
+    private int forcedIndexEntries;
+
+    /**
+     * Private constructor method mapping the segment's files, segments are created through create() and open()
+     * @param logPath: Path of the record file
+     * @param baseSequence: sequence number of the segment's first record
+     * @param capacity: size of the record file in bytes (0 to map an existing file at its own size)
+     * @throws IOException: if a file cannot be mapped, or was written in another format
+     */
+    private LogSegment(Path logPath, long baseSequence, int capacity) throws IOException {
+        this.logPath = logPath;
+        this.indexPath = logPath.resolveSibling(fileName(baseSequence, ".idx"));
+        this.baseSequence = baseSequence;
+        this.log = map(logPath, Math.max(capacity, SEGMENT_HEADER_BYTES));
+        this.index = map(this.indexPath, capacity == 0 ? 0 : (capacity / INDEX_INTERVAL_BYTES + 2) * INDEX_ENTRY_BYTES);
+        this.mappingLock = new ReentrantReadWriteLock();
+        this.crc = new CRC32();
+        this.lastSequence = baseSequence - 1;
+        this.lastIndexedPosition = -INDEX_INTERVAL_BYTES;
+        this.size = SEGMENT_HEADER_BYTES;
+
+        //A new file is stamped with the format; a file in another one is refused rather than misread
+        long magic = this.log.getLong(0);
+        if (magic == 0) {
+            this.log.putLong(0, MAGIC);
+        } else if (magic != MAGIC) {
+            throw new IOException(logPath.getFileName()+" is not a log segment of this format");
+        }
+    }
+
+    /**
+     * Static method to map a file, creating it at the given size if needed (its new bytes read as zeros)
+     * @param path: Path of the file
+     * @param capacity: size of the mapping in bytes
+     * @return MappedByteBuffer over the file
+     * @throws IOException: if the file cannot be mapped
+     */
+    private static MappedByteBuffer map(Path path, int capacity) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            //The mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(capacity, channel.size()));
+        }
+    }
+
+    /**
+     * Static method to truncate a file to the given size and map it read-only
+     * @param path: Path of the file
+     * @param size: size the file is truncated to, in bytes
+     * @return read-only MappedByteBuffer over the file
+     * @throws IOException: if the file cannot be truncated or mapped
+     */
+    private static MappedByteBuffer truncateAndMap(Path path, int size) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            channel.truncate(size);
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    /**
+     * Static method to release a mapping at once, where the JVM allows it
+     * @param buffer: MappedByteBuffer which is no longer used by anyone
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        if (buffer == null || INVOKE_CLEANER == null) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            //The mapping is released when the buffer is collected instead
+        }
+    }
+
+    /**
+     * Static method to obtain the file name of a segment, which sorts in sequence order
+     * @param baseSequence: sequence number of the segment's first record
+     * @param extension: String file extension (".log" or ".idx")
+     * @return String file name
+     */
+    public static String fileName(long baseSequence, String extension) {
+        return String.format("%020d%s", baseSequence, extension);
+    }
+
+    /**
+     * Static method to create a new, empty segment
+     * @param directory: Path of the log directory
+     * @param baseSequence: sequence number of the segment's first record
+     * @param capacity: size of the record file in bytes
+     * @return new LogSegment object
+     * @throws IOException: if the files cannot be created
+     */
+    public static LogSegment create(Path directory, long baseSequence, int capacity) throws IOException {
+        return new LogSegment(directory.resolve(fileName(baseSequence, ".log")), baseSequence, capacity);
+    }
+
+    /**
+     * Static method to open an existing segment, recovering its end: records are read from the last index entry
+     * until one is incomplete, fails its checksum or is out of sequence (e.g. torn by a crash before it was forced)
+     * @param logPath: Path of the record file, named after its base sequence
+     * @param capacity: size of the record file for a segment which is still to be appended to,
+     *                or 0 for one which is only mapped at its own size, to be sealed
+     * @return LogSegment object
+     * @throws IOException: if the files cannot be mapped
+     */
+    public static LogSegment open(Path logPath, int capacity) throws IOException {
+        String name = logPath.getFileName().toString();
+        long baseSequence = Long.parseLong(name.substring(0, name.length() - ".log".length()));
+        LogSegment segment = new LogSegment(logPath, baseSequence, capacity);
+        segment.recover();
+        return segment;
+    }
+
+    /**
+     * Subroutine to find the valid index entries and records of an opened segment
+     */
+    private void recover() {
+        int entries = 0;
+        int entryLimit = this.index.capacity() / INDEX_ENTRY_BYTES;
+        while (entries < entryLimit && this.index.getLong(entries * INDEX_ENTRY_BYTES) != 0) {
+            entries += 1;
+        }
+        //An index entry which does not point at a valid record (e.g. torn by the crash) is dropped
+        while (entries > 0 && !isValidRecord(this.index.getInt((entries-1) * INDEX_ENTRY_BYTES + 16),
+                this.index.getLong((entries-1) * INDEX_ENTRY_BYTES))) {
+            entries -= 1;
+            this.index.putLong(entries * INDEX_ENTRY_BYTES, 0);
+        }
+
+        int position = SEGMENT_HEADER_BYTES;
+        long sequence = this.baseSequence;
+        long timestamp = 0;
+        if (entries > 0) {
+            position = this.index.getInt((entries-1) * INDEX_ENTRY_BYTES + 16);
+            sequence = this.index.getLong((entries-1) * INDEX_ENTRY_BYTES);
+        }
+        while (isValidRecord(position, sequence)) {
+            timestamp = this.log.getLong(position + 16);
+            position += RECORD_HEADER_BYTES + this.log.getInt(position);
+            sequence += 1;
+        }
+
+        if (entries > 0) {
+            this.lastIndexedPosition = this.index.getInt((entries-1) * INDEX_ENTRY_BYTES + 16);
+        }
+        this.indexEntries = entries;
+        this.size = position;
+        this.forcedSize = position;
+        this.forcedIndexEntries = entries;
+        this.lastSequence = sequence - 1;
+        this.lastTimestampMillis = timestamp;
+    }
+
+    /**
+     * Method to check the record at a position is complete, intact and carries the expected sequence number
+     * @param position: byte position of the record
+     * @param expectedSequence: sequence number it should carry
+     * @return true if the record is valid
+     */
+    private boolean isValidRecord(int position, long expectedSequence) {
+        if (position < 0 || position + RECORD_HEADER_BYTES > this.log.capacity()) {
+            return false;
+        }
+        int length = this.log.getInt(position);
+        if (length <= 0 || position + RECORD_HEADER_BYTES + length > this.log.capacity()
+                || this.log.getLong(position + 8) != expectedSequence) {
+            return false;
+        }
+        int senderLength = this.log.getInt(position + 32);
+        if (senderLength < 0 || senderLength >= length) {
+            return false;
+        }
+        if ((int) checksum(position, length) == this.log.getInt(position + 4)) {
+            return true;
+        } return false;
+    }
+
+    /**
+     * Method to compute the checksum of a record, covering everything after its length and checksum fields
+     * @param position: byte position of the record
+     * @param length: length of its sender and text in bytes
+     * @return checksum value
+     */
+    private long checksum(int position, int length) {
+        this.crc.reset();
+        this.crc.update(this.log.slice(position + 8, RECORD_HEADER_BYTES - 8 + length));
+        return this.crc.getValue();
+    }
+
+    /**
+     * Method to append a record, called only by the log's writer thread
+     * @param sequence: sequence number of the record, one more than the previous record's
+     * @param timestampMillis: time the record is appended, never earlier than the previous record's
+     * @param memberId: id of the sender
+     * @param roomId: id of the room, or 0
+     * @param sender: byte array of the UTF-8 encoded username of the sender, empty for a notice
+     * @param text: byte array of the encoded message
+     * @param length: number of bytes of text to write
+     * @return false if the segment has no room left for the record
+     */
+    public boolean append(long sequence, long timestampMillis, int memberId, int roomId, byte[] sender, byte[] text, int length) {
+        int position = this.size;
+        int recordLength = sender.length + length;
+        if (position + RECORD_HEADER_BYTES + recordLength > this.log.capacity()) {
+            return false;
+        }
+        this.log.putLong(position + 8, sequence);
+        this.log.putLong(position + 16, timestampMillis);
+        this.log.putInt(position + 24, memberId);
+        this.log.putInt(position + 28, roomId);
+        this.log.putInt(position + 32, sender.length);
+        this.log.put(position + RECORD_HEADER_BYTES, sender, 0, sender.length);
+        this.log.put(position + RECORD_HEADER_BYTES + sender.length, text, 0, length);
+        this.log.putInt(position + 4, (int) checksum(position, recordLength));
+        this.log.putInt(position, recordLength);
+
+        if (position - this.lastIndexedPosition >= INDEX_INTERVAL_BYTES) {
+            int entry = this.indexEntries * INDEX_ENTRY_BYTES;
+            this.index.putLong(entry + 8, timestampMillis);
+            this.index.putInt(entry + 16, position);
+            this.index.putLong(entry, sequence);
+            this.lastIndexedPosition = position;
+            this.indexEntries += 1;
+        }
+        this.lastSequence = sequence;
+        this.lastTimestampMillis = timestampMillis;
+        this.size = position + RECORD_HEADER_BYTES + recordLength;
+        return true;
+    }
+
+    /**
+     * Method to force the records and index entries appended since the last force to disk
+     * @return true if there was anything to force
+     */
+    public boolean force() {
+        int currentSize = this.size;
+        if (this.sealed || currentSize == this.forcedSize) {
+            return false;
+        }
+        if (currentSize > this.forcedSize) {
+            this.log.force(this.forcedSize, currentSize - this.forcedSize);
+            this.forcedSize = currentSize;
+        }
+        int currentEntries = this.indexEntries;
+        if (currentEntries > this.forcedIndexEntries) {
+            this.index.force(this.forcedIndexEntries * INDEX_ENTRY_BYTES, (currentEntries - this.forcedIndexEntries) * INDEX_ENTRY_BYTES);
+            this.forcedIndexEntries = currentEntries;
+        }
+        return true;
+    }
+
+    /**
+     * Method to seal a full segment, called only by the log's writer thread once it has stopped appending to it:
+     * the segment is forced to disk, and its files are truncated to the records and index entries they hold
+     * and mapped again read-only, so that a closed segment takes no more disk or address space than it needs
+     * @throws IOException: if a file cannot be truncated or mapped again
+     */
+    public void seal() throws IOException {
+        force();
+        this.mappingLock.writeLock().lock();
+        try {
+            if (this.sealed || this.log == null) {
+                return;
+            }
+            //The old mappings are released before the files shrink under them
+            unmap(this.log);
+            unmap(this.index);
+            this.log = null;
+            this.index = null;
+            this.log = truncateAndMap(this.logPath, this.size);
+            this.index = truncateAndMap(this.indexPath, this.indexEntries * INDEX_ENTRY_BYTES);
+            this.sealed = true;
+        } finally {
+            this.mappingLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Method to read records in sequence order, seeking through the sparse index to the nearest record at or before the first one
+     * @param fromSequence: sequence number of the first record wanted
+     * @param maxRecords: largest number of records to add
+     * @param records: List the records are added to (none are added if the segment has been deleted)
+     */
+    public void read(long fromSequence, int maxRecords, List<LogRecord> records) {
+        this.mappingLock.readLock().lock();
+        try {
+            if (this.log == null) {
+                return;
+            }
+            int end = this.size;
+            int entry = floorEntry(fromSequence, 0);
+            int position = entry < 0 ? SEGMENT_HEADER_BYTES : this.index.getInt(entry * INDEX_ENTRY_BYTES + 16);
+            int added = 0;
+            while (position < end && added < maxRecords) {
+                int length = this.log.getInt(position);
+                long sequence = this.log.getLong(position + 8);
+                if (sequence >= fromSequence) {
+                    records.add(readRecord(position, length));
+                    added += 1;
+                }
+                position += RECORD_HEADER_BYTES + length;
+            }
+        } finally {
+            this.mappingLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Method to decode the record at a position
+     * @param position: byte position of the record
+     * @param length: length of its sender and text in bytes
+     * @return new LogRecord object
+     */
+    private LogRecord readRecord(int position, int length) {
+        byte[] body = new byte[length];
+        this.log.get(position + RECORD_HEADER_BYTES, body);
+        int senderLength = this.log.getInt(position + 32);
+        String sender = senderLength == 0 ? null : new String(body, 0, senderLength, StandardCharsets.UTF_8);
+        //The line terminator the message was encoded with is not part of the text
+        int textLength = length > senderLength && body[length-1] == '\n' ? length-1-senderLength : length-senderLength;
+        return new LogRecord(this.log.getLong(position + 8), this.log.getLong(position + 16),
+                this.log.getInt(position + 24), this.log.getInt(position + 28), sender,
+                new String(body, senderLength, textLength, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Method to find the sequence number of the first record appended at or after a time
+     * @param timestampMillis: time in milliseconds since the epoch
+     * @return sequence number, or -1 if every record in the segment is earlier (or it has been deleted)
+     */
+    public long sequenceAt(long timestampMillis) {
+        if (this.lastTimestampMillis < timestampMillis) {
+            return -1;
+        }
+        this.mappingLock.readLock().lock();
+        try {
+            if (this.log == null) {
+                return -1;
+            }
+            int end = this.size;
+            int entry = floorEntry(timestampMillis, 8);
+            int position = entry < 0 ? SEGMENT_HEADER_BYTES : this.index.getInt(entry * INDEX_ENTRY_BYTES + 16);
+            while (position < end) {
+                if (this.log.getLong(position + 16) >= timestampMillis) {
+                    return this.log.getLong(position + 8);
+                }
+                position += RECORD_HEADER_BYTES + this.log.getInt(position);
+            }
+            return -1;
+        } finally {
+            this.mappingLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Method to binary search the index for the last entry whose sequence number (or timestamp) is strictly before a value,
+     * so that scanning from it cannot miss an earlier record with an equal timestamp
+     * @param value: sequence number or timestamp sought
+     * @param fieldOffset: offset of the field within an entry (0 for the sequence number, 8 for the timestamp)
+     * @return entry number, or -1 if the search should start at the beginning of the segment
+     */
+    private int floorEntry(long value, int fieldOffset) {
+        int low = 0;
+        int high = this.indexEntries - 1;
+        int found = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (this.index.getLong(middle * INDEX_ENTRY_BYTES + fieldOffset) < value) {
+                found = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Method to delete the segment's files, once it has passed the retention limits. The mappings are released first,
+     * once any reader still in the segment has finished with it; reads after that find nothing
+     * @throws IOException: if a file cannot be deleted
+     */
+    public void delete() throws IOException {
+        this.mappingLock.writeLock().lock();
+        try {
+            unmap(this.log);
+            unmap(this.index);
+            this.log = null;
+            this.index = null;
+        } finally {
+            this.mappingLock.writeLock().unlock();
+        }
+        Files.deleteIfExists(this.logPath);
+        Files.deleteIfExists(this.indexPath);
+    }
+
+    /**
+     * Boolean method to check if the segment has been sealed
+     * @return true/false if the segment is sealed (and mapped read-only at its own size)
+     */
+    public boolean isSealed() {
+        if (this.sealed) {
+            return true;
+        } return false;
+    }
+
+    /**
+     * Accessor method to obtain the sequence number of the segment's first record
+     * @return base sequence number
+     */
+    public long getBaseSequence() {
+        return this.baseSequence;
+    }
+
+    /**
+     * Accessor method to obtain the sequence number of the segment's last record
+     * @return last sequence number, or one less than the base if the segment is empty
+     */
+    public long getLastSequence() {
+        return this.lastSequence;
+    }
+
+    /**
+     * Accessor method to obtain the time the segment's last record was appended
+     * @return milliseconds since the epoch, or 0 if the segment is empty
+     */
+    public long getLastTimestampMillis() {
+        return this.lastTimestampMillis;
+    }
+
+    /**
+     * Accessor method to obtain the number of bytes of the segment in use, its header and records
+     * @return size in bytes
+     */
+    public int getSize() {
+        return this.size;
+    }
+}
@@ -0,0 +1,151 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//Concurrent registry of the connections to the server, indexed by connection id and by username.
+//It is the single source of truth for who is connected, replacing the separate thread and username lists
+public class MemberRegistry {
+
+    //Private object variables; every accepted connection by id, and every member who has joined by username
+    private ConcurrentHashMap<Integer, ChatConnection> connectionsById;
+    private ConcurrentHashMap<String, ChatConnection> membersByName;
+    private AtomicInteger nextConnectionId;
+
+    //Usernames held elsewhere (by members of other nodes of the cluster), which cannot be claimed here
+    private volatile Set<String> reservedNames;
+
+    /**
+     * Constructor method to create the empty registry
+     */
+    public MemberRegistry() {
+        this.connectionsById = new ConcurrentHashMap<Integer, ChatConnection>();
+        this.membersByName = new ConcurrentHashMap<String, ChatConnection>();
+        this.nextConnectionId = new AtomicInteger(1);
+        this.reservedNames = Collections.emptySet();
+    }
+
+    /**
+     * Mutator method to set the usernames which are in use elsewhere and cannot be claimed
+     * @param reservedNames: Set of String usernames, which may be a live view
+     */
+    public void setReservedNames(Set<String> reservedNames) {
+        this.reservedNames = reservedNames;
+    }
+
+    /**
+     * Method to register a newly accepted connection, assigning it a unique connection id
+     * @param connection: ChatConnection object of the new client
+     */
+    public void register(ChatConnection connection) {
+        int connectionId = this.nextConnectionId.getAndIncrement();
+        connection.setConnectionId(connectionId);
+        this.connectionsById.put(connectionId, connection);
+    }
+
+    /**
+     * Method to remove a closed connection, along with its username if it had joined
+     * @param connection: ChatConnection object of the closed client
+     */
+    public void unregister(ChatConnection connection) {
+        leave(connection);
+        this.connectionsById.remove(connection.getConnectionId(), connection);
+    }
+
+    /**
+     * Method to atomically claim a username for a connection. If the name is already taken (or reserved),
+     * the connection id is appended to it until a free name is found
+     * @param connection: ChatConnection object joining the chat
+     * @param requestedName: String username the client asked for
+     * @return String username actually assigned to the connection
+     */
+    public String join(ChatConnection connection, String requestedName) {
+        String username = requestedName;
+        while (this.reservedNames.contains(username) || this.membersByName.putIfAbsent(username, connection) != null) {
+            username = username+"#"+connection.getConnectionId();
+        }
+        return username;
+    }
+
+    /**
+     * Method to give a member a new username, made unique the same way as when joining; the old name is released
+     * @param connection: ChatConnection object of the member
+     * @return String username now held by the member
+     */
+    public String rename(ChatConnection connection) {
+        String oldName = connection.getUsername();
+        String newName = join(connection, oldName);
+        connection.setUsername(newName);
+        this.membersByName.remove(oldName, connection);
+        return newName;
+    }
+
+    /**
+     * Method to atomically release the username held by a connection
+     * @param connection: ChatConnection object leaving the chat
+     * @return true if the connection was a member and has now left, false otherwise
+     */
+    public boolean leave(ChatConnection connection) {
+        String username = connection.getUsername();
+        if (username == null) {
+            return false;
+        }
+        return this.membersByName.remove(username, connection);
+    }
+
+    /**
+     * Method to find a member by username
+     * @param username: String username to look up
+     * @return ChatConnection object of the member, or null if nobody of that name is online
+     */
+    public ChatConnection getByName(String username) {
+        return this.membersByName.get(username);
+    }
+
+    /**
+     * Method to find a connection by connection id
+     * @param connectionId: integer id assigned when the connection was accepted
+     * @return ChatConnection object, or null if the connection has closed
+     */
+    public ChatConnection getById(int connectionId) {
+        return this.connectionsById.get(connectionId);
+    }
+
+    /**
+     * Accessor method to obtain every accepted connection, for broadcasting.
+     * This is a live view rather than a copy; iterating it is safe while clients join and leave
+     * @return Collection of ChatConnection objects
+     */
+    public Collection<ChatConnection> connections() {
+        return this.connectionsById.values();
+    }
+
+    /**
+     * Method to obtain the members who have joined, in the order they connected
+     * @return ArrayList of ChatConnection objects sorted by connection id
+     */
+    public ArrayList<ChatConnection> membersInJoinOrder() {
+        ArrayList<ChatConnection> members = new ArrayList<ChatConnection>(this.membersByName.values());
+        members.sort(Comparator.comparingInt(ChatConnection::getConnectionId));
+        return members;
+    }
+
+    /**
+     * Accessor method to obtain the number of members who have joined
+     * @return member count
+     */
+    public int memberCount() {
+        return this.membersByName.size();
+    }
+
+    /**
+     * Method to remove every connection and member from the registry
+     */
+    public void clear() {
+        this.membersByName.clear();
+        this.connectionsById.clear();
+    }
+}
@@ -0,0 +1,19 @@
+/**
+ * Enum of the kinds of message a client can send, decided once when the message arrives at the server
+ */
+public enum MessageKind {
+    //The client is leaving the chat (__QUIT)
+    QUIT,
+
+    //The client is joining or leaving a room (/join #room, /leave #room)
+    ROOM_COMMAND,
+
+    //The message is addressed to the bot (HEY_BOT! ...)
+    BOT_REQUEST,
+
+    //A reply sent by a bot connection, addressed to a member (@username ...)
+    BOT_REPLY,
+
+    //An ordinary chat message
+    CHAT
+}
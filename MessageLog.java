@@ -0,0 +1,361 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Durable, append-only log of every message broadcast in the chat, split into memory-mapped segments.
+//Broadcasting threads only queue the already encoded message; a single writer thread appends the queued messages
+//in batches and forces them to disk as its FsyncPolicy decides, rolling to a new segment when one is full
+//(and sealing the full one, so that only the active segment is preallocated) and deleting the oldest segments
+//once the log is over its retention limits
+public class MessageLog {
+
+    //Largest number of messages the writer appends between checks of its fsync policy
+    private static final int BATCH_SIZE = 1024;
+
+    //Longest a broadcasting thread waits for room in a full queue before the message is dropped from the log
+    private static final long APPEND_TIMEOUT_MILLIS = 100;
+
+    //Sender recorded for a notice
+    private static final byte[] NO_SENDER = new byte[0];
+
+    //Private object variables for the configuration
+    private final Path directory;
+    private final int segmentBytes;
+    private final FsyncPolicy fsyncPolicy;
+    private final long retentionBytes;
+    private final long retentionMillis;
+
+    //Segments by base sequence number, the segment being appended to, and the messages waiting for the writer
+    private final ConcurrentSkipListMap<Long, LogSegment> segments;
+    private volatile LogSegment activeSegment;
+    private final ArrayBlockingQueue<EncodedMessage> pending;
+    private final Thread writerThread;
+    private volatile boolean open;
+
+    //Writer state, and the counters shown to the admin
+    private long nextSequence;
+    private long lastTimestampMillis;
+    private long lastForceMillis;
+    private final AtomicLong appendedCount;
+    private final AtomicLong forceCount;
+    private final AtomicLong droppedCount;
+
+    /**
+     * Constructor method to open the log in a directory, recovering any segments already there, and start its writer
+     * @param directory: String path of the log directory (created if needed)
+     * @param segmentBytes: size of each segment file in bytes
+     * @param fsyncPolicy: FsyncPolicy deciding when appended messages are forced to disk
+     * @param retentionBytes: the oldest segments are deleted while the log holds more than this many bytes
+     * @param retentionMillis: segments whose last message is older than this are deleted
+     * @throws IOException: if the directory or a segment cannot be opened
+     */
+    public MessageLog(String directory, int segmentBytes, FsyncPolicy fsyncPolicy, long retentionBytes, long retentionMillis) throws IOException {
+        this.directory = Paths.get(directory).toAbsolutePath();
+        this.segmentBytes = segmentBytes;
+        this.fsyncPolicy = fsyncPolicy;
+        this.retentionBytes = retentionBytes;
+        this.retentionMillis = retentionMillis;
+        this.segments = new ConcurrentSkipListMap<Long, LogSegment>();
+        this.pending = new ArrayBlockingQueue<EncodedMessage>(64 * 1024);
+        this.appendedCount = new AtomicLong();
+        this.forceCount = new AtomicLong();
+        this.droppedCount = new AtomicLong();
+
+        //Every segment but the newest is sealed, which also trims any left preallocated by an older version
+        Files.createDirectories(this.directory);
+        ArrayList<Path> logFiles = new ArrayList<Path>();
+        try (DirectoryStream<Path> directoryFiles = Files.newDirectoryStream(this.directory, "*.log")) {
+            for (Path logFile : directoryFiles) {
+                logFiles.add(logFile);
+            }
+        }
+        Collections.sort(logFiles);
+        for (int i = 0; i < logFiles.size(); i++) {
+            boolean newest = i == logFiles.size() - 1;
+            LogSegment segment = LogSegment.open(logFiles.get(i), newest ? segmentBytes : 0);
+            if (!newest) {
+                segment.seal();
+            }
+            this.segments.put(segment.getBaseSequence(), segment);
+        }
+        if (this.segments.isEmpty()) {
+            this.segments.put(1L, LogSegment.create(this.directory, 1, segmentBytes));
+        }
+        this.activeSegment = this.segments.lastEntry().getValue();
+        this.nextSequence = this.activeSegment.getLastSequence() + 1;
+        this.lastTimestampMillis = this.activeSegment.getLastTimestampMillis();
+        this.lastForceMillis = System.currentTimeMillis();
+        applyRetention();
+
+        this.open = true;
+        this.writerThread = new Thread(this::writeMessages, "message-log-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * Method to queue a broadcast message to be appended. Only a reference is taken, so the broadcasting thread
+     * never waits on the disk unless the writer has fallen a whole queue behind, and then only for a short while
+     * before the message is dropped from the log (and counted)
+     * @param message: EncodedMessage being broadcast
+     */
+    public void append(EncodedMessage message) {
+        if (!this.open) {
+            this.droppedCount.incrementAndGet();
+            return;
+        }
+        try {
+            if (!this.pending.offer(message, APPEND_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                this.droppedCount.incrementAndGet();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Subroutine run by the writer thread, appending the queued messages in batches until the log is closed
+     */
+    private void writeMessages() {
+        ArrayList<EncodedMessage> batch = new ArrayList<EncodedMessage>(BATCH_SIZE);
+        int batchAppended = 0;
+        try {
+            while (this.open || !this.pending.isEmpty()) {
+                EncodedMessage first = this.pending.poll(this.fsyncPolicy.getPollMillis(), TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    this.pending.drainTo(batch, BATCH_SIZE - 1);
+                    batchAppended = 0;
+                    for (EncodedMessage message : batch) {
+                        appendRecord(message);
+                        batchAppended += 1;
+                    }
+                    batch.clear();
+                }
+                long now = System.currentTimeMillis();
+                if (this.fsyncPolicy.shouldForce(now - this.lastForceMillis)) {
+                    force(now);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            //Nothing will drain the queue any more; emptying it wakes any broadcasting thread waiting for room
+            System.out.println("The message log stopped; "+e.getMessage());
+            this.open = false;
+            batch.subList(0, batchAppended).clear();
+            this.pending.drainTo(batch);
+            this.droppedCount.addAndGet(batch.size());
+        }
+        force(System.currentTimeMillis());
+    }
+
+    /**
+     * Subroutine to append one message to the active segment, rolling to a new segment if it is full
+     * @param message: EncodedMessage to append
+     * @throws IOException: if a new segment cannot be created
+     */
+    private void appendRecord(EncodedMessage message) throws IOException {
+        //Timestamps never go backwards, so the log can be searched by time
+        long timestamp = Math.max(System.currentTimeMillis(), this.lastTimestampMillis);
+        byte[] text = message.getBytes();
+        byte[] sender = message.getSender() == null ? NO_SENDER : message.getSender().getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(text.length, this.segmentBytes - LogSegment.SEGMENT_HEADER_BYTES - LogSegment.RECORD_HEADER_BYTES - sender.length);
+        if (!this.activeSegment.append(this.nextSequence, timestamp, message.getMemberId(), message.getRoomId(), sender, text, length)) {
+            rollSegment();
+            this.activeSegment.append(this.nextSequence, timestamp, message.getMemberId(), message.getRoomId(), sender, text, length);
+        }
+        this.nextSequence += 1;
+        this.lastTimestampMillis = timestamp;
+        this.appendedCount.incrementAndGet();
+    }
+
+    /**
+     * Subroutine to seal the full segment (forcing it to disk), start a new one, and apply the retention limits
+     * @throws IOException: if the full segment cannot be sealed or the new segment cannot be created
+     */
+    private void rollSegment() throws IOException {
+        this.activeSegment.seal();
+        LogSegment segment = LogSegment.create(this.directory, this.nextSequence, this.segmentBytes);
+        this.segments.put(segment.getBaseSequence(), segment);
+        this.activeSegment = segment;
+        applyRetention();
+    }
+
+    /**
+     * Subroutine to force the active segment to disk
+     * @param now: current time in milliseconds
+     */
+    private void force(long now) {
+        if (this.activeSegment.force()) {
+            this.forceCount.incrementAndGet();
+        }
+        this.lastForceMillis = now;
+    }
+
+    /**
+     * Subroutine to delete the oldest segments while the log is over its size limit, or they are older than its time limit.
+     * The active segment is always kept
+     */
+    private void applyRetention() {
+        long totalBytes = 0;
+        for (LogSegment segment : this.segments.values()) {
+            totalBytes += segment.getSize();
+        }
+        long oldestKept = System.currentTimeMillis() - this.retentionMillis;
+        while (this.segments.size() > 1) {
+            LogSegment oldest = this.segments.firstEntry().getValue();
+            if (totalBytes <= this.retentionBytes && oldest.getLastTimestampMillis() >= oldestKept) {
+                break;
+            }
+            this.segments.remove(oldest.getBaseSequence());
+            totalBytes -= oldest.getSize();
+            try {
+                oldest.delete();
+            } catch (IOException e) {
+                System.out.println("Could not delete log segment "+oldest.getBaseSequence()+"; "+e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Method to read messages from the log in sequence order
+     * @param fromSequence: sequence number of the first message wanted (messages already deleted are skipped)
+     * @param maxRecords: largest number of messages to return
+     * @return List of LogRecord objects
+     */
+    public List<LogRecord> read(long fromSequence, int maxRecords) {
+        ArrayList<LogRecord> records = new ArrayList<LogRecord>();
+        Map.Entry<Long, LogSegment> start = this.segments.floorEntry(fromSequence);
+        Long firstKey = start == null ? this.segments.firstKey() : start.getKey();
+        for (LogSegment segment : this.segments.tailMap(firstKey).values()) {
+            if (records.size() >= maxRecords) {
+                break;
+            }
+            segment.read(fromSequence, maxRecords - records.size(), records);
+        }
+        return records;
+    }
+
+    /**
+     * Method to find the first message appended at or after a time
+     * @param timestampMillis: time in milliseconds since the epoch
+     * @return sequence number of the message, or the next sequence number to be appended if there is none
+     */
+    public long sequenceAt(long timestampMillis) {
+        for (LogSegment segment : this.segments.values()) {
+            long sequence = segment.sequenceAt(timestampMillis);
+            if (sequence >= 0) {
+                return sequence;
+            }
+        }
+        return getNextSequence();
+    }
+
+    /**
+     * Method to stop the writer once it has appended every queued message, and force the log to disk
+     */
+    public void close() {
+        this.open = false;
+        try {
+            this.writerThread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Accessor method to obtain the directory the log is kept in
+     * @return Path of the log directory
+     */
+    public Path getDirectory() {
+        return this.directory;
+    }
+
+    /**
+     * Accessor method to obtain the sequence number the next appended message will be given
+     * @return next sequence number
+     */
+    public long getNextSequence() {
+        return this.activeSegment.getLastSequence() + 1;
+    }
+
+    /**
+     * Accessor method to obtain the sequence number of the oldest message still held
+     * @return first sequence number
+     */
+    public long getFirstSequence() {
+        return this.segments.firstKey();
+    }
+
+    /**
+     * Accessor method to obtain the number of segments
+     * @return segment count
+     */
+    public int getSegmentCount() {
+        return this.segments.size();
+    }
+
+    /**
+     * Accessor method to obtain the number of bytes of messages held
+     * @return size in bytes
+     */
+    public long getSizeBytes() {
+        long totalBytes = 0;
+        for (LogSegment segment : this.segments.values()) {
+            totalBytes += segment.getSize();
+        }
+        return totalBytes;
+    }
+
+    /**
+     * Accessor method to obtain the number of messages appended since the log was opened
+     * @return appended message count
+     */
+    public long getAppendedCount() {
+        return this.appendedCount.get();
+    }
+
+    /**
+     * Accessor method to obtain the number of messages dropped because the writer had fallen behind or stopped
+     * @return dropped message count
+     */
+    public long getDroppedCount() {
+        return this.droppedCount.get();
+    }
+
+    /**
+     * Accessor method to obtain the number of times the log has been forced to disk
+     * @return force count
+     */
+    public long getForceCount() {
+        return this.forceCount.get();
+    }
+
+    /**
+     * Accessor method to obtain the number of messages waiting for the writer
+     * @return queued message count
+     */
+    public int getPendingCount() {
+        return this.pending.size();
+    }
+
+    /**
+     * Accessor method to obtain the fsync policy
+     * @return FsyncPolicy object
+     */
+    public FsyncPolicy getFsyncPolicy() {
+        return this.fsyncPolicy;
+    }
+}
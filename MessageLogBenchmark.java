@@ -0,0 +1,104 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+//Measures the message log: append throughput under each fsync policy (from queueing the messages
+//to the writer having appended them all), then reopening the log and seeking by sequence number and by time
+public class MessageLogBenchmark {
+
+    /**
+     * Static method to append messages through the log and wait for the writer to catch up
+     * @param messageLog: MessageLog object to append to
+     * @param messages: EncodedMessage array to append
+     * @return messages appended per second
+     */
+    private static double measureAppends(MessageLog messageLog, EncodedMessage[] messages) throws InterruptedException {
+        long before = messageLog.getAppendedCount() + messageLog.getDroppedCount();
+        long start = System.nanoTime();
+        for (EncodedMessage message : messages) {
+            messageLog.append(message);
+        }
+        while (messageLog.getAppendedCount() + messageLog.getDroppedCount() - before < messages.length) {
+            Thread.sleep(1);
+        }
+        return messages.length / ((System.nanoTime()-start) / 1e9);
+    }
+
+    /**
+     * Static method to delete a log directory
+     * @param directory: Path of the directory
+     * @throws IOException: if a file cannot be deleted
+     */
+    private static void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    /**
+     * Main method to run the measurement
+     * @param args: '-messages' (messages appended per policy), '-segment' (segment size in bytes)
+     *            and '-dir' (directory the logs are created in, on the disk being measured)
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int messageCount = 1000000;
+        int segmentBytes = 64 * 1024 * 1024;
+        String parentDirectory = System.getProperty("java.io.tmpdir");
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-messages")) { messageCount = Integer.parseInt(args[i+1]); }
+            if (args[i].equals("-segment")) { segmentBytes = Integer.parseInt(args[i+1]); }
+            if (args[i].equals("-dir")) { parentDirectory = args[i+1]; }
+        }
+
+        //Typical chat lines sent to a room
+        EncodedMessage[] messages = new EncodedMessage[messageCount];
+        for (int i = 0; i < messageCount; i++) {
+            messages[i] = EncodedMessage.of("[#ops] [benchmark_user]: a typical line of chat number "+i, FrameType.CHAT, 7, 2);
+        }
+
+        FsyncPolicy[] policies = {FsyncPolicy.osManaged(), FsyncPolicy.interval(100), FsyncPolicy.perMessage()};
+        for (FsyncPolicy policy : policies) {
+            Path directory = Files.createTempDirectory(Path.of(parentDirectory), "message-log");
+            try {
+                MessageLog messageLog = new MessageLog(directory.toString(), segmentBytes, policy, Long.MAX_VALUE, Long.MAX_VALUE);
+                double warmup = measureAppends(messageLog, messages);
+                double rate = measureAppends(messageLog, messages);
+                messageLog.close();
+                System.out.printf("fsync=%-8s appends=%10.0f msg/s (first pass %10.0f msg/s) segments=%d forces=%d%n",
+                        policy, rate, warmup, messageLog.getSegmentCount(), messageLog.getForceCount());
+
+                //Reopen the log, recovering its segments, then seek to random positions through the sparse index
+                long openStart = System.nanoTime();
+                MessageLog reopened = new MessageLog(directory.toString(), segmentBytes, policy, Long.MAX_VALUE, Long.MAX_VALUE);
+                long openMillis = (System.nanoTime()-openStart) / 1000000;
+                Random random = new Random(3);
+                long lastSequence = reopened.getNextSequence() - 1;
+                List<LogRecord> first = reopened.read(1, 1);
+                long firstTimestamp = first.get(0).getTimestampMillis();
+                long lastTimestamp = reopened.read(lastSequence, 1).get(0).getTimestampMillis();
+                int seeks = 10000;
+                long seekStart = System.nanoTime();
+                for (int i = 0; i < seeks; i++) {
+                    long sequence = 1 + (long) (random.nextDouble() * lastSequence);
+                    if (reopened.read(sequence, 1).get(0).getSequence() != sequence) {
+                        throw new IllegalStateException("Read the wrong record for sequence "+sequence);
+                    }
+                    reopened.sequenceAt(firstTimestamp + (long) (random.nextDouble() * (lastTimestamp - firstTimestamp)));
+                }
+                System.out.printf("              reopened %d messages in %d ms, seek by sequence and by time=%.2f us%n",
+                        lastSequence, openMillis, (System.nanoTime()-seekStart) / 1e3 / seeks);
+                reopened.close();
+            } finally {
+                deleteDirectory(directory);
+            }
+        }
+        System.exit(0);
+    }
+}
@@ -0,0 +1,373 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+
+//Connection class used by the NIO server engine; instead of owning a thread it is driven
+//by the selector loop it was handed to whenever its channel becomes readable or writable
+public class NioConnection extends ChatConnection {
+
+    //Private object variables for the connection
+    private SocketChannel channel;
+    private SelectionKey selectionKey;
+    private NioServerEngine engine;
+
+    //Set once the first line (the username, or the framed protocol handshake) has been read
+    private boolean handshakeRead;
+
+    //Buffers used to split the incoming bytes into lines or frames, and the batch of encoded lines currently being written
+    private ByteBuffer readBuffer;
+    private ByteArrayOutputStream lineBuffer;
+    private ArrayDeque<ByteBuffer> batchBuffers;
+
+    //On a compressed connection, the packet currently being written (the batch is copied into it, so no lines are held)
+    private ByteBuffer pendingPacket;
+    private ByteArrayOutputStream packetBatch;
+
+    //A message held back by the rate limits: reading stops, and whatever follows it stays in the read buffer,
+    //until the engine resumes the connection at 'resumeAtNanos'
+    private boolean readPaused;
+    private MessageKind deferredKind;
+    private String deferredMessage;
+    private int deferredRoomId;
+    protected long resumeAtNanos;
+
+    /**
+     * Constructor method to set the channel, engine and server the connection belongs to
+     * @param channel: non-blocking SocketChannel of the client
+     * @param engine: NioServerEngine which owns the selector the channel is registered with
+     * @param server: ChatServer object
+     */
+    public NioConnection(SocketChannel channel, NioServerEngine engine, ChatServer server) {
+        super(server);
+        this.channel = channel;
+        this.engine = engine;
+        this.readBuffer = ByteBuffer.allocate(4096);
+        this.lineBuffer = new ByteArrayOutputStream();
+        this.batchBuffers = new ArrayDeque<ByteBuffer>();
+    }
+
+    /**
+     * Mutator method to attach the selection key created when the channel was registered
+     * @param selectionKey: SelectionKey of the channel
+     */
+    protected void setSelectionKey(SelectionKey selectionKey) {
+        this.selectionKey = selectionKey;
+    }
+
+    /**
+     * Overriding hook called once a message has been queued; the selector thread
+     * is asked to write it once the channel is writable
+     */
+    @Override
+    protected void messageQueued() {
+        this.engine.requestWrite(this);
+    }
+
+    /**
+     * Method to force leave the user, by setting the connection status to false,
+     * cancelling the selection key and closing the channel
+     */
+    @Override
+    public void forceLeaveUser() {
+        this.connected = false;
+        if (this.selectionKey != null) {
+            this.selectionKey.cancel();
+        }
+        try {
+            this.channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        this.engine.connectionClosed(this);
+        connectionClosed();
+    }
+
+    /**
+     * Overriding method to reap the connection on the selector thread, which is the only thread
+     * that may touch the connection's buffers and selection key
+     */
+    @Override
+    public void reap() {
+        this.engine.execute(() -> {
+            if (this.connected) {
+                super.reap();
+            }
+        });
+    }
+
+    /**
+     * Method called by the selector thread when the channel is readable.
+     * Reads whatever bytes are available and handles every complete line (or frame) received
+     * @throws IOException: if reading from the channel fails, or a frame is not valid
+     */
+    protected void handleRead() throws IOException {
+        int bytesRead = this.channel.read(this.readBuffer);
+        if (bytesRead == -1) {
+            //The client closed the connection
+            forceLeaveUser();
+            return;
+        }
+        this.chatServer.getMetrics().bytesReceived(bytesRead);
+        this.chatServer.getIdleReaper().readFrom(this);
+        handleReadBuffer();
+    }
+
+    /**
+     * Method to handle every complete line (or frame) in the read buffer, stopping early if a message is deferred
+     * @throws IOException: if a frame is not valid
+     */
+    private void handleReadBuffer() throws IOException {
+        this.readBuffer.flip();
+
+        //Split the received bytes into lines on '\n', keeping any partial line for the next read
+        while (this.readBuffer.hasRemaining() && this.connected && !this.readPaused && this.wireProtocol == WireProtocol.LINE) {
+            byte b = this.readBuffer.get();
+            if (b == '\n') {
+                handleLine(decodeLine());
+            } else if (this.lineBuffer.size() <= Frame.MAX_MESSAGE_BYTES) {
+                //Past the limit the rest of the line is dropped (one byte over is kept, to cut the line cleanly)
+                this.lineBuffer.write(b);
+            }
+        }
+        if (this.wireProtocol == WireProtocol.LINE) {
+            //Bytes after a deferred line are kept for when the connection resumes
+            this.readBuffer.compact();
+            return;
+        }
+
+        //After the handshake the bytes are frames; a partial frame stays in the buffer for the next read
+        Frame frame;
+        while (this.connected && !this.readPaused && (frame = Frame.decode(this.readBuffer)) != null) {
+            handleFrame(frame);
+        }
+        this.readBuffer.compact();
+        if (!this.readBuffer.hasRemaining() && !this.readPaused) {
+            //A frame larger than the buffer is arriving; grow the buffer to hold the largest frame allowed
+            ByteBuffer largerBuffer = ByteBuffer.allocate(Frame.HEADER_BYTES + Frame.MAX_PAYLOAD_BYTES);
+            this.readBuffer.flip();
+            largerBuffer.put(this.readBuffer);
+            this.readBuffer = largerBuffer;
+        }
+    }
+
+    /**
+     * Overriding method to hold a message back without blocking the event loop: reading stops, and the engine
+     * resumes the connection once the message would be admitted
+     * @param messageKind: MessageKind of the message
+     * @param clientMessage: String message sent by the client
+     * @param roomId: id of the room a chat message is for, or 0 for the client's active room
+     * @param waitNanos: how long until the message would be admitted
+     * @return true, as the connection keeps going
+     */
+    @Override
+    protected boolean deferMessage(MessageKind messageKind, String clientMessage, int roomId, long waitNanos) {
+        this.deferredKind = messageKind;
+        this.deferredMessage = clientMessage;
+        this.deferredRoomId = roomId;
+        this.readPaused = true;
+        this.selectionKey.interestOps(this.selectionKey.interestOps() & ~SelectionKey.OP_READ);
+        this.engine.resumeLater(this, System.nanoTime() + waitNanos);
+        return true;
+    }
+
+    /**
+     * Method called by the selector thread once a deferred message is due: the message is handled if the rate limits
+     * now admit it, followed by anything read after it, and reading starts again
+     */
+    protected void resumeReading() {
+        if (!this.connected) {
+            return;
+        }
+        long waitNanos = rateLimitWait(this.deferredMessage);
+        if (waitNanos > 0) {
+            //Another connection took the global budget first
+            this.engine.resumeLater(this, System.nanoTime() + waitNanos);
+            return;
+        }
+        String clientMessage = this.deferredMessage;
+        this.deferredMessage = null;
+        this.readPaused = false;
+        if (!dispatchMessage(this.deferredKind, clientMessage, this.deferredRoomId)) {
+            forceLeaveUser();
+            return;
+        }
+
+        try {
+            handleReadBuffer();
+        } catch (IOException e) {
+            forceLeaveUser();
+            return;
+        }
+        if (this.connected && !this.readPaused) {
+            this.selectionKey.interestOps(this.selectionKey.interestOps() | SelectionKey.OP_READ);
+        }
+    }
+
+    /**
+     * Method to obtain the read interest of the channel, which is dropped while a message is deferred
+     * @return SelectionKey.OP_READ, or 0 while reading is paused
+     */
+    private int readInterest() {
+        return this.readPaused ? 0 : SelectionKey.OP_READ;
+    }
+
+    /**
+     * Method to decode the bytes collected for the current line, dropping a trailing '\r' and cutting a line
+     * longer than a client message may be
+     * @return String line read from the client
+     */
+    private String decodeLine() {
+        byte[] bytes = this.lineBuffer.toByteArray();
+        this.lineBuffer.reset();
+        return Frame.decodeLine(bytes, bytes.length, Frame.MAX_MESSAGE_BYTES);
+    }
+
+    /**
+     * Method to handle a complete line; the first line on the connection is the username,
+     * unless it is the handshake for the framed protocol
+     * @param line: String line read from the client
+     */
+    private void handleLine(String line) {
+        if (!this.handshakeRead && line.startsWith(PacketDeflater.HANDSHAKE)) {
+            //Compression is asked for ahead of the username (or the framed handshake)
+            this.packetDeflater = this.chatServer.createPacketDeflater(line);
+            this.packetBatch = new ByteArrayOutputStream();
+            return;
+        }
+        if (!this.handshakeRead) {
+            this.handshakeRead = true;
+            //Anything queued before the protocol was known can now be written
+            this.engine.requestWrite(this);
+            if (Frame.HANDSHAKE.equals(line)) {
+                this.wireProtocol = WireProtocol.FRAMED;
+                return;
+            }
+        }
+        if (this.username == null && this.connectionClass != ConnectionClass.ADMIN) {
+            joinChat(line);
+        } else if (!processClientMessage(line)) {
+            forceLeaveUser();
+        }
+    }
+
+    /**
+     * Method to handle a complete frame; the first frame on a framed connection must be a JOIN
+     * @param frame: Frame read from the client
+     */
+    private void handleFrame(Frame frame) {
+        if (this.username == null) {
+            if (frame.getType() == FrameType.JOIN) {
+                joinChat(frame.getPayload());
+            } else {
+                forceLeaveUser();
+            }
+        } else if (!processFrame(frame)) {
+            forceLeaveUser();
+        }
+    }
+
+    /**
+     * Method called by the selector thread to write the queued lines.
+     * Every pending line (up to the batch size of the connection's FlushPolicy) is gathered into a single
+     * write per loop turn; write interest is kept while anything is left for the next turn
+     * @throws IOException: if writing to the channel fails
+     */
+    protected void handleWrite() throws IOException {
+        //Nothing is written until the client's protocol is known
+        if (!this.handshakeRead) {
+            this.selectionKey.interestOps(readInterest());
+            return;
+        }
+
+        if (this.packetDeflater != null) {
+            writePackets();
+            return;
+        }
+
+        //Top the batch up with the lines queued since the last turn
+        int maxBatchBytes = this.chatServer.getFlushPolicy(this.connectionClass).getMaxBatchBytes();
+        int batchBytes = 0;
+        for (ByteBuffer buffer : this.batchBuffers) {
+            batchBytes += buffer.remaining();
+        }
+        EncodedMessage message;
+        while (batchBytes < maxBatchBytes && (message = this.outboundQueue.poll()) != null) {
+            //A view over the bytes shared with the other recipients, duplicated from the message's own read-only buffer
+            ByteBuffer buffer = message.asByteBuffer(this.wireProtocol);
+            this.batchBuffers.add(buffer);
+            batchBytes += buffer.remaining();
+        }
+
+        //One gathering write for the whole batch
+        if (!this.batchBuffers.isEmpty()) {
+            this.channel.write(this.batchBuffers.toArray(new ByteBuffer[0]));
+        }
+
+        //Drop the lines which have been completely written
+        int sentMessages = 0;
+        long sentBytes = 0;
+        while (!this.batchBuffers.isEmpty() && !this.batchBuffers.peek().hasRemaining()) {
+            sentBytes += this.batchBuffers.poll().limit();
+            sentMessages += 1;
+        }
+        if (sentMessages > 0) {
+            this.chatServer.getMetrics().messagesSent(sentMessages, sentBytes);
+        }
+
+        if (hasPendingWrites()) {
+            //Socket send buffer is full or the batch limit was reached, continue on the next OP_WRITE
+            this.selectionKey.interestOps(readInterest() | SelectionKey.OP_WRITE);
+        } else {
+            this.selectionKey.interestOps(readInterest());
+        }
+    }
+
+    /**
+     * Method to write the queued lines of a compressed connection. Each batch of pending lines
+     * (up to the batch size of the connection's FlushPolicy) is compressed into one packet, which is finished
+     * before the next batch is taken
+     * @throws IOException: if writing to the channel fails
+     */
+    private void writePackets() throws IOException {
+        if (this.pendingPacket == null) {
+            int maxBatchBytes = this.chatServer.getFlushPolicy(this.connectionClass).getMaxBatchBytes();
+            EncodedMessage message;
+            int batchMessages = 0;
+            while (this.packetBatch.size() < maxBatchBytes && (message = this.outboundQueue.poll()) != null) {
+                this.packetBatch.writeBytes(message.getBytes(this.wireProtocol));
+                batchMessages += 1;
+            }
+            if (this.packetBatch.size() > 0) {
+                this.chatServer.getMetrics().messagesSent(batchMessages, this.packetBatch.size());
+                byte[] batch = this.packetBatch.toByteArray();
+                this.packetBatch.reset();
+                this.pendingPacket = ByteBuffer.wrap(this.packetDeflater.encodePacket(batch, batch.length));
+            }
+        }
+
+        if (this.pendingPacket != null) {
+            this.channel.write(this.pendingPacket);
+            if (!this.pendingPacket.hasRemaining()) {
+                this.pendingPacket = null;
+            }
+        }
+
+        if (hasPendingWrites()) {
+            this.selectionKey.interestOps(readInterest() | SelectionKey.OP_WRITE);
+        } else {
+            this.selectionKey.interestOps(readInterest());
+        }
+    }
+
+    /**
+     * Boolean method to check if there are lines waiting to be written
+     * @return true/false if a batch (or packet) is part written or the outbound queue has data
+     */
+    protected boolean hasPendingWrites() {
+        return !this.batchBuffers.isEmpty() || this.pendingPacket != null || this.outboundQueue.getDepth() > 0;
+    }
+}
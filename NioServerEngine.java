@@ -0,0 +1,231 @@
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+//Event loop of the NIO server engine, which serves its share of the clients from a single thread using a Selector
+//and non-blocking channels, instead of one blocking thread per client. The server runs one loop per core,
+//and its acceptors hand each new channel to the loop serving the fewest connections
+public class NioServerEngine implements Runnable {
+
+    //Private object variables for the engine
+    private ChatServer chatServer;
+    private Selector selector;
+    private int index;
+
+    //Channels handed over by an acceptor, waiting to be registered by the selector thread
+    private Queue<SocketChannel> pendingChannels;
+
+    //Connections which have had lines queued from any thread and need to be flushed by the selector thread
+    private Queue<NioConnection> pendingWrites;
+
+    //Tasks handed over by other threads to run on the selector thread
+    private Queue<Runnable> pendingTasks;
+
+    //Connections served by this loop, used to balance new ones across the loops
+    private Set<NioConnection> connections;
+
+    //Connections holding a message back for the rate limits, soonest due first (only used by the selector thread)
+    private PriorityQueue<NioConnection> deferredReads;
+
+    /**
+     * Constructor method to open the selector of the loop
+     * @param chatServer: ChatServer object which owns the engine
+     * @param index: number of the loop, from 0
+     * @throws IOException: if the selector cannot be opened
+     */
+    public NioServerEngine(ChatServer chatServer, int index) throws IOException {
+        this.chatServer = chatServer;
+        this.index = index;
+        this.selector = Selector.open();
+        this.pendingChannels = new ConcurrentLinkedQueue<SocketChannel>();
+        this.pendingWrites = new ConcurrentLinkedQueue<NioConnection>();
+        this.pendingTasks = new ConcurrentLinkedQueue<Runnable>();
+        this.connections = ConcurrentHashMap.newKeySet();
+        this.deferredReads = new PriorityQueue<NioConnection>(Comparator.comparingLong(connection -> connection.resumeAtNanos));
+    }
+
+    /**
+     * Method to hand a newly accepted channel to the loop; it is registered by the selector thread,
+     * since registering from another thread would block while the selector is waiting.
+     * Safe to call from any thread (e.g. an acceptor)
+     * @param channel: non-blocking SocketChannel of the new client
+     */
+    protected void register(SocketChannel channel) {
+        this.pendingChannels.add(channel);
+        this.selector.wakeup();
+    }
+
+    /**
+     * Method to remove a closed connection from the loop's count
+     * @param connection: NioConnection which has closed
+     */
+    protected void connectionClosed(NioConnection connection) {
+        this.connections.remove(connection);
+    }
+
+    /**
+     * Accessor method to obtain the number of connections the loop serves, including those still being registered
+     * @return connection count
+     */
+    public int getConnectionCount() {
+        return this.connections.size() + this.pendingChannels.size();
+    }
+
+    /**
+     * Accessor method to obtain the number of the loop
+     * @return loop index, from 0
+     */
+    public int getIndex() {
+        return this.index;
+    }
+
+    /**
+     * Method to request that a connection's queued lines are written by the selector thread.
+     * Safe to call from any thread (e.g. a broadcast started by the server console)
+     * @param connection: NioConnection with pending writes
+     */
+    protected void requestWrite(NioConnection connection) {
+        this.pendingWrites.add(connection);
+        this.selector.wakeup();
+    }
+
+    /**
+     * Method to resume a connection's reading at a later time; called by the selector thread only
+     * @param connection: NioConnection holding a message back
+     * @param resumeAtNanos: time from System.nanoTime() at which it resumes
+     */
+    protected void resumeLater(NioConnection connection, long resumeAtNanos) {
+        connection.resumeAtNanos = resumeAtNanos;
+        this.deferredReads.add(connection);
+    }
+
+    /**
+     * Subroutine to resume every connection whose deferred message is due
+     * @return milliseconds until the next one is due, or 0 if none is waiting
+     */
+    private long resumeDeferredReads() {
+        NioConnection connection;
+        while ((connection = this.deferredReads.peek()) != null && connection.resumeAtNanos - System.nanoTime() <= 0) {
+            this.deferredReads.poll();
+            connection.resumeReading();
+        }
+        if (connection == null) {
+            return 0;
+        }
+        //Rounded up, as a timeout of 0 would wait indefinitely
+        return Math.max(1, (connection.resumeAtNanos - System.nanoTime() + 999999) / 1000000);
+    }
+
+    /**
+     * Method to run a task on the selector thread, e.g. reaping an idle connection.
+     * Safe to call from any thread
+     * @param task: Runnable to run
+     */
+    protected void execute(Runnable task) {
+        this.pendingTasks.add(task);
+        this.selector.wakeup();
+    }
+
+    /**
+     * Method to stop the selector loop, called when the server is shutting down
+     */
+    protected void shutdown() {
+        try {
+            this.selector.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Subroutine to register every channel handed over since the last loop for reading
+     */
+    private void registerPendingChannels() {
+        SocketChannel clientChannel;
+        while ((clientChannel = this.pendingChannels.poll()) != null) {
+            NioConnection connection = new NioConnection(clientChannel, this, this.chatServer);
+            try {
+                connection.setSelectionKey(clientChannel.register(this.selector, SelectionKey.OP_READ, connection));
+            } catch (IOException e) {
+                try {
+                    clientChannel.close();
+                } catch (IOException i) {
+                }
+                continue;
+            }
+            this.connections.add(connection);
+            this.chatServer.addConnection(connection);
+            this.chatServer.getIdleReaper().track(connection);
+        }
+    }
+
+    /**
+     * Subroutine to flush every connection which has had lines queued since the last loop
+     */
+    private void flushPendingWrites() {
+        NioConnection connection;
+        while ((connection = this.pendingWrites.poll()) != null) {
+            if (connection.connected && connection.hasPendingWrites()) {
+                try {
+                    connection.handleWrite();
+                } catch (IOException e) {
+                    connection.forceLeaveUser();
+                }
+            }
+        }
+    }
+
+    /**
+     * Overriding run method; the selector loop which runs until the server shuts down
+     */
+    @Override
+    public void run() {
+        try {
+            while (this.chatServer.isConnected()) {
+                this.selector.select(resumeDeferredReads());
+                registerPendingChannels();
+                Runnable task;
+                while ((task = this.pendingTasks.poll()) != null) {
+                    task.run();
+                }
+                flushPendingWrites();
+
+                //Handle every channel which is ready
+                Iterator<SelectionKey> iterator = this.selector.selectedKeys().iterator();
+                while (iterator.hasNext()) {
+                    SelectionKey key = iterator.next();
+                    iterator.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+
+                    NioConnection connection = (NioConnection) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            connection.handleRead();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.handleWrite();
+                        }
+                    } catch (IOException e) {
+                        //A client dropping its connection only affects that client
+                        connection.forceLeaveUser();
+                    }
+                }
+            }
+        } catch (ClosedSelectorException cse) {
+            //Selector closed by shutdown()
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Bounded queue of the messages waiting to be written to a single client.
+//Broadcasts only enqueue, so a client which is slow to read can no longer stall everyone else
+public class OutboundQueue {
+
+    //Private object variables for the queue and its counters
+    private ArrayBlockingQueue<EncodedMessage> messages;
+    private OverflowPolicy overflowPolicy;
+    private long blockTimeoutMillis;
+    private AtomicLong enqueuedCount;
+    private AtomicLong droppedCount;
+
+    /**
+     * Constructor method to create the queue
+     * @param capacity: maximum number of messages which can be waiting
+     * @param overflowPolicy: OverflowPolicy applied when the queue is full
+     * @param blockTimeoutMillis: how long the BLOCK policy waits for room, in milliseconds
+     */
+    public OutboundQueue(int capacity, OverflowPolicy overflowPolicy, long blockTimeoutMillis) {
+        this.messages = new ArrayBlockingQueue<EncodedMessage>(capacity);
+        this.overflowPolicy = overflowPolicy;
+        this.blockTimeoutMillis = blockTimeoutMillis;
+        this.enqueuedCount = new AtomicLong();
+        this.droppedCount = new AtomicLong();
+    }
+
+    /**
+     * Method to add a message to the queue, applying the overflow policy if it is full
+     * @param message: EncodedMessage to be written to the client
+     * @return false if the client should be disconnected (DISCONNECT policy on a full queue), otherwise true
+     */
+    public boolean offer(EncodedMessage message) {
+        if (this.messages.offer(message)) {
+            this.enqueuedCount.incrementAndGet();
+            return true;
+        }
+
+        switch (this.overflowPolicy) {
+            case DROP_OLDEST:
+                //Keep removing the oldest message until the new one fits
+                while (!this.messages.offer(message)) {
+                    if (this.messages.poll() != null) {
+                        this.droppedCount.incrementAndGet();
+                    }
+                }
+                this.enqueuedCount.incrementAndGet();
+                return true;
+            case BLOCK:
+                try {
+                    if (this.messages.offer(message, this.blockTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                        this.enqueuedCount.incrementAndGet();
+                        return true;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                this.droppedCount.incrementAndGet();
+                return true;
+            default:
+                this.droppedCount.incrementAndGet();
+                return false;
+        }
+    }
+
+    /**
+     * Method to take the next message, waiting up to the given time for one to arrive
+     * @param timeout: maximum time to wait
+     * @param unit: TimeUnit of the timeout
+     * @return next EncodedMessage, or null if none arrived in time
+     * @throws InterruptedException: if the waiting thread is interrupted
+     */
+    public EncodedMessage poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return this.messages.poll(timeout, unit);
+    }
+
+    /**
+     * Method to take the next message without waiting
+     * @return next EncodedMessage, or null if the queue is empty
+     */
+    public EncodedMessage poll() {
+        return this.messages.poll();
+    }
+
+    /**
+     * Method to look at the next message without removing it
+     * @return next EncodedMessage, or null if the queue is empty
+     */
+    public EncodedMessage peek() {
+        return this.messages.peek();
+    }
+
+    /**
+     * Accessor method to obtain the number of messages currently waiting
+     * @return queue depth
+     */
+    public int getDepth() {
+        return this.messages.size();
+    }
+
+    /**
+     * Accessor method to obtain the number of messages accepted into the queue
+     * @return enqueued count
+     */
+    public long getEnqueuedCount() {
+        return this.enqueuedCount.get();
+    }
+
+    /**
+     * Accessor method to obtain the number of messages dropped because the queue was full
+     * @return dropped count
+     */
+    public long getDroppedCount() {
+        return this.droppedCount.get();
+    }
+}
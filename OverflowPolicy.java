@@ -0,0 +1,29 @@
+/**
+ * Enum of the policies applied when a client's outbound queue is full
+ * (selected at startup using '-overflow' on the command line)
+ */
+public enum OverflowPolicy {
+    //Discard the oldest queued message to make room for the new one
+    DROP_OLDEST,
+
+    //Disconnect the client, since it cannot keep up with the chat
+    DISCONNECT,
+
+    //Wait (up to the configured timeout) for room in the queue, then drop the new message
+    BLOCK;
+
+    /**
+     * Static method to parse the policy given on the command line
+     * @param value: String value of the policy (case insensitive)
+     * @return matching OverflowPolicy, or DROP_OLDEST if the value is not recognised
+     */
+    public static OverflowPolicy fromString(String value) {
+        for (OverflowPolicy policy : OverflowPolicy.values()) {
+            if (policy.name().equalsIgnoreCase(value)) {
+                return policy;
+            }
+        }
+        System.out.println("Unknown overflow policy '"+value+"', defaulting to "+DROP_OLDEST);
+        return DROP_OLDEST;
+    }
+}
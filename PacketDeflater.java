@@ -0,0 +1,155 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+//Compressor for one connection's outgoing bytes. Each flushed batch is sent as a packet:
+//  kind (1 byte: 0 stored, 1 deflated) | length (4 bytes) | bytes
+//Deflated packets continue a single deflate stream (sync flushed), so every packet benefits from the ones before it.
+//Batches smaller than MIN_COMPRESS_BYTES are stored as they are, as deflating them would cost more than it saves
+public class PacketDeflater {
+
+    //Packet kinds and sizes
+    public static final byte STORED = 0;
+    public static final byte DEFLATED = 1;
+    public static final int HEADER_BYTES = 5;
+    public static final int MIN_COMPRESS_BYTES = 64;
+
+    //Handshake line sent by a client which wants compression, followed by the checksum of its dictionary
+    public static final String HANDSHAKE = "__DEFLATE";
+
+    private static final ThreadMXBean THREAD_BEAN = ManagementFactory.getThreadMXBean();
+
+    //Private object variables; the deflate stream and the buffer its output is collected in
+    private Deflater deflater;
+    private byte[] outputBuffer;
+
+    //Statistics, written only by the connection's writer and read by the admin console
+    private volatile long inputBytes;
+    private volatile long outputBytes;
+    private volatile long deflatedPackets;
+    private volatile long storedPackets;
+    private volatile long cpuNanos;
+
+    /**
+     * Constructor method to start the deflate stream with a preset dictionary
+     * @param dictionary: byte array dictionary, which the client must also hold
+     */
+    public PacketDeflater(byte[] dictionary) {
+        this.deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        this.deflater.setDictionary(dictionary);
+        this.outputBuffer = new byte[8192];
+    }
+
+    /**
+     * Method to encode a batch of bytes as a single packet
+     * @param data: byte array holding the batch
+     * @param length: number of bytes of the batch, from the start of the array
+     * @return byte array of the packet, header included
+     */
+    public byte[] encodePacket(byte[] data, int length) {
+        byte kind;
+        int bodyLength;
+        if (length < MIN_COMPRESS_BYTES) {
+            kind = STORED;
+            bodyLength = length;
+            ensureCapacity(HEADER_BYTES + length);
+            System.arraycopy(data, 0, this.outputBuffer, HEADER_BYTES, length);
+            this.storedPackets += 1;
+        } else {
+            kind = DEFLATED;
+            long cpuStart = THREAD_BEAN.getCurrentThreadCpuTime();
+            this.deflater.setInput(data, 0, length);
+            bodyLength = 0;
+            //SYNC_FLUSH emits everything given so far; a full output buffer means there may be more to come
+            while (true) {
+                ensureCapacity(HEADER_BYTES + bodyLength + 256);
+                int space = this.outputBuffer.length - HEADER_BYTES - bodyLength;
+                int written = this.deflater.deflate(this.outputBuffer, HEADER_BYTES + bodyLength, space, Deflater.SYNC_FLUSH);
+                bodyLength += written;
+                if (written < space) {
+                    break;
+                }
+            }
+            this.cpuNanos += THREAD_BEAN.getCurrentThreadCpuTime() - cpuStart;
+            this.deflatedPackets += 1;
+        }
+
+        this.outputBuffer[0] = kind;
+        this.outputBuffer[1] = (byte) (bodyLength >>> 24);
+        this.outputBuffer[2] = (byte) (bodyLength >>> 16);
+        this.outputBuffer[3] = (byte) (bodyLength >>> 8);
+        this.outputBuffer[4] = (byte) bodyLength;
+        this.inputBytes += length;
+        this.outputBytes += HEADER_BYTES + bodyLength;
+        return Arrays.copyOf(this.outputBuffer, HEADER_BYTES + bodyLength);
+    }
+
+    /**
+     * Subroutine to grow the output buffer to at least the given size
+     * @param size: number of bytes needed
+     */
+    private void ensureCapacity(int size) {
+        if (size > this.outputBuffer.length) {
+            this.outputBuffer = Arrays.copyOf(this.outputBuffer, Math.max(size, this.outputBuffer.length * 2));
+        }
+    }
+
+    /**
+     * Method to free the native memory of the deflate stream once the connection has closed
+     */
+    public void end() {
+        this.deflater.end();
+    }
+
+    /**
+     * Accessor method to obtain the number of bytes given to the compressor
+     * @return uncompressed byte count
+     */
+    public long getInputBytes() {
+        return this.inputBytes;
+    }
+
+    /**
+     * Accessor method to obtain the number of bytes sent on the wire, packet headers included
+     * @return compressed byte count
+     */
+    public long getOutputBytes() {
+        return this.outputBytes;
+    }
+
+    /**
+     * Accessor method to obtain the number of packets which were deflated
+     * @return deflated packet count
+     */
+    public long getDeflatedPackets() {
+        return this.deflatedPackets;
+    }
+
+    /**
+     * Accessor method to obtain the number of packets stored without compression, as they were too small
+     * @return stored packet count
+     */
+    public long getStoredPackets() {
+        return this.storedPackets;
+    }
+
+    /**
+     * Accessor method to obtain the CPU time spent deflating
+     * @return CPU time in nanoseconds
+     */
+    public long getCpuNanos() {
+        return this.cpuNanos;
+    }
+
+    /**
+     * Accessor method to obtain the compression ratio so far
+     * @return uncompressed bytes divided by bytes sent (1.0 before anything is sent)
+     */
+    public double getRatio() {
+        if (this.outputBytes == 0) {
+            return 1.0;
+        }
+        return (double) this.inputBytes / this.outputBytes;
+    }
+}
@@ -0,0 +1,26 @@
+/**
+ * Enum of the policies applied to a message a client sends over its rate limit, or over the server's global budget
+ * (selected at startup using '-rateLimitPolicy' on the command line)
+ */
+public enum RateLimitPolicy {
+    //Hold the message, and stop reading from the client, until the budget allows it; nothing the client sends is lost
+    DEFER,
+
+    //Discard the message, so that the client's reading never stops
+    DROP;
+
+    /**
+     * Static method to parse the policy given on the command line
+     * @param value: String value of the policy (case insensitive)
+     * @return matching RateLimitPolicy, or DEFER if the value is not recognised
+     */
+    public static RateLimitPolicy fromString(String value) {
+        for (RateLimitPolicy policy : RateLimitPolicy.values()) {
+            if (policy.name().equalsIgnoreCase(value)) {
+                return policy;
+            }
+        }
+        System.out.println("Unknown rate limit policy '"+value+"', defaulting to "+DEFER);
+        return DEFER;
+    }
+}
@@ -0,0 +1,151 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+//Token buckets limiting how fast the members may send: per connection in messages and bytes per second, and across the
+//whole server in messages per second. Each bucket is kept as the single time at which it will be full again (the
+//generic cell rate algorithm), so a connection's two buckets are just two longs in the connection, updated only by the
+//thread reading from it, and the global budget is one AtomicLong updated by compare-and-set.
+//A bucket saves up to 'burst' seconds of its rate, so a quiet member can still send a few lines in quick succession
+public class RateLimiter {
+
+    //Time each unit costs, in nanoseconds, for each bucket; 0 if the bucket is not limited
+    private final long messageIntervalNanos;
+    private final long byteIntervalNanos;
+    private final long globalIntervalNanos;
+
+    //How far ahead of the present a bucket may be spent, which is the burst it allows
+    private final long burstNanos;
+    private final RateLimitPolicy policy;
+
+    //Time at which the global bucket will be full again
+    private final AtomicLong globalFullAt;
+
+    /**
+     * Constructor method to create the limits
+     * @param messagesPerSecond: messages each connection may send per second (0 for no limit)
+     * @param bytesPerSecond: bytes each connection may send per second (0 for no limit)
+     * @param globalMessagesPerSecond: messages all the connections together may send per second (0 for no limit)
+     * @param burstSeconds: number of seconds of its rate a bucket saves up
+     * @param policy: RateLimitPolicy applied to a message over a limit
+     */
+    public RateLimiter(double messagesPerSecond, double bytesPerSecond, double globalMessagesPerSecond,
+                       double burstSeconds, RateLimitPolicy policy) {
+        this.messageIntervalNanos = intervalNanos(messagesPerSecond);
+        this.byteIntervalNanos = intervalNanos(bytesPerSecond);
+        this.globalIntervalNanos = intervalNanos(globalMessagesPerSecond);
+        this.burstNanos = Math.max(1, (long) (burstSeconds * 1e9));
+        this.policy = policy;
+        this.globalFullAt = new AtomicLong(Long.MIN_VALUE / 2);
+    }
+
+    /**
+     * Static method to convert a rate into the time each unit costs
+     * @param perSecond: units per second
+     * @return nanoseconds per unit, or 0 if the rate is not limited
+     */
+    private static long intervalNanos(double perSecond) {
+        return perSecond > 0 ? Math.max(1, (long) (1e9 / perSecond)) : 0;
+    }
+
+    /**
+     * Boolean method to check if any limit is set, so that unlimited servers skip reading the clock
+     * @return true/false if messages are limited or not
+     */
+    public boolean isEnabled() {
+        if (this.messageIntervalNanos > 0 || this.byteIntervalNanos > 0 || this.globalIntervalNanos > 0) {
+            return true;
+        } return false;
+    }
+
+    /**
+     * Method to take a message out of the connection's buckets and the global one, if all of them have room.
+     * Nothing is taken unless the message is admitted. Called only by the thread reading from the connection
+     * @param connection: ChatConnection sending the message
+     * @param bytes: size of the message
+     * @param now: current time from System.nanoTime()
+     * @return 0 if the message is admitted, otherwise how long to wait before it would be, in nanoseconds
+     */
+    public long admit(ChatConnection connection, int bytes, long now) {
+        long waitNanos = 0;
+        if (this.messageIntervalNanos > 0) {
+            waitNanos = waitNanos(connection.messageBucketFullAt, this.messageIntervalNanos, now);
+        }
+        if (this.byteIntervalNanos > 0) {
+            waitNanos = Math.max(waitNanos, waitNanos(connection.byteBucketFullAt, this.byteIntervalNanos * bytes, now));
+        }
+        if (waitNanos > 0) {
+            return waitNanos;
+        }
+
+        if (this.globalIntervalNanos > 0) {
+            long fullAt;
+            do {
+                fullAt = this.globalFullAt.get();
+                waitNanos = waitNanos(fullAt, this.globalIntervalNanos, now);
+                if (waitNanos > 0) {
+                    return waitNanos;
+                }
+            } while (!this.globalFullAt.compareAndSet(fullAt, spend(fullAt, this.globalIntervalNanos, now)));
+        }
+
+        if (this.messageIntervalNanos > 0) {
+            connection.messageBucketFullAt = spend(connection.messageBucketFullAt, this.messageIntervalNanos, now);
+        }
+        if (this.byteIntervalNanos > 0) {
+            connection.byteBucketFullAt = spend(connection.byteBucketFullAt, this.byteIntervalNanos * bytes, now);
+        }
+        return 0;
+    }
+
+    /**
+     * Subroutine to work out the time at which a bucket will be full again once a cost is taken out of it.
+     * A cost larger than the whole burst is capped, so a single long message can still be sent from a full bucket
+     * @param fullAt: time at which the bucket is full again (in the past if it is full now)
+     * @param costNanos: cost of the message
+     * @param now: current time
+     * @return new time at which the bucket will be full
+     */
+    private long spend(long fullAt, long costNanos, long now) {
+        return Math.max(fullAt, now) + Math.min(costNanos, this.burstNanos);
+    }
+
+    /**
+     * Subroutine to work out how long a message must wait for room in a bucket
+     * @param fullAt: time at which the bucket is full again
+     * @param costNanos: cost of the message
+     * @param now: current time
+     * @return 0 if the bucket has room, otherwise the wait in nanoseconds
+     */
+    private long waitNanos(long fullAt, long costNanos, long now) {
+        return Math.max(0, spend(fullAt, costNanos, now) - now - this.burstNanos);
+    }
+
+    /**
+     * Accessor method to obtain the policy applied to a message over a limit
+     * @return RateLimitPolicy object
+     */
+    public RateLimitPolicy getPolicy() {
+        return this.policy;
+    }
+
+    /**
+     * Method to describe the limits, for the admin's STATS command
+     * @return String summary
+     */
+    public String describe() {
+        if (!isEnabled()) {
+            return "rate limit: off";
+        }
+        return String.format("rate limit: per connection %s msg/s and %s bytes/s, global %s msg/s, burst %.1f s, policy %s",
+                rate(this.messageIntervalNanos), rate(this.byteIntervalNanos), rate(this.globalIntervalNanos),
+                this.burstNanos / 1e9, this.policy);
+    }
+
+    /**
+     * Static method to format the rate of a bucket
+     * @param intervalNanos: time each unit costs, or 0 if not limited
+     * @return String rate, or 'unlimited'
+     */
+    private static String rate(long intervalNanos) {
+        return intervalNanos > 0 ? String.format("%.0f", 1e9 / intervalNanos) : "unlimited";
+    }
+}
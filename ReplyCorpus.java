@@ -0,0 +1,146 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+//Immutable, indexed set of replies loaded once from the replies file.
+//A line may be tagged with the keywords it answers, written "keyword keyword ...<TAB>reply".
+//Small files are held as a String array; large ones are memory-mapped and only the line offsets are kept on the heap
+public final class ReplyCorpus {
+
+    //Files at least this large are memory-mapped instead of being read onto the heap
+    public static final long MAPPED_THRESHOLD_BYTES = 8L * 1024 * 1024;
+
+    //Private object variables; either the lines themselves, or the mapped file and the byte range of each line
+    private final String[] lines;
+    private final MappedByteBuffer mappedFile;
+    private final int[] lineStarts;
+    private final int[] lineEnds;
+    private final int lineCount;
+
+    /**
+     * Private constructor method for a corpus held on the heap
+     * @param lines: String array of replies
+     */
+    private ReplyCorpus(String[] lines) {
+        this.lines = lines;
+        this.mappedFile = null;
+        this.lineStarts = null;
+        this.lineEnds = null;
+        this.lineCount = lines.length;
+    }
+
+    /**
+     * Private constructor method for a memory-mapped corpus
+     * @param mappedFile: MappedByteBuffer of the whole file
+     * @param lineStarts: byte offset of the start of each line
+     * @param lineEnds: byte offset just past the end of each line (excluding the '\n')
+     * @param lineCount: number of lines
+     */
+    private ReplyCorpus(MappedByteBuffer mappedFile, int[] lineStarts, int[] lineEnds, int lineCount) {
+        this.lines = null;
+        this.mappedFile = mappedFile;
+        this.lineStarts = lineStarts;
+        this.lineEnds = lineEnds;
+        this.lineCount = lineCount;
+    }
+
+    /**
+     * Static method to load the corpus from a file, choosing the heap or mapped representation by its size
+     * @param path: Path of the replies file (one reply per line)
+     * @return new ReplyCorpus object
+     * @throws IOException: if the file cannot be read
+     */
+    public static ReplyCorpus load(Path path) throws IOException {
+        if (Files.size(path) < MAPPED_THRESHOLD_BYTES) {
+            List<String> lineList = Files.readAllLines(path, StandardCharsets.UTF_8);
+            return new ReplyCorpus(lineList.toArray(new String[0]));
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            //The mapping stays valid after the channel is closed
+            MappedByteBuffer mappedFile = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int[] lineStarts = new int[1024];
+            int[] lineEnds = new int[1024];
+            int lineCount = 0;
+            int limit = mappedFile.limit();
+            int start = 0;
+            for (int i = 0; i <= limit; i++) {
+                //A line ends at each '\n', and at the end of the file unless the file ends with a newline
+                if ((i < limit && mappedFile.get(i) == '\n') || (i == limit && start < limit)) {
+                    if (lineCount == lineStarts.length) {
+                        lineStarts = Arrays.copyOf(lineStarts, lineCount * 2);
+                        lineEnds = Arrays.copyOf(lineEnds, lineCount * 2);
+                    }
+                    lineStarts[lineCount] = start;
+                    lineEnds[lineCount] = i;
+                    lineCount += 1;
+                    start = i+1;
+                }
+            }
+            return new ReplyCorpus(mappedFile, lineStarts, lineEnds, lineCount);
+        }
+    }
+
+    /**
+     * Accessor method to obtain the number of replies
+     * @return reply count
+     */
+    public int size() {
+        return this.lineCount;
+    }
+
+    /**
+     * Method to obtain the reply at an index
+     * @param index: index of the reply, from 0 to size()-1
+     * @return String reply
+     */
+    public String get(int index) {
+        if (this.lines != null) {
+            return this.lines[index];
+        }
+
+        //Decode the line straight out of the mapped file, dropping any '\r' before its '\n'
+        int start = this.lineStarts[index];
+        int end = this.lineEnds[index];
+        if (end > start && this.mappedFile.get(end-1) == '\r') {
+            end -= 1;
+        }
+        byte[] bytes = new byte[end-start];
+        this.mappedFile.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Method to obtain the reply at an index, without any keyword tags
+     * @param index: index of the reply, from 0 to size()-1
+     * @return String reply
+     */
+    public String getReply(int index) {
+        String line = get(index);
+        int tab = line.indexOf('\t');
+        if (tab < 0) {
+            return line;
+        }
+        return line.substring(tab+1);
+    }
+
+    /**
+     * Method to obtain the keywords of the reply at an index; an untagged reply is described by its own words
+     * @param index: index of the reply, from 0 to size()-1
+     * @return String keywords, separated by spaces
+     */
+    public String getKeywords(int index) {
+        String line = get(index);
+        int tab = line.indexOf('\t');
+        if (tab < 0) {
+            return line;
+        }
+        return line.substring(0, tab);
+    }
+}
@@ -0,0 +1,25 @@
+/**
+ * Enum of the ways the bot can pick a reply (using '-replyMode' on the command line)
+ */
+public enum ReplyMode {
+    //A random line from the corpus, whatever the member asked (the original behaviour)
+    RANDOM,
+
+    //The reply whose keywords best match the member's message, falling back to a random line when nothing matches
+    KEYWORD;
+
+    /**
+     * Static method to parse the reply mode given on the command line
+     * @param value: String value of the mode (case insensitive)
+     * @return matching ReplyMode, or RANDOM if the value is not recognised
+     */
+    public static ReplyMode fromString(String value) {
+        for (ReplyMode mode : ReplyMode.values()) {
+            if (mode.name().equalsIgnoreCase(value)) {
+                return mode;
+            }
+        }
+        System.out.println("Unknown reply mode '"+value+"', defaulting to "+RANDOM);
+        return RANDOM;
+    }
+}
@@ -0,0 +1,124 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+//Measures keyword reply retrieval on a generated corpus of tagged replies (a million by default):
+//the time to build the index, then the latency of lookups which miss and which hit the response cache
+public class ReplyRetrievalBenchmark {
+
+    /**
+     * Static method to pick a vocabulary word, skewed so that a few words are very common as in real text
+     * @param random: Random object to draw from
+     * @param vocabulary: number of distinct words
+     * @return String word
+     */
+    private static String word(Random random, int vocabulary) {
+        double skewed = Math.pow(random.nextDouble(), 3);
+        return "w"+(int) (skewed * vocabulary);
+    }
+
+    /**
+     * Static method to write the generated corpus, each reply tagged with three keywords
+     * @param path: Path to write the corpus to
+     * @param replies: number of replies
+     * @param vocabulary: number of distinct keywords
+     * @throws IOException: if the file cannot be written
+     */
+    private static void writeCorpus(Path path, int replies, int vocabulary) throws IOException {
+        Random random = new Random(1);
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < replies; i++) {
+                writer.write(word(random, vocabulary)+" "+word(random, vocabulary)+" "+word(random, vocabulary));
+                writer.write("\tGenerated reply number "+i);
+                writer.write('\n');
+            }
+        }
+    }
+
+    /**
+     * Static method to time a set of lookups
+     * @param index: KeywordIndex object to query
+     * @param messages: String array of messages to look up
+     * @return sorted latencies in nanoseconds
+     */
+    private static long[] timeLookups(KeywordIndex index, String[] messages) {
+        long[] latencies = new long[messages.length];
+        for (int i = 0; i < messages.length; i++) {
+            long start = System.nanoTime();
+            index.lookup(messages[i]);
+            latencies[i] = System.nanoTime()-start;
+        }
+        Arrays.sort(latencies);
+        return latencies;
+    }
+
+    /**
+     * Static method to print a latency summary
+     * @param label: String label of the measurement
+     * @param latencies: sorted latencies in nanoseconds
+     */
+    private static void report(String label, long[] latencies) {
+        int count = latencies.length;
+        System.out.printf("%-22s lookups=%-7d p50=%8.2f us  p99=%8.2f us  p999=%8.2f us  max=%8.2f us%n",
+                label, count, latencies[count/2] / 1e3, latencies[(int) (count*0.99)] / 1e3,
+                latencies[(int) (count*0.999)] / 1e3, latencies[count-1] / 1e3);
+    }
+
+    /**
+     * Main method to run the measurement
+     * @param args: '-replies' (corpus size), '-vocabulary' (distinct keywords) and '-lookups'
+     */
+    public static void main(String[] args) throws IOException {
+        int replies = 1000000;
+        int vocabulary = 50000;
+        int lookups = 200000;
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-replies")) { replies = Integer.parseInt(args[i+1]); }
+            if (args[i].equals("-vocabulary")) { vocabulary = Integer.parseInt(args[i+1]); }
+            if (args[i].equals("-lookups")) { lookups = Integer.parseInt(args[i+1]); }
+        }
+
+        Path corpusFile = Files.createTempFile("replies", ".txt");
+        try {
+            writeCorpus(corpusFile, replies, vocabulary);
+            ReplyCorpus corpus = ReplyCorpus.load(corpusFile);
+
+            long buildStart = System.nanoTime();
+            KeywordIndex uncachedIndex = KeywordIndex.build(corpus, 0);
+            long buildMillis = (System.nanoTime()-buildStart) / 1000000;
+            KeywordIndex cachedIndex = KeywordIndex.build(corpus, 10000);
+            System.out.printf("replies=%d (%d MB file) vocabulary=%d index build=%d ms%n",
+                    corpus.size(), Files.size(corpusFile) / (1024 * 1024), vocabulary, buildMillis);
+
+            //Messages of four to eight words, with stop words and words which are not in the index
+            Random random = new Random(2);
+            String[] messages = new String[lookups];
+            for (int i = 0; i < lookups; i++) {
+                StringBuilder message = new StringBuilder("what is the");
+                int words = 4 + random.nextInt(5);
+                for (int w = 0; w < words; w++) {
+                    message.append(' ').append(random.nextInt(4) == 0 ? "unknown"+w : word(random, vocabulary));
+                }
+                messages[i] = message.toString()+"?";
+            }
+
+            //Repeated questions: a thousand distinct messages asked over and over
+            String[] repeated = new String[lookups];
+            for (int i = 0; i < lookups; i++) {
+                repeated[i] = messages[random.nextInt(1000)];
+            }
+
+            timeLookups(uncachedIndex, messages);
+            timeLookups(cachedIndex, repeated);
+            report("index (no cache)", timeLookups(uncachedIndex, messages));
+            report("index + LRU cache", timeLookups(cachedIndex, repeated));
+        } finally {
+            Files.delete(corpusFile);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//Class holding every room on the server, indexed by name.
+//Rooms are created when first joined and removed once empty, apart from the default lobby
+public class RoomDirectory {
+
+    //Name of the room every member is placed in when they join the chat
+    public static final String LOBBY = "#lobby";
+
+    //Private object variables for the rooms, indexed by name and by id; ids are never reused
+    private ConcurrentHashMap<String, ChatRoom> rooms;
+    private ConcurrentHashMap<Integer, ChatRoom> roomsById;
+    private AtomicInteger nextRoomId;
+
+    //Bounds of the history kept for each room
+    private int historyCapacity = 100;
+    private int historyMaxBytes = 64 * 1024;
+
+    /**
+     * Constructor method to create the directory with only the lobby in it
+     */
+    public RoomDirectory() {
+        this.rooms = new ConcurrentHashMap<String, ChatRoom>();
+        this.roomsById = new ConcurrentHashMap<Integer, ChatRoom>();
+        this.nextRoomId = new AtomicInteger(1);
+        ChatRoom lobby = new ChatRoom(LOBBY, this.nextRoomId.getAndIncrement(), newHistory());
+        this.rooms.put(LOBBY, lobby);
+        this.roomsById.put(lobby.getId(), lobby);
+    }
+
+    /**
+     * Method to set the bounds of each room's history; the existing rooms start a new, empty history,
+     * and rooms created later use the new bounds
+     * @param capacity: largest number of messages held per room
+     * @param maxBytes: largest number of encoded bytes held per room
+     */
+    public void configureHistory(int capacity, int maxBytes) {
+        this.historyCapacity = capacity;
+        this.historyMaxBytes = maxBytes;
+        for (ChatRoom room : this.rooms.values()) {
+            room.setHistory(newHistory());
+        }
+    }
+
+    /**
+     * Method to create an empty history with the configured bounds
+     * @return new RoomHistory object
+     */
+    private RoomHistory newHistory() {
+        return new RoomHistory(this.historyCapacity, this.historyMaxBytes);
+    }
+
+    /**
+     * Static method to normalise a room name given by a client, so that 'ops' and '#OPS' are the same room
+     * @param name: String room name
+     * @return room name in lower case, starting with '#'
+     */
+    public static String normaliseName(String name) {
+        String roomName = name.trim().toLowerCase();
+        if (!roomName.startsWith("#")) {
+            roomName = "#"+roomName;
+        }
+        return roomName;
+    }
+
+    /**
+     * Method to find a room by name
+     * @param name: String room name
+     * @return ChatRoom object, or null if no such room exists
+     */
+    public ChatRoom getRoom(String name) {
+        return this.rooms.get(name);
+    }
+
+    /**
+     * Method to find a room by id
+     * @param id: room id
+     * @return ChatRoom object, or null if no such room exists
+     */
+    public ChatRoom getRoomById(int id) {
+        return this.roomsById.get(id);
+    }
+
+    /**
+     * Method to add a member to a room, creating the room if it does not exist yet
+     * @param connection: ChatConnection object of the member
+     * @param name: String room name
+     * @return ChatRoom object the member is now in
+     */
+    public ChatRoom join(ChatConnection connection, String name) {
+        //compute() keeps the add atomic with respect to an empty room being removed in leave()
+        return this.rooms.compute(name, (roomName, room) -> {
+            if (room == null) {
+                room = new ChatRoom(roomName, this.nextRoomId.getAndIncrement(), newHistory());
+                this.roomsById.put(room.getId(), room);
+            }
+            room.addMember(connection);
+            return room;
+        });
+    }
+
+    /**
+     * Method to remove a member from a room, removing the room once it is empty (apart from the lobby)
+     * @param connection: ChatConnection object of the member
+     * @param name: String room name
+     * @return true if the member was in the room
+     */
+    public boolean leave(ChatConnection connection, String name) {
+        boolean[] removed = new boolean[1];
+        this.rooms.computeIfPresent(name, (roomName, room) -> {
+            removed[0] = room.removeMember(connection);
+            if (room.getOccupancy() == 0 && !roomName.equals(LOBBY)) {
+                this.roomsById.remove(room.getId());
+                room.getHistory().clear();
+                return null;
+            }
+            return room;
+        });
+        return removed[0];
+    }
+
+    /**
+     * Method to obtain every room, sorted by name
+     * @return ArrayList of ChatRoom objects
+     */
+    public ArrayList<ChatRoom> roomsByName() {
+        ArrayList<ChatRoom> roomList = new ArrayList<ChatRoom>(this.rooms.values());
+        roomList.sort(Comparator.comparing(ChatRoom::getName));
+        return roomList;
+    }
+}
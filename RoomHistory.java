@@ -0,0 +1,96 @@
+import java.util.Arrays;
+
+//Bounded history of the latest messages sent to a room, replayed to members as they join.
+//The ring is preallocated and holds the already encoded messages shared with the recipients,
+//so recording a message only stores a reference; the history is bounded by message count and by bytes
+public class RoomHistory {
+
+    //Private object variables; the ring of messages, the oldest message's slot, and the size of what is held
+    private final EncodedMessage[] messages;
+    private final int maxBytes;
+    private int head;
+    private int count;
+    private long bytes;
+
+    /**
+     * Constructor method to create an empty history
+     * @param capacity: largest number of messages held
+     * @param maxBytes: largest number of encoded bytes held
+     */
+    public RoomHistory(int capacity, int maxBytes) {
+        this.messages = new EncodedMessage[capacity];
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Method to record a message sent to the room, evicting the oldest messages to stay within both bounds
+     * @param message: EncodedMessage sent to the room
+     */
+    public synchronized void record(EncodedMessage message) {
+        if (this.messages.length == 0 || message.length() > this.maxBytes) {
+            return;
+        }
+        if (this.count == this.messages.length) {
+            evictOldest();
+        }
+        this.messages[(this.head + this.count) % this.messages.length] = message;
+        this.count += 1;
+        this.bytes += message.length();
+        while (this.bytes > this.maxBytes) {
+            evictOldest();
+        }
+    }
+
+    /**
+     * Subroutine to drop the oldest message from the ring
+     */
+    private void evictOldest() {
+        EncodedMessage oldest = this.messages[this.head];
+        this.messages[this.head] = null;
+        this.head = (this.head + 1) % this.messages.length;
+        this.count -= 1;
+        this.bytes -= oldest.length();
+    }
+
+    /**
+     * Method to obtain the latest messages, oldest first. They are handed out as an array,
+     * so that sending happens outside the history's lock
+     * @param lines: largest number of messages wanted
+     * @return EncodedMessage array of the latest messages
+     */
+    public synchronized EncodedMessage[] latest(int lines) {
+        int wanted = Math.max(0, Math.min(lines, this.count));
+        EncodedMessage[] latestMessages = new EncodedMessage[wanted];
+        for (int i = 0; i < wanted; i++) {
+            latestMessages[i] = this.messages[(this.head + this.count - wanted + i) % this.messages.length];
+        }
+        return latestMessages;
+    }
+
+    /**
+     * Accessor method to obtain the number of messages held
+     * @return message count
+     */
+    public synchronized int size() {
+        return this.count;
+    }
+
+    /**
+     * Accessor method to obtain the number of encoded bytes held
+     * @return byte count
+     */
+    public synchronized long getBytes() {
+        return this.bytes;
+    }
+
+    /**
+     * Method to drop every message held, once the room is removed
+     */
+    public synchronized void clear() {
+        while (this.count > 0) {
+            evictOldest();
+        }
+        Arrays.fill(this.messages, null);
+        this.head = 0;
+    }
+}
@@ -0,0 +1,424 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+//Full-text index over the message log: the sequence numbers of the messages containing each keyword, and of the messages
+//sent by each member (as the log recorded the sender, which a member cannot fake by typing someone else's "[name]: ").
+//An indexer thread follows the log as the writer appends to it, so broadcasting never waits on the index, and the index
+//is saved beside the log so that a restart only indexes the messages appended since the last save.
+//Once the log's retention deletes its oldest messages, the indexer drops them from the postings as well, so the index
+//only ever covers what the log still holds
+public class SearchIndex {
+
+    //File the index is saved to in the log directory, and the version written at its start
+    public static final String SNAPSHOT_FILE = "search.idx";
+    private static final int SNAPSHOT_VERSION = 2;
+
+    //Number of records indexed per read of the log, and how often a changed index is saved
+    private static final int BATCH_SIZE = 4096;
+    private static final long SNAPSHOT_INTERVAL_MILLIS = 30000;
+
+    //Ascending sequence numbers of the messages matching a keyword or sender
+    private static final class Postings {
+        private long[] sequences = new long[4];
+        private int size;
+
+        private void add(long sequence) {
+            if (this.size == this.sequences.length) {
+                this.sequences = Arrays.copyOf(this.sequences, this.size * 2);
+            }
+            this.sequences[this.size] = sequence;
+            this.size += 1;
+        }
+
+        private boolean contains(long sequence) {
+            return Arrays.binarySearch(this.sequences, 0, this.size, sequence) >= 0;
+        }
+
+        //Drops the sequence numbers before the given one, and gives back the space of an array left mostly empty
+        private void removeBefore(long firstSequence) {
+            int first = Arrays.binarySearch(this.sequences, 0, this.size, firstSequence);
+            first = first < 0 ? -first-1 : first;
+            if (first == 0) {
+                return;
+            }
+            this.size -= first;
+            if (this.size < this.sequences.length / 4) {
+                this.sequences = Arrays.copyOfRange(this.sequences, first, first + Math.max(4, this.size * 2));
+            } else {
+                System.arraycopy(this.sequences, first, this.sequences, 0, this.size);
+            }
+        }
+    }
+
+    //Private object variables; the log being indexed, and where the index is saved
+    private final MessageLog messageLog;
+    private final Path snapshotPath;
+
+    //Postings by keyword and by sender username (both lower case), and the last sequence number indexed
+    private final HashMap<String, Postings> keywords;
+    private final HashMap<String, Postings> senders;
+    private long indexedSequence;
+    private long savedSequence;
+
+    //First sequence number the postings were last trimmed to, following the log's retention
+    private long prunedSequence;
+
+    private final Thread indexerThread;
+    private volatile boolean open;
+
+    /**
+     * Constructor method to load the saved index of a log, if any, and start following the log
+     * @param messageLog: MessageLog object to index
+     * @param directory: Path of the log directory, where the index is saved
+     */
+    public SearchIndex(MessageLog messageLog, Path directory) {
+        this.messageLog = messageLog;
+        this.snapshotPath = directory.resolve(SNAPSHOT_FILE);
+        this.keywords = new HashMap<String, Postings>();
+        this.senders = new HashMap<String, Postings>();
+        try {
+            load();
+        } catch (IOException e) {
+            System.out.println("Could not load the search index, rebuilding it; "+e.getMessage());
+            this.keywords.clear();
+            this.senders.clear();
+            this.indexedSequence = 0;
+        }
+        //An index ahead of the log belongs to a log which has since been removed
+        if (this.indexedSequence >= messageLog.getNextSequence()) {
+            this.keywords.clear();
+            this.senders.clear();
+            this.indexedSequence = 0;
+        }
+        this.savedSequence = this.indexedSequence;
+
+        this.open = true;
+        this.indexerThread = new Thread(this::followLog, "search-indexer");
+        this.indexerThread.setDaemon(true);
+        this.indexerThread.start();
+    }
+
+    /**
+     * Subroutine run by the indexer thread, indexing records as they are appended and saving the index from time to time
+     */
+    private void followLog() {
+        long lastSaveMillis = System.currentTimeMillis();
+        while (this.open) {
+            List<LogRecord> records = this.messageLog.read(this.indexedSequence+1, BATCH_SIZE);
+            synchronized (this) {
+                for (LogRecord record : records) {
+                    add(record);
+                }
+                long firstSequence = this.messageLog.getFirstSequence();
+                if (firstSequence > this.prunedSequence) {
+                    removeBefore(firstSequence);
+                }
+            }
+            long now = System.currentTimeMillis();
+            if (now - lastSaveMillis >= SNAPSHOT_INTERVAL_MILLIS) {
+                save();
+                lastSaveMillis = now;
+            }
+            if (records.size() < BATCH_SIZE) {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Subroutine to add a record to the postings of its keywords and of its sender
+     * @param record: LogRecord object read from the log
+     */
+    private void add(LogRecord record) {
+        String text = record.getText();
+        String sender = record.getSender();
+        if (sender != null) {
+            this.senders.computeIfAbsent(sender.toLowerCase(), key -> new Postings()).add(record.getSequence());
+            //The "[#room] [username]: " the server put in front of the message is not part of what the member wrote
+            int prefix = text.indexOf("["+sender+"]: ");
+            if (prefix >= 0) {
+                text = text.substring(prefix + sender.length() + 4);
+            }
+        }
+        for (String keyword : KeywordIndex.tokenize(text)) {
+            this.keywords.computeIfAbsent(keyword, key -> new Postings()).add(record.getSequence());
+        }
+        this.indexedSequence = record.getSequence();
+    }
+
+    /**
+     * Subroutine to drop the messages deleted by the log's retention from every postings, and the keywords and senders
+     * left with none
+     * @param firstSequence: first sequence number still held by the log
+     */
+    private void removeBefore(long firstSequence) {
+        removeBefore(this.keywords, firstSequence);
+        removeBefore(this.senders, firstSequence);
+        this.prunedSequence = firstSequence;
+    }
+
+    /**
+     * Static method to drop the sequence numbers before a given one from a map of postings
+     * @param postingsMap: HashMap of the postings
+     * @param firstSequence: first sequence number to keep
+     */
+    private static void removeBefore(HashMap<String, Postings> postingsMap, long firstSequence) {
+        Iterator<Postings> postings = postingsMap.values().iterator();
+        while (postings.hasNext()) {
+            Postings next = postings.next();
+            next.removeBefore(firstSequence);
+            if (next.size == 0) {
+                postings.remove();
+            }
+        }
+    }
+
+    /**
+     * Method to find the latest messages containing every given keyword, optionally from one sender and after a time
+     * @param terms: String text whose keywords must all be in the message (may be empty if a sender is given)
+     * @param sender: String username of the sender, or null for any sender
+     * @param sinceMillis: earliest time of the messages, in milliseconds since the epoch (0 for any time)
+     * @param limit: largest number of messages to return
+     * @return List of matching LogRecord objects, oldest first
+     */
+    public List<LogRecord> search(String terms, String sender, long sinceMillis, int limit) {
+        long fromSequence = sinceMillis > 0 ? this.messageLog.sequenceAt(sinceMillis) : 0;
+        ArrayList<Long> matches = new ArrayList<Long>();
+        synchronized (this) {
+            ArrayList<Postings> required = new ArrayList<Postings>();
+            for (String keyword : KeywordIndex.tokenize(terms)) {
+                required.add(this.keywords.get(keyword));
+            }
+            if (sender != null) {
+                required.add(this.senders.get(sender.toLowerCase()));
+            }
+            if (required.isEmpty() || required.contains(null)) {
+                return new ArrayList<LogRecord>();
+            }
+
+            //Walk the shortest postings from the newest message, keeping those which every other postings contain
+            Postings shortest = required.get(0);
+            for (Postings postings : required) {
+                if (postings.size < shortest.size) {
+                    shortest = postings;
+                }
+            }
+            for (int i = shortest.size-1; i >= 0 && matches.size() < limit; i--) {
+                long sequence = shortest.sequences[i];
+                if (sequence < fromSequence) {
+                    break;
+                }
+                boolean inAll = true;
+                for (Postings postings : required) {
+                    if (postings != shortest && !postings.contains(sequence)) {
+                        inAll = false;
+                        break;
+                    }
+                }
+                if (inAll) {
+                    matches.add(sequence);
+                }
+            }
+        }
+
+        //The messages are read from the log outside the lock; any removed by the log's retention are skipped
+        ArrayList<LogRecord> results = new ArrayList<LogRecord>();
+        for (int i = matches.size()-1; i >= 0; i--) {
+            List<LogRecord> records = this.messageLog.read(matches.get(i), 1);
+            if (!records.isEmpty() && records.get(0).getSequence() == matches.get(i)) {
+                results.add(records.get(0));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Subroutine to load the saved index, leaving it empty if there is none
+     * @throws IOException: if the saved index cannot be read
+     */
+    private void load() throws IOException {
+        if (!Files.exists(this.snapshotPath)) {
+            return;
+        }
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(this.snapshotPath)))) {
+            if (input.readInt() != SNAPSHOT_VERSION) {
+                throw new IOException("unknown version");
+            }
+            this.indexedSequence = input.readLong();
+            readPostings(input, this.keywords);
+            readPostings(input, this.senders);
+        }
+    }
+
+    /**
+     * Static method to read a map of postings, each saved as its key, its size, then its sequence numbers as deltas
+     * @param input: DataInputStream to read from
+     * @param postingsMap: HashMap the postings are added to
+     * @throws IOException: if the postings cannot be read
+     */
+    private static void readPostings(DataInputStream input, HashMap<String, Postings> postingsMap) throws IOException {
+        int count = input.readInt();
+        for (int i = 0; i < count; i++) {
+            String key = input.readUTF();
+            int size = input.readInt();
+            Postings postings = new Postings();
+            postings.sequences = new long[Math.max(4, size)];
+            long sequence = 0;
+            for (int j = 0; j < size; j++) {
+                sequence += readVarLong(input);
+                postings.sequences[j] = sequence;
+            }
+            postings.size = size;
+            postingsMap.put(key, postings);
+        }
+    }
+
+    /**
+     * Method to save the index if it has changed, to a temporary file which then replaces the previous save,
+     * dropping the messages which the log's retention has removed
+     */
+    public synchronized void save() {
+        if (this.indexedSequence == this.savedSequence) {
+            return;
+        }
+        long firstSequence = this.messageLog.getFirstSequence();
+        Path temporaryPath = this.snapshotPath.resolveSibling(SNAPSHOT_FILE+".tmp");
+        try {
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryPath)))) {
+                output.writeInt(SNAPSHOT_VERSION);
+                output.writeLong(this.indexedSequence);
+                writePostings(output, this.keywords, firstSequence);
+                writePostings(output, this.senders, firstSequence);
+            }
+            Files.move(temporaryPath, this.snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            this.savedSequence = this.indexedSequence;
+        } catch (IOException e) {
+            System.out.println("Could not save the search index; "+e.getMessage());
+        }
+    }
+
+    /**
+     * Static method to write a map of postings, leaving out sequence numbers before the first one still in the log
+     * @param output: DataOutputStream to write to
+     * @param postingsMap: HashMap of the postings
+     * @param firstSequence: first sequence number still held by the log
+     * @throws IOException: if the postings cannot be written
+     */
+    private static void writePostings(DataOutputStream output, HashMap<String, Postings> postingsMap, long firstSequence) throws IOException {
+        output.writeInt(postingsMap.size());
+        for (Map.Entry<String, Postings> entry : postingsMap.entrySet()) {
+            Postings postings = entry.getValue();
+            int first = Arrays.binarySearch(postings.sequences, 0, postings.size, firstSequence);
+            first = first < 0 ? -first-1 : first;
+            output.writeUTF(entry.getKey());
+            output.writeInt(postings.size - first);
+            long previous = 0;
+            for (int i = first; i < postings.size; i++) {
+                writeVarLong(output, postings.sequences[i] - previous);
+                previous = postings.sequences[i];
+            }
+        }
+    }
+
+    /**
+     * Static method to write a non-negative number in as few bytes as it needs, seven bits per byte
+     * @param output: DataOutputStream to write to
+     * @param value: number to write
+     * @throws IOException: if the number cannot be written
+     */
+    private static void writeVarLong(DataOutputStream output, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            output.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.writeByte((int) value);
+    }
+
+    /**
+     * Static method to read a number written by writeVarLong()
+     * @param input: DataInputStream to read from
+     * @return number read
+     * @throws IOException: if the number cannot be read
+     */
+    private static long readVarLong(DataInputStream input) throws IOException {
+        long value = 0;
+        int shift = 0;
+        int next;
+        do {
+            next = input.readUnsignedByte();
+            value |= (long) (next & 0x7F) << shift;
+            shift += 7;
+        } while ((next & 0x80) != 0);
+        return value;
+    }
+
+    /**
+     * Method to stop following the log, index whatever it has appended since, and save the index
+     */
+    public void close() {
+        this.open = false;
+        this.indexerThread.interrupt();
+        try {
+            this.indexerThread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            List<LogRecord> records;
+            do {
+                records = this.messageLog.read(this.indexedSequence+1, BATCH_SIZE);
+                for (LogRecord record : records) {
+                    add(record);
+                }
+            } while (!records.isEmpty());
+        }
+        save();
+    }
+
+    /**
+     * Accessor method to obtain the sequence number of the last message indexed
+     * @return sequence number
+     */
+    public synchronized long getIndexedSequence() {
+        return this.indexedSequence;
+    }
+
+    /**
+     * Accessor method to obtain the number of distinct keywords indexed
+     * @return keyword count
+     */
+    public synchronized int getKeywordCount() {
+        return this.keywords.size();
+    }
+
+    /**
+     * Accessor method to obtain the number of sequence numbers held in every postings, keywords and senders together
+     * @return posting count
+     */
+    public synchronized long getPostingCount() {
+        long count = 0;
+        for (Postings postings : this.keywords.values()) {
+            count += postings.size;
+        }
+        for (Postings postings : this.senders.values()) {
+            count += postings.size;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,321 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+//Runtime metrics of the server. The message path only adds to striped counters and lock-free histograms;
+//everything else (rates, outbound backlogs, thread counts) is worked out when the metrics are read, by the admin's
+//STATS command or by the periodic dump, which writes one JSON object per line
+public class ServerMetrics {
+
+    //Number of the deepest outbound queues listed by STATS
+    private static final int DEEPEST_QUEUES_SHOWN = 5;
+
+    //One broadcast in this many is timed, since reading the clock twice costs more than a small fan-out
+    private static final int BROADCAST_SAMPLE_RATE = 16;
+    private static final long NOT_SAMPLED = Long.MIN_VALUE;
+
+    //Totals since the server started
+    private final LongAdder messagesIn;
+    private final LongAdder messagesOut;
+    private final LongAdder bytesIn;
+    private final LongAdder bytesOut;
+    private final LongAdder connectionsAccepted;
+
+    //Messages over the rate limits, by what was done with them
+    private final LongAdder rateLimitedDeferred;
+    private final LongAdder rateLimitedDropped;
+
+    //Time taken by each broadcast to queue a message for every recipient, and by the bots to answer
+    private final LatencyHistogram broadcastNanos;
+    private final LatencyHistogram botReplyNanos;
+
+    //Per-second rates over the last sample, worked out by the sampler from the totals
+    private ScheduledExecutorService sampler;
+    private long[] lastTotals;
+    private long lastSampleNanos;
+    private volatile double[] ratesPerSecond;
+    private final long startMillis;
+
+    /**
+     * Constructor method to create the metrics; their rates are only sampled once start() is called
+     */
+    public ServerMetrics() {
+        this.messagesIn = new LongAdder();
+        this.messagesOut = new LongAdder();
+        this.bytesIn = new LongAdder();
+        this.bytesOut = new LongAdder();
+        this.connectionsAccepted = new LongAdder();
+        this.rateLimitedDeferred = new LongAdder();
+        this.rateLimitedDropped = new LongAdder();
+        this.broadcastNanos = new LatencyHistogram();
+        this.botReplyNanos = new LatencyHistogram();
+        this.lastTotals = totals();
+        this.lastSampleNanos = System.nanoTime();
+        this.ratesPerSecond = new double[this.lastTotals.length];
+        this.startMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Method to start sampling the rates every second, when the server begins
+     */
+    public synchronized void start() {
+        if (this.sampler != null) {
+            return;
+        }
+        this.sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.sampler.scheduleAtFixedRate(this::sampleRates, 1, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Method to stop sampling (and dumping) the metrics, when the server shuts down
+     */
+    public synchronized void close() {
+        if (this.sampler != null) {
+            this.sampler.shutdownNow();
+        }
+    }
+
+    /**
+     * Method to count a message (line or frame) read from a client
+     */
+    public void messageReceived() {
+        this.messagesIn.increment();
+    }
+
+    /**
+     * Method to count bytes read from a client's socket
+     * @param bytes: number of bytes read
+     */
+    public void bytesReceived(long bytes) {
+        this.bytesIn.add(bytes);
+    }
+
+    /**
+     * Method to count a batch of messages handed to a client's socket
+     * @param messages: number of messages in the batch
+     * @param bytes: encoded size of the batch (before any compression)
+     */
+    public void messagesSent(int messages, long bytes) {
+        this.messagesOut.add(messages);
+        this.bytesOut.add(bytes);
+    }
+
+    /**
+     * Method to count a connection accepted by the server
+     */
+    public void connectionAccepted() {
+        this.connectionsAccepted.increment();
+    }
+
+    /**
+     * Method to count a message which was over the rate limits
+     * @param deferred: true if the message was held back, false if it was dropped
+     */
+    public void messageRateLimited(boolean deferred) {
+        if (deferred) {
+            this.rateLimitedDeferred.increment();
+        } else {
+            this.rateLimitedDropped.increment();
+        }
+    }
+
+    /**
+     * Accessor method to obtain the number of connections accepted since the server started
+     * @return accepted connection count
+     */
+    public long getConnectionsAccepted() {
+        return this.connectionsAccepted.sum();
+    }
+
+    /**
+     * Method called as a broadcast starts, which decides whether this broadcast is one of those timed
+     * @return start time in nanoseconds to pass to broadcastCompleted(), or NOT_SAMPLED
+     */
+    public long broadcastStarted() {
+        if (ThreadLocalRandom.current().nextInt(BROADCAST_SAMPLE_RATE) == 0) {
+            return System.nanoTime();
+        }
+        return NOT_SAMPLED;
+    }
+
+    /**
+     * Method to record how long a broadcast took to queue its message for every recipient, if it was timed
+     * @param startNanos: value returned by broadcastStarted()
+     */
+    public void broadcastCompleted(long startNanos) {
+        if (startNanos != NOT_SAMPLED) {
+            this.broadcastNanos.record(System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Method to record how long a bot took to answer a request
+     * @param nanos: time from dispatching the request to receiving the reply, in nanoseconds
+     */
+    public void botReplied(long nanos) {
+        this.botReplyNanos.record(nanos);
+    }
+
+    /**
+     * Method to obtain the current totals, in the order messages in, messages out, bytes in, bytes out, connections accepted
+     * @return long array of totals
+     */
+    private long[] totals() {
+        return new long[] {this.messagesIn.sum(), this.messagesOut.sum(), this.bytesIn.sum(), this.bytesOut.sum(),
+                this.connectionsAccepted.sum()};
+    }
+
+    /**
+     * Subroutine run by the sampler every second, working out the rates since the previous sample
+     */
+    private void sampleRates() {
+        long now = System.nanoTime();
+        long[] currentTotals = totals();
+        double seconds = (now - this.lastSampleNanos) / 1e9;
+        double[] rates = new double[currentTotals.length];
+        for (int i = 0; i < rates.length; i++) {
+            rates[i] = (currentTotals[i] - this.lastTotals[i]) / seconds;
+        }
+        this.ratesPerSecond = rates;
+        this.lastTotals = currentTotals;
+        this.lastSampleNanos = now;
+    }
+
+    /**
+     * Method to start writing the metrics to a file at a fixed interval, one JSON object per line; the sampling
+     * is started first if it has not been
+     * @param path: Path of the file the metrics are appended to
+     * @param intervalSeconds: interval between dumps in seconds
+     * @param registry: MemberRegistry of the connections whose backlogs are included
+     */
+    public synchronized void startDumping(Path path, long intervalSeconds, MemberRegistry registry) {
+        start();
+        this.sampler.scheduleAtFixedRate(() -> {
+            try {
+                Files.write(path, (toJson(registry)+"\n").getBytes(StandardCharsets.UTF_8),
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                System.out.println("Could not write the metrics to "+path+"; "+e.getMessage());
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Static method to take the depth of every connection's outbound queue, deepest first.
+     * (The depths are read once, since they keep changing while they are sorted)
+     * @param registry: MemberRegistry of the connections
+     * @return List of username and queue depth pairs
+     */
+    private static List<Map.Entry<String, Integer>> backlogs(MemberRegistry registry) {
+        ArrayList<Map.Entry<String, Integer>> depths = new ArrayList<Map.Entry<String, Integer>>();
+        for (ChatConnection connection : registry.connections()) {
+            String name = connection.getUsername() == null ? "#"+connection.getConnectionId() : connection.getUsername();
+            depths.add(new AbstractMap.SimpleEntry<String, Integer>(name, connection.getOutboundQueue().getDepth()));
+        }
+        depths.sort(Map.Entry.<String, Integer>comparingByValue().reversed());
+        return depths;
+    }
+
+    /**
+     * Static method to format the percentiles of a histogram of nanosecond times
+     * @param histogram: LatencyHistogram to format
+     * @return String summary in microseconds
+     */
+    private static String percentiles(LatencyHistogram histogram) {
+        return String.format("count=%d p50=%.1f p99=%.1f p999=%.1f max=%.1f (us)", histogram.getCount(),
+                histogram.getValueAtPercentile(50) / 1e3, histogram.getValueAtPercentile(99) / 1e3,
+                histogram.getValueAtPercentile(99.9) / 1e3, histogram.getMax() / 1e3);
+    }
+
+    /**
+     * Method to describe the metrics for the admin's STATS command
+     * @param registry: MemberRegistry of the connections
+     * @return List of String lines
+     */
+    public List<String> describe(MemberRegistry registry) {
+        double[] rates = this.ratesPerSecond;
+        long[] currentTotals = totals();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        List<Map.Entry<String, Integer>> depths = backlogs(registry);
+        long totalBacklog = 0;
+        for (Map.Entry<String, Integer> depth : depths) {
+            totalBacklog += depth.getValue();
+        }
+
+        ArrayList<String> lines = new ArrayList<String>();
+        lines.add(String.format("uptime=%ds connections=%d threads=%d (peak %d, daemon %d)",
+                (System.currentTimeMillis() - this.startMillis) / 1000, depths.size(),
+                threads.getThreadCount(), threads.getPeakThreadCount(), threads.getDaemonThreadCount()));
+        lines.add(String.format("messages in: %.0f/s (total %d)  out: %.0f/s (total %d)",
+                rates[0], currentTotals[0], rates[1], currentTotals[1]));
+        lines.add(String.format("bytes in: %.0f/s (total %d)  out: %.0f/s (total %d)",
+                rates[2], currentTotals[2], rates[3], currentTotals[3]));
+        lines.add(String.format("accepts: %.1f/s (total %d)", rates[4], currentTotals[4]));
+        lines.add("rate limited: deferred="+this.rateLimitedDeferred.sum()+" dropped="+this.rateLimitedDropped.sum());
+        lines.add("broadcast fan-out (1 in "+BROADCAST_SAMPLE_RATE+" timed): "+percentiles(this.broadcastNanos));
+        lines.add("bot reply latency: "+percentiles(this.botReplyNanos));
+        StringBuilder deepest = new StringBuilder("outbound backlog: total="+totalBacklog);
+        for (int i = 0; i < Math.min(DEEPEST_QUEUES_SHOWN, depths.size()); i++) {
+            deepest.append(i == 0 ? " deepest: " : ", ").append(depths.get(i).getKey()).append('=').append(depths.get(i).getValue());
+        }
+        lines.add(deepest.toString());
+        return lines;
+    }
+
+    /**
+     * Method to write the metrics as a single line of JSON
+     * @param registry: MemberRegistry of the connections
+     * @return String JSON object
+     */
+    public String toJson(MemberRegistry registry) {
+        double[] rates = this.ratesPerSecond;
+        long[] currentTotals = totals();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        List<Map.Entry<String, Integer>> depths = backlogs(registry);
+        long totalBacklog = 0;
+        for (Map.Entry<String, Integer> depth : depths) {
+            totalBacklog += depth.getValue();
+        }
+        return String.format(Locale.ROOT, "{\"timestamp\":%d,\"connections\":%d,\"threads\":%d,"
+                        + "\"messagesIn\":%d,\"messagesInPerSecond\":%.1f,\"messagesOut\":%d,\"messagesOutPerSecond\":%.1f,"
+                        + "\"bytesIn\":%d,\"bytesInPerSecond\":%.1f,\"bytesOut\":%d,\"bytesOutPerSecond\":%.1f,"
+                        + "\"accepted\":%d,\"acceptsPerSecond\":%.1f,\"rateLimitedDeferred\":%d,\"rateLimitedDropped\":%d,"
+                        + "\"outboundBacklog\":%d,\"maxOutboundBacklog\":%d,"
+                        + "\"broadcastNanos\":%s,\"botReplyNanos\":%s}",
+                System.currentTimeMillis(), depths.size(), threads.getThreadCount(),
+                currentTotals[0], rates[0], currentTotals[1], rates[1], currentTotals[2], rates[2],
+                currentTotals[3], rates[3], currentTotals[4], rates[4],
+                this.rateLimitedDeferred.sum(), this.rateLimitedDropped.sum(), totalBacklog,
+                depths.isEmpty() ? 0 : depths.get(0).getValue(),
+                histogramJson(this.broadcastNanos), histogramJson(this.botReplyNanos));
+    }
+
+    /**
+     * Static method to write the percentiles of a histogram as a JSON object
+     * @param histogram: LatencyHistogram to write
+     * @return String JSON object
+     */
+    private static String histogramJson(LatencyHistogram histogram) {
+        return String.format(Locale.ROOT, "{\"count\":%d,\"p50\":%d,\"p99\":%d,\"p999\":%d,\"max\":%d}", histogram.getCount(),
+                histogram.getValueAtPercentile(50), histogram.getValueAtPercentile(99),
+                histogram.getValueAtPercentile(99.9), histogram.getMax());
+    }
+}
@@ -0,0 +1,29 @@
+/**
+ * Enum of the server engines which can be selected at startup (using '-mode' on the command line)
+ */
+public enum ServerMode {
+    //One blocking platform thread per connected client (the original engine)
+    THREAD,
+
+    //One virtual thread per connected client, through a virtual-thread-per-task executor
+    //(Java 21 or later; older JVMs fall back to platform threads, with a warning)
+    VIRTUAL,
+
+    //Non-blocking channels served by a group of event loops (one per core by default), each a Selector on its own thread
+    NIO;
+
+    /**
+     * Static method to parse the mode given on the command line
+     * @param value: String value of the mode (case insensitive)
+     * @return matching ServerMode, or THREAD if the value is not recognised
+     */
+    public static ServerMode fromString(String value) {
+        for (ServerMode mode : ServerMode.values()) {
+            if (mode.name().equalsIgnoreCase(value)) {
+                return mode;
+            }
+        }
+        System.out.println("Unknown server mode '"+value+"', defaulting to "+THREAD);
+        return THREAD;
+    }
+}
@@ -1,5 +1,12 @@
 import java.io.*;
 import java.net.ServerSocket;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
 
 //ServerThread class which implements the Runnable interface
@@ -29,18 +36,266 @@ public class ServerThread implements Runnable {
     }
 
     /**
-     * method to display the online clients
+     * method to display the online clients, across every node of the cluster
      */
     protected void displayOnlineClients() {
-        this.chatServer.displayMessageToServer("##-- CURRENTLY ONLINE: --##");
+        this.chatServer.displayToAdmin("##-- CURRENTLY ONLINE: --##");
 
         //Iterate through the usernames and display them in a user-friendly, listed format
         int i = 1;
-        for (String username : this.chatServer.getClientUsernames()) {
-            this.chatServer.displayMessageToServer(i+".] "+username);
+        for (ChatConnection member : this.chatServer.getMemberRegistry().membersInJoinOrder()) {
+            this.chatServer.displayToAdmin(i+".] "+member.getUsername());
             i += 1;
         }
-        this.chatServer.displayMessageToServer("##-----------------------##\n");
+
+        //Then the members of the other nodes, along with the node each is on
+        Federation federation = this.chatServer.getFederation();
+        for (Map.Entry<String, String> member : federation.remoteMembersByNode()) {
+            this.chatServer.displayToAdmin(i+".] "+member.getKey()+" (on "+member.getValue()+")");
+            i += 1;
+        }
+        if (!federation.linkedPeers().isEmpty()) {
+            this.chatServer.displayToAdmin("Node "+federation.getNodeName()+", linked to: "+String.join(", ", federation.linkedPeers()));
+        }
+        this.chatServer.displayToAdmin("##-----------------------##\n");
+    }
+
+    /**
+     * Exclusive boolean method to check if an 'Admin' user has requested to view the
+     * outbound queues of the clients by typing in 'QUEUES'
+     * @param input: String input from the admin user
+     * @return true/false if the admin requested the information or not
+     */
+    private boolean checkInputForQueueDisplay(String input) {
+        if (input.toUpperCase().equals("QUEUES")) {
+            return true;
+        } return false;
+    }
+
+    /**
+     * Exclusive boolean method to check if an 'Admin' user has requested to view the
+     * compression of the compressed connections by typing in 'COMPRESSION'
+     * @param input: String input from the admin user
+     * @return true/false if the admin requested the information or not
+     */
+    private boolean checkInputForCompressionDisplay(String input) {
+        if (input.toUpperCase().equals("COMPRESSION")) {
+            return true;
+        } return false;
+    }
+
+    /**
+     * method to display the compression ratio, and the CPU time spent compressing, of each compressed connection
+     */
+    protected void displayCompression() {
+        this.chatServer.displayToAdmin("##-- COMPRESSED CONNECTIONS: --##");
+
+        long totalInput = 0;
+        long totalOutput = 0;
+        for (ChatConnection connection : this.chatServer.getMemberRegistry().connections()) {
+            PacketDeflater deflater = connection.getPacketDeflater();
+            if (deflater == null) {
+                continue;
+            }
+            long packets = deflater.getDeflatedPackets();
+            this.chatServer.displayToAdmin(String.format(
+                    "%s: ratio=%.2f in=%d out=%d deflated=%d stored=%d cpu=%.2f ms (%.1f us/packet)",
+                    connection.getUsername(), deflater.getRatio(), deflater.getInputBytes(), deflater.getOutputBytes(),
+                    packets, deflater.getStoredPackets(), deflater.getCpuNanos() / 1e6,
+                    packets == 0 ? 0.0 : deflater.getCpuNanos() / 1e3 / packets));
+            totalInput += deflater.getInputBytes();
+            totalOutput += deflater.getOutputBytes();
+        }
+        this.chatServer.displayToAdmin("Total: in="+totalInput+" out="+totalOutput);
+        this.chatServer.displayToAdmin("##-----------------------##\n");
+    }
+
+    /**
+     * Exclusive boolean method to check if an 'Admin' user has requested to view the
+     * state of the message log by typing in 'LOG'
+     * @param input: String input from the admin user
+     * @return true/false if the admin requested the information or not
+     */
+    private boolean checkInputForLogDisplay(String input) {
+        if (input.toUpperCase().equals("LOG")) {
+            return true;
+        } return false;
+    }
+
+    /**
+     * method to display the segments, sequence numbers and fsync activity of the message log
+     */
+    protected void displayMessageLog() {
+        this.chatServer.displayToAdmin("##-- MESSAGE LOG: --##");
+        MessageLog messageLog = this.chatServer.getMessageLog();
+        if (messageLog == null) {
+            this.chatServer.displayToAdmin("The chat is not being logged (start the server with -log <directory>)");
+        } else {
+            this.chatServer.displayToAdmin("segments="+messageLog.getSegmentCount()+" bytes="+messageLog.getSizeBytes()
+                    +" sequences="+messageLog.getFirstSequence()+".."+(messageLog.getNextSequence()-1));
+            this.chatServer.displayToAdmin("appended="+messageLog.getAppendedCount()+" pending="+messageLog.getPendingCount()
+                    +" dropped="+messageLog.getDroppedCount()
+                    +" fsync="+messageLog.getFsyncPolicy()+" forces="+messageLog.getForceCount());
+        }
+        this.chatServer.displayToAdmin("##-----------------------##\n");
+    }
+
+    /**
+     * Exclusive boolean method to check if an 'Admin' user has requested to view the
+     * server's runtime metrics by typing in 'STATS'
+     * @param input: String input from the admin user
+     * @return true/false if the admin requested the information or not
+     */
+    private boolean checkInputForStatsDisplay(String input) {
+        if (input.toUpperCase().equals("STATS")) {
+            return true;
+        } return false;
+    }
+
+    /**
+     * method to display the throughput, latencies, outbound backlogs and threads of the server
+     */
+    protected void displayStats() {
+        this.chatServer.displayToAdmin("##-- SERVER STATS: --##");
+        for (String line : this.chatServer.getMetrics().describe(this.chatServer.getMemberRegistry())) {
+            this.chatServer.displayToAdmin(line);
+        }
+        AcceptorGroup acceptorGroup = this.chatServer.getAcceptorGroup();
+        if (acceptorGroup != null) {
+            this.chatServer.displayToAdmin(acceptorGroup.describe());
+        }
+        this.chatServer.displayToAdmin(this.chatServer.getRateLimiter().describe());
+        this.chatServer.displayToAdmin(this.chatServer.getIdleReaper().describe());
+        ConsoleLog consoleLog = this.chatServer.getConsoleLog();
+        this.chatServer.displayToAdmin("console log: "+consoleLog+" policy="+consoleLog.getOverflowPolicy()
+                +" written="+consoleLog.getWrittenCount()+" pending="+consoleLog.getPendingCount()+"/"+consoleLog.getCapacity()
+                +" dropped="+consoleLog.getDroppedCount());
+        this.chatServer.displayToAdmin("##-----------------------##\n");
+    }
+
+    /**
+     * Exclusive boolean method to check if an 'Admin' user has requested to search the chat's history
+     * by typing in 'SEARCH <terms> [user:<username>] [since:<time>]'
+     * @param input: String input from the admin user
+     * @return true/false if the admin requested the information or not
+     */
+    private boolean checkInputForSearch(String input) {
+        if (input.toUpperCase().startsWith("SEARCH ")) {
+            return true;
+        } return false;
+    }
+
+    /**
+     * method to display the latest logged messages matching a search, oldest first
+     * @param input: String search command, e.g. 'SEARCH deploy failed user:alice since:2h'
+     */
+    protected void displaySearchResults(String input) {
+        this.chatServer.displayToAdmin("##-- SEARCH RESULTS: --##");
+        SearchIndex searchIndex = this.chatServer.getSearchIndex();
+        if (searchIndex == null) {
+            this.chatServer.displayToAdmin("The chat is not being logged (start the server with -log <directory>)");
+            this.chatServer.displayToAdmin("##-----------------------##\n");
+            return;
+        }
+
+        StringBuilder terms = new StringBuilder();
+        String sender = null;
+        long sinceMillis = 0;
+        for (String word : input.substring("SEARCH ".length()).trim().split("\\s+")) {
+            if (word.toLowerCase().startsWith("user:")) {
+                sender = word.substring("user:".length());
+            } else if (word.toLowerCase().startsWith("since:")) {
+                sinceMillis = parseSince(word.substring("since:".length()));
+            } else {
+                terms.append(word).append(' ');
+            }
+        }
+
+        if (sinceMillis < 0) {
+            this.chatServer.displayToAdmin("Could not read the time; use e.g. since:30m, since:2h, since:1d or since:2024-05-01T09:00");
+        } else {
+            List<LogRecord> results = searchIndex.search(terms.toString(), sender, sinceMillis, 20);
+            for (LogRecord record : results) {
+                this.chatServer.displayToAdmin("#"+record.getSequence()+" "
+                        +Instant.ofEpochMilli(record.getTimestampMillis()).atZone(ZoneId.systemDefault()).toLocalDateTime()
+                        +" "+record.getText());
+            }
+            this.chatServer.displayToAdmin(results.size()+" result(s), "+searchIndex.getKeywordCount()
+                    +" keywords indexed up to #"+searchIndex.getIndexedSequence());
+        }
+        this.chatServer.displayToAdmin("##-----------------------##\n");
+    }
+
+    /**
+     * Subroutine to parse the time a search starts from, either relative (30s, 30m, 2h, 1d) or a local date and time
+     * @param value: String time given after 'since:'
+     * @return milliseconds since the epoch (0 for a span reaching back past it), or -1 if the time could not be read
+     */
+    private long parseSince(String value) {
+        try {
+            if (value.matches("\\d+[smhd]")) {
+                long amount = Long.parseLong(value.substring(0, value.length()-1));
+                long[] unitMillis = {1000L, 60 * 1000L, 60 * 60 * 1000L, 24 * 60 * 60 * 1000L};
+                long now = System.currentTimeMillis();
+                long unit = unitMillis["smhd".indexOf(value.charAt(value.length()-1))];
+                //Checked before multiplying, so a huge amount cannot overflow into a time in the future
+                if (amount > now / unit) {
+                    return 0;
+                }
+                return now - amount * unit;
+            }
+            if (value.contains("T")) {
+                return LocalDateTime.parse(value).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            }
+            return LocalDate.parse(value).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (DateTimeParseException | NumberFormatException e) {
+            //Including an amount too long for a long, e.g. since:99999999999999999999d
+            return -1;
+        }
+    }
+
+    /**
+     * method to display the depth of, and messages dropped from, each client's outbound queue
+     */
+    protected void displayOutboundQueues() {
+        this.chatServer.displayToAdmin("##-- OUTBOUND QUEUES: --##");
+
+        long totalDropped = 0;
+        for (ChatConnection connection : this.chatServer.getMemberRegistry().connections()) {
+            OutboundQueue queue = connection.getOutboundQueue();
+            this.chatServer.displayToAdmin(connection.getUsername()+": depth="+queue.getDepth()
+                    +" sent="+queue.getEnqueuedCount()+" dropped="+queue.getDroppedCount());
+            totalDropped += queue.getDroppedCount();
+        }
+        this.chatServer.displayToAdmin("Total dropped: "+totalDropped);
+        this.chatServer.displayToAdmin("##-----------------------##\n");
+    }
+
+    /**
+     * Exclusive boolean method to check if an 'Admin' user has requested to view the
+     * rooms on the server by typing in 'ROOMS'
+     * @param input: String input from the admin user
+     * @return true/false if the admin requested the information or not
+     */
+    private boolean checkInputForRoomDisplay(String input) {
+        if (input.toUpperCase().equals("ROOMS")) {
+            return true;
+        } return false;
+    }
+
+    /**
+     * method to display every room with its occupancy, and the members in it
+     */
+    protected void displayRooms() {
+        this.chatServer.displayToAdmin("##-- ROOMS: --##");
+        for (ChatRoom room : this.chatServer.getRoomDirectory().roomsByName()) {
+            StringBuilder memberNames = new StringBuilder();
+            for (ChatConnection member : room.getMembers()) {
+                memberNames.append(memberNames.length() == 0 ? "" : ", ").append(member.getUsername());
+            }
+            this.chatServer.displayToAdmin(room.getName()+" ("+room.getOccupancy()+"): "+memberNames);
+        }
+        this.chatServer.displayToAdmin("##-----------------------##\n");
     }
 
     /**
@@ -62,9 +317,11 @@ public class ServerThread implements Runnable {
     @Override
     public void run() {
 
+        //A single scanner is kept for the whole loop, so that buffered input lines are not lost
+        Scanner scanner = new Scanner(System.in);
+
         //Indefinite loop to iterate until the admin calls for a shutdown
         while (true) {
-            Scanner scanner = new Scanner(System.in);
             String input = scanner.nextLine();
 
             //Check for a shutdown
@@ -77,6 +334,30 @@ public class ServerThread implements Runnable {
             if (checkInputForOnlineDisplay(input)) {
                 displayOnlineClients();
 
+            //Check if the admin wants to view the rooms and their occupancy
+            } else if (checkInputForRoomDisplay(input)) {
+                displayRooms();
+
+            //Check if the admin wants to view the outbound queues
+            } else if (checkInputForQueueDisplay(input)) {
+                displayOutboundQueues();
+
+            //Check if the admin wants to view the compressed connections
+            } else if (checkInputForCompressionDisplay(input)) {
+                displayCompression();
+
+            //Check if the admin wants to view the message log
+            } else if (checkInputForLogDisplay(input)) {
+                displayMessageLog();
+
+            //Check if the admin wants to view the runtime metrics
+            } else if (checkInputForStatsDisplay(input)) {
+                displayStats();
+
+            //Check if the admin wants to search the chat's history
+            } else if (checkInputForSearch(input)) {
+                displaySearchResults(input);
+
             //Otherwise broadcast the message to all members connected
             } else {
                 String serverMessage = "[SERVER]: "+input+"";
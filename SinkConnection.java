@@ -0,0 +1,34 @@
+import java.io.IOException;
+import java.io.OutputStream;
+
+//In-memory member for the benchmarks, which writes its queued messages to a discarding stream instead of a socket
+public class SinkConnection extends ChatConnection {
+
+    //Private object variable for the stream the messages are written to
+    private OutputStream sink;
+
+    /**
+     * Constructor method to create the member, not yet registered with the server
+     * @param server: ChatServer object the member belongs to
+     */
+    public SinkConnection(ChatServer server) {
+        super(server);
+        this.sink = OutputStream.nullOutputStream();
+    }
+
+    @Override
+    public void forceLeaveUser() {
+        this.connected = false;
+    }
+
+    /**
+     * Method to write everything queued, as the connection's writer would
+     * @throws IOException: if the sink fails to write
+     */
+    public void drain() throws IOException {
+        EncodedMessage message;
+        while ((message = this.outboundQueue.poll()) != null) {
+            this.sink.write(message.getBytes());
+        }
+    }
+}
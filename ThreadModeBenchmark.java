@@ -0,0 +1,182 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+//Comparison run for the server modes: starts a ChatServer in-process for each mode and room size,
+//connects the clients, then reports the threads used and the broadcast latency seen by the room.
+//On a JVM without virtual threads the VIRTUAL mode is skipped rather than measured, since it would only
+//run the THREAD engine a second time under another name
+public class ThreadModeBenchmark {
+
+    //Private object variables for the clients of the run currently being measured
+    private Selector selector;
+    private ArrayList<SocketChannel> channels;
+    private StringBuilder[] pendingText;
+
+    /**
+     * Method to connect the given number of clients to the server and send their usernames
+     * @param port: port the server is listening on
+     * @param clients: number of clients to connect
+     * @throws IOException: if a client cannot connect
+     */
+    private void connectClients(int port, int clients) throws IOException {
+        this.selector = Selector.open();
+        this.channels = new ArrayList<SocketChannel>();
+        this.pendingText = new StringBuilder[clients];
+
+        for (int i = 0; i < clients; i++) {
+            SocketChannel channel = SocketChannel.open(new InetSocketAddress("127.0.0.1", port));
+            channel.write(ByteBuffer.wrap(("user"+i+"\n").getBytes(StandardCharsets.UTF_8)));
+            channel.configureBlocking(false);
+            channel.register(this.selector, SelectionKey.OP_READ, i);
+            this.channels.add(channel);
+            this.pendingText[i] = new StringBuilder();
+
+            //Keep reading the join notices, otherwise the server blocks writing to full sockets
+            drainClients();
+        }
+    }
+
+    /**
+     * Method to read and discard whatever the clients have received so far
+     * @throws IOException: if reading fails
+     */
+    private void drainClients() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        this.selector.selectNow();
+        for (SelectionKey key : this.selector.selectedKeys()) {
+            buffer.clear();
+            ((SocketChannel) key.channel()).read(buffer);
+        }
+        this.selector.selectedKeys().clear();
+    }
+
+    /**
+     * Method to read from the clients until the marker line has been received the expected number of times
+     * @param marker: String marker contained in the broadcast line
+     * @param expected: number of clients which should receive the line
+     * @throws IOException: if reading fails
+     */
+    private void awaitMarker(String marker, int expected) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        int received = 0;
+        while (received < expected) {
+            this.selector.select(1000);
+            for (SelectionKey key : this.selector.selectedKeys()) {
+                int index = (Integer) key.attachment();
+                SocketChannel channel = (SocketChannel) key.channel();
+                buffer.clear();
+                channel.read(buffer);
+                buffer.flip();
+                StringBuilder text = this.pendingText[index];
+                text.append(StandardCharsets.UTF_8.decode(buffer));
+
+                //Only complete lines are checked for the marker
+                int newline;
+                while ((newline = text.indexOf("\n")) >= 0) {
+                    if (text.substring(0, newline).endsWith(marker)) {
+                        received += 1;
+                    }
+                    text.delete(0, newline+1);
+                }
+            }
+            this.selector.selectedKeys().clear();
+        }
+    }
+
+    /**
+     * Method to measure a single mode and room size
+     * @param mode: ServerMode to run the server with
+     * @param port: port to start the server on
+     * @param clients: number of clients in the room
+     * @param rounds: number of broadcasts to time
+     * @param out: PrintStream to report the results to
+     * @throws Exception: if the run fails
+     */
+    private void measure(ServerMode mode, int port, int clients, int rounds, PrintStream out) throws Exception {
+        int threadsBefore = ManagementFactory.getThreadMXBean().getThreadCount();
+        ChatServer chatServer = new ChatServer(port, mode);
+        Thread serverThread = new Thread(chatServer::begin);
+        serverThread.setDaemon(true);
+        serverThread.start();
+        Thread.sleep(200);
+
+        //Connect the room, then wait for the server to register every username
+        long connectStart = System.nanoTime();
+        connectClients(port, clients);
+        while (chatServer.getMemberRegistry().memberCount() < clients) {
+            drainClients();
+            Thread.sleep(1);
+        }
+        Thread.sleep(200);
+        drainClients();
+        long connectMillis = (System.nanoTime()-connectStart) / 1000000;
+        int threadsUsed = ManagementFactory.getThreadMXBean().getThreadCount() - threadsBefore;
+
+        //Time each broadcast from the first client's write until every client has read it
+        long[] latencies = new long[rounds];
+        for (int round = 0; round < rounds; round++) {
+            String marker = "round-"+round+"-"+System.nanoTime();
+            long start = System.nanoTime();
+            this.channels.get(0).write(ByteBuffer.wrap((marker+"\n").getBytes(StandardCharsets.UTF_8)));
+            //(the sender also reads the marker, as the server echoes each line back to it)
+            awaitMarker(marker, clients);
+            latencies[round] = System.nanoTime()-start;
+        }
+        Arrays.sort(latencies);
+
+        out.printf("%-8s clients=%-6d connect=%5d ms  threads=%-6d broadcast p50=%8.2f ms  p99=%8.2f ms%n",
+                mode, clients, connectMillis, threadsUsed,
+                latencies[rounds/2] / 1e6, latencies[Math.min(rounds-1, (int) (rounds*0.99))] / 1e6);
+    }
+
+    /**
+     * Main method to run the comparison
+     * @param args: '-modes' (comma separated), '-clients' (comma separated room sizes), '-rounds' and '-port'
+     */
+    public static void main(String[] args) throws Exception {
+        String modes = "thread,virtual,nio";
+        String clientCounts = "100,500,1000,2000";
+        int rounds = 50;
+        int port = 16001;
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-modes")) { modes = args[i+1]; }
+            if (args[i].equals("-clients")) { clientCounts = args[i+1]; }
+            if (args[i].equals("-rounds")) { rounds = Integer.parseInt(args[i+1]); }
+            if (args[i].equals("-port")) { port = Integer.parseInt(args[i+1]); }
+        }
+
+        //Silence the server's console output so only the results are printed,
+        //and give the server console an input which never ends
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        PipedOutputStream consoleInput = new PipedOutputStream();
+        System.setIn(new PipedInputStream(consoleInput));
+
+        out.println("java "+Runtime.version()+", "+Runtime.getRuntime().availableProcessors()+" cores");
+        for (String mode : modes.split(",")) {
+            ServerMode serverMode = ServerMode.fromString(mode);
+            if (serverMode == ServerMode.VIRTUAL && !ConnectionExecutors.virtualThreadsAvailable()) {
+                out.printf("%-8s skipped: virtual threads need Java 21 or later, and the fallback would measure THREAD again%n", serverMode);
+                continue;
+            }
+            for (String clients : clientCounts.split(",")) {
+                new ThreadModeBenchmark().measure(serverMode, port, Integer.parseInt(clients), rounds, out);
+                port += 1;
+            }
+        }
+        System.exit(0);
+    }
+}
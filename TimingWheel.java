@@ -0,0 +1,162 @@
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+//Hashed timing wheel: a ring of slots, each holding the timeouts due in one tick of a revolution. A single thread
+//advances one slot per tick and runs what is due there, so a timeout costs one small object and O(1) to schedule,
+//however many are pending, instead of a task in a ScheduledExecutor's heap each. Timeouts further away than one
+//revolution wait in their slot for the remaining rounds. Any thread may schedule or cancel; new timeouts are handed
+//to the wheel thread through a lock-free queue, and cancelled ones are dropped when their slot comes round
+public class TimingWheel {
+
+    //A scheduled task; the wheel's own links and counters are only touched by the wheel thread
+    public static final class Timeout {
+        private final Runnable task;
+        private final long deadlineNanos;
+        private long remainingRounds;
+        private Timeout next;
+        private volatile boolean cancelled;
+
+        private Timeout(Runnable task, long deadlineNanos) {
+            this.task = task;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        /**
+         * Method to stop the task from running, if it has not run yet
+         */
+        public void cancel() {
+            this.cancelled = true;
+        }
+    }
+
+    //Private object variables for the wheel: the slots as singly linked lists, and the timeouts not yet placed in one
+    private final Timeout[] slots;
+    private final int mask;
+    private final long tickNanos;
+    private final Queue<Timeout> pendingTimeouts;
+    private final Thread ticker;
+    private volatile boolean running;
+
+    //Time at which the wheel's current tick started, refreshed every tick; a clock far cheaper to read than nanoTime()
+    private volatile long tickStartNanos;
+    private long tick;
+    private final long startNanos;
+
+    /**
+     * Constructor method to create the wheel and start its thread
+     * @param name: String name of the wheel's thread
+     * @param tickMillis: length of a tick, which is the precision of the timeouts, in milliseconds
+     * @param slotCount: number of slots in the wheel (rounded up to a power of two)
+     */
+    public TimingWheel(String name, long tickMillis, int slotCount) {
+        int size = Integer.highestOneBit(Math.max(2, slotCount) - 1) << 1;
+        this.slots = new Timeout[size];
+        this.mask = size - 1;
+        this.tickNanos = tickMillis * 1000000L;
+        this.pendingTimeouts = new ConcurrentLinkedQueue<Timeout>();
+        this.startNanos = System.nanoTime();
+        this.tickStartNanos = this.startNanos;
+        this.running = true;
+
+        this.ticker = new Thread(this::run, name);
+        this.ticker.setDaemon(true);
+        this.ticker.start();
+    }
+
+    /**
+     * Method to run a task once a delay has passed (rounded up to the next tick). Safe to call from any thread
+     * @param task: Runnable run on the wheel's thread, so it must be short
+     * @param delayNanos: delay in nanoseconds
+     * @return Timeout object, which can be cancelled
+     */
+    public Timeout schedule(Runnable task, long delayNanos) {
+        Timeout timeout = new Timeout(task, System.nanoTime() + Math.max(0, delayNanos));
+        this.pendingTimeouts.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Accessor method to obtain the time at which the current tick started, in System.nanoTime() terms.
+     * It lags the real time by up to one tick, which is plenty for timeouts counted in seconds
+     * @return coarse current time in nanoseconds
+     */
+    public long currentNanos() {
+        return this.tickStartNanos;
+    }
+
+    /**
+     * Subroutine run by the wheel's thread: every tick, the new timeouts are placed in their slots
+     * and the timeouts of the current slot which are due are run
+     */
+    private void run() {
+        while (this.running) {
+            long tickDeadline = this.startNanos + (this.tick + 1) * this.tickNanos;
+            long now;
+            while ((now = System.nanoTime()) < tickDeadline) {
+                LockSupport.parkNanos(tickDeadline - now);
+                if (!this.running) {
+                    return;
+                }
+            }
+            this.tickStartNanos = now;
+            placePendingTimeouts();
+            expireSlot((int) this.tick & this.mask);
+            this.tick += 1;
+        }
+    }
+
+    /**
+     * Subroutine to put every timeout scheduled since the last tick in the slot of the tick it is due in
+     */
+    private void placePendingTimeouts() {
+        Timeout timeout;
+        while ((timeout = this.pendingTimeouts.poll()) != null) {
+            if (timeout.cancelled) {
+                continue;
+            }
+            //Ticks are counted from the start of the wheel; a timeout already due goes in the current slot
+            long dueTick = Math.max(this.tick, (timeout.deadlineNanos - this.startNanos + this.tickNanos - 1) / this.tickNanos);
+            timeout.remainingRounds = (dueTick - this.tick) / this.slots.length;
+            int slot = (int) dueTick & this.mask;
+            timeout.next = this.slots[slot];
+            this.slots[slot] = timeout;
+        }
+    }
+
+    /**
+     * Subroutine to run the timeouts of a slot which are due in this round, keeping the others for later rounds
+     * @param slot: index of the slot
+     */
+    private void expireSlot(int slot) {
+        Timeout timeout = this.slots[slot];
+        this.slots[slot] = null;
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            timeout.next = null;
+            if (!timeout.cancelled) {
+                if (timeout.remainingRounds > 0) {
+                    timeout.remainingRounds -= 1;
+                    timeout.next = this.slots[slot];
+                    this.slots[slot] = timeout;
+                } else {
+                    try {
+                        timeout.task.run();
+                    } catch (RuntimeException e) {
+                        //One failing task must not stop the wheel
+                        e.printStackTrace();
+                    }
+                }
+            }
+            timeout = next;
+        }
+    }
+
+    /**
+     * Method to stop the wheel; timeouts still pending never run
+     */
+    public void close() {
+        this.running = false;
+        LockSupport.unpark(this.ticker);
+    }
+}
@@ -0,0 +1,26 @@
+/**
+ * Enum of the wire protocols a client can speak, chosen by the client in its handshake
+ * (selected on the client using '-protocol' on the command line)
+ */
+public enum WireProtocol {
+    //Text lines; the first line is the username (the original protocol)
+    LINE,
+
+    //Length-prefixed binary frames, after a first line of Frame.HANDSHAKE
+    FRAMED;
+
+    /**
+     * Static method to parse the protocol given on the command line
+     * @param value: String value of the protocol (case insensitive)
+     * @return matching WireProtocol, or LINE if the value is not recognised
+     */
+    public static WireProtocol fromString(String value) {
+        for (WireProtocol protocol : WireProtocol.values()) {
+            if (protocol.name().equalsIgnoreCase(value)) {
+                return protocol;
+            }
+        }
+        System.out.println("Unknown protocol '"+value+"', defaulting to "+LINE);
+        return LINE;
+    }
+}
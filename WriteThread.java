@@ -1,5 +1,6 @@
 import java.io.*;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 import java.util.Scanner;
 
 //Writing class implementing the Runnable interface for the client
@@ -8,6 +9,7 @@ public class WriteThread implements Runnable {
     private ChatClient chatClient;
     private Socket socket;
     private PrintWriter printWriter;
+    private DataOutputStream frameOutput;
     private boolean userNameEntered;
 
     /**
@@ -24,7 +26,12 @@ public class WriteThread implements Runnable {
 
         try {
             OutputStream outputStream = socket.getOutputStream();
-            printWriter = new PrintWriter(outputStream, true);
+            //No autoflush; lines are flushed once there is no more typed (or pasted) input waiting
+            if (chatClient.getWireProtocol() == WireProtocol.FRAMED) {
+                frameOutput = new DataOutputStream(new BufferedOutputStream(outputStream));
+            } else {
+                printWriter = new PrintWriter(outputStream, false);
+            }
         } catch (IOException ex) {
             ex.printStackTrace();
         }
@@ -78,6 +85,69 @@ public class WriteThread implements Runnable {
         } return false;
     }
 
+    /**
+     * Method to turn a line typed by the client into a frame; the type is decided here,
+     * so the server does not have to look for commands in the text
+     * @param input: String input from the client
+     * @return Frame to send
+     */
+    public Frame frameForInput(String input) {
+        if (isLeavingChat(input)) {
+            return new Frame(FrameType.QUIT, 0, 0, "");
+        } else if (input.startsWith("/join ")) {
+            return new Frame(FrameType.ROOM_JOIN, 0, 0, input.substring(6));
+        } else if (input.startsWith("/leave ")) {
+            return new Frame(FrameType.ROOM_LEAVE, 0, 0, input.substring(7));
+        } else if (input.startsWith("HEY_BOT!")) {
+            return new Frame(FrameType.BOT_REQUEST, 0, 0, input);
+        }
+        //Room id 0 sends the message to the room the client is currently chatting in
+        return new Frame(FrameType.CHAT, 0, 0, input);
+    }
+
+    /**
+     * Method to send a line to the server, as a text line or a frame depending on the client's protocol
+     * @param input: String input from the client
+     * @throws IOException: if writing fails
+     */
+    private void send(String input) throws IOException {
+        if (this.frameOutput == null) {
+            this.printWriter.println(input);
+        } else {
+            this.frameOutput.write(frameForInput(input).encode());
+        }
+    }
+
+    /**
+     * Method to answer a ping from the server; called by the interpreting thread, so the pong is written in a single
+     * call, which the stream's own lock keeps from splitting a line being sent by this thread
+     */
+    public void sendPong() {
+        try {
+            if (this.frameOutput == null) {
+                this.printWriter.println(ChatConnection.PONG);
+                this.printWriter.flush();
+            } else {
+                this.frameOutput.write(new Frame(FrameType.PONG, 0, 0, "").encode());
+                this.frameOutput.flush();
+            }
+        } catch (IOException e) {
+            //The connection has gone; the interpreting thread finds out when it next reads
+        }
+    }
+
+    /**
+     * Method to flush whatever has been sent so far
+     * @throws IOException: if writing fails
+     */
+    private void flush() throws IOException {
+        if (this.frameOutput == null) {
+            this.printWriter.flush();
+        } else {
+            this.frameOutput.flush();
+        }
+    }
+
     /**
      * Overriding run method from the implemented Runnable interface
      * Runs when the Thread is run
@@ -93,8 +163,25 @@ public class WriteThread implements Runnable {
             //Set the username of the client, based on the now-validated input
             this.chatClient.setUsername(username);
 
-            //send on the output stream
-            printWriter.println(username);
+            //Ask for compression first, naming the dictionary this client holds
+            byte[] compressionDictionary = this.chatClient.getCompressionDictionary();
+            if (compressionDictionary != null) {
+                String compressionHandshake = PacketDeflater.HANDSHAKE+" "+CompressionDictionary.checksum(compressionDictionary);
+                if (this.frameOutput == null) {
+                    printWriter.println(compressionHandshake);
+                } else {
+                    frameOutput.write((compressionHandshake+"\n").getBytes(StandardCharsets.UTF_8));
+                }
+            }
+
+            //send on the output stream (a framed client first sends the handshake, then its username in a JOIN frame)
+            if (this.frameOutput == null) {
+                printWriter.println(username);
+            } else {
+                frameOutput.write((Frame.HANDSHAKE+"\n").getBytes(StandardCharsets.UTF_8));
+                frameOutput.write(new Frame(FrameType.JOIN, 0, 0, username).encode());
+            }
+            flush();
 
             //Display personal user messages to inform them of their successful addition
             //to the chat
@@ -108,13 +195,19 @@ public class WriteThread implements Runnable {
                 if (input == null) {
                     break;
                 }
-                //Input is displayed via the printWriter
-                printWriter.println(input);
+                //Input is sent to the server
+                send(input);
                 if (isLeavingChat(input)) {
 
                     //Broken from loop when leaving from the chat
+                    flush();
                     break;
                 }
+
+                //Pasted lines are sent together in one write
+                if (System.in.available() == 0) {
+                    flush();
+                }
             }
             //close the socket
             socket.close();
@@ -0,0 +1,70 @@
+import benchmarks.HotPaths;
+
+//The work measured by benchmarks.HotPathBenchmarks, done with the server's own classes
+public class HotPathWorkloads implements HotPaths {
+
+    //Lines classified by classifyMessage(), in turn
+    private static final String[] LINES = {"hello everyone, how is the deploy going?", "HEY_BOT! what is the weather like today?",
+            "/join #ops", "__QUIT"};
+    private static final String JOIN_NOTICE = "##-- benchmark_user has joined the chat --##";
+    private static final String QUESTION = "HEY_BOT! what is the weather like today?";
+    private static final String BOT_REQUEST = "[benchmark_user]: HEY_BOT! what is the weather like today?";
+
+    //Private object variables for the workloads
+    private SinkConnection[] sinks;
+    private ChatServer chatServer;
+    private LanguageProcessing languageProcessing;
+    private SinkConnection classifier;
+    private int nextLine;
+
+    @Override
+    public void setUpBroadcast(int members) {
+        this.chatServer = new ChatServer(0);
+        this.sinks = new SinkConnection[members];
+        for (int i = 0; i < members; i++) {
+            this.sinks[i] = new SinkConnection(this.chatServer);
+            this.chatServer.addConnection(this.sinks[i]);
+        }
+    }
+
+    @Override
+    public int broadcastToAllOtherMembers() throws Exception {
+        this.chatServer.broadcastToAllOtherMembers(JOIN_NOTICE, this.sinks[0]);
+        for (SinkConnection sink : this.sinks) {
+            sink.drain();
+        }
+        return this.sinks.length - 1;
+    }
+
+    @Override
+    public void setUpReplies(String repliesPath, String replyMode) {
+        this.languageProcessing = new LanguageProcessing(repliesPath, ReplyMode.fromString(replyMode));
+    }
+
+    @Override
+    public String generateReply() {
+        return this.languageProcessing.generateReply(QUESTION);
+    }
+
+    @Override
+    public int parseBotRequest() {
+        return BotInterpretThread.getUsernameFromString(BOT_REQUEST).length()
+                + BotInterpretThread.getMessageFromString(BOT_REQUEST).length();
+    }
+
+    @Override
+    public void setUpClassifier() {
+        this.classifier = new SinkConnection(new ChatServer(0));
+    }
+
+    @Override
+    public Object classifyMessage() {
+        return this.classifier.classifyMessage(LINES[this.nextLine++ & 3]);
+    }
+
+    @Override
+    public boolean isLeavingChatOrDirectedToBot() {
+        String line = LINES[this.nextLine++ & 3];
+        return this.classifier.isLeavingChat(line) || this.classifier.messageDirectedToBot(line);
+    }
+}
@@ -0,0 +1,98 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+//JMH benchmarks of the server's hot paths: the fan-out of a broadcast to in-memory members, bot reply generation,
+//the "[name]: msg" parsing done by the bot, and the classification of each line a client sends.
+//Run from the repository root with 'java -jar jmh/target/benchmarks.jar'; add '-rf json -rff results.json' to save
+//a run, and e.g. 'HotPathBenchmarks.generateReply -p replyMode=keyword' to run only part of it
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HotPathBenchmarks {
+
+    //Server with in-memory members, a sink each
+    @State(Scope.Thread)
+    public static class Members {
+        @Param({"10", "100", "1000"})
+        public int members;
+
+        public HotPaths hotPaths;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            this.hotPaths = HotPaths.load();
+            this.hotPaths.setUpBroadcast(this.members);
+        }
+    }
+
+    //Bot replying from the corpus, picking at random or by keyword
+    @State(Scope.Thread)
+    public static class Replies {
+        @Param({"random", "keyword"})
+        public String replyMode;
+
+        @Param({"replies.txt"})
+        public String repliesPath;
+
+        public HotPaths hotPaths;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            this.hotPaths = HotPaths.load();
+            this.hotPaths.setUpReplies(this.repliesPath, this.replyMode);
+        }
+    }
+
+    //Connection classifying a mix of lines
+    @State(Scope.Thread)
+    public static class Lines {
+        public HotPaths hotPaths;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            this.hotPaths = HotPaths.load();
+            this.hotPaths.setUpClassifier();
+        }
+    }
+
+    @Benchmark
+    public int broadcastToAllOtherMembers(Members state) throws Exception {
+        return state.hotPaths.broadcastToAllOtherMembers();
+    }
+
+    @Benchmark
+    public String generateReply(Replies state) {
+        return state.hotPaths.generateReply();
+    }
+
+    @Benchmark
+    public int parseBotRequest(Lines state) {
+        return state.hotPaths.parseBotRequest();
+    }
+
+    @Benchmark
+    public Object classifyMessage(Lines state) {
+        return state.hotPaths.classifyMessage();
+    }
+
+    @Benchmark
+    public boolean isLeavingChatOrDirectedToBot(Lines state) {
+        return state.hotPaths.isLeavingChatOrDirectedToBot();
+    }
+}
@@ -0,0 +1,68 @@
+package benchmarks;
+
+//The server's hot paths as the benchmarks see them. JMH only accepts benchmarks in a named package, and a named package
+//cannot refer to the server's classes in the default package, so the work itself is done by HotPathWorkloads, which
+//sits in the default package next to the server and is loaded by name; the calls through this interface are
+//monomorphic, so the JIT inlines them and they cost nothing next to the work measured
+public interface HotPaths {
+
+    /**
+     * Method to register in-memory members with a new server, for broadcastToAllOtherMembers()
+     * @param members: number of members
+     */
+    void setUpBroadcast(int members);
+
+    /**
+     * Method to fan a member's notice out to everyone else in the chat, each recipient writing it to a discarding sink
+     * @return number of messages written
+     */
+    int broadcastToAllOtherMembers() throws Exception;
+
+    /**
+     * Method to load the reply corpus, for generateReply()
+     * @param repliesPath: String path of the replies file
+     * @param replyMode: String name of the ReplyMode (random or keyword)
+     */
+    void setUpReplies(String repliesPath, String replyMode);
+
+    /**
+     * Method to generate the bot's reply to a question
+     * @return String reply
+     */
+    String generateReply();
+
+    /**
+     * Method to parse a bot request line into its sender and message
+     * @return combined length of the two, so both are consumed
+     */
+    int parseBotRequest();
+
+    /**
+     * Method to create the connection lines are classified by, for classifyMessage() and isLeavingChatOrDirectedToBot()
+     */
+    void setUpClassifier();
+
+    /**
+     * Method to classify the next line of a mix of chat, bot requests, room commands and leaving
+     * @return the line's MessageKind
+     */
+    Object classifyMessage();
+
+    /**
+     * Method to test the next line of the mix for leaving the chat or being directed at the bot
+     * @return true if either
+     */
+    boolean isLeavingChatOrDirectedToBot();
+
+    /**
+     * Static method to create the workloads
+     * @return HotPaths object backed by the server's classes
+     */
+    static HotPaths load() {
+        try {
+            return (HotPaths) Class.forName("HotPathWorkloads").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("HotPathWorkloads is not on the class path", e);
+        }
+    }
+}
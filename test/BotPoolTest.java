@@ -0,0 +1,79 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+//Tests of the bot pool, with in-memory connections standing in for the bots and the member
+public class BotPoolTest {
+
+    private ChatServer chatServer;
+    private BotPool botPool;
+    private SinkConnection member;
+
+    @BeforeEach
+    public void setUp() {
+        this.chatServer = new ChatServer(0);
+        this.botPool = new BotPool(this.chatServer, 60000);
+        this.member = new SinkConnection(this.chatServer);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        this.botPool.close();
+    }
+
+    @Test
+    public void requestsOfARemovedBotAreSentToAnother() {
+        SinkConnection first = new SinkConnection(this.chatServer);
+        SinkConnection second = new SinkConnection(this.chatServer);
+        this.botPool.addBot(first);
+        assertTrue(this.botPool.dispatch(this.member, "HEY_BOT! are you there?"));
+        assertEquals("HEY_BOT! are you there?", first.outboundQueue.poll().getPayload());
+
+        this.botPool.addBot(second);
+        this.botPool.removeBot(first);
+        assertEquals(1, this.botPool.size());
+        assertEquals(1, this.botPool.getOutstandingCount());
+        assertEquals("HEY_BOT! are you there?", second.outboundQueue.poll().getPayload());
+        assertNull(this.member.outboundQueue.poll());
+    }
+
+    @Test
+    public void memberIsToldWhenNoBotIsLeft() {
+        SinkConnection bot = new SinkConnection(this.chatServer);
+        this.botPool.addBot(bot);
+        assertTrue(this.botPool.dispatch(this.member, "HEY_BOT! hello"));
+        this.botPool.removeBot(bot);
+        assertEquals(0, this.botPool.getOutstandingCount());
+        assertTrue(this.member.outboundQueue.poll().getText().contains("could not answer"));
+        assertFalse(this.botPool.dispatch(this.member, "HEY_BOT! anyone?"));
+    }
+
+    @Test
+    public void noRequestIsLostWhileBotsAreRemoved() throws Exception {
+        //Requests keep arriving while the bots they are being sent to are removed; each one must end up with the
+        //surviving bot (or have been answered with an apology, which the member's queue would show)
+        SinkConnection survivor = new SinkConnection(this.chatServer);
+        this.botPool.addBot(survivor);
+        int requests = 20000;
+        Thread dispatcher = new Thread(() -> {
+            for (int i = 0; i < requests; i++) {
+                this.botPool.dispatch(this.member, "HEY_BOT! "+i);
+            }
+        });
+        dispatcher.start();
+        while (dispatcher.isAlive()) {
+            SinkConnection doomed = new SinkConnection(this.chatServer);
+            this.botPool.addBot(doomed);
+            Thread.yield();
+            this.botPool.removeBot(doomed);
+        }
+        dispatcher.join();
+        assertNull(this.member.outboundQueue.poll());
+        assertEquals(requests, this.botPool.getOutstandingCount());
+    }
+}
@@ -0,0 +1,32 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+//Tests of a server which is only constructed (as tests and benchmarks embed it), never begun
+public class ChatServerTest {
+
+    /**
+     * Static method to take the ids of the threads currently alive
+     * @return Set of thread ids
+     */
+    private static Set<Long> liveThreadIds() {
+        return Thread.getAllStackTraces().keySet().stream().map(Thread::getId).collect(Collectors.toSet());
+    }
+
+    @Test
+    public void constructedServerStartsNoThreads() {
+        Set<Long> before = liveThreadIds();
+        ChatServer chatServer = new ChatServer(0);
+        chatServer.configureHeartbeats(30, 90);
+        chatServer.getFederation().addPeer("127.0.0.1", 1);
+
+        Set<Long> after = liveThreadIds();
+        after.removeAll(before);
+        assertEquals(Set.of(), after);
+        assertFalse(chatServer.getIdleReaper().isEnabled());
+    }
+}
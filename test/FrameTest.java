@@ -0,0 +1,129 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+//Tests of the framed wire protocol: frames encoded by the server read back by either reader, and the limits
+//which keep a message from growing past what a framed recipient accepts
+public class FrameTest {
+
+    /**
+     * Static method to read a line from bytes, cut to a given size
+     * @param text: String text to read from
+     * @param maxBytes: largest number of bytes kept
+     * @return String line read
+     */
+    static String readLine(String text, int maxBytes) throws IOException {
+        return Frame.readLine(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)), maxBytes);
+    }
+
+    @Test
+    public void encodedFrameReadsBackFromStreamAndBuffer() throws IOException {
+        Frame frame = new Frame(FrameType.CHAT, 7, 3, "[#ops] [alice]: déjà vu");
+        byte[] encoded = frame.encode();
+        assertEquals(Frame.HEADER_BYTES + "[#ops] [alice]: déjà vu".getBytes(StandardCharsets.UTF_8).length, encoded.length);
+
+        Frame read = Frame.read(new DataInputStream(new ByteArrayInputStream(encoded)));
+        assertEquals(FrameType.CHAT, read.getType());
+        assertEquals(7, read.getMemberId());
+        assertEquals(3, read.getRoomId());
+        assertEquals("[#ops] [alice]: déjà vu", read.getPayload());
+
+        ByteBuffer buffer = ByteBuffer.wrap(encoded);
+        Frame decoded = Frame.decode(buffer);
+        assertEquals("[#ops] [alice]: déjà vu", decoded.getPayload());
+        assertEquals(0, buffer.remaining());
+    }
+
+    @Test
+    public void partialFrameIsLeftInTheBuffer() throws IOException {
+        byte[] first = new Frame(FrameType.BOT_REQUEST, 1, 0, "HEY_BOT! hi").encode();
+        byte[] second = new Frame(FrameType.PING, 0, 0, "").encode();
+        ByteBuffer buffer = ByteBuffer.allocate(first.length + second.length);
+        buffer.put(first).put(second, 0, 5).flip();
+
+        assertEquals("HEY_BOT! hi", Frame.decode(buffer).getPayload());
+        assertNull(Frame.decode(buffer));
+        assertEquals(5, buffer.remaining());
+
+        buffer.compact().put(second, 5, second.length - 5).flip();
+        assertEquals(FrameType.PING, Frame.decode(buffer).getType());
+        assertNull(Frame.read(new DataInputStream(new ByteArrayInputStream(new byte[0]))));
+    }
+
+    @Test
+    public void oversizedPayloadIsNeverEncodedOrAccepted() {
+        Frame oversized = new Frame(FrameType.CHAT, 1, 1, "x".repeat(Frame.MAX_PAYLOAD_BYTES + 1));
+        assertThrows(IllegalArgumentException.class, oversized::encode);
+
+        //A header claiming a payload over the limit is refused before anything is allocated for it
+        ByteBuffer header = ByteBuffer.allocate(Frame.HEADER_BYTES);
+        header.put(FrameType.CHAT.getCode()).putInt(1).putInt(1).putInt(Frame.MAX_PAYLOAD_BYTES + 1).flip();
+        IOException refused = assertThrows(IOException.class, () -> Frame.decode(header));
+        assertTrue(refused.getMessage().contains("out of range"));
+        assertThrows(IOException.class, () -> Frame.read(new DataInputStream(new ByteArrayInputStream(header.array()))));
+    }
+
+    @Test
+    public void unknownTypeIsRefused() {
+        ByteBuffer header = ByteBuffer.allocate(Frame.HEADER_BYTES);
+        header.put((byte) 0x7f).putInt(0).putInt(0).putInt(0).flip();
+        IOException refused = assertThrows(IOException.class, () -> Frame.decode(header));
+        assertTrue(refused.getMessage().contains("Unknown frame type"));
+    }
+
+    @Test
+    public void longLineIsCutAtACharacterBoundary() throws IOException {
+        assertEquals("hello", readLine("hello\r\nnext\n", 16));
+        assertEquals("last", readLine("last", 16));
+        assertNull(readLine("", 16));
+
+        //'é' takes two bytes, so a cut after 5 bytes keeps only two of them
+        assertEquals("éé", readLine("ééé\n", 5));
+        assertEquals("ééé", Frame.truncate("ééé", 6));
+        assertEquals("éé", Frame.truncate("ééé", 5));
+
+        String line = "a".repeat(Frame.MAX_MESSAGE_BYTES + 100);
+        assertEquals(Frame.MAX_MESSAGE_BYTES, readLine(line+"\n", Frame.MAX_MESSAGE_BYTES).length());
+    }
+
+    @Test
+    public void broadcastOfAnOversizedLineStillFitsInAFrame() throws IOException {
+        String text = "[" + "u".repeat(2000) + "]: " + "m".repeat(Frame.MAX_PAYLOAD_BYTES);
+        EncodedMessage message = EncodedMessage.chat(text, 4, 0, "alice");
+        byte[] encoded = message.getFrameBytes();
+        assertEquals(Frame.HEADER_BYTES + Frame.MAX_PAYLOAD_BYTES, encoded.length);
+
+        Frame read = Frame.read(new DataInputStream(new ByteArrayInputStream(encoded)));
+        assertEquals(text.substring(0, Frame.MAX_PAYLOAD_BYTES), read.getPayload());
+        assertSame(encoded, message.getFrameBytes());
+        assertArrayEquals(encoded, message.getBytes(WireProtocol.FRAMED));
+    }
+
+    @Test
+    public void batchKeepsALineAndAFrameForEachMessage() throws IOException {
+        EncodedMessage batch = EncodedMessage.batch(EncodedMessage.of("##-- Recent messages in #ops: --##"),
+                EncodedMessage.chat("[#ops] [alice]: hi", 4, 2, "alice"), EncodedMessage.chat("", 5, 2, "bob"));
+        assertEquals("##-- Recent messages in #ops: --##\n[#ops] [alice]: hi\n\n",
+                new String(batch.getBytes(WireProtocol.LINE), StandardCharsets.UTF_8));
+
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(batch.getBytes(WireProtocol.FRAMED)));
+        assertEquals(FrameType.NOTICE, Frame.read(input).getType());
+        Frame chat = Frame.read(input);
+        assertEquals(FrameType.CHAT, chat.getType());
+        assertEquals(4, chat.getMemberId());
+        assertEquals("[#ops] [alice]: hi", chat.getPayload());
+        assertEquals(5, Frame.read(input).getMemberId());
+        assertNull(Frame.read(input));
+    }
+}
@@ -0,0 +1,164 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+//Tests of a single log segment in a temporary directory: recovery of its end after a crash, sealing and deleting
+public class LogSegmentTest {
+
+    private static final int CAPACITY = 64 * 1024;
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Static method to append numbered records to a segment
+     * @param segment: LogSegment to append to
+     * @param first: sequence number of the first record
+     * @param count: number of records to append
+     * @return int array of the position each record was written at
+     */
+    static int[] appendRecords(LogSegment segment, long first, int count) {
+        int[] positions = new int[count];
+        byte[] sender = "alice".getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < count; i++) {
+            byte[] text = ("[alice]: message "+(first + i)+"\n").getBytes(StandardCharsets.UTF_8);
+            positions[i] = segment.getSize();
+            assertTrue(segment.append(first + i, 1000 + first + i, 3, 1, sender, text, text.length));
+        }
+        return positions;
+    }
+
+    /**
+     * Static method to overwrite bytes of a file, as a crash part way through writing a record would leave them
+     * @param path: Path of the file
+     * @param position: byte position to write at
+     * @param bytes: byte array written
+     */
+    static void overwrite(Path path, int position, byte[] bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(bytes), position);
+        }
+    }
+
+    /**
+     * Static method to read every record of a segment
+     * @param segment: LogSegment to read
+     * @return List of LogRecord objects
+     */
+    static List<LogRecord> readAll(LogSegment segment) {
+        ArrayList<LogRecord> records = new ArrayList<LogRecord>();
+        segment.read(1, Integer.MAX_VALUE, records);
+        return records;
+    }
+
+    private Path logPath() {
+        return this.directory.resolve(LogSegment.fileName(1, ".log"));
+    }
+
+    @Test
+    public void recordFailingItsChecksumEndsTheRecovery() throws IOException {
+        LogSegment segment = LogSegment.create(this.directory, 1, CAPACITY);
+        int[] positions = appendRecords(segment, 1, 5);
+        segment.force();
+
+        //A flipped byte in the last record's text
+        overwrite(logPath(), positions[4] + LogSegment.RECORD_HEADER_BYTES + 12, new byte[] {'#'});
+
+        LogSegment reopened = LogSegment.open(logPath(), CAPACITY);
+        assertEquals(4, reopened.getLastSequence());
+        assertEquals(positions[4], reopened.getSize());
+        assertEquals(4, readAll(reopened).size());
+
+        //The next record is appended over the damaged one
+        appendRecords(reopened, 5, 1);
+        List<LogRecord> records = readAll(reopened);
+        assertEquals(5, records.size());
+        assertEquals("[alice]: message 5", records.get(4).getText());
+        assertEquals("alice", records.get(4).getSender());
+    }
+
+    @Test
+    public void tornTailIsDropped() throws IOException {
+        LogSegment segment = LogSegment.create(this.directory, 1, CAPACITY);
+        int[] positions = appendRecords(segment, 1, 3);
+        segment.force();
+
+        //The last record's length reached the disk, but the rest of it did not
+        overwrite(logPath(), positions[2] + 8, new byte[LogSegment.RECORD_HEADER_BYTES - 8]);
+
+        LogSegment reopened = LogSegment.open(logPath(), CAPACITY);
+        assertEquals(2, reopened.getLastSequence());
+        assertEquals(positions[2], reopened.getSize());
+        assertEquals(1002, reopened.getLastTimestampMillis());
+    }
+
+    @Test
+    public void recoveryStartsFromTheLastValidIndexEntry() throws IOException {
+        //Enough records for several index entries, one every 4 KB
+        LogSegment segment = LogSegment.create(this.directory, 1, CAPACITY);
+        int[] positions = appendRecords(segment, 1, 500);
+        segment.force();
+        overwrite(logPath(), positions[499] + LogSegment.RECORD_HEADER_BYTES, new byte[] {0, 0, 0});
+
+        LogSegment reopened = LogSegment.open(logPath(), CAPACITY);
+        assertEquals(499, reopened.getLastSequence());
+        ArrayList<LogRecord> records = new ArrayList<LogRecord>();
+        reopened.read(321, 2, records);
+        assertEquals(321, records.get(0).getSequence());
+        assertEquals("[alice]: message 322", records.get(1).getText());
+        assertEquals(400, reopened.sequenceAt(1400));
+    }
+
+    @Test
+    public void sealedSegmentIsTrimmedToItsRecords() throws IOException {
+        LogSegment segment = LogSegment.create(this.directory, 1, CAPACITY);
+        appendRecords(segment, 1, 200);
+        assertEquals(CAPACITY, Files.size(logPath()));
+
+        segment.seal();
+        assertTrue(segment.isSealed());
+        assertEquals(segment.getSize(), Files.size(logPath()));
+        assertFalse(segment.force());
+        assertEquals(200, readAll(segment).size());
+
+        //A sealed segment opens at its own size, and is read the same
+        LogSegment reopened = LogSegment.open(logPath(), 0);
+        assertEquals(200, reopened.getLastSequence());
+        assertEquals(200, readAll(reopened).size());
+        assertEquals(segment.getSize(), Files.size(logPath()));
+    }
+
+    @Test
+    public void deletedSegmentIsUnmappedAndReadsNothing() throws IOException {
+        LogSegment segment = LogSegment.create(this.directory, 1, CAPACITY);
+        appendRecords(segment, 1, 10);
+        segment.seal();
+        segment.delete();
+
+        assertFalse(Files.exists(logPath()));
+        assertFalse(Files.exists(this.directory.resolve(LogSegment.fileName(1, ".idx"))));
+        assertEquals(0, readAll(segment).size());
+        assertEquals(-1, segment.sequenceAt(1000));
+    }
+
+    @Test
+    public void fileOfAnotherFormatIsRefused() throws IOException {
+        Files.write(logPath(), "not a segment".getBytes(StandardCharsets.UTF_8));
+        IOException refused = assertThrows(IOException.class, () -> LogSegment.open(logPath(), CAPACITY));
+        assertTrue(refused.getMessage().contains("not a log segment"));
+    }
+}
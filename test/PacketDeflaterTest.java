@@ -0,0 +1,145 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+//Tests of the packets written by a connection's deflater, read back through the client's inflating stream
+public class PacketDeflaterTest {
+
+    private byte[] dictionary;
+    private PacketDeflater deflater;
+
+    @BeforeEach
+    public void setUp() {
+        this.dictionary = CompressionDictionary.prefixesOnly();
+        this.deflater = new PacketDeflater(this.dictionary);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        this.deflater.end();
+    }
+
+    /**
+     * Static method to make up a batch of chat lines
+     * @param first: number of the first line
+     * @param count: number of lines
+     * @return byte array of the UTF-8 encoded lines
+     */
+    static byte[] chatLines(int first, int count) {
+        StringBuilder lines = new StringBuilder();
+        for (int i = first; i < first + count; i++) {
+            lines.append("[#ops] [alice]: the deploy of build ").append(i).append(" has finished\n");
+        }
+        return lines.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Static method to read every byte of an inflating stream over the given packets
+     * @param packets: byte array of the packets, one after the other
+     * @param dictionaries: byte array dictionaries the client holds
+     * @return byte array of the decoded bytes
+     * @throws IOException: if a packet cannot be decoded
+     */
+    static byte[] inflate(byte[] packets, byte[]... dictionaries) throws IOException {
+        try (InflatingInputStream input = new InflatingInputStream(new ByteArrayInputStream(packets), dictionaries)) {
+            return input.readAllBytes();
+        }
+    }
+
+    /**
+     * Static method to read the body length from a packet's header
+     * @param packet: byte array of the packet
+     * @return body length in bytes
+     */
+    static int bodyLength(byte[] packet) {
+        return ((packet[1] & 0xff) << 24) | ((packet[2] & 0xff) << 16) | ((packet[3] & 0xff) << 8) | (packet[4] & 0xff);
+    }
+
+    @Test
+    public void smallBatchIsStoredAsItIs() throws IOException {
+        byte[] batch = "[bob]: hi\n".getBytes(StandardCharsets.UTF_8);
+        byte[] packet = this.deflater.encodePacket(batch, batch.length);
+
+        assertEquals(PacketDeflater.STORED, packet[0]);
+        assertEquals(batch.length, bodyLength(packet));
+        assertArrayEquals(batch, Arrays.copyOfRange(packet, PacketDeflater.HEADER_BYTES, packet.length));
+        assertEquals(1, this.deflater.getStoredPackets());
+        assertArrayEquals(batch, inflate(packet, this.dictionary));
+    }
+
+    @Test
+    public void largeBatchIsDeflatedAndInflatesBack() throws IOException {
+        byte[] batch = chatLines(0, 50);
+        byte[] packet = this.deflater.encodePacket(batch, batch.length);
+
+        assertEquals(PacketDeflater.DEFLATED, packet[0]);
+        assertEquals(packet.length - PacketDeflater.HEADER_BYTES, bodyLength(packet));
+        assertTrue(packet.length < batch.length / 4);
+        assertEquals(1, this.deflater.getDeflatedPackets());
+        assertArrayEquals(batch, inflate(packet, this.dictionary));
+    }
+
+    @Test
+    public void onlyTheGivenLengthIsEncoded() throws IOException {
+        byte[] batch = Arrays.copyOf(chatLines(0, 10), 4096);
+        int length = chatLines(0, 10).length;
+        byte[] packet = this.deflater.encodePacket(batch, length);
+        assertArrayEquals(Arrays.copyOf(batch, length), inflate(packet, this.dictionary));
+    }
+
+    @Test
+    public void storedAndDeflatedPacketsShareOneStream() throws IOException {
+        ByteArrayOutputStream wire = new ByteArrayOutputStream();
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        byte[][] batches = {chatLines(0, 20), "[bob]: ok\n".getBytes(StandardCharsets.UTF_8), chatLines(20, 20),
+                "[bob]: thanks\n".getBytes(StandardCharsets.UTF_8), chatLines(40, 20)};
+        int[] packetLengths = new int[batches.length];
+        for (int i = 0; i < batches.length; i++) {
+            byte[] packet = this.deflater.encodePacket(batches[i], batches[i].length);
+            packetLengths[i] = packet.length;
+            wire.writeBytes(packet);
+            expected.writeBytes(batches[i]);
+        }
+
+        assertEquals(3, this.deflater.getDeflatedPackets());
+        assertEquals(2, this.deflater.getStoredPackets());
+        assertArrayEquals(expected.toByteArray(), inflate(wire.toByteArray(), this.dictionary));
+
+        //Later packets continue the deflate stream, so lines like those already sent cost less
+        assertTrue(packetLengths[4] < packetLengths[0]);
+        assertEquals(expected.size(), this.deflater.getInputBytes());
+        assertEquals(wire.size(), this.deflater.getOutputBytes());
+    }
+
+    @Test
+    public void batchLargerThanTheOutputBufferRoundTrips() throws IOException {
+        //Random bytes barely compress, so the packet outgrows the deflater's initial output buffer
+        byte[] batch = new byte[100000];
+        new Random(7).nextBytes(batch);
+        byte[] packet = this.deflater.encodePacket(batch, batch.length);
+        assertEquals(PacketDeflater.DEFLATED, packet[0]);
+        assertTrue(packet.length > 8192);
+        assertArrayEquals(batch, inflate(packet, this.dictionary));
+    }
+
+    @Test
+    public void clientWithoutTheDictionaryIsRefused() {
+        byte[] batch = chatLines(0, 10);
+        byte[] packet = this.deflater.encodePacket(batch, batch.length);
+        byte[] otherDictionary = "some other dictionary".getBytes(StandardCharsets.UTF_8);
+        IOException refused = assertThrows(IOException.class, () -> inflate(packet, otherDictionary));
+        assertTrue(refused.getMessage().contains("dictionary"));
+    }
+}
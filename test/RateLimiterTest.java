@@ -0,0 +1,106 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+//Tests of the rate limiter's buckets, driven by a made-up clock so that no test waits for real time to pass
+public class RateLimiterTest {
+
+    //A start time well after the buckets' initial 'full at' time of 0, so every bucket starts full
+    private static final long START = 1000000000000L;
+    private static final long MILLIS = 1000000L;
+
+    private ChatServer chatServer;
+    private SinkConnection alice;
+    private SinkConnection bob;
+
+    @BeforeEach
+    public void setUp() {
+        this.chatServer = new ChatServer(0);
+        this.alice = new SinkConnection(this.chatServer);
+        this.bob = new SinkConnection(this.chatServer);
+    }
+
+    @Test
+    public void fullBucketAdmitsItsBurstAtOnce() {
+        //5 messages per second with 2 s of burst: 10 messages straight away, then one every 200 ms
+        RateLimiter rateLimiter = new RateLimiter(5, 0, 0, 2, RateLimitPolicy.DEFER);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(0, rateLimiter.admit(this.alice, 20, START));
+        }
+        assertEquals(200 * MILLIS, rateLimiter.admit(this.alice, 20, START));
+
+        //The message over the limit took nothing, so waiting as told is enough
+        assertEquals(0, rateLimiter.admit(this.alice, 20, START + 200 * MILLIS));
+        assertEquals(200 * MILLIS, rateLimiter.admit(this.alice, 20, START + 200 * MILLIS));
+    }
+
+    @Test
+    public void bucketRefillsAtItsRateUpToTheBurst() {
+        RateLimiter rateLimiter = new RateLimiter(5, 0, 0, 2, RateLimitPolicy.DEFER);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(0, rateLimiter.admit(this.alice, 20, START));
+        }
+
+        //One second refills five messages' worth
+        long later = START + 1000 * MILLIS;
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, rateLimiter.admit(this.alice, 20, later));
+        }
+        assertTrue(rateLimiter.admit(this.alice, 20, later) > 0);
+
+        //A long silence refills no more than the burst
+        long muchLater = START + 60000 * MILLIS;
+        for (int i = 0; i < 10; i++) {
+            assertEquals(0, rateLimiter.admit(this.alice, 20, muchLater));
+        }
+        assertTrue(rateLimiter.admit(this.alice, 20, muchLater) > 0);
+    }
+
+    @Test
+    public void bytesAreLimitedBySize() {
+        //1000 bytes per second with 2 s of burst
+        RateLimiter rateLimiter = new RateLimiter(0, 1000, 0, 2, RateLimitPolicy.DEFER);
+        assertEquals(0, rateLimiter.admit(this.alice, 1500, START));
+        assertEquals(100 * MILLIS, rateLimiter.admit(this.alice, 600, START));
+        assertEquals(0, rateLimiter.admit(this.alice, 500, START));
+
+        //A message larger than the whole burst is still admitted from a full bucket, and empties it
+        assertEquals(0, rateLimiter.admit(this.bob, 5000, START));
+        assertTrue(rateLimiter.admit(this.bob, 1, START) > 0);
+    }
+
+    @Test
+    public void globalBudgetIsSharedByEveryConnection() {
+        //10 messages per second across the server with 1 s of burst; the members themselves are unlimited
+        RateLimiter rateLimiter = new RateLimiter(0, 0, 10, 1, RateLimitPolicy.DEFER);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, rateLimiter.admit(this.alice, 20, START));
+            assertEquals(0, rateLimiter.admit(this.bob, 20, START));
+        }
+        assertEquals(100 * MILLIS, rateLimiter.admit(this.alice, 20, START));
+        assertEquals(100 * MILLIS, rateLimiter.admit(this.bob, 20, START));
+    }
+
+    @Test
+    public void messageHeldBackByOneBucketTakesNothingFromTheOthers() {
+        //Alice's own bucket is empty, so her next message must not spend the global budget either
+        RateLimiter rateLimiter = new RateLimiter(1, 0, 2, 1, RateLimitPolicy.DEFER);
+        assertEquals(0, rateLimiter.admit(this.alice, 20, START));
+        assertTrue(rateLimiter.admit(this.alice, 20, START) > 0);
+        assertTrue(rateLimiter.admit(this.alice, 20, START) > 0);
+        assertEquals(0, rateLimiter.admit(this.bob, 20, START));
+    }
+
+    @Test
+    public void unlimitedServerAdmitsEverything() {
+        RateLimiter rateLimiter = new RateLimiter(0, 0, 0, 2, RateLimitPolicy.DEFER);
+        assertFalse(rateLimiter.isEnabled());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(0, rateLimiter.admit(this.alice, 100000, START));
+        }
+        assertEquals("rate limit: off", rateLimiter.describe());
+    }
+}
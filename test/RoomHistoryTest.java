@@ -0,0 +1,88 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+//Tests of a room's history: eviction by message count and by bytes, and the order it replays messages in
+public class RoomHistoryTest {
+
+    /**
+     * Static method to record numbered messages of a given size
+     * @param history: RoomHistory to record to
+     * @param first: number of the first message
+     * @param count: number of messages
+     * @param padding: String added to each message's text
+     */
+    static void record(RoomHistory history, int first, int count, String padding) {
+        for (int i = first; i < first + count; i++) {
+            history.record(EncodedMessage.chat("m"+i+padding, 1, 0, "alice"));
+        }
+    }
+
+    /**
+     * Static method to obtain the texts of the latest messages
+     * @param history: RoomHistory to read
+     * @param lines: largest number of messages wanted
+     * @return String array of the texts, oldest first
+     */
+    static String[] latestTexts(RoomHistory history, int lines) {
+        EncodedMessage[] latestMessages = history.latest(lines);
+        String[] texts = new String[latestMessages.length];
+        for (int i = 0; i < latestMessages.length; i++) {
+            texts[i] = latestMessages[i].getText();
+        }
+        return texts;
+    }
+
+    @Test
+    public void oldestMessagesAreEvictedPastTheCount() {
+        RoomHistory history = new RoomHistory(3, 1024);
+        record(history, 0, 5, "");
+        assertEquals(3, history.size());
+        assertEquals(9, history.getBytes());
+        assertArrayEquals(new String[] {"m2", "m3", "m4"}, latestTexts(history, 10));
+    }
+
+    @Test
+    public void oldestMessagesAreEvictedPastTheBytes() {
+        //Each message is 10 bytes with its line terminator
+        RoomHistory history = new RoomHistory(10, 30);
+        record(history, 0, 4, "-------");
+        assertEquals(3, history.size());
+        assertEquals(30, history.getBytes());
+
+        //A message twice the size makes room for itself by evicting two
+        history.record(EncodedMessage.of("m4" + "-".repeat(17)));
+        assertEquals(2, history.size());
+        assertEquals(30, history.getBytes());
+        assertArrayEquals(new String[] {"m3-------", "m4" + "-".repeat(17)}, latestTexts(history, 10));
+
+        //A message larger than the whole history is never held
+        history.record(EncodedMessage.of("x".repeat(40)));
+        assertEquals(2, history.size());
+    }
+
+    @Test
+    public void latestIsTheNewestMessagesOldestFirst() {
+        //Eight messages through a ring of five, so the newest have wrapped round to its start
+        RoomHistory history = new RoomHistory(5, 1024);
+        record(history, 0, 8, "");
+        assertArrayEquals(new String[] {"m5", "m6", "m7"}, latestTexts(history, 3));
+        assertArrayEquals(new String[] {"m3", "m4", "m5", "m6", "m7"}, latestTexts(history, 20));
+        assertEquals(0, history.latest(0).length);
+        assertEquals(0, history.latest(-1).length);
+    }
+
+    @Test
+    public void clearedHistoryHoldsNothing() {
+        RoomHistory history = new RoomHistory(4, 1024);
+        record(history, 0, 6, "");
+        history.clear();
+        assertEquals(0, history.size());
+        assertEquals(0, history.getBytes());
+        assertEquals(0, history.latest(10).length);
+
+        record(history, 10, 1, "");
+        assertArrayEquals(new String[] {"m10"}, latestTexts(history, 10));
+    }
+}
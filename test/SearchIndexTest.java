@@ -0,0 +1,136 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+//Tests of the search index over a message log in a temporary directory
+public class SearchIndexTest {
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Static method to append messages and wait for the log's writer to have appended them all
+     * @param messageLog: MessageLog object to append to
+     * @param messages: EncodedMessage objects to append
+     */
+    static void appendAll(MessageLog messageLog, EncodedMessage... messages) throws InterruptedException {
+        long expected = messageLog.getAppendedCount() + messages.length;
+        for (EncodedMessage message : messages) {
+            messageLog.append(message);
+        }
+        while (messageLog.getAppendedCount() < expected) {
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * Static method to wait for the index to catch up with the log
+     * @param searchIndex: SearchIndex object following the log
+     * @param messageLog: MessageLog object being indexed
+     */
+    static void awaitIndexed(SearchIndex searchIndex, MessageLog messageLog) throws InterruptedException {
+        while (searchIndex.getIndexedSequence() < messageLog.getNextSequence() - 1) {
+            Thread.sleep(10);
+        }
+    }
+
+    private MessageLog openLog() throws Exception {
+        return new MessageLog(this.directory.toString(), 1024 * 1024, FsyncPolicy.fromString("os"), Long.MAX_VALUE, Long.MAX_VALUE);
+    }
+
+    @Test
+    public void senderIsTakenFromTheRecordNotTheText() throws Exception {
+        MessageLog messageLog = openLog();
+        SearchIndex searchIndex = new SearchIndex(messageLog, this.directory);
+        appendAll(messageLog,
+                EncodedMessage.chat("[alice]: deploy finished", 1, 0, "alice"),
+                //mallory typing alice's prefix is still mallory's message
+                EncodedMessage.chat("[mallory]: [alice]: deploy failed", 2, 0, "mallory"),
+                EncodedMessage.of("[alice]: a notice is nobody's message"));
+        awaitIndexed(searchIndex, messageLog);
+
+        List<LogRecord> fromAlice = searchIndex.search("deploy", "alice", 0, 10);
+        assertEquals(1, fromAlice.size());
+        assertEquals("[alice]: deploy finished", fromAlice.get(0).getText());
+        assertEquals("alice", fromAlice.get(0).getSender());
+
+        List<LogRecord> fromMallory = searchIndex.search("failed", "mallory", 0, 10);
+        assertEquals(1, fromMallory.size());
+        assertEquals("mallory", fromMallory.get(0).getSender());
+        assertTrue(searchIndex.search("notice", "alice", 0, 10).isEmpty());
+
+        searchIndex.close();
+        messageLog.close();
+    }
+
+    @Test
+    public void snapshotIsReloadedAfterRestart() throws Exception {
+        MessageLog messageLog = openLog();
+        SearchIndex searchIndex = new SearchIndex(messageLog, this.directory);
+        appendAll(messageLog,
+                EncodedMessage.chat("[alice]: rollout of the billing service", 1, 0, "alice"),
+                EncodedMessage.chat("[#ops] [bob]: billing rollout paused", 2, 1, "bob"),
+                EncodedMessage.chat("[alice]: lunch anyone?", 1, 0, "alice"));
+        awaitIndexed(searchIndex, messageLog);
+        int keywordCount = searchIndex.getKeywordCount();
+        long postingCount = searchIndex.getPostingCount();
+        searchIndex.close();
+        messageLog.close();
+        assertTrue(Files.exists(this.directory.resolve(SearchIndex.SNAPSHOT_FILE)));
+
+        MessageLog reopenedLog = openLog();
+        SearchIndex reloaded = new SearchIndex(reopenedLog, this.directory);
+        assertEquals(3, reloaded.getIndexedSequence());
+        assertEquals(keywordCount, reloaded.getKeywordCount());
+        assertEquals(postingCount, reloaded.getPostingCount());
+        List<LogRecord> results = reloaded.search("billing rollout", null, 0, 10);
+        assertEquals(2, results.size());
+        assertEquals(1, results.get(0).getSequence());
+        assertEquals("bob", results.get(1).getSender());
+        assertEquals(1, reloaded.search("", "bob", 0, 10).size());
+        reloaded.close();
+        reopenedLog.close();
+    }
+
+    @Test
+    public void retentionPrunesThePostings() throws Exception {
+        //Segments of 4 kB, of which the log keeps about two
+        MessageLog messageLog = new MessageLog(this.directory.toString(), 4096, FsyncPolicy.fromString("os"), 8192, Long.MAX_VALUE);
+        SearchIndex searchIndex = new SearchIndex(messageLog, this.directory);
+        EncodedMessage[] early = new EncodedMessage[50];
+        for (int i = 0; i < early.length; i++) {
+            early[i] = EncodedMessage.chat("[carol]: alpha "+i, 3, 0, "carol");
+        }
+        appendAll(messageLog, early);
+        awaitIndexed(searchIndex, messageLog);
+        assertEquals(50, searchIndex.search("alpha", null, 0, 100).size());
+
+        EncodedMessage[] late = new EncodedMessage[500];
+        for (int i = 0; i < late.length; i++) {
+            late[i] = EncodedMessage.chat("[dave]: beta", 4, 0, "dave");
+        }
+        appendAll(messageLog, late);
+        awaitIndexed(searchIndex, messageLog);
+        assertTrue(messageLog.getFirstSequence() > 50);
+
+        //The indexer trims the postings on its next pass over the log
+        long deadline = System.currentTimeMillis() + 5000;
+        long held = 550 - messageLog.getFirstSequence() + 1;
+        while (searchIndex.getPostingCount() != 2 * held && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        //Each message kept is one keyword posting ("beta") and one sender posting ("dave"); carol, alpha and the
+        //numbers are gone altogether
+        assertEquals(2 * held, searchIndex.getPostingCount());
+        assertEquals(1, searchIndex.getKeywordCount());
+        assertTrue(searchIndex.search("", "carol", 0, 10).isEmpty());
+        searchIndex.close();
+        messageLog.close();
+    }
+}
@@ -0,0 +1,98 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+//Tests of the timing wheel, with 10 ms ticks and a small ring so that longer timeouts need several rounds
+public class TimingWheelTest {
+
+    private TimingWheel wheel;
+
+    @BeforeEach
+    public void setUp() {
+        this.wheel = new TimingWheel("test-wheel", 10, 8);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        this.wheel.close();
+    }
+
+    @Test
+    public void timeoutRunsOnceItIsDueAndNotBefore() throws Exception {
+        CountDownLatch fired = new CountDownLatch(1);
+        AtomicLong firedAt = new AtomicLong();
+        long scheduledAt = System.nanoTime();
+        this.wheel.schedule(() -> {
+            firedAt.set(System.nanoTime());
+            fired.countDown();
+        }, TimeUnit.MILLISECONDS.toNanos(50));
+
+        assertTrue(fired.await(2, TimeUnit.SECONDS));
+        assertTrue(firedAt.get() - scheduledAt >= TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    @Test
+    public void timeoutBeyondOneRevolutionWaitsForItsRounds() throws Exception {
+        //8 slots of 10 ms make an 80 ms revolution, so this timeout passes its slot twice before it is due
+        CountDownLatch fired = new CountDownLatch(1);
+        AtomicLong firedAt = new AtomicLong();
+        long scheduledAt = System.nanoTime();
+        this.wheel.schedule(() -> {
+            firedAt.set(System.nanoTime());
+            fired.countDown();
+        }, TimeUnit.MILLISECONDS.toNanos(200));
+
+        assertTrue(fired.await(2, TimeUnit.SECONDS));
+        assertTrue(firedAt.get() - scheduledAt >= TimeUnit.MILLISECONDS.toNanos(200));
+    }
+
+    @Test
+    public void timeoutsRunInTheOrderTheyAreDue() throws Exception {
+        StringBuffer order = new StringBuffer();
+        CountDownLatch fired = new CountDownLatch(3);
+        this.wheel.schedule(() -> { order.append("c"); fired.countDown(); }, TimeUnit.MILLISECONDS.toNanos(150));
+        this.wheel.schedule(() -> { order.append("a"); fired.countDown(); }, TimeUnit.MILLISECONDS.toNanos(20));
+        this.wheel.schedule(() -> { order.append("b"); fired.countDown(); }, TimeUnit.MILLISECONDS.toNanos(90));
+
+        assertTrue(fired.await(2, TimeUnit.SECONDS));
+        assertEquals("abc", order.toString());
+    }
+
+    @Test
+    public void cancelledTimeoutNeverRuns() throws Exception {
+        AtomicBoolean cancelledRan = new AtomicBoolean();
+        AtomicBoolean placedThenCancelledRan = new AtomicBoolean();
+        CountDownLatch later = new CountDownLatch(1);
+
+        //One is cancelled before the wheel has placed it in a slot, the other once it is waiting in its slot
+        TimingWheel.Timeout cancelled = this.wheel.schedule(() -> cancelledRan.set(true), TimeUnit.MILLISECONDS.toNanos(50));
+        cancelled.cancel();
+        TimingWheel.Timeout placedThenCancelled = this.wheel.schedule(() -> placedThenCancelledRan.set(true),
+                TimeUnit.MILLISECONDS.toNanos(100));
+        this.wheel.schedule(later::countDown, TimeUnit.MILLISECONDS.toNanos(200));
+        Thread.sleep(40);
+        placedThenCancelled.cancel();
+
+        assertTrue(later.await(2, TimeUnit.SECONDS));
+        assertFalse(cancelledRan.get());
+        assertFalse(placedThenCancelledRan.get());
+    }
+
+    @Test
+    public void failingTimeoutDoesNotStopTheWheel() throws Exception {
+        CountDownLatch fired = new CountDownLatch(1);
+        this.wheel.schedule(() -> { throw new IllegalStateException("expected by the test"); }, 0);
+        this.wheel.schedule(fired::countDown, TimeUnit.MILLISECONDS.toNanos(30));
+
+        assertTrue(fired.await(2, TimeUnit.SECONDS));
+    }
+}